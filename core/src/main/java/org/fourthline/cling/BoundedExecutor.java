@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling;
+
+import org.seamless.util.Exceptions;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A fixed-size thread pool with a bounded queue, for one kind of work of the UPnP stack.
+ * <p>
+ * Threads are started on demand up to the maximum and stop after 60 seconds of idle time. When
+ * the queue is full, the {@link Overflow} policy of a task decides: It is either discarded, or
+ * refused with a <code>RejectedExecutionException</code>, or executed by the submitting thread,
+ * or the submitting thread waits for a limited time until the task can be queued. All cases are
+ * logged and counted, see {@link BoundedExecutorMBean}.
+ * </p>
+ * <p>
+ * A discarded task which is a <code>Future</code>, for example a task of <code>submit()</code>,
+ * is cancelled, so nobody waits for its result forever.
+ * </p>
+ * <p>
+ * A prioritized executor orders waiting tasks by {@link #getPriority(Runnable)} first, and by
+ * submission order second.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class BoundedExecutor extends ThreadPoolExecutor implements BoundedExecutorMBean {
+
+    private static Logger log = Logger.getLogger(BoundedExecutor.class.getName());
+
+    /**
+     * What to do with a task when the queue of the executor is full.
+     */
+    public enum Overflow {
+        DISCARD,
+        ABORT,
+        CALLER_RUNS,
+        /**
+         * Waits up to {@link BoundedExecutor#getBlockTimeoutMillis()} for space in the queue, then
+         * discards the task like {@link #DISCARD}.
+         */
+        BLOCK
+    }
+
+    final protected String name;
+    final protected int queueCapacity;
+    final protected Overflow overflow;
+    final protected boolean prioritized;
+
+    final protected AtomicLong sequence = new AtomicLong();
+    final protected AtomicLong rejectedCount = new AtomicLong();
+    final protected AtomicLong callerRunsCount = new AtomicLong();
+    final protected AtomicLong blockedCount = new AtomicLong();
+
+    public BoundedExecutor(String name, int threads, int queueCapacity, Overflow overflow) {
+        this(name, threads, queueCapacity, overflow, false);
+    }
+
+    public BoundedExecutor(String name, int threads, int queueCapacity, Overflow overflow, boolean prioritized) {
+        super(threads,
+              threads,
+              60L,
+              TimeUnit.SECONDS,
+              prioritized
+                      ? new PriorityBlockingQueue<Runnable>(Math.min(queueCapacity, 64))
+                      : new LinkedBlockingQueue<Runnable>(queueCapacity),
+              new DefaultUpnpServiceConfiguration.ClingThreadFactory("cling-" + name + "-")
+        );
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.overflow = overflow;
+        this.prioritized = prioritized;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                rejected(runnable);
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        if (prioritized) {
+            // The priority queue is unbounded, so we enforce the capacity here
+            runnable = new PrioritizedTask(runnable, getPriority(runnable), sequence.getAndIncrement());
+            if (getQueue().size() >= queueCapacity) {
+                rejected(runnable);
+                return;
+            }
+        }
+        super.execute(runnable);
+    }
+
+    /**
+     * Override this to handle the overflow of some tasks differently.
+     *
+     * @return The {@link Overflow} policy of this executor by default.
+     */
+    protected Overflow getOverflow(Runnable runnable) {
+        return overflow;
+    }
+
+    /**
+     * Override this to prioritize tasks of a prioritized executor, lower values run first.
+     *
+     * @return Zero by default.
+     */
+    protected int getPriority(Runnable runnable) {
+        return 0;
+    }
+
+    /**
+     * Override this to change how long a submitting thread waits with the {@link Overflow#BLOCK} policy.
+     *
+     * @return Five seconds by default.
+     */
+    protected long getBlockTimeoutMillis() {
+        return 5000;
+    }
+
+    protected void rejected(Runnable task) {
+        Runnable runnable = task instanceof PrioritizedTask ? ((PrioritizedTask) task).runnable : task;
+        if (isShutdown()) {
+            log.fine("Executor '" + getName() + "' has been shut down, discarding: " + runnable);
+            cancel(runnable);
+            return;
+        }
+        switch (getOverflow(runnable)) {
+            case CALLER_RUNS:
+                callerRunsCount.incrementAndGet();
+                log.fine("Executor '" + getName() + "' queue is full, running task in calling thread: " + runnable);
+                runnable.run();
+                break;
+            case BLOCK:
+                log.fine("Executor '" + getName() + "' queue is full, waiting to queue task: " + runnable);
+                try {
+                    if (offer(task, getBlockTimeoutMillis())) {
+                        blockedCount.incrementAndGet();
+                        break;
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                rejectedCount.incrementAndGet();
+                log.warning("Executor '" + getName() + "' queue is still full after waiting, discarding: " + runnable);
+                cancel(runnable);
+                break;
+            case ABORT:
+                rejectedCount.incrementAndGet();
+                log.info("Executor '" + getName() + "' queue is full, refusing: " + runnable);
+                throw new RejectedExecutionException(
+                    "Executor '" + getName() + "' queue is full, refusing: " + runnable
+                );
+            default:
+                rejectedCount.incrementAndGet();
+                log.info("Executor '" + getName() + "' queue is full, discarding: " + runnable);
+                cancel(runnable);
+        }
+    }
+
+    protected boolean offer(Runnable task, long timeoutMillis) throws InterruptedException {
+        if (!prioritized)
+            return getQueue().offer(task, timeoutMillis, TimeUnit.MILLISECONDS);
+        // The priority queue never blocks, poll its size until the deadline
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (getQueue().size() >= queueCapacity) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(10);
+        }
+        return getQueue().offer(task);
+    }
+
+    protected void cancel(Runnable runnable) {
+        if (runnable instanceof Future)
+            ((Future) runnable).cancel(false);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        if (throwable != null) {
+            // Log only
+            log.warning("Thread terminated " + runnable + " abruptly with exception: " + throwable);
+            log.warning("Root cause: " + Exceptions.unwrap(throwable));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + " '" + getName() + "') Active: " + getActiveCount()
+                + ", queued: " + getQueueSize() + "/" + getQueueCapacity()
+                + ", rejected: " + getRejectedCount() + ", caller runs: " + getCallerRunsCount()
+                + ", blocked: " + getBlockedCount();
+    }
+
+    protected static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+        final protected Runnable runnable;
+        final protected int priority;
+        final protected long sequence;
+
+        public PrioritizedTask(Runnable runnable, int priority, long sequence) {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public void run() {
+            runnable.run();
+        }
+
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) return priority < other.priority ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return runnable.toString();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling;
+
+/**
+ * Management interface of a {@link BoundedExecutor}, registered with the platform MBean server.
+ *
+ * @author Christian Bauer
+ */
+public interface BoundedExecutorMBean {
+
+    public String getName();
+
+    public int getMaximumPoolSize();
+
+    public int getPoolSize();
+
+    public int getLargestPoolSize();
+
+    public int getActiveCount();
+
+    public int getQueueSize();
+
+    public int getQueueCapacity();
+
+    public long getCompletedTaskCount();
+
+    /**
+     * @return How many tasks have been discarded or refused because the queue was full.
+     */
+    public long getRejectedCount();
+
+    /**
+     * @return How many tasks have been executed in the submitting thread because the queue was full.
+     */
+    public long getCallerRunsCount();
+
+    /**
+     * @return How many tasks have been queued after the submitting thread waited for space in the queue.
+     */
+    public long getBlockedCount();
+
+}
@@ -24,6 +24,12 @@ import org.fourthline.cling.binding.xml.UDA10ServiceDescriptorBinderImpl;
 import org.fourthline.cling.model.ModelUtil;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.protocol.ReceivingAsync;
+import org.fourthline.cling.protocol.RemoteDescriptorCache;
+import org.fourthline.cling.protocol.ServiceDescriptorCache;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryImpl;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 import org.fourthline.cling.transport.impl.DatagramIOConfigurationImpl;
 import org.fourthline.cling.transport.impl.DatagramIOImpl;
 import org.fourthline.cling.transport.impl.DatagramProcessorImpl;
@@ -44,10 +50,19 @@ import org.fourthline.cling.transport.spi.NetworkAddressFactory;
 import org.fourthline.cling.transport.spi.SOAPActionProcessor;
 import org.fourthline.cling.transport.spi.StreamClient;
 import org.fourthline.cling.transport.spi.StreamServer;
+import org.fourthline.cling.transport.spi.UpnpStream;
 import org.seamless.util.Exceptions;
 
 import javax.enterprise.inject.Alternative;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -67,12 +82,37 @@ import java.util.logging.Logger;
  * {@link org.fourthline.cling.binding.xml}.
  * </p>
  * <p>
- * The thread <code>Executor</code> is an <code>Executors.newCachedThreadPool()</code> with
- * a custom {@link ClingThreadFactory} (it only sets a thread name).
+ * The long-running receivers, the registry maintainer, and the notifications of registry listeners
+ * are executed by an <code>Executors.newCachedThreadPool()</code> with a custom {@link ClingThreadFactory}
+ * (it only sets a thread name). This pool is effectively unlimited, the registry fires listener
+ * notifications while holding its lock and they must never be delayed or dropped.
  * </p>
  * <p>
- * Note that this pool is effectively unlimited, so the number of threads will
- * grow (and shrink) as needed - or restricted by your JVM.
+ * All other work runs on separate {@link BoundedExecutor}s, so a flood of discovery messages
+ * can't starve the handling of actions:
+ * </p>
+ * <ul>
+ * <li>Discovery (16 threads, 512 queued tasks), discards received messages when full. Other work,
+ * such as searches and the pending executions of the registry, is then handed to the unlimited
+ * pool instead, it is never delayed or dropped.</li>
+ * <li>Search responses (4 threads, 256 queued tasks), discards tasks when full.</li>
+ * <li>Actions and other synchronous protocols (32 threads, 256 queued tasks), received requests
+ * are queued before outgoing invocations. When full, received requests are answered with
+ * <em>503 SERVICE UNAVAILABLE</em> and outgoing invocations are executed by the calling thread.</li>
+ * <li>GENA events (8 threads, 1024 queued tasks), waits for space in the queue when full.</li>
+ * </ul>
+ * <p>
+ * A waiting thread doesn't run the task itself, so it doesn't execute HTTP requests while
+ * holding the lock of a service. If there is still no space
+ * after five seconds, the task is logged and discarded.
+ * </p>
+ * <p>
+ * Each bounded pool is registered as a {@link BoundedExecutorMBean} with the platform MBean server,
+ * the object name is <code>org.fourthline.cling:type=Executor,name=[pool],instance=[configuration]</code>.
+ * </p>
+ * <p>
+ * Delayed tasks such as search responses are scheduled on a single timer thread, the
+ * timer only hands the work off to the regular thread pool when it is due.
  * </p>
  * <p>
  * The default {@link org.fourthline.cling.model.Namespace} is configured without any
@@ -89,6 +129,12 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     final private int streamListenPort;
 
     final private Executor defaultExecutor;
+    final private Executor asyncProtocolExecutor;
+    final private Executor searchResponseExecutor;
+    final private Executor syncProtocolExecutor;
+    final private Executor eventExecutor;
+    final private Executor registryListenerExecutor;
+    final private ScheduledExecutorService timerExecutor;
 
     final private DatagramProcessor datagramProcessor;
     final private SOAPActionProcessor soapActionProcessor;
@@ -99,6 +145,12 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
 
     final private Namespace namespace;
 
+    final private RemoteDescriptorCache remoteDescriptorCache;
+
+    final private ServiceDescriptorCache serviceDescriptorCache;
+
+    final private IncomingDatagramFilter datagramFilter;
+
     /**
      * Defaults to port '0', ephemeral.
      */
@@ -122,6 +174,16 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         this.streamListenPort = streamListenPort;
 
         defaultExecutor = createDefaultExecutor();
+        asyncProtocolExecutor = createAsyncProtocolExecutor();
+        searchResponseExecutor = createSearchResponseExecutor();
+        syncProtocolExecutor = createSyncProtocolExecutor();
+        eventExecutor = createEventExecutor();
+        registryListenerExecutor = createRegistryListenerExecutor();
+        timerExecutor = createTimerExecutor();
+
+        if (!ModelUtil.ANDROID_RUNTIME) {
+            registerExecutorMBeans();
+        }
 
         datagramProcessor = createDatagramProcessor();
         soapActionProcessor = createSOAPActionProcessor();
@@ -131,6 +193,12 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         serviceDescriptorBinderUDA10 = createServiceDescriptorBinderUDA10();
 
         namespace = createNamespace();
+
+        remoteDescriptorCache = createRemoteDescriptorCache();
+
+        serviceDescriptorCache = createServiceDescriptorCache();
+
+        datagramFilter = createDatagramFilter();
     }
 
     public DatagramProcessor getDatagramProcessor() {
@@ -203,23 +271,65 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public Executor getAsyncProtocolExecutor() {
-        return getDefaultExecutor();
+        return asyncProtocolExecutor;
     }
 
     public Executor getSyncProtocolExecutor() {
-        return getDefaultExecutor();
+        return syncProtocolExecutor;
+    }
+
+    public Executor getSearchResponseExecutor() {
+        return searchResponseExecutor;
+    }
+
+    public Executor getEventExecutor() {
+        return eventExecutor;
     }
 
     public Namespace getNamespace() {
         return namespace;
     }
 
+    public RemoteDescriptorCache getRemoteDescriptorCache() {
+        return remoteDescriptorCache;
+    }
+
+    public ServiceDescriptorCache getServiceDescriptorCache() {
+        return serviceDescriptorCache;
+    }
+
+    public IncomingDatagramFilter getDatagramFilter() {
+        return datagramFilter;
+    }
+
+    /**
+     * @return Defaults to <code>20</code>.
+     */
+    public int getAliveNotificationsPerTick() {
+        return 20;
+    }
+
+    /**
+     * @return Defaults to <code>10</code> milliseconds.
+     */
+    public int getAliveNotificationTickMillis() {
+        return 10;
+    }
+
     public Executor getRegistryMaintainerExecutor() {
         return getDefaultExecutor();
     }
 
     public Executor getRegistryListenerExecutor() {
-        return getDefaultExecutor();
+        return registryListenerExecutor;
+    }
+
+    public ScheduledExecutorService getTimerExecutor() {
+        return timerExecutor;
+    }
+
+    public Registry createRegistry(UpnpService upnpService) {
+        return new RegistryImpl(upnpService);
     }
 
     public NetworkAddressFactory createNetworkAddressFactory() {
@@ -227,9 +337,21 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public void shutdown() {
-        if (getDefaultExecutor() instanceof ThreadPoolExecutor) {
-            log.fine("Shutting down thread pool");
-            ((ThreadPoolExecutor) getDefaultExecutor()).shutdown();
+        if (!ModelUtil.ANDROID_RUNTIME) {
+            unregisterExecutorMBeans();
+        }
+        for (Executor executor : getExecutors()) {
+            if (executor instanceof ThreadPoolExecutor) {
+                log.fine("Shutting down thread pool: " + executor);
+                ((ThreadPoolExecutor) executor).shutdown();
+            }
+        }
+        if (getTimerExecutor() != null) {
+            log.fine("Shutting down timer");
+            getTimerExecutor().shutdownNow();
+        }
+        if (getServiceDescriptorCache() != null) {
+            getServiceDescriptorCache().clear();
         }
     }
 
@@ -261,14 +383,156 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new Namespace();
     }
 
+    /**
+     * Override this to store remote descriptors, e.g. <code>new RemoteDescriptorCache(new File("..."))</code>.
+     *
+     * @return <code>null</code>, remote descriptors are always retrieved from the network.
+     */
+    protected RemoteDescriptorCache createRemoteDescriptorCache() {
+        return null;
+    }
+
+    /**
+     * Override this to change the number of shared service descriptors, or return <code>null</code>
+     * to parse every service descriptor.
+     */
+    protected ServiceDescriptorCache createServiceDescriptorCache() {
+        return new ServiceDescriptorCache();
+    }
+
+    /**
+     * Override this to customize the filter, or return <code>null</code> to create a protocol for every
+     * received notification.
+     */
+    protected IncomingDatagramFilter createDatagramFilter() {
+        return new IncomingDatagramFilter();
+    }
+
     protected Executor getDefaultExecutor() {
         return defaultExecutor;
     }
 
+    /**
+     * @return All distinct executors of this configuration, except the timer.
+     */
+    protected Set<Executor> getExecutors() {
+        Set<Executor> executors = new LinkedHashSet();
+        executors.add(getDefaultExecutor());
+        executors.add(asyncProtocolExecutor);
+        executors.add(searchResponseExecutor);
+        executors.add(syncProtocolExecutor);
+        executors.add(eventExecutor);
+        executors.add(registryListenerExecutor);
+        executors.remove(null);
+        return executors;
+    }
+
+    protected ObjectName getExecutorObjectName(BoundedExecutor executor) throws MalformedObjectNameException {
+        return new ObjectName(
+                "org.fourthline.cling:type=Executor,name=" + executor.getName()
+                        + ",instance=" + Integer.toHexString(System.identityHashCode(this))
+        );
+    }
+
+    protected void registerExecutorMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Executor executor : getExecutors()) {
+                if (!(executor instanceof BoundedExecutor)) continue;
+                ObjectName name = getExecutorObjectName((BoundedExecutor) executor);
+                if (!server.isRegistered(name))
+                    server.registerMBean(executor, name);
+            }
+        } catch (Exception ex) {
+            log.warning("Couldn't register executor MBeans: " + ex);
+        }
+    }
+
+    protected void unregisterExecutorMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Executor executor : getExecutors()) {
+                if (!(executor instanceof BoundedExecutor)) continue;
+                ObjectName name = getExecutorObjectName((BoundedExecutor) executor);
+                if (server.isRegistered(name))
+                    server.unregisterMBean(name);
+            }
+        } catch (Exception ex) {
+            log.warning("Couldn't unregister executor MBeans: " + ex);
+        }
+    }
+
+    protected ScheduledExecutorService createTimerExecutor() {
+        return new ScheduledThreadPoolExecutor(1, new ClingThreadFactory());
+    }
+
     protected Executor createDefaultExecutor() {
         return new ClingExecutor();
     }
 
+    protected Executor createAsyncProtocolExecutor() {
+        return createAsyncProtocolExecutor(16, 512);
+    }
+
+    protected Executor createAsyncProtocolExecutor(int threads, int queueCapacity) {
+        return new BoundedExecutor("discovery", threads, queueCapacity, BoundedExecutor.Overflow.DISCARD) {
+            @Override
+            protected void rejected(Runnable runnable) {
+                if (runnable instanceof ReceivingAsync || isShutdown()) {
+                    // Drop received messages during a flood, don't block the receiving thread
+                    super.rejected(runnable);
+                } else {
+                    // Our own work might be submitted while holding the registry lock, it
+                    // can neither wait for space nor be dropped
+                    log.fine("Executor '" + getName() + "' queue is full, using default executor: " + runnable);
+                    getDefaultExecutor().execute(runnable);
+                }
+            }
+        };
+    }
+
+    protected Executor createSearchResponseExecutor() {
+        return createSearchResponseExecutor(4, 256);
+    }
+
+    protected Executor createSearchResponseExecutor(int threads, int queueCapacity) {
+        return new BoundedExecutor("search-response", threads, queueCapacity, BoundedExecutor.Overflow.DISCARD);
+    }
+
+    protected Executor createSyncProtocolExecutor() {
+        return createSyncProtocolExecutor(32, 256);
+    }
+
+    protected Executor createSyncProtocolExecutor(int threads, int queueCapacity) {
+        return new BoundedExecutor("sync-protocol", threads, queueCapacity, BoundedExecutor.Overflow.CALLER_RUNS, true) {
+            @Override
+            protected int getPriority(Runnable runnable) {
+                // Responses to received requests first, a remote control point is waiting
+                return runnable instanceof UpnpStream ? 0 : 1;
+            }
+
+            @Override
+            protected Overflow getOverflow(Runnable runnable) {
+                // Don't block the receiving thread of a stream server, it might be a selector,
+                // the router answers a refused stream with 503
+                return runnable instanceof UpnpStream ? Overflow.ABORT : super.getOverflow(runnable);
+            }
+        };
+    }
+
+    protected Executor createEventExecutor() {
+        return createEventExecutor(8, 1024);
+    }
+
+    protected Executor createEventExecutor(int threads, int queueCapacity) {
+        return new BoundedExecutor("event", threads, queueCapacity, BoundedExecutor.Overflow.BLOCK);
+    }
+
+    protected Executor createRegistryListenerExecutor() {
+        // Unbounded, the registry notifies its listeners while holding its lock
+        return new ClingExecutor();
+    }
+
     public static class ClingExecutor extends ThreadPoolExecutor {
 
         public ClingExecutor() {
@@ -313,9 +577,14 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
 
         protected final ThreadGroup group;
         protected final AtomicInteger threadNumber = new AtomicInteger(1);
-        protected final String namePrefix = "cling-";
+        protected final String namePrefix;
 
         public ClingThreadFactory() {
+            this("cling-");
+        }
+
+        public ClingThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
             SecurityManager s = System.getSecurityManager();
             group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
         }
@@ -22,6 +22,7 @@ import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.registry.RegistryListener;
+import org.fourthline.cling.registry.RemoteDeviceDiff;
 
 /**
  * Runs a simple UPnP discovery procedure.
@@ -58,6 +59,12 @@ public class Main {
                 );
             }
 
+            public void remoteDeviceChanged(Registry registry, RemoteDeviceDiff diff) {
+                System.out.println(
+                        "Remote device changed: " + diff.getDevice().getDisplayString()
+                );
+            }
+
             public void remoteDeviceRemoved(Registry registry, RemoteDevice device) {
                 System.out.println(
                         "Remote device removed: " + device.getDisplayString()
@@ -23,6 +23,7 @@ import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.registry.RegistryListener;
+import org.fourthline.cling.registry.RemoteDeviceDiff;
 import org.fourthline.cling.registry.event.After;
 import org.fourthline.cling.registry.event.Before;
 import org.fourthline.cling.registry.event.FailedRemoteDeviceDiscovery;
@@ -166,6 +167,10 @@ public class ManagedUpnpService implements UpnpService {
         @Any
         Event<FailedRemoteDeviceDiscovery> failedRemoteDeviceDiscoveryEvent;
 
+        @Inject
+        @Any
+        Event<RemoteDeviceDiff> remoteDeviceDiffEvent;
+
         @Inject
         @Any
         Event<LocalDeviceDiscovery> localDeviceDiscoveryEvent;
@@ -202,6 +207,11 @@ public class ManagedUpnpService implements UpnpService {
             );
         }
 
+        @Override
+        public void remoteDeviceChanged(Registry registry, RemoteDeviceDiff diff) {
+            remoteDeviceDiffEvent.fire(diff);
+        }
+
         @Override
         public void remoteDeviceRemoved(Registry registry, RemoteDevice device) {
             remoteDeviceDiscoveryEvent.select(Phase.BYEBYE).fire(
@@ -24,6 +24,11 @@ import org.fourthline.cling.binding.xml.UDA10ServiceDescriptorBinderImpl;
 import org.fourthline.cling.model.ModelUtil;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.protocol.RemoteDescriptorCache;
+import org.fourthline.cling.protocol.ServiceDescriptorCache;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryImpl;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 import org.fourthline.cling.transport.impl.DatagramIOConfigurationImpl;
 import org.fourthline.cling.transport.impl.DatagramIOImpl;
 import org.fourthline.cling.transport.impl.GENAEventProcessorImpl;
@@ -48,6 +53,8 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Logger;
 
@@ -66,6 +73,7 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     private int streamListenPort;
 
     private Executor defaultExecutor;
+    private ScheduledExecutorService timerExecutor;
 
     @Inject
     protected DatagramProcessor datagramProcessor;
@@ -78,6 +86,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
 
     private Namespace namespace;
 
+    private ServiceDescriptorCache serviceDescriptorCache;
+
+    private IncomingDatagramFilter datagramFilter;
+
     @PostConstruct
     public void init() {
 
@@ -88,6 +100,7 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         this.streamListenPort = NetworkAddressFactoryImpl.DEFAULT_TCP_HTTP_LISTEN_PORT;
 
         defaultExecutor = createDefaultExecutor();
+        timerExecutor = createTimerExecutor();
 
         soapActionProcessor = createSOAPActionProcessor();
         genaEventProcessor = createGENAEventProcessor();
@@ -96,6 +109,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         serviceDescriptorBinderUDA10 = createServiceDescriptorBinderUDA10();
 
         namespace = createNamespace();
+
+        serviceDescriptorCache = createServiceDescriptorCache();
+
+        datagramFilter = createDatagramFilter();
     }
 
     public DatagramProcessor getDatagramProcessor() {
@@ -175,6 +192,34 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return getDefaultExecutor();
     }
 
+    public Executor getSearchResponseExecutor() {
+        return getDefaultExecutor();
+    }
+
+    public RemoteDescriptorCache getRemoteDescriptorCache() {
+        return null;
+    }
+
+    public ServiceDescriptorCache getServiceDescriptorCache() {
+        return serviceDescriptorCache;
+    }
+
+    public IncomingDatagramFilter getDatagramFilter() {
+        return datagramFilter;
+    }
+
+    public int getAliveNotificationsPerTick() {
+        return 20;
+    }
+
+    public int getAliveNotificationTickMillis() {
+        return 10;
+    }
+
+    public Executor getEventExecutor() {
+        return getDefaultExecutor();
+    }
+
     public Namespace getNamespace() {
         return namespace;
     }
@@ -187,6 +232,14 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return getDefaultExecutor();
     }
 
+    public ScheduledExecutorService getTimerExecutor() {
+        return timerExecutor;
+    }
+
+    public Registry createRegistry(UpnpService upnpService) {
+        return new RegistryImpl(upnpService);
+    }
+
     public NetworkAddressFactory createNetworkAddressFactory() {
         return createNetworkAddressFactory(streamListenPort);
     }
@@ -196,6 +249,13 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
             log.fine("Shutting down thread pool");
             ((ThreadPoolExecutor) getDefaultExecutor()).shutdown();
         }
+        if (getTimerExecutor() != null) {
+            log.fine("Shutting down timer");
+            getTimerExecutor().shutdownNow();
+        }
+        if (getServiceDescriptorCache() != null) {
+            getServiceDescriptorCache().clear();
+        }
     }
 
     protected NetworkAddressFactory createNetworkAddressFactory(int streamListenPort) {
@@ -222,10 +282,22 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new Namespace();
     }
 
+    protected ServiceDescriptorCache createServiceDescriptorCache() {
+        return new ServiceDescriptorCache();
+    }
+
+    protected IncomingDatagramFilter createDatagramFilter() {
+        return new IncomingDatagramFilter();
+    }
+
     protected Executor getDefaultExecutor() {
         return defaultExecutor;
     }
 
+    protected ScheduledExecutorService createTimerExecutor() {
+        return new ScheduledThreadPoolExecutor(1, new DefaultUpnpServiceConfiguration.ClingThreadFactory());
+    }
+
     protected Executor createDefaultExecutor() {
         return new DefaultUpnpServiceConfiguration.ClingExecutor();
     }
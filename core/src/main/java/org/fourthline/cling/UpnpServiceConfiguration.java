@@ -21,6 +21,10 @@ import org.fourthline.cling.binding.xml.DeviceDescriptorBinder;
 import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.protocol.RemoteDescriptorCache;
+import org.fourthline.cling.protocol.ServiceDescriptorCache;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 import org.fourthline.cling.transport.spi.DatagramIO;
 import org.fourthline.cling.transport.spi.DatagramProcessor;
 import org.fourthline.cling.transport.spi.GENAEventProcessor;
@@ -31,6 +35,7 @@ import org.fourthline.cling.transport.spi.StreamClient;
 import org.fourthline.cling.transport.spi.StreamServer;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Shared configuration data of the UPnP stack..
@@ -172,6 +177,72 @@ public interface UpnpServiceConfiguration {
      */
     public Executor getSyncProtocolExecutor();
 
+    /**
+     * Note that this method has been added to the service provider interface, it breaks custom
+     * implementations of this interface which don't extend {@link DefaultUpnpServiceConfiguration}.
+     * Return the {@link #getAsyncProtocolExecutor()} to restore the previous behavior.
+     *
+     * @return The executor which sends the delayed responses to search requests, see {@link #getTimerExecutor()}.
+     */
+    public Executor getSearchResponseExecutor();
+
+    /**
+     * Note that this method has been added to the service provider interface, it breaks custom
+     * implementations of this interface which don't extend {@link DefaultUpnpServiceConfiguration}.
+     * Return the {@link #getSyncProtocolExecutor()} to restore the previous behavior.
+     *
+     * @return The executor which sends GENA event messages to the subscribers of local services.
+     */
+    public Executor getEventExecutor();
+
+    /**
+     * Optional persistent storage of remote device and service descriptors, speeds up the discovery
+     * of known devices after a restart.
+     *
+     * @return The cache of remote descriptors, or <code>null</code> if remote descriptors should always
+     *         be retrieved from the network.
+     */
+    public RemoteDescriptorCache getRemoteDescriptorCache();
+
+    /**
+     * Note that this method has been added to the service provider interface, it breaks custom
+     * implementations of this interface which don't extend {@link DefaultUpnpServiceConfiguration}.
+     * Return <code>null</code> to restore the previous behavior.
+     *
+     * @return The cache of parsed remote service descriptors shared by all devices of this UPnP stack,
+     *         or <code>null</code> if every service descriptor should be parsed.
+     */
+    public ServiceDescriptorCache getServiceDescriptorCache();
+
+    /**
+     * Note that this method has been added to the service provider interface, it breaks custom
+     * implementations of this interface which don't extend {@link DefaultUpnpServiceConfiguration}.
+     * Return <code>null</code> to restore the previous behavior.
+     *
+     * @return The filter which refreshes known remote devices inline when their notifications are received,
+     *         or <code>null</code> if a protocol should be created for every notification.
+     */
+    public IncomingDatagramFilter getDatagramFilter();
+
+    /**
+     * Alive notifications of local devices are queued and sent at this rate, instead of blocking
+     * a thread for each advertised device.
+     * <p>
+     * Note that this method has been added to the service provider interface, it breaks custom
+     * implementations of this interface which don't extend {@link DefaultUpnpServiceConfiguration}.
+     * Return <code>0</code> to restore the previous behavior.
+     * </p>
+     *
+     * @return The maximum number of alive notifications sent every {@link #getAliveNotificationTickMillis()},
+     *         or <code>0</code> if each protocol should send its bulks itself, sleeping in between.
+     */
+    public int getAliveNotificationsPerTick();
+
+    /**
+     * @return The interval in milliseconds at which queued alive notifications are sent.
+     */
+    public int getAliveNotificationTickMillis();
+
     /**
      * @return An instance of {@link org.fourthline.cling.model.Namespace} for this UPnP stack.
      */
@@ -187,6 +258,29 @@ public interface UpnpServiceConfiguration {
      */
     public Executor getRegistryListenerExecutor();
 
+    /**
+     * Runs delayed work of the UPnP stack, such as randomly delayed search responses.
+     * <p>
+     * Tasks on this executor should only hand off the actual work to another executor
+     * and never block, a single thread can then serve any number of delayed tasks.
+     * </p>
+     *
+     * @return The executor which runs the timers of the UPnP stack.
+     */
+    public ScheduledExecutorService getTimerExecutor();
+
+    /**
+     * Called by the {@link org.fourthline.cling.UpnpService} when it starts up.
+     * <p>
+     * Return a {@link org.fourthline.cling.registry.ConcurrentRegistryImpl} if many threads query
+     * the registry concurrently and lookups should not block while the registry is modified.
+     * </p>
+     *
+     * @param upnpService The UPnP service which owns the registry.
+     * @return A new instance of the {@link org.fourthline.cling.registry.Registry} interface.
+     */
+    public Registry createRegistry(UpnpService upnpService);
+
     /**
      * Called by the {@link org.fourthline.cling.UpnpService} on shutdown, useful to e.g. shutdown thread pools.
      */
@@ -22,7 +22,6 @@ import org.fourthline.cling.controlpoint.ControlPointImpl;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.protocol.ProtocolFactoryImpl;
 import org.fourthline.cling.registry.Registry;
-import org.fourthline.cling.registry.RegistryImpl;
 import org.fourthline.cling.registry.RegistryListener;
 import org.fourthline.cling.transport.Router;
 import org.fourthline.cling.transport.RouterImpl;
@@ -92,7 +91,7 @@ public class UpnpServiceImpl implements UpnpService {
     }
 
     protected Registry createRegistry(ProtocolFactory protocolFactory) {
-        return new RegistryImpl(this);
+        return getConfiguration().createRegistry(this);
     }
 
     protected Router createRouter(ProtocolFactory protocolFactory, Registry registry) {
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling;
+
+import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
+
+import javax.enterprise.inject.Alternative;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Runs the blocking protocols on virtual threads, if the JVM supports them.
+ * <p>
+ * Synchronous protocols (action invocation, subscriptions, event delivery, and the processing of
+ * received stream requests) and asynchronous protocols (notifications, search, and retrieval of
+ * remote descriptors) mostly wait on network I/O or sleep. On a JVM with virtual threads (Java 21+),
+ * each of these tasks gets a new virtual thread and thousands of concurrent action calls only
+ * need a handful of carrier threads. The receivers for datagrams and streams, the registry
+ * maintainer, and the listener callbacks stay on the regular platform thread pool.
+ * </p>
+ * <p>
+ * Virtual threads are created reflectively, on older JVMs this configuration logs a warning and
+ * behaves exactly like {@link DefaultUpnpServiceConfiguration}. Note that a virtual thread can't
+ * unmount while it holds a monitor, so the synchronized registry methods still pin carrier
+ * threads for their (short) duration.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+@Alternative
+public class VirtualThreadUpnpServiceConfiguration extends DefaultUpnpServiceConfiguration {
+
+    private static Logger log = Logger.getLogger(VirtualThreadUpnpServiceConfiguration.class.getName());
+
+    final private ExecutorService virtualThreadExecutor;
+
+    /**
+     * Defaults to port '0', ephemeral.
+     */
+    public VirtualThreadUpnpServiceConfiguration() {
+        this(NetworkAddressFactoryImpl.DEFAULT_TCP_HTTP_LISTEN_PORT);
+    }
+
+    public VirtualThreadUpnpServiceConfiguration(int streamListenPort) {
+        super(streamListenPort);
+        virtualThreadExecutor = createVirtualThreadExecutor();
+    }
+
+    /**
+     * @return <code>true</code> if the blocking protocols are executed on virtual threads.
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadExecutor != null;
+    }
+
+    @Override
+    public Executor getAsyncProtocolExecutor() {
+        return isVirtualThreadsEnabled() ? virtualThreadExecutor : super.getAsyncProtocolExecutor();
+    }
+
+    @Override
+    public Executor getSyncProtocolExecutor() {
+        return isVirtualThreadsEnabled() ? virtualThreadExecutor : super.getSyncProtocolExecutor();
+    }
+
+    @Override
+    public Executor getEventExecutor() {
+        return isVirtualThreadsEnabled() ? virtualThreadExecutor : super.getEventExecutor();
+    }
+
+    @Override
+    public void shutdown() {
+        if (isVirtualThreadsEnabled()) {
+            log.fine("Shutting down virtual thread executor");
+            virtualThreadExecutor.shutdown();
+        }
+        super.shutdown();
+    }
+
+    /**
+     * @return An executor starting a new named virtual thread for each task, or <code>null</code>
+     *         if the JVM doesn't support virtual threads.
+     */
+    protected ExecutorService createVirtualThreadExecutor() {
+        try {
+            // Thread.ofVirtual().name("cling-virtual-", 0).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "cling-virtual-", 0l);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            log.info("Executing blocking protocols on virtual threads");
+            return (ExecutorService) newExecutor.invoke(null, threadFactory);
+        } catch (Exception ex) {
+            log.warning("Virtual threads not supported by this JVM, using the bounded thread pools: " + ex);
+            return null;
+        }
+    }
+
+}
@@ -49,18 +49,19 @@ import java.util.logging.Logger;
  * is set to <code>org.xmlpull.v1.sax2.Driver</code>.
  * </p>
  * <p>
- * The thread <code>Executor</code> is a <code>ThreadPoolExecutor</code> with the following
- * properties, optimized for machines with limited resources:
+ * The receivers, the registry maintainer, and the registry listeners run on the default unbounded
+ * executor. The bounded executors of the protocols are smaller than the defaults, optimized for
+ * machines with limited resources, at most 13 threads are started:
  * </p>
  * <ul>
- * <li>Core pool size of minimum 8 idle threads</li>
- * <li>Maximum 16 threads active</li>
- * <li>5 seconds keep-alive time before an idle thread is removed from the pool</li>
- * <li>A FIFO queue of maximum 512 tasks waiting for a thread from the pool</li>
+ * <li>Discovery: 4 threads, 256 queued tasks</li>
+ * <li>Search responses: 1 thread, 128 queued tasks</li>
+ * <li>Actions and other synchronous protocols: 6 threads, 128 queued tasks</li>
+ * <li>GENA events: 2 threads, 256 queued tasks</li>
  * </ul>
  * <p>
- * A warning message will be logged when all threads of the pool have been exhausted
- * and executions have to be dropped.
+ * A message will be logged when the queue of a pool is full and executions have to be
+ * dropped, see {@link org.fourthline.cling.DefaultUpnpServiceConfiguration} for the policies.
  * </p>
  *
  * @author Christian Bauer
@@ -137,6 +138,26 @@ public class AndroidUpnpServiceConfiguration extends DefaultUpnpServiceConfigura
         return 3000; // Preserve battery on Android, only run every 3 seconds
     }
 
+    @Override
+    protected Executor createAsyncProtocolExecutor() {
+        return createAsyncProtocolExecutor(4, 256);
+    }
+
+    @Override
+    protected Executor createSearchResponseExecutor() {
+        return createSearchResponseExecutor(1, 128);
+    }
+
+    @Override
+    protected Executor createSyncProtocolExecutor() {
+        return createSyncProtocolExecutor(6, 128);
+    }
+
+    @Override
+    protected Executor createEventExecutor() {
+        return createEventExecutor(2, 256);
+    }
+
     @Override
     protected Executor createDefaultExecutor() {
         return super.createDefaultExecutor();
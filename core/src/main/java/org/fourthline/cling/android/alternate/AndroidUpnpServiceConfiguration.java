@@ -21,6 +21,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.ServerSocket;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import org.fourthline.cling.DefaultUpnpServiceConfiguration;
@@ -242,4 +243,26 @@ public class AndroidUpnpServiceConfiguration extends DefaultUpnpServiceConfigura
 	protected NetworkAddressFactory createNetworkAddressFactory(int streamListenPort) {
 		return new AndroidNetworkAddressFactory(streamListenPort);
 	}
+
+	// Same pool sizes as the regular Android configuration, a phone doesn't need 64 threads
+
+	@Override
+	protected Executor createAsyncProtocolExecutor() {
+		return createAsyncProtocolExecutor(4, 256);
+	}
+
+	@Override
+	protected Executor createSearchResponseExecutor() {
+		return createSearchResponseExecutor(1, 128);
+	}
+
+	@Override
+	protected Executor createSyncProtocolExecutor() {
+		return createSyncProtocolExecutor(6, 128);
+	}
+
+	@Override
+	protected Executor createEventExecutor() {
+		return createEventExecutor(2, 256);
+	}
 }
@@ -20,17 +20,15 @@ package org.fourthline.cling.binding.xml;
 import static org.fourthline.cling.model.XMLUtil.appendNewElement;
 import static org.fourthline.cling.model.XMLUtil.appendNewElementIfNotNull;
 
-import java.io.StringReader;
 import java.net.URI;
 import java.net.URL;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import org.fourthline.cling.binding.staging.MutableDevice;
 import org.fourthline.cling.binding.staging.MutableIcon;
 import org.fourthline.cling.binding.staging.MutableService;
 import org.fourthline.cling.binding.xml.Descriptor.Device.ELEMENT;
+import org.fourthline.cling.model.DocumentBuilderPool;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.ValidationException;
 import org.fourthline.cling.model.XMLUtil;
@@ -54,7 +52,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 /**
  * Implementation based on JAXP DOM.
@@ -65,6 +62,21 @@ public class UDA10DeviceDescriptorBinderImpl implements DeviceDescriptorBinder {
 
     private static Logger log = Logger.getLogger(DeviceDescriptorBinder.class.getName());
 
+    private DocumentBuilderPool documentBuilderPool;
+
+    /**
+     * @return The builders used for all descriptors of this binder, created on first access.
+     */
+    synchronized public DocumentBuilderPool getDocumentBuilderPool() {
+        if (documentBuilderPool == null)
+            documentBuilderPool = createDocumentBuilderPool();
+        return documentBuilderPool;
+    }
+
+    protected DocumentBuilderPool createDocumentBuilderPool() {
+        return new DocumentBuilderPool();
+    }
+
     public <D extends Device> D describe(D undescribedDevice, String descriptorXml) throws DescriptorBindingException, ValidationException {
 
         if (descriptorXml == null || descriptorXml.length() == 0) {
@@ -81,15 +93,8 @@ public class UDA10DeviceDescriptorBinderImpl implements DeviceDescriptorBinder {
 
             // And by the way... try this with JAXB instead of manual DOM processing! And you thought it couldn't get worse....
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-
-            Document d = factory.newDocumentBuilder().parse(
-                    new InputSource(
-                            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
-                            new StringReader(descriptorXml.trim())
-                    )
-            );
+            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
+            Document d = getDocumentBuilderPool().parse(descriptorXml.trim());
 
             return describe(undescribedDevice, d);
 
@@ -356,10 +361,7 @@ public class UDA10DeviceDescriptorBinderImpl implements DeviceDescriptorBinder {
         try {
             log.fine("Generating DOM from device model: " + deviceModel);
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = getDocumentBuilderPool().newDocument();
             generateRoot(namespace, deviceModel, d, info);
 
             return d;
@@ -22,6 +22,7 @@ import org.fourthline.cling.binding.staging.MutableActionArgument;
 import org.fourthline.cling.binding.staging.MutableAllowedValueRange;
 import org.fourthline.cling.binding.staging.MutableService;
 import org.fourthline.cling.binding.staging.MutableStateVariable;
+import org.fourthline.cling.model.DocumentBuilderPool;
 import org.fourthline.cling.model.ValidationException;
 import org.fourthline.cling.model.XMLUtil;
 import org.fourthline.cling.model.meta.Action;
@@ -37,10 +38,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
@@ -59,6 +57,21 @@ public class UDA10ServiceDescriptorBinderImpl implements ServiceDescriptorBinder
 
     private static Logger log = Logger.getLogger(ServiceDescriptorBinder.class.getName());
 
+    private DocumentBuilderPool documentBuilderPool;
+
+    /**
+     * @return The builders used for all descriptors of this binder, created on first access.
+     */
+    synchronized public DocumentBuilderPool getDocumentBuilderPool() {
+        if (documentBuilderPool == null)
+            documentBuilderPool = createDocumentBuilderPool();
+        return documentBuilderPool;
+    }
+
+    protected DocumentBuilderPool createDocumentBuilderPool() {
+        return new DocumentBuilderPool();
+    }
+
     public <S extends Service> S describe(S undescribedService, String descriptorXml) throws DescriptorBindingException, ValidationException {
         if (descriptorXml == null || descriptorXml.length() == 0) {
             throw new DescriptorBindingException("Null or empty descriptor");
@@ -67,15 +80,8 @@ public class UDA10ServiceDescriptorBinderImpl implements ServiceDescriptorBinder
         try {
             log.fine("Populating service from XML descriptor: " + undescribedService);
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-
-            Document d = factory.newDocumentBuilder().parse(
-                    new InputSource(
-                            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
-                            new StringReader(descriptorXml.trim())
-                    )
-            );
+            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
+            Document d = getDocumentBuilderPool().parse(descriptorXml.trim());
 
             return describe(undescribedService, d);
 
@@ -351,10 +357,7 @@ public class UDA10ServiceDescriptorBinderImpl implements ServiceDescriptorBinder
         try {
             log.fine("Generting XML descriptor from service model: " + service);
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = getDocumentBuilderPool().newDocument();
             generateScpd(service, d);
 
             return d;
@@ -22,6 +22,8 @@ import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.UpnpServiceConfiguration;
 import org.fourthline.cling.registry.Registry;
 
+import java.util.concurrent.Future;
+
 /**
  * Unified API for the asynchronous execution of network searches, actions, event subscriptions.
  *
@@ -37,7 +39,21 @@ public interface ControlPoint {
     public void search(UpnpHeader searchType);
     public void search(int mxSeconds);
     public void search(UpnpHeader searchType, int mxSeconds);
-    public void execute(ActionCallback callback);
-    public void execute(SubscriptionCallback callback);
+
+    /**
+     * Note that this method returned <code>void</code> before, callers compiled against the old
+     * signature have to be recompiled.
+     *
+     * @return A <code>Future</code> which completes when the callback has been executed.
+     */
+    public Future<?> execute(ActionCallback callback);
+
+    /**
+     * Note that this method returned <code>void</code> before, callers compiled against the old
+     * signature have to be recompiled.
+     *
+     * @return A <code>Future</code> which completes when the subscription has been established or failed.
+     */
+    public Future<?> execute(SubscriptionCallback callback);
 
 }
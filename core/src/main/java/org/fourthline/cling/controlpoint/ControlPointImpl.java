@@ -25,10 +25,14 @@ import org.fourthline.cling.model.message.header.STAllHeader;
 import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.registry.Registry;
+import org.seamless.util.Exceptions;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 /**
@@ -36,6 +40,8 @@ import java.util.logging.Logger;
  * <p>
  * This implementation uses the executor returned by
  * {@link org.fourthline.cling.UpnpServiceConfiguration#getSyncProtocolExecutor()}.
+ * The returned <code>Future</code> completes when the callback has been executed, it
+ * can be used to wait for or to cancel a pending action or subscription.
  * </p>
  *
  * @author Christian Bauer
@@ -100,15 +106,50 @@ public class ControlPointImpl implements ControlPoint {
         execute(executeAction.getCallback());
     }
 
-    public void execute(ActionCallback callback) {
+    public Future<?> execute(ActionCallback callback) {
         log.fine("Invoking action in background: " + callback);
         callback.setControlPoint(this);
-        getConfiguration().getSyncProtocolExecutor().execute(callback);
+        CallbackFuture future = new CallbackFuture(callback);
+        getConfiguration().getSyncProtocolExecutor().execute(future);
+        return future;
     }
 
-    public void execute(SubscriptionCallback callback) {
+    public Future<?> execute(SubscriptionCallback callback) {
         log.fine("Invoking subscription in background: " + callback);
         callback.setControlPoint(this);
-        getConfiguration().getSyncProtocolExecutor().execute(callback);
+        CallbackFuture future = new CallbackFuture(callback);
+        getConfiguration().getSyncProtocolExecutor().execute(future);
+        return future;
+    }
+
+    /**
+     * Logs the exception of a failed callback, nobody might ever look at the <code>Future</code>.
+     */
+    protected static class CallbackFuture extends FutureTask<Void> {
+
+        final protected Runnable callback;
+
+        public CallbackFuture(Runnable callback) {
+            super(callback, null);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) return;
+            try {
+                get();
+            } catch (InterruptedException ex) {
+                // Can't happen, it's done
+            } catch (ExecutionException ex) {
+                log.warning("Callback " + callback + " terminated abruptly with exception: " + ex.getCause());
+                log.warning("Root cause: " + Exceptions.unwrap(ex.getCause()));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return callback.toString();
+        }
     }
 }
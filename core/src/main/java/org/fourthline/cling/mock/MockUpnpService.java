@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.enterprise.inject.Alternative;
 
@@ -48,6 +49,7 @@ import org.fourthline.cling.protocol.async.SendingSearch;
 import org.fourthline.cling.registry.Registry;
 import org.fourthline.cling.registry.RegistryImpl;
 import org.fourthline.cling.registry.RegistryMaintainer;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 import org.fourthline.cling.transport.Router;
 import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
 import org.fourthline.cling.transport.impl.RecoverGENAEventProcessor;
@@ -56,6 +58,8 @@ import org.fourthline.cling.transport.spi.GENAEventProcessor;
 import org.fourthline.cling.transport.spi.NetworkAddressFactory;
 import org.fourthline.cling.transport.spi.SOAPActionProcessor;
 import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.fourthline.cling.transport.spi.UpnpStream;
 
 /**
@@ -148,6 +152,37 @@ public class MockUpnpService implements UpnpService {
                             }
                         };
             }
+
+            @Override
+            protected Executor createAsyncProtocolExecutor() {
+                return multiThreaded ? super.createAsyncProtocolExecutor() : createDefaultExecutor();
+            }
+
+            @Override
+            protected Executor createSearchResponseExecutor() {
+                return multiThreaded ? super.createSearchResponseExecutor() : createDefaultExecutor();
+            }
+
+            @Override
+            protected Executor createSyncProtocolExecutor() {
+                return multiThreaded ? super.createSyncProtocolExecutor() : createDefaultExecutor();
+            }
+
+            @Override
+            protected Executor createEventExecutor() {
+                return multiThreaded ? super.createEventExecutor() : createDefaultExecutor();
+            }
+
+            @Override
+            protected Executor createRegistryListenerExecutor() {
+                return multiThreaded ? super.createRegistryListenerExecutor() : createDefaultExecutor();
+            }
+
+            @Override
+            protected IncomingDatagramFilter createDatagramFilter() {
+                // Tests run the notification protocol for every message
+                return null;
+            }
             
             @Override
         	protected SOAPActionProcessor createSOAPActionProcessor() {
@@ -288,6 +323,12 @@ public class MockUpnpService implements UpnpService {
                         : getStreamResponseMessage(msg);
             }
 
+            public Future<StreamResponseMessage> send(StreamRequestMessage msg, StreamResponseCallback callback) {
+                StreamResponseFuture future = new StreamResponseFuture(msg, callback);
+                future.complete(send(msg));
+                return future;
+            }
+
             public void broadcast(byte[] bytes) {
                 broadcastedBytes.add(bytes);
             }
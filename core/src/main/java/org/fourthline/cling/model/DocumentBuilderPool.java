@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.model;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one namespace-aware <code>DocumentBuilder</code> per thread.
+ * <p>
+ * Looking up a <code>DocumentBuilderFactory</code> implementation and creating a builder is
+ * expensive compared to parsing or building the small documents UPnP exchanges. The factory
+ * is therefore created once, and a builder is reset and reused for all following documents on
+ * the same thread. A builder must not be used for two documents at the same time, so don't hold
+ * on to the instance returned by {@link #getDocumentBuilder()} while another component could
+ * use this pool on the same thread.
+ * </p>
+ * <p>
+ * If the XML parser does not support resetting a builder (e.g. Android 2.1), a new builder
+ * is created for every document.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DocumentBuilderPool {
+
+    private static Logger log = Logger.getLogger(DocumentBuilderPool.class.getName());
+
+    final protected DocumentBuilderFactory factory;
+    final protected ThreadLocal<DocumentBuilder> builders = new ThreadLocal();
+
+    final protected AtomicLong hitCount = new AtomicLong();
+    final protected AtomicLong missCount = new AtomicLong();
+
+    protected volatile boolean resetSupported = true;
+
+    public DocumentBuilderPool() {
+        this(DocumentBuilderFactory.newInstance());
+    }
+
+    public DocumentBuilderPool(DocumentBuilderFactory factory) {
+        this.factory = factory;
+        this.factory.setNamespaceAware(true);
+    }
+
+    public DocumentBuilderFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * @return The number of documents which reused an existing builder.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of documents for which a new builder had to be created.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = builders.get();
+        if (builder != null && resetSupported) {
+            try {
+                builder.reset();
+                hitCount.incrementAndGet();
+                return builder;
+            } catch (UnsupportedOperationException ex) {
+                log.fine("XML parser does not support resetting a document builder, creating a new one for each document");
+                resetSupported = false;
+                builders.remove();
+            }
+        }
+
+        // The factory is not guaranteed to be thread-safe
+        synchronized (factory) {
+            builder = factory.newDocumentBuilder();
+        }
+        if (resetSupported)
+            builders.set(builder);
+        missCount.incrementAndGet();
+        return builder;
+    }
+
+    public Document newDocument() throws ParserConfigurationException {
+        return getDocumentBuilder().newDocument();
+    }
+
+    public Document parse(String xml) throws Exception {
+        return getDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+}
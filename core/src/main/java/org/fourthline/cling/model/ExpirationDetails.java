@@ -66,6 +66,18 @@ public class ExpirationDetails {
                 (lastRefreshTimestampSeconds + (maxAgeSeconds/(halfTime ? 2 : 1))) < getCurrentTimestampSeconds();
     }
 
+    /**
+     * @param halfTime If <code>true</code> then half maximum age is used to determine expiration.
+     * @return The timestamp in seconds when {@link #hasExpired(boolean)} returns <code>true</code> for
+     *         the first time, or <code>Long.MAX_VALUE</code> if the maximum age is unlimited.
+     */
+    public long getExpirationTimestampSeconds(boolean halfTime) {
+        // Note: Uses direct field access for performance reasons on Android
+        return maxAgeSeconds == UNLIMITED_AGE
+                ? Long.MAX_VALUE
+                : lastRefreshTimestampSeconds + (maxAgeSeconds/(halfTime ? 2 : 1)) + 1;
+    }
+
     public long getSecondsUntilExpiration() {
         // Note: Uses direct field access for performance reasons on Android
         return maxAgeSeconds == UNLIMITED_AGE
@@ -89,6 +89,81 @@ public class ModelUtil {
         return name != null && name.length() != 0 && !name.toLowerCase().startsWith("xml") && name.matches(Constants.REGEX_UDA_NAME);
     }
 
+    /**
+     * @return <code>true</code> if the string matches {@link org.fourthline.cling.model.Constants#REGEX_NAMESPACE},
+     *         tested without a regular expression.
+     */
+    public static boolean isValidNamespace(String s) {
+        return isValidIdentifier(s, "-.", Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return <code>true</code> if the string matches {@link org.fourthline.cling.model.Constants#REGEX_TYPE},
+     *         tested without a regular expression.
+     */
+    public static boolean isValidType(String s) {
+        return isValidIdentifier(s, "_-", 64);
+    }
+
+    /**
+     * @return <code>true</code> if the string matches {@link org.fourthline.cling.model.Constants#REGEX_ID},
+     *         tested without a regular expression.
+     */
+    public static boolean isValidId(String s) {
+        return isValidIdentifier(s, "_-:.", 64);
+    }
+
+    protected static boolean isValidIdentifier(String s, String extraChars, int maxLength) {
+        if (s == null || s.length() == 0 || s.length() > maxLength) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+                continue;
+            if (extraChars.indexOf(c) == -1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The given string without whitespace characters (<code>\s</code>), the same instance
+     *         if there are none.
+     */
+    public static String removeWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (isWhitespace(s.charAt(i))) {
+                StringBuilder sb = new StringBuilder(s.length());
+                for (int j = 0; j < s.length(); j++) {
+                    if (!isWhitespace(s.charAt(j))) sb.append(s.charAt(j));
+                }
+                return sb.toString();
+            }
+        }
+        return s;
+    }
+
+    protected static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Parses the decimal digits from the given index to the end of the string.
+     *
+     * @return The value of the digits, or <code>-1</code> if there are no digits, any other characters,
+     *         or too many digits for an <code>int</code>.
+     */
+    public static int parseDigits(String s, int beginIndex) {
+        int length = s.length() - beginIndex;
+        if (length < 1 || length > 9) return -1;
+        int value = 0;
+        for (int i = beginIndex; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
     /**
      * Wraps the checked exception in a runtime exception.
      */
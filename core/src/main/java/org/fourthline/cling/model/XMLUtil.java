@@ -146,12 +146,37 @@ public class XMLUtil {
     }
 
     protected static String encodeText(String s) {
-        s = s.replaceAll("&", "&amp;");
-        s = s.replaceAll("<", "&lt;");
-        s = s.replaceAll(">", "&gt;");
-        s = s.replaceAll("'", "&apos;");
-        s = s.replaceAll("\"", "&quot;");
-        return s;
+        return encodeText(new StringBuilder(s.length() + 16), s).toString();
+    }
+
+    /**
+     * Appends the given text to the buffer, replacing the characters <code>&amp;</code>, <code>&lt;</code>,
+     * <code>&gt;</code>, <code>'</code>, and <code>"</code> with their predefined XML entities.
+     */
+    public static StringBuilder encodeText(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '\'':
+                    sb.append("&apos;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb;
     }
 
     public static Element appendNewElement(Document document, Element parent, Enum el) {
@@ -53,6 +53,16 @@ public abstract class RemoteGENASubscription extends GENASubscription<RemoteServ
         super(service, requestedDurationSeconds);
     }
 
+    /**
+     * Binds this subscription to the same service of a new metadata graph, when the registered graph
+     * of a device has been replaced. The event subscription URL of the new service has to be the same.
+     *
+     * @param service The service with the same identifier on the new graph of the device.
+     */
+    synchronized public void rebind(RemoteService service) {
+        this.service = service;
+    }
+
     synchronized public URL getEventSubscriptionURL() {
         return getService().getDevice().normalizeURI(
                 getService().getEventSubscriptionURI()
@@ -19,6 +19,8 @@ package org.fourthline.cling.model.message.discovery;
 
 import org.fourthline.cling.model.message.IncomingDatagramMessage;
 import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.BootIdHeader;
+import org.fourthline.cling.model.message.header.ConfigIdHeader;
 import org.fourthline.cling.model.message.header.DeviceUSNHeader;
 import org.fourthline.cling.model.message.header.InterfaceMacHeader;
 import org.fourthline.cling.model.message.header.LocationHeader;
@@ -99,4 +101,26 @@ public class IncomingNotificationRequest extends IncomingDatagramMessage<UpnpReq
         return null;
     }
 
+    /**
+     * @return The UDA 1.1 boot identifier of the device, or <code>null</code>.
+     */
+    public Integer getBootId() {
+        BootIdHeader header = getHeaders().getFirstHeader(UpnpHeader.Type.BOOTID, BootIdHeader.class);
+        if (header != null) {
+            return header.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * @return The UDA 1.1 configuration identifier of the device, or <code>null</code>.
+     */
+    public Integer getConfigId() {
+        ConfigIdHeader header = getHeaders().getFirstHeader(UpnpHeader.Type.CONFIGID, ConfigIdHeader.class);
+        if (header != null) {
+            return header.getValue();
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.model.message.header;
+
+/**
+ * Configuration identifier of a device, UDA 1.1 section 1.2.2. Changes whenever the device or service descriptors change.
+ *
+ * @author Christian Bauer
+ */
+public class ConfigIdHeader extends UpnpHeader<Integer> {
+
+    public ConfigIdHeader() {
+    }
+
+    public ConfigIdHeader(Integer configId) {
+        setValue(configId);
+    }
+
+    public void setString(String s) throws InvalidHeaderException {
+        Integer value;
+        try {
+            value = Integer.parseInt(s.trim());
+        } catch (Exception ex) {
+            throw new InvalidHeaderException("Can't parse configuration identifier integer from: " + s);
+        }
+        // UDA 1.1: "The value of this header field SHALL be a non-negative 31-bit integer"
+        if (value < 0)
+            throw new InvalidHeaderException("Invalid configuration identifier, negative: " + s);
+        setValue(value);
+    }
+
+    public String getString() {
+        return getValue().toString();
+    }
+}
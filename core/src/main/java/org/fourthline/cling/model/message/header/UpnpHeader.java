@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.fourthline.cling.model.types.UDN;
 import org.seamless.util.Exceptions;
 
 /**
@@ -84,6 +85,8 @@ public abstract class UpnpHeader<T> {
         RANGE("RANGE", RangeHeader.class),
         CONTENT_RANGE("CONTENT-RANGE", ContentRangeHeader.class),
         PRAGMA("PRAGMA", PragmaHeader.class),
+        BOOTID("BOOTID.UPNP.ORG", BootIdHeader.class),
+        CONFIGID("CONFIGID.UPNP.ORG", ConfigIdHeader.class),
         
         EXT_IFACE_MAC("X-CLING-IFACE-MAC", InterfaceMacHeader.class);
 
@@ -151,10 +154,12 @@ public abstract class UpnpHeader<T> {
     /**
      * Create a new instance of a {@link UpnpHeader} subtype that matches the given type and value.
      * <p>
-     * This method iterates through all potential header subtype classes as declared in {@link Type}.
-     * It creates a new instance of the subtype class and calls its {@link #setString(String)} method.
-     * If no {@link org.fourthline.cling.model.message.header.InvalidHeaderException} is thrown, the subtype
-     * instance is returned.
+     * The prefix of the value selects the likely header subtypes first, e.g. a <code>uuid:</code>
+     * value without <code>::</code> can only be a {@link UDNHeader}. Only these subtypes, in the
+     * order declared in {@link Type}, are instantiated and their {@link #setString(String)} method
+     * is called. If none accepts the value, all other potential subtypes are tried in declared order.
+     * If no {@link org.fourthline.cling.model.message.header.InvalidHeaderException} is thrown, the
+     * subtype instance is returned.
      * </p>
      *
      * @param type The type (or name) of the header.
@@ -163,26 +168,149 @@ public abstract class UpnpHeader<T> {
      */
     public static UpnpHeader newInstance(UpnpHeader.Type type, String headerValue) {
 
-        // Try all the UPnP headers and see if one matches our value parsers
-        UpnpHeader upnpHeader = null;
-        for (int i = 0; i < type.getHeaderTypes().length && upnpHeader == null; i++) {
-            Class<? extends UpnpHeader> headerClass = type.getHeaderTypes()[i];
-            try {
+        Class<? extends UpnpHeader>[] headerTypes = type.getHeaderTypes();
+        if (headerTypes.length == 1) {
+            return newInstance(type, headerTypes[0], headerValue);
+        }
+
+        // Try the subtypes selected by the value's prefix first, then all others
+        Class<? extends UpnpHeader>[] likelyTypes = headerValue != null ? getLikelyHeaderTypes(headerValue) : null;
+        if (likelyTypes != null) {
+            for (Class<? extends UpnpHeader> headerClass : headerTypes) {
+                if (!contains(likelyTypes, headerClass)) continue;
+                UpnpHeader upnpHeader = newInstance(type, headerClass, headerValue);
+                if (upnpHeader != null) return upnpHeader;
+            }
+        }
+        for (Class<? extends UpnpHeader> headerClass : headerTypes) {
+            if (likelyTypes != null && contains(likelyTypes, headerClass)) continue;
+            UpnpHeader upnpHeader = newInstance(type, headerClass, headerValue);
+            if (upnpHeader != null) return upnpHeader;
+        }
+        return null;
+    }
+
+    protected static UpnpHeader newInstance(UpnpHeader.Type type, Class<? extends UpnpHeader> headerClass, String headerValue) {
+        try {
+            if (log.isLoggable(Level.FINEST))
                 log.finest("Trying to parse '" + type + "' with class: " + headerClass.getSimpleName());
-                upnpHeader = headerClass.newInstance();
-                if (headerValue != null) {
-                    upnpHeader.setString(headerValue);
-                }
-            } catch (InvalidHeaderException ex) {
-                log.finest("Invalid header value for tested type: " + headerClass.getSimpleName() + " - " + ex.getMessage());
-                upnpHeader = null;
-            } catch (Exception ex) {
-                log.severe("Error instantiating header of type '" + type + "' with value: " + headerValue);
-                log.log(Level.SEVERE, "Exception root cause: ", Exceptions.unwrap(ex));
+            UpnpHeader upnpHeader = createInstance(headerClass);
+            if (headerValue != null) {
+                upnpHeader.setString(headerValue);
             }
+            return upnpHeader;
+        } catch (InvalidHeaderException ex) {
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Invalid header value for tested type: " + headerClass.getSimpleName() + " - " + ex.getMessage());
+        } catch (Exception ex) {
+            log.severe("Error instantiating header of type '" + type + "' with value: " + headerValue);
+            log.log(Level.SEVERE, "Exception root cause: ", Exceptions.unwrap(ex));
+        }
+        return null;
+    }
 
+    // Shared results of getLikelyHeaderTypes(), never modify these
+    final protected static Class<? extends UpnpHeader>[] ST_ALL_TYPES = new Class[]{STAllHeader.class};
+    final protected static Class<? extends UpnpHeader>[] ROOT_DEVICE_TYPES = new Class[]{RootDeviceHeader.class};
+    final protected static Class<? extends UpnpHeader>[] EVENT_TYPES = new Class[]{NTEventHeader.class};
+    final protected static Class<? extends UpnpHeader>[] UDN_TYPES = new Class[]{UDNHeader.class};
+    final protected static Class<? extends UpnpHeader>[] USN_ROOT_DEVICE_TYPES = new Class[]{USNRootDeviceHeader.class};
+    final protected static Class<? extends UpnpHeader>[] DEVICE_USN_TYPES = new Class[]{DeviceUSNHeader.class};
+    final protected static Class<? extends UpnpHeader>[] SERVICE_USN_TYPES = new Class[]{ServiceUSNHeader.class};
+    final protected static Class<? extends UpnpHeader>[] DEVICE_TYPE_TYPES = new Class[]{UDADeviceTypeHeader.class, DeviceTypeHeader.class};
+    final protected static Class<? extends UpnpHeader>[] SERVICE_TYPE_TYPES = new Class[]{UDAServiceTypeHeader.class, ServiceTypeHeader.class};
+
+    /**
+     * Selects the header subtypes which can accept a value, by the value's prefix.
+     *
+     * @return The likely subtypes, or <code>null</code> if the prefix is not conclusive.
+     */
+    protected static Class<? extends UpnpHeader>[] getLikelyHeaderTypes(String headerValue) {
+        if (headerValue.equals("ssdp:all"))
+            return ST_ALL_TYPES;
+        if (headerValue.equalsIgnoreCase("upnp:rootdevice"))
+            return ROOT_DEVICE_TYPES;
+        if (headerValue.equalsIgnoreCase("upnp:event"))
+            return EVENT_TYPES;
+
+        if (headerValue.startsWith(UDN.PREFIX)) {
+            int separator = headerValue.indexOf("::");
+            if (separator == -1)
+                return UDN_TYPES;
+            String suffix = headerValue.substring(separator + 2);
+            if (suffix.equals("upnp:rootdevice"))
+                return USN_ROOT_DEVICE_TYPES;
+            String category = getURNCategory(suffix);
+            if ("device".equals(category))
+                return DEVICE_USN_TYPES;
+            if ("service".equals(category))
+                return SERVICE_USN_TYPES;
+            return null;
+        }
+
+        String category = getURNCategory(headerValue);
+        if ("device".equals(category))
+            return DEVICE_TYPE_TYPES;
+        if ("service".equals(category))
+            return SERVICE_TYPE_TYPES;
+        return null;
+    }
+
+    /**
+     * @return The "device" of <code>urn:schemas-upnp-org:device:Foo:1</code>, or <code>null</code>.
+     */
+    protected static String getURNCategory(String s) {
+        if (!s.startsWith("urn:")) return null;
+        int namespaceEnd = s.indexOf(':', 4);
+        if (namespaceEnd == -1) return null;
+        int categoryEnd = s.indexOf(':', namespaceEnd + 1);
+        if (categoryEnd == -1) return null;
+        return s.substring(namespaceEnd + 1, categoryEnd);
+    }
+
+    protected static boolean contains(Class<? extends UpnpHeader>[] headerTypes, Class<? extends UpnpHeader> headerClass) {
+        for (Class<? extends UpnpHeader> headerType : headerTypes) {
+            if (headerType == headerClass) return true;
         }
-        return upnpHeader;
+        return false;
+    }
+
+    /**
+     * Instantiates the header subtypes declared in {@link Type} without reflection.
+     */
+    protected static UpnpHeader createInstance(Class<? extends UpnpHeader> headerClass) throws Exception {
+        // Discovery headers first, these are parsed for every received datagram
+        if (headerClass == HostHeader.class) return new HostHeader();
+        if (headerClass == MaxAgeHeader.class) return new MaxAgeHeader();
+        if (headerClass == LocationHeader.class) return new LocationHeader();
+        if (headerClass == ServerHeader.class) return new ServerHeader();
+        if (headerClass == NTSHeader.class) return new NTSHeader();
+        if (headerClass == EXTHeader.class) return new EXTHeader();
+        if (headerClass == MANHeader.class) return new MANHeader();
+        if (headerClass == MXHeader.class) return new MXHeader();
+        if (headerClass == STAllHeader.class) return new STAllHeader();
+        if (headerClass == RootDeviceHeader.class) return new RootDeviceHeader();
+        if (headerClass == USNRootDeviceHeader.class) return new USNRootDeviceHeader();
+        if (headerClass == DeviceUSNHeader.class) return new DeviceUSNHeader();
+        if (headerClass == ServiceUSNHeader.class) return new ServiceUSNHeader();
+        if (headerClass == UDNHeader.class) return new UDNHeader();
+        if (headerClass == UDADeviceTypeHeader.class) return new UDADeviceTypeHeader();
+        if (headerClass == UDAServiceTypeHeader.class) return new UDAServiceTypeHeader();
+        if (headerClass == DeviceTypeHeader.class) return new DeviceTypeHeader();
+        if (headerClass == ServiceTypeHeader.class) return new ServiceTypeHeader();
+        if (headerClass == NTEventHeader.class) return new NTEventHeader();
+        if (headerClass == InterfaceMacHeader.class) return new InterfaceMacHeader();
+        if (headerClass == UserAgentHeader.class) return new UserAgentHeader();
+        if (headerClass == ContentTypeHeader.class) return new ContentTypeHeader();
+        if (headerClass == SoapActionHeader.class) return new SoapActionHeader();
+        if (headerClass == TimeoutHeader.class) return new TimeoutHeader();
+        if (headerClass == CallbackHeader.class) return new CallbackHeader();
+        if (headerClass == SubscriptionIdHeader.class) return new SubscriptionIdHeader();
+        if (headerClass == EventSequenceHeader.class) return new EventSequenceHeader();
+        if (headerClass == RangeHeader.class) return new RangeHeader();
+        if (headerClass == ContentRangeHeader.class) return new ContentRangeHeader();
+        if (headerClass == PragmaHeader.class) return new PragmaHeader();
+        return headerClass.newInstance();
     }
 
     @Override
@@ -39,6 +39,13 @@ import java.net.URL;
  * reachable and might be sleeping. (Useful for "stateless" reconnecting control
  * points.)
  * </p>
+ * <p>
+ * Also optional are the UDA 1.1 boot and configuration identifiers, as announced by the device
+ * when it was discovered. A different configuration identifier, or a different descriptor URL of a
+ * device without configuration identifier, means that the device and service descriptors have to
+ * be retrieved again, see
+ * {@link #isSameDescription(RemoteDeviceIdentity)}.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -47,16 +54,26 @@ public class RemoteDeviceIdentity extends DeviceIdentity {
     final private URL descriptorURL;
     final private byte[] interfaceMacAddress;
     final private InetAddress discoveredOnLocalAddress;
+    final private Integer bootId;
+    final private Integer configId;
 
     public RemoteDeviceIdentity(UDN udn, RemoteDeviceIdentity template) {
-        this(udn, template.getMaxAgeSeconds(), template.getDescriptorURL(), template.getInterfaceMacAddress(), template.getDiscoveredOnLocalAddress());
+        this(udn, template.getMaxAgeSeconds(), template.getDescriptorURL(), template.getInterfaceMacAddress(),
+             template.getDiscoveredOnLocalAddress(), template.getBootId(), template.getConfigId());
     }
 
     public RemoteDeviceIdentity(UDN udn, Integer maxAgeSeconds, URL descriptorURL, byte[] interfaceMacAddress, InetAddress discoveredOnLocalAddress) {
+        this(udn, maxAgeSeconds, descriptorURL, interfaceMacAddress, discoveredOnLocalAddress, null, null);
+    }
+
+    public RemoteDeviceIdentity(UDN udn, Integer maxAgeSeconds, URL descriptorURL, byte[] interfaceMacAddress,
+                                InetAddress discoveredOnLocalAddress, Integer bootId, Integer configId) {
         super(udn, maxAgeSeconds);
         this.descriptorURL = descriptorURL;
         this.interfaceMacAddress = interfaceMacAddress;
         this.discoveredOnLocalAddress = discoveredOnLocalAddress;
+        this.bootId = bootId;
+        this.configId = configId;
     }
 
     public RemoteDeviceIdentity(IncomingNotificationRequest notificationRequest) {
@@ -64,7 +81,9 @@ public class RemoteDeviceIdentity extends DeviceIdentity {
              notificationRequest.getMaxAge(),
              notificationRequest.getLocationURL(),
              notificationRequest.getInterfaceMacHeader(),
-             notificationRequest.getLocalAddress()
+             notificationRequest.getLocalAddress(),
+             notificationRequest.getBootId(),
+             notificationRequest.getConfigId()
         );
     }
 
@@ -73,7 +92,9 @@ public class RemoteDeviceIdentity extends DeviceIdentity {
              searchResponse.getMaxAge(),
              searchResponse.getLocationURL(),
              searchResponse.getInterfaceMacHeader(),
-             searchResponse.getLocalAddress()
+             searchResponse.getLocalAddress(),
+             searchResponse.getBootId(),
+             searchResponse.getConfigId()
         );
     }
 
@@ -89,6 +110,37 @@ public class RemoteDeviceIdentity extends DeviceIdentity {
         return discoveredOnLocalAddress;
     }
 
+    /**
+     * @return The <code>BOOTID.UPNP.ORG</code> value announced by a UDA 1.1 device, or <code>null</code>.
+     */
+    public Integer getBootId() {
+        return bootId;
+    }
+
+    /**
+     * @return The <code>CONFIGID.UPNP.ORG</code> value announced by a UDA 1.1 device, or <code>null</code>.
+     */
+    public Integer getConfigId() {
+        return configId;
+    }
+
+    /**
+     * Decides with the configuration identifiers if both identities have one. A multi-homed device
+     * announces a different descriptor URL on each network interface, with the same configuration.
+     * Only if an identity doesn't have a configuration identifier the descriptor URLs are compared.
+     *
+     * @param other The identity of the same device, announced later.
+     * @return <code>false</code> if the configuration identifiers, or the descriptor URLs without
+     *         configuration identifiers, are different.
+     */
+    public boolean isSameDescription(RemoteDeviceIdentity other) {
+        if (getConfigId() != null && other.getConfigId() != null)
+            return getConfigId().equals(other.getConfigId());
+        // Compare the strings, URL.equals() would resolve the host name
+        return getDescriptorURL() == null || other.getDescriptorURL() == null
+                || getDescriptorURL().toString().equals(other.getDescriptorURL().toString());
+    }
+
     public byte[] getWakeOnLANBytes() {
         if (getInterfaceMacAddress() == null) return null;
         byte[] bytes = new byte[6 + 16 * getInterfaceMacAddress().length];
@@ -18,6 +18,7 @@
 package org.fourthline.cling.model.types;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.ModelUtil;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,6 +37,8 @@ public class DeviceType {
     public static final Pattern PATTERN =
             Pattern.compile("urn:(" + Constants.REGEX_NAMESPACE + "):device:(" + Constants.REGEX_TYPE + "):([0-9]+).*");
 
+    final private static InternCache<DeviceType> cache = new InternCache<DeviceType>(256);
+
     private String namespace;
     private String type;
     private int version = 1;
@@ -45,12 +48,12 @@ public class DeviceType {
     }
 
     public DeviceType(String namespace, String type, int version) {
-        if (namespace != null && !namespace.matches(Constants.REGEX_NAMESPACE)) {
+        if (namespace != null && !ModelUtil.isValidNamespace(namespace)) {
             throw new IllegalArgumentException("Device type namespace contains illegal characters");
         }
         this.namespace = namespace;
 
-        if (type != null && !type.matches(Constants.REGEX_TYPE)) {
+        if (type != null && !ModelUtil.isValidType(type)) {
             throw new IllegalArgumentException("Device type suffix too long (64) or contains illegal characters");
         }
         this.type = type;
@@ -71,32 +74,56 @@ public class DeviceType {
     }
 
     /**
+     * Returns a shared instance if the same string has been parsed recently, see {@link InternCache}.
+     *
      * @return Either a {@link UDADeviceType} or a more generic {@link DeviceType}.
      */
     public static DeviceType valueOf(String s) throws InvalidValueException {
 
-        DeviceType deviceType = null;
+        DeviceType deviceType = cache.get(s);
+        if (deviceType != null) return deviceType;
+
+        String key = s;
 
         // Sometimes crazy UPnP devices deliver spaces in a URN, don't ask...
-        s = s.replaceAll("\\s", "");
+        s = ModelUtil.removeWhitespace(s);
 
         // First try UDADeviceType parse
-        try {
-            deviceType = UDADeviceType.valueOf(s);
-        } catch (Exception ex) {
-            // Ignore
+        if (s.startsWith(UDADeviceType.PREFIX)) {
+            try {
+                deviceType = UDADeviceType.valueOf(s);
+            } catch (Exception ex) {
+                // Ignore
+            }
         }
 
-        // Now try a generic DeviceType parse
+        // Now try a generic DeviceType parse, without a regex if it's in canonical form
+        if (deviceType == null) {
+            deviceType = parseCanonical(s);
+        }
         if (deviceType == null) {
             Matcher matcher = PATTERN.matcher(s);
             if (matcher.matches()) {
-                return new DeviceType(matcher.group(1), matcher.group(2), Integer.valueOf(matcher.group(3)));
+                deviceType = new DeviceType(matcher.group(1), matcher.group(2), Integer.valueOf(matcher.group(3)));
             } else {
                 throw new InvalidValueException("Can't parse device type string (namespace/type/version): " + s);
             }
         }
-        return deviceType;
+        return cache.intern(key, deviceType);
+    }
+
+    private static DeviceType parseCanonical(String s) {
+        if (!s.startsWith("urn:")) return null;
+        int namespaceEnd = s.indexOf(':', 4);
+        if (namespaceEnd == -1 || !s.startsWith(":device:", namespaceEnd)) return null;
+        int typeBegin = namespaceEnd + ":device:".length();
+        int versionSeparator = s.indexOf(':', typeBegin);
+        if (versionSeparator == -1) return null;
+        String namespace = s.substring(4, namespaceEnd);
+        String type = s.substring(typeBegin, versionSeparator);
+        int version = ModelUtil.parseDigits(s, versionSeparator + 1);
+        if (version == -1 || !ModelUtil.isValidNamespace(namespace) || !ModelUtil.isValidType(type)) return null;
+        return new DeviceType(namespace, type, version);
     }
 
     public boolean implementsVersion(DeviceType that) {
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.model.types;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded cache of immutable values parsed from strings, for example the types and
+ * identifiers in discovery message headers.
+ * <p>
+ * The same few hundred identifiers are received over and over again in search responses and
+ * notifications. The <code>valueOf()</code> method of a type first looks up the string in its
+ * cache and only parses it when it hasn't seen the string recently. All messages then share
+ * the same instance, so comparing and hashing a type is cheap.
+ * </p>
+ * <p>
+ * Lookups don't lock, the values are kept in two concurrent generations of at most half the
+ * maximum size each. New values are added to the recent generation; when it is full, it replaces
+ * the previous generation, whose values are then evicted. A value found in the previous generation
+ * is moved to the recent generation, so frequently used values are never evicted. Parsing an
+ * evicted string again produces an equal, but not the same, instance.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class InternCache<V> {
+
+    final protected int maxSize;
+    final protected int generationSize;
+
+    volatile protected ConcurrentMap<String, V> recent = new ConcurrentHashMap<String, V>();
+    volatile protected ConcurrentMap<String, V> previous = new ConcurrentHashMap<String, V>();
+
+    public InternCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.generationSize = Math.max(1, maxSize / 2);
+    }
+
+    /**
+     * @return The value parsed from the given string, or <code>null</code> if it's not cached.
+     */
+    public V get(String s) {
+        V value = recent.get(s);
+        if (value != null) return value;
+        value = previous.get(s);
+        if (value != null) return add(s, value);
+        return null;
+    }
+
+    /**
+     * Caches the value parsed from the given string, unless another thread was faster.
+     *
+     * @return The cached value of the string, use this instance instead of the given value.
+     */
+    public V intern(String s, V value) {
+        V existing = get(s);
+        if (existing != null) return existing;
+        return add(s, value);
+    }
+
+    public int size() {
+        return recent.size() + previous.size();
+    }
+
+    synchronized public void clear() {
+        previous = new ConcurrentHashMap<String, V>();
+        recent = new ConcurrentHashMap<String, V>();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    protected V add(String s, V value) {
+        ConcurrentMap<String, V> generation = recent;
+        if (generation.size() >= generationSize)
+            generation = rotate(generation);
+        V existing = generation.putIfAbsent(s, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Starts a new recent generation, unless another thread already did.
+     */
+    synchronized protected ConcurrentMap<String, V> rotate(ConcurrentMap<String, V> full) {
+        if (recent == full) {
+            previous = full;
+            recent = new ConcurrentHashMap<String, V>();
+        }
+        return recent;
+    }
+}
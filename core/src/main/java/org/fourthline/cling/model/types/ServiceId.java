@@ -22,6 +22,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.ModelUtil;
 
 /**
  * Represents a service identifer, for example <code>urn:my-domain-namespace:serviceId:MyService123</code>
@@ -35,16 +36,18 @@ public class ServiceId {
 	public static final Pattern PATTERN =
 			Pattern.compile("urn:(" + Constants.REGEX_NAMESPACE + "):serviceId:(" + Constants.REGEX_ID+ ")");
 
+	final private static InternCache<ServiceId> cache = new InternCache<ServiceId>(256);
+
 	private String namespace;
 	private String id;
 
 	public ServiceId(String namespace, String id) {
-		if (namespace != null && !namespace.matches(Constants.REGEX_NAMESPACE)) {
+		if (namespace != null && !ModelUtil.isValidNamespace(namespace)) {
 			throw new IllegalArgumentException("Service ID namespace contains illegal characters");
 		}
 		this.namespace = namespace;
 
-		if (id != null && !id.matches(Constants.REGEX_ID)) {
+		if (id != null && !ModelUtil.isValidId(id)) {
 			throw new IllegalArgumentException("Service ID suffix too long (64) or contains illegal characters");
 		}
 		this.id = id;
@@ -58,22 +61,31 @@ public class ServiceId {
 		return id;
 	}
 
+	/**
+	 * @return A shared instance if the same string has been parsed recently, see {@link InternCache}.
+	 */
 	public static ServiceId valueOf(String s) throws InvalidValueException {
 
-		ServiceId serviceId = null;
+		ServiceId serviceId = cache.get(s);
+		if (serviceId != null) return serviceId;
 
 		// First try UDAServiceId parse
-		try {
-			serviceId = UDAServiceId.valueOf(s);
-		} catch (Exception ex) {
-			// Ignore
+		if (s.startsWith(UDAServiceId.PREFIX) || s.startsWith(UDAServiceId.BROKEN_PREFIX)) {
+			try {
+				serviceId = UDAServiceId.valueOf(s);
+			} catch (Exception ex) {
+				// Ignore
+			}
 		}
 
-		// Now try a generic ServiceId parse
+		// Now try a generic ServiceId parse, without a regex if it's in canonical form
+		if (serviceId == null) {
+			serviceId = parseCanonical(s);
+		}
 		if (serviceId == null) {
 			Matcher matcher = ServiceId.PATTERN.matcher(s);
 			if (matcher.matches()) {
-				return new ServiceId(matcher.group(1), matcher.group(2));
+				serviceId = new ServiceId(matcher.group(1), matcher.group(2));
 			} else {
 				// hack for PS Audio Bridge which send a non compliant string
 
@@ -83,10 +95,20 @@ public class ServiceId {
 				}
 				
 				log.warning("Invalid service ID, but still tokenizable ");
-				return new ServiceId(tokens[1], tokens[3]);
+				serviceId = new ServiceId(tokens[1], tokens[3]);
 			}
 		}
-		return serviceId;
+		return cache.intern(s, serviceId);
+	}
+
+	private static ServiceId parseCanonical(String s) {
+		if (!s.startsWith("urn:")) return null;
+		int namespaceEnd = s.indexOf(':', 4);
+		if (namespaceEnd == -1 || !s.startsWith(":serviceId:", namespaceEnd)) return null;
+		String namespace = s.substring(4, namespaceEnd);
+		String id = s.substring(namespaceEnd + ":serviceId:".length());
+		if (!ModelUtil.isValidNamespace(namespace) || !ModelUtil.isValidId(id)) return null;
+		return new ServiceId(namespace, id);
 	}
 
 	@Override
@@ -18,6 +18,7 @@
 package org.fourthline.cling.model.types;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.ModelUtil;
 
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -36,6 +37,8 @@ public class ServiceType {
     public static final Pattern PATTERN =
             Pattern.compile("urn:(" + Constants.REGEX_NAMESPACE + "):service:(" + Constants.REGEX_TYPE + "):([0-9]+).*");
 
+    final private static InternCache<ServiceType> cache = new InternCache<ServiceType>(256);
+
     private String namespace;
     private String type;
     private int version = 1;
@@ -46,12 +49,12 @@ public class ServiceType {
 
     public ServiceType(String namespace, String type, int version) {
 
-        if (namespace != null && !namespace.matches(Constants.REGEX_NAMESPACE)) {
+        if (namespace != null && !ModelUtil.isValidNamespace(namespace)) {
             throw new IllegalArgumentException("Service type namespace contains illegal characters");
         }
         this.namespace = namespace;
 
-        if (type != null && !type.matches(Constants.REGEX_TYPE)) {
+        if (type != null && !ModelUtil.isValidType(type)) {
             throw new IllegalArgumentException("Service type suffix too long (64) or contains illegal characters");
         }
         this.type = type;
@@ -72,32 +75,56 @@ public class ServiceType {
     }
 
     /**
+     * Returns a shared instance if the same string has been parsed recently, see {@link InternCache}.
+     *
      * @return Either a {@link UDAServiceType} or a more generic {@link ServiceType}.
      */
     public static ServiceType valueOf(String s) throws InvalidValueException {
 
-        ServiceType serviceType = null;
+        ServiceType serviceType = cache.get(s);
+        if (serviceType != null) return serviceType;
+
+        String key = s;
 
         // Sometimes crazy UPnP devices deliver spaces in a URN, don't ask...
-        s = s.replaceAll("\\s", "");
+        s = ModelUtil.removeWhitespace(s);
 
         // First try UDAServiceType parse
-        try {
-            serviceType = UDAServiceType.valueOf(s);
-        } catch (Exception ex) {
-            // Ignore
+        if (s.startsWith(UDAServiceType.PREFIX)) {
+            try {
+                serviceType = UDAServiceType.valueOf(s);
+            } catch (Exception ex) {
+                // Ignore
+            }
         }
 
-        // Now try a generic ServiceType parse
+        // Now try a generic ServiceType parse, without a regex if it's in canonical form
+        if (serviceType == null) {
+            serviceType = parseCanonical(s);
+        }
         if (serviceType == null) {
             Matcher matcher = ServiceType.PATTERN.matcher(s);
             if (matcher.matches()) {
-                return new ServiceType(matcher.group(1), matcher.group(2), Integer.valueOf(matcher.group(3)));
+                serviceType = new ServiceType(matcher.group(1), matcher.group(2), Integer.valueOf(matcher.group(3)));
             } else {
                 throw new InvalidValueException("Can't parse service type string (namespace/type/version): " + s);
             }
         }
-        return serviceType;
+        return cache.intern(key, serviceType);
+    }
+
+    private static ServiceType parseCanonical(String s) {
+        if (!s.startsWith("urn:")) return null;
+        int namespaceEnd = s.indexOf(':', 4);
+        if (namespaceEnd == -1 || !s.startsWith(":service:", namespaceEnd)) return null;
+        int typeBegin = namespaceEnd + ":service:".length();
+        int versionSeparator = s.indexOf(':', typeBegin);
+        if (versionSeparator == -1) return null;
+        String namespace = s.substring(4, namespaceEnd);
+        String type = s.substring(typeBegin, versionSeparator);
+        int version = ModelUtil.parseDigits(s, versionSeparator + 1);
+        if (version == -1 || !ModelUtil.isValidNamespace(namespace) || !ModelUtil.isValidType(type)) return null;
+        return new ServiceType(namespace, type, version);
     }
 
     /**
@@ -18,6 +18,7 @@
 package org.fourthline.cling.model.types;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.ModelUtil;
 
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -35,6 +36,10 @@ public class UDADeviceType extends DeviceType {
     public static final Pattern PATTERN =
             Pattern.compile("urn:" + DEFAULT_NAMESPACE + ":device:(" + Constants.REGEX_TYPE + "):([0-9]+).*");
 
+    public static final String PREFIX = "urn:" + DEFAULT_NAMESPACE + ":device:";
+
+    final private static InternCache<UDADeviceType> cache = new InternCache<UDADeviceType>(256);
+
     public UDADeviceType(String type) {
         super(DEFAULT_NAMESPACE, type, 1);
     }
@@ -43,13 +48,35 @@ public class UDADeviceType extends DeviceType {
         super(DEFAULT_NAMESPACE, type, version);
     }
 
+    /**
+     * @return A shared instance if the same string has been parsed recently, see {@link InternCache}.
+     */
     public static UDADeviceType valueOf(String s) throws InvalidValueException {
-        Matcher matcher = PATTERN.matcher(s);
-        if (matcher.matches()) {
-            return new UDADeviceType(matcher.group(1), Integer.valueOf(matcher.group(2)));
-        } else {
-            throw new InvalidValueException("Can't parse UDA device type string (namespace/type/version): " + s);
+        UDADeviceType deviceType = cache.get(s);
+        if (deviceType != null) return deviceType;
+
+        // The canonical "urn:schemas-upnp-org:device:Type:1" doesn't need a regex
+        deviceType = parseCanonical(s);
+
+        if (deviceType == null) {
+            Matcher matcher = PATTERN.matcher(s);
+            if (matcher.matches()) {
+                deviceType = new UDADeviceType(matcher.group(1), Integer.valueOf(matcher.group(2)));
+            } else {
+                throw new InvalidValueException("Can't parse UDA device type string (namespace/type/version): " + s);
+            }
         }
+        return cache.intern(s, deviceType);
+    }
+
+    private static UDADeviceType parseCanonical(String s) {
+        if (!s.startsWith(PREFIX)) return null;
+        int versionSeparator = s.indexOf(':', PREFIX.length());
+        if (versionSeparator == -1) return null;
+        String type = s.substring(PREFIX.length(), versionSeparator);
+        int version = ModelUtil.parseDigits(s, versionSeparator + 1);
+        if (version == -1 || !ModelUtil.isValidType(type)) return null;
+        return new UDADeviceType(type, version);
     }
 
 }
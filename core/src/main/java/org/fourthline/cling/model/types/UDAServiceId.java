@@ -18,6 +18,7 @@
 package org.fourthline.cling.model.types;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.ModelUtil;
 
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -41,22 +42,51 @@ public class UDAServiceId extends ServiceId {
     public static final Pattern BROKEN_PATTERN =
             Pattern.compile("urn:" + BROKEN_DEFAULT_NAMESPACE + ":service:(" + Constants.REGEX_ID+ ")"); // Note: 'service' vs. 'serviceId'
 
+    public static final String PREFIX = "urn:" + DEFAULT_NAMESPACE + ":serviceId:";
+    public static final String BROKEN_PREFIX = "urn:" + BROKEN_DEFAULT_NAMESPACE + ":service:";
+
+    final private static InternCache<UDAServiceId> cache = new InternCache<UDAServiceId>(256);
+
     public UDAServiceId(String id) {
         super(DEFAULT_NAMESPACE, id);
     }
 
+    /**
+     * @return A shared instance if the same string has been parsed recently, see {@link InternCache}.
+     */
     public static UDAServiceId valueOf(String s) throws InvalidValueException {
-        Matcher matcher = UDAServiceId.PATTERN.matcher(s);
-        if (matcher.matches()) {
-            return new UDAServiceId(matcher.group(1));
-        } else {
-            matcher = UDAServiceId.BROKEN_PATTERN.matcher(s);
+        UDAServiceId serviceId = cache.get(s);
+        if (serviceId != null) return serviceId;
+
+        // The canonical "urn:upnp-org:serviceId:Id" doesn't need a regex
+        serviceId = parseCanonical(s);
+
+        if (serviceId == null) {
+            Matcher matcher = UDAServiceId.PATTERN.matcher(s);
             if (matcher.matches()) {
-                return new UDAServiceId(matcher.group(1));
+                serviceId = new UDAServiceId(matcher.group(1));
             } else {
-                throw new InvalidValueException("Can't parse UDA service ID string (upnp-org/id): " + s);
+                matcher = UDAServiceId.BROKEN_PATTERN.matcher(s);
+                if (matcher.matches()) {
+                    serviceId = new UDAServiceId(matcher.group(1));
+                } else {
+                    throw new InvalidValueException("Can't parse UDA service ID string (upnp-org/id): " + s);
+                }
             }
         }
+        return cache.intern(s, serviceId);
+    }
+
+    private static UDAServiceId parseCanonical(String s) {
+        String id;
+        if (s.startsWith(PREFIX)) {
+            id = s.substring(PREFIX.length());
+        } else if (s.startsWith(BROKEN_PREFIX)) {
+            id = s.substring(BROKEN_PREFIX.length());
+        } else {
+            return null;
+        }
+        return ModelUtil.isValidId(id) ? new UDAServiceId(id) : null;
     }
 
 }
@@ -18,6 +18,7 @@
 package org.fourthline.cling.model.types;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.ModelUtil;
 
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -35,6 +36,10 @@ public class UDAServiceType extends ServiceType {
     public static final Pattern PATTERN =
             Pattern.compile("urn:" + DEFAULT_NAMESPACE + ":service:(" + Constants.REGEX_TYPE + "):([0-9]+).*");
 
+    public static final String PREFIX = "urn:" + DEFAULT_NAMESPACE + ":service:";
+
+    final private static InternCache<UDAServiceType> cache = new InternCache<UDAServiceType>(256);
+
     public UDAServiceType(String type) {
         this(type, 1);
     }
@@ -43,13 +48,35 @@ public class UDAServiceType extends ServiceType {
         super(DEFAULT_NAMESPACE, type, version);
     }
 
+    /**
+     * @return A shared instance if the same string has been parsed recently, see {@link InternCache}.
+     */
     public static UDAServiceType valueOf(String s) throws InvalidValueException {
-        Matcher matcher = UDAServiceType.PATTERN.matcher(s);
-        if (matcher.matches()) {
-            return new UDAServiceType(matcher.group(1), Integer.valueOf(matcher.group(2)));
-        } else {
-            throw new InvalidValueException("Can't parse UDA service type string (namespace/type/version): " + s);
+        UDAServiceType serviceType = cache.get(s);
+        if (serviceType != null) return serviceType;
+
+        // The canonical "urn:schemas-upnp-org:service:Type:1" doesn't need a regex
+        serviceType = parseCanonical(s);
+
+        if (serviceType == null) {
+            Matcher matcher = UDAServiceType.PATTERN.matcher(s);
+            if (matcher.matches()) {
+                serviceType = new UDAServiceType(matcher.group(1), Integer.valueOf(matcher.group(2)));
+            } else {
+                throw new InvalidValueException("Can't parse UDA service type string (namespace/type/version): " + s);
+            }
         }
+        return cache.intern(s, serviceType);
+    }
+
+    private static UDAServiceType parseCanonical(String s) {
+        if (!s.startsWith(PREFIX)) return null;
+        int versionSeparator = s.indexOf(':', PREFIX.length());
+        if (versionSeparator == -1) return null;
+        String type = s.substring(PREFIX.length(), versionSeparator);
+        int version = ModelUtil.parseDigits(s, versionSeparator + 1);
+        if (version == -1 || !ModelUtil.isValidType(type)) return null;
+        return new UDAServiceType(type, version);
     }
 
 }
@@ -40,6 +40,8 @@ public class UDN {
 
     public static final String PREFIX = "uuid:";
 
+    final private static InternCache<UDN> cache = new InternCache<UDN>(1024);
+
     private String identifierString;
 
     /**
@@ -66,8 +68,14 @@ public class UDN {
         return identifierString;
     }
 
+    /**
+     * @return A shared instance if the same string has been parsed recently, see {@link InternCache}.
+     */
     public static UDN valueOf(String udnString) {
-        return new UDN(udnString.startsWith(PREFIX) ? udnString.substring(PREFIX.length()) : udnString);
+        UDN udn = cache.get(udnString);
+        if (udn != null) return udn;
+        udn = new UDN(udnString.startsWith(PREFIX) ? udnString.substring(PREFIX.length()) : udnString);
+        return cache.intern(udnString, udn);
     }
 
     /**
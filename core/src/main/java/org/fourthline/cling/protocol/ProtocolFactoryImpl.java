@@ -25,6 +25,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceConfiguration;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.action.ActionInvocation;
 import org.fourthline.cling.model.gena.LocalGENASubscription;
@@ -42,9 +43,14 @@ import org.fourthline.cling.model.types.ServiceType;
 import org.fourthline.cling.protocol.async.ReceivingNotification;
 import org.fourthline.cling.protocol.async.ReceivingSearch;
 import org.fourthline.cling.protocol.async.ReceivingSearchResponse;
+import org.fourthline.cling.protocol.async.DescriptorRetrievalScheduler;
+import org.fourthline.cling.protocol.async.NotificationScheduler;
+import org.fourthline.cling.protocol.async.SearchResponseScheduler;
 import org.fourthline.cling.protocol.async.SendingNotificationAlive;
 import org.fourthline.cling.protocol.async.SendingNotificationByebye;
 import org.fourthline.cling.protocol.async.SendingSearch;
+import org.fourthline.cling.protocol.sync.DescriptorCache;
+import org.fourthline.cling.protocol.sync.EventBodyCache;
 import org.fourthline.cling.protocol.sync.ReceivingAction;
 import org.fourthline.cling.protocol.sync.ReceivingEvent;
 import org.fourthline.cling.protocol.sync.ReceivingRetrieval;
@@ -55,6 +61,7 @@ import org.fourthline.cling.protocol.sync.SendingEvent;
 import org.fourthline.cling.protocol.sync.SendingRenewal;
 import org.fourthline.cling.protocol.sync.SendingSubscribe;
 import org.fourthline.cling.protocol.sync.SendingUnsubscribe;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 
 /**
  * Default implementation, directly instantiates the appropriate protocols.
@@ -68,6 +75,12 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
 
     protected final UpnpService upnpService;
 
+    protected SearchResponseScheduler searchResponseScheduler;
+    protected NotificationScheduler notificationScheduler;
+    protected DescriptorRetrievalScheduler descriptorRetrievalScheduler;
+    protected EventBodyCache eventBodyCache;
+    protected DescriptorCache descriptorCache;
+
     protected ProtocolFactoryImpl() {
         upnpService = null;
     }
@@ -82,6 +95,82 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
         return upnpService;
     }
 
+    /**
+     * @return The scheduler shared by all search response protocols created by this factory.
+     */
+    synchronized public SearchResponseScheduler getSearchResponseScheduler() {
+        if (searchResponseScheduler == null)
+            searchResponseScheduler = createSearchResponseScheduler();
+        return searchResponseScheduler;
+    }
+
+    protected SearchResponseScheduler createSearchResponseScheduler() {
+        return new SearchResponseScheduler(getUpnpService().getConfiguration());
+    }
+
+    /**
+     * @return The scheduler shared by all alive notification protocols created by this factory.
+     */
+    synchronized public NotificationScheduler getNotificationScheduler() {
+        if (notificationScheduler == null)
+            notificationScheduler = createNotificationScheduler();
+        return notificationScheduler;
+    }
+
+    /**
+     * @return A scheduler with the rate of the configuration, or <code>null</code> if the configuration
+     *         disabled pacing of alive notifications.
+     */
+    protected NotificationScheduler createNotificationScheduler() {
+        UpnpServiceConfiguration configuration = getUpnpService().getConfiguration();
+        if (configuration.getAliveNotificationsPerTick() < 1)
+            return null;
+        return new NotificationScheduler(
+                getUpnpService(),
+                configuration.getAliveNotificationsPerTick(),
+                configuration.getAliveNotificationTickMillis()
+        );
+    }
+
+    /**
+     * @return The scheduler shared by all notification and search response protocols created by this factory.
+     */
+    synchronized public DescriptorRetrievalScheduler getDescriptorRetrievalScheduler() {
+        if (descriptorRetrievalScheduler == null)
+            descriptorRetrievalScheduler = createDescriptorRetrievalScheduler();
+        return descriptorRetrievalScheduler;
+    }
+
+    protected DescriptorRetrievalScheduler createDescriptorRetrievalScheduler() {
+        return new DescriptorRetrievalScheduler(getUpnpService());
+    }
+
+    /**
+     * @return The cache shared by all event protocols created by this factory.
+     */
+    synchronized public EventBodyCache getEventBodyCache() {
+        if (eventBodyCache == null)
+            eventBodyCache = createEventBodyCache();
+        return eventBodyCache;
+    }
+
+    protected EventBodyCache createEventBodyCache() {
+        return new EventBodyCache();
+    }
+
+    /**
+     * @return The cache of generated local descriptors, shared by all retrieval protocols created by this factory.
+     */
+    synchronized public DescriptorCache getDescriptorCache() {
+        if (descriptorCache == null)
+            descriptorCache = createDescriptorCache();
+        return descriptorCache;
+    }
+
+    protected DescriptorCache createDescriptorCache() {
+        return new DescriptorCache();
+    }
+
     public ReceivingAsync createReceivingAsync(IncomingDatagramMessage message) throws ProtocolCreationException {
         log.fine("Creating protocol for incoming asynchronous: " + message);
 
@@ -90,17 +179,23 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
 
             switch (incomingRequest.getOperation().getMethod()) {
                 case NOTIFY:
-                    return isByeBye(incomingRequest) || isSupportedServiceAdvertisement(incomingRequest)
-                            ? new ReceivingNotification(getUpnpService(), incomingRequest) : null;
+                    if (!isByeBye(incomingRequest) && !isSupportedServiceAdvertisement(incomingRequest))
+                        return null;
+                    // Known devices are refreshed inline, without a protocol
+                    IncomingDatagramFilter filter = getUpnpService().getConfiguration().getDatagramFilter();
+                    if (filter != null && !filter.accept(getUpnpService().getRegistry(), incomingRequest))
+                        return null;
+                    return new ReceivingNotification(getUpnpService(), incomingRequest, getDescriptorRetrievalScheduler());
                 case MSEARCH:
-                    return new ReceivingSearch(getUpnpService(), incomingRequest);
+                    return new ReceivingSearch(getUpnpService(), incomingRequest, getSearchResponseScheduler());
             }
 
         } else if (message.getOperation() instanceof UpnpResponse) {
             IncomingDatagramMessage<UpnpResponse> incomingResponse = message;
 
             return isSupportedServiceAdvertisement(incomingResponse)
-                    ? new ReceivingSearchResponse(getUpnpService(), incomingResponse) : null;
+                    ? new ReceivingSearchResponse(getUpnpService(), incomingResponse, getDescriptorRetrievalScheduler())
+                    : null;
         }
 
         throw new ProtocolCreationException("Protocol for incoming datagram message not found: " + message);
@@ -139,7 +234,7 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
 
         if (message.getOperation().getMethod().equals(UpnpRequest.Method.GET)) {
 
-            return new ReceivingRetrieval(getUpnpService(), message);
+            return new ReceivingRetrieval(getUpnpService(), message, getDescriptorCache());
 
         } else if (getUpnpService().getConfiguration().getNamespace().isControlPath(message.getUri())) {
 
@@ -182,9 +277,11 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
     }
 
     public SendingNotificationAlive createSendingNotificationAlive(LocalDevice localDevice) {
-        return new SendingNotificationAlive(getUpnpService(), localDevice);
+        return new SendingNotificationAlive(getUpnpService(), localDevice, getNotificationScheduler());
     }
 
+    // Byebye messages are often sent synchronously during shutdown, before the transport
+    // is stopped, so they can't be queued on the notification scheduler
     public SendingNotificationByebye createSendingNotificationByebye(LocalDevice localDevice) {
         return new SendingNotificationByebye(getUpnpService(), localDevice);
     }
@@ -210,6 +307,6 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
     }
 
     public SendingEvent createSendingEvent(LocalGENASubscription subscription) {
-        return new SendingEvent(getUpnpService(), subscription);
+        return new SendingEvent(getUpnpService(), subscription, getEventBodyCache());
     }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.protocol;
+
+import org.fourthline.cling.model.types.UDN;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Stores the descriptors of remote devices in a directory, so they survive a restart.
+ * <p>
+ * An entry contains the XML of a device descriptor and of all its service descriptors, together with
+ * the <code>ETag</code> and <code>Last-Modified</code> validators the device sent. Entries are keyed
+ * by descriptor URL, UDN, and configuration identifier, each entry is one XML properties file in the
+ * directory. A device has at most one stored entry, storing a new configuration replaces the old one.
+ * </p>
+ * <p>
+ * When a known device is discovered again, {@link RetrieveRemoteDescriptors} hydrates it from the
+ * stored entry without any HTTP request, and then revalidates the descriptors with conditional
+ * requests. This cache only stores and counts; see {@link #getHitCount()},
+ * {@link #getMissCount()}, {@link #getRevalidatedCount()}, and {@link #getUpdatedCount()}.
+ * </p>
+ * <p>
+ * An entry also stores the <code>CONFIGID.UPNP.ORG</code> the device announced when its descriptors
+ * were retrieved. If a UDA 1.1 device announces the same configuration identifier again, the stored
+ * descriptors are current without any revalidation; if it announces a different one, they are outdated
+ * and not loaded.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class RemoteDescriptorCache {
+
+    final private static Logger log = Logger.getLogger(RemoteDescriptorCache.class.getName());
+
+    final protected File directory;
+
+    final protected AtomicLong hitCount = new AtomicLong();
+    final protected AtomicLong missCount = new AtomicLong();
+    final protected AtomicLong revalidatedCount = new AtomicLong();
+    final protected AtomicLong updatedCount = new AtomicLong();
+
+    public RemoteDescriptorCache(File directory) {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            log.warning("Couldn't create descriptor cache directory: " + directory);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The number of devices hydrated from a stored entry.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of devices which had to be retrieved over the network.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The number of stored entries confirmed as current by the remote device.
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /**
+     * @return The number of stored entries which were outdated and retrieved again.
+     */
+    public long getUpdatedCount() {
+        return updatedCount.get();
+    }
+
+    public void revalidated(Entry entry) {
+        revalidatedCount.incrementAndGet();
+    }
+
+    public void updated(Entry entry) {
+        updatedCount.incrementAndGet();
+    }
+
+    /**
+     * @param configId The announced configuration identifier, or <code>null</code>.
+     * @return The stored entry or <code>null</code> (counted as a miss), also if the entry has been
+     *         stored for a different configuration, it is then removed.
+     */
+    public Entry load(URL descriptorURL, UDN udn, Integer configId) {
+        Entry entry = null;
+        File file = getFile(descriptorURL, udn);
+        if (file.exists()) {
+            try {
+                entry = read(file);
+                if (!descriptorURL.toString().equals(entry.getDescriptorURL().toString())
+                        || !udn.equals(entry.getUdn())) {
+                    log.fine("Stored descriptor entry doesn't match device: " + file);
+                    entry = null;
+                } else if (!isSameConfiguration(configId, entry.getConfigId())) {
+                    log.fine("Device announced a new configuration, stored descriptors are outdated: " + descriptorURL);
+                    updated(entry);
+                    file.delete();
+                    entry = null;
+                }
+            } catch (Exception ex) {
+                log.warning("Removing unreadable descriptor cache file '" + file + "': " + ex);
+                file.delete();
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void store(Entry entry) {
+        File file = getFile(entry.getDescriptorURL(), entry.getUdn());
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            write(tmpFile, entry);
+            // Replace the old entry only if the new one is complete
+            if (file.exists() && !file.delete())
+                throw new IllegalStateException("Can't delete old descriptor cache file: " + file);
+            if (!tmpFile.renameTo(file))
+                throw new IllegalStateException("Can't rename descriptor cache file: " + tmpFile);
+            log.fine("Stored descriptors of device: " + entry.getUdn());
+        } catch (Exception ex) {
+            log.warning("Couldn't store descriptors of device '" + entry.getUdn() + "': " + ex);
+            tmpFile.delete();
+        }
+    }
+
+    public void remove(URL descriptorURL, UDN udn) {
+        getFile(descriptorURL, udn).delete();
+    }
+
+    public void remove(Entry entry) {
+        remove(entry.getDescriptorURL(), entry.getUdn());
+    }
+
+    /**
+     * A message without configuration identifier doesn't outdate stored descriptors, they are revalidated.
+     */
+    protected boolean isSameConfiguration(Integer configId, Integer storedConfigId) {
+        return configId == null || configId.equals(storedConfigId);
+    }
+
+    protected File getFile(URL descriptorURL, UDN udn) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(
+                    (descriptorURL.toString() + " " + udn.getIdentifierString()).getBytes("UTF-8")
+            );
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return new File(directory, sb.append(".xml").toString());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected Entry read(File file) throws Exception {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            properties.loadFromXML(is);
+        } finally {
+            is.close();
+        }
+
+        Entry entry = new Entry(
+                new URL(properties.getProperty("descriptorURL")),
+                UDN.valueOf(properties.getProperty("udn")),
+                properties.getProperty("configId") != null ? Integer.valueOf(properties.getProperty("configId")) : null,
+                readDescriptor(properties, "device")
+        );
+        for (int i = 0; properties.getProperty("service." + i + ".url") != null; i++) {
+            entry.addService(readDescriptor(properties, "service." + i));
+        }
+        return entry;
+    }
+
+    protected Descriptor readDescriptor(Properties properties, String prefix) throws Exception {
+        String xml = properties.getProperty(prefix + ".xml");
+        if (xml == null)
+            throw new IllegalStateException("Missing descriptor XML: " + prefix);
+        return new Descriptor(
+                new URL(properties.getProperty(prefix + ".url")),
+                xml,
+                properties.getProperty(prefix + ".etag"),
+                properties.getProperty(prefix + ".lastModified")
+        );
+    }
+
+    protected void write(File file, Entry entry) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("descriptorURL", entry.getDescriptorURL().toString());
+        properties.setProperty("udn", entry.getUdn().toString());
+        if (entry.getConfigId() != null)
+            properties.setProperty("configId", entry.getConfigId().toString());
+        writeDescriptor(properties, "device", entry.getDevice());
+        int i = 0;
+        for (Descriptor service : entry.getServices().values()) {
+            writeDescriptor(properties, "service." + i++, service);
+        }
+        OutputStream os = new FileOutputStream(file);
+        try {
+            properties.storeToXML(os, null, "UTF-8");
+        } finally {
+            os.close();
+        }
+    }
+
+    protected void writeDescriptor(Properties properties, String prefix, Descriptor descriptor) {
+        properties.setProperty(prefix + ".url", descriptor.getUrl().toString());
+        properties.setProperty(prefix + ".xml", descriptor.getXml());
+        if (descriptor.getETag() != null)
+            properties.setProperty(prefix + ".etag", descriptor.getETag());
+        if (descriptor.getLastModified() != null)
+            properties.setProperty(prefix + ".lastModified", descriptor.getLastModified());
+    }
+
+    /**
+     * The stored descriptors of a root device and its embedded devices.
+     */
+    public static class Entry {
+
+        final protected URL descriptorURL;
+        final protected UDN udn;
+        final protected Integer configId;
+        final protected Descriptor device;
+        final protected Map<String, Descriptor> services = new LinkedHashMap();
+
+        public Entry(URL descriptorURL, UDN udn, Descriptor device) {
+            this(descriptorURL, udn, null, device);
+        }
+
+        public Entry(URL descriptorURL, UDN udn, Integer configId, Descriptor device) {
+            this.descriptorURL = descriptorURL;
+            this.udn = udn;
+            this.configId = configId;
+            this.device = device;
+        }
+
+        public URL getDescriptorURL() {
+            return descriptorURL;
+        }
+
+        public UDN getUdn() {
+            return udn;
+        }
+
+        /**
+         * @return The configuration identifier announced when the descriptors were retrieved, or <code>null</code>.
+         */
+        public Integer getConfigId() {
+            return configId;
+        }
+
+        public Descriptor getDevice() {
+            return device;
+        }
+
+        public Map<String, Descriptor> getServices() {
+            return Collections.unmodifiableMap(services);
+        }
+
+        public Descriptor getService(URL url) {
+            return services.get(url.toString());
+        }
+
+        public void addService(Descriptor service) {
+            // Keyed by string, URL.equals() would resolve the host name
+            services.put(service.getUrl().toString(), service);
+        }
+    }
+
+    /**
+     * A retrieved descriptor and its HTTP validators.
+     */
+    public static class Descriptor {
+
+        final protected URL url;
+        final protected String xml;
+        final protected String etag;
+        final protected String lastModified;
+
+        public Descriptor(URL url, String xml, String etag, String lastModified) {
+            this.url = url;
+            this.xml = xml;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public String getXml() {
+            return xml;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+}
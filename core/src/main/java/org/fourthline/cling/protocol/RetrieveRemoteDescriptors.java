@@ -26,19 +26,27 @@ import org.fourthline.cling.model.ValidationException;
 import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.meta.Icon;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.meta.RemoteService;
 import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.protocol.sync.DescriptorCache;
 import org.fourthline.cling.registry.RegistrationException;
 import org.seamless.util.Exceptions;
 
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -55,6 +63,25 @@ import java.util.logging.Logger;
  * hydrated device is then added to the {@link org.fourthline.cling.registry.Registry}.
  * </p>
  * <p>
+ * The service descriptors of a device are retrieved concurrently, with at most
+ * {@link #getMaxConcurrentServiceRetrievals()} requests at the same time. Parsed service
+ * metadata is shared with all other devices serving an identical descriptor, see
+ * {@link ServiceDescriptorCache}.
+ * </p>
+ * <p>
+ * If the configuration provides a {@link RemoteDescriptorCache}, a device with stored descriptors is
+ * hydrated from the cache and added to the registry without waiting for the network. The stored
+ * descriptors are then revalidated with conditional requests. If one of them changed or is gone,
+ * all descriptors are retrieved again and replace the registered graph; if that fails, the device
+ * is removed from the registry. Stored descriptors of a UDA 1.1 device which announced the same
+ * <code>CONFIGID.UPNP.ORG</code> as when they were retrieved are current and not revalidated,
+ * with a different identifier they are not used.
+ * </p>
+ * <p>
+ * A registered device which announced a new configuration identifier or descriptor URL is retrieved
+ * again, the registry then replaces the registered graph with the new graph.
+ * </p>
+ * <p>
  * Any descriptor retrieval, parsing, or validation error of the metadata will abort this protocol
  * with a warning message in the log.
  * </p>
@@ -68,7 +95,17 @@ public class RetrieveRemoteDescriptors implements Runnable {
     private final UpnpService upnpService;
     private RemoteDevice rd;
 
-    private static final Set<URL> activeRetrievals = new CopyOnWriteArraySet();
+    // Hydrating from stored descriptors
+    protected RemoteDescriptorCache.Entry cachedEntry;
+
+    // Retrieving again because stored descriptors were outdated, the device is already registered
+    protected boolean replaceRegistered;
+
+    // Collecting descriptors retrieved from the network, for storage
+    protected RemoteDescriptorCache.Entry retrievedEntry;
+
+    // Service descriptors retrieved concurrently, keyed by URL string, null if the retrieval failed
+    protected Map<String, RemoteDescriptorCache.Descriptor> retrievedServiceDescriptors;
 
     public RetrieveRemoteDescriptors(UpnpService upnpService, RemoteDevice rd) {
         this.upnpService = upnpService;
@@ -79,31 +116,40 @@ public class RetrieveRemoteDescriptors implements Runnable {
         return upnpService;
     }
 
-    public void run() {
+    /**
+     * @return The configured {@link RemoteDescriptorCache}, or <code>null</code>.
+     */
+    protected RemoteDescriptorCache getRemoteDescriptorCache() {
+        return getUpnpService().getConfiguration().getRemoteDescriptorCache();
+    }
 
-        URL deviceURL = rd.getIdentity().getDescriptorURL();
+    /**
+     * @return The configured {@link ServiceDescriptorCache}, or <code>null</code>.
+     */
+    protected ServiceDescriptorCache getServiceDescriptorCache() {
+        return getUpnpService().getConfiguration().getServiceDescriptorCache();
+    }
 
-        // Performance optimization, try to avoid concurrent GET requests for device descriptor,
-        // if we retrieve it once, we have the hydrated device. There is no different outcome
-        // processing this several times concurrently.
+    /**
+     * @return The maximum number of service descriptors of a device retrieved at the same time, default is 4.
+     */
+    protected int getMaxConcurrentServiceRetrievals() {
+        return 4;
+    }
 
-        if (activeRetrievals.contains(deviceURL)) {
-            log.finer("Exiting early, active retrieval for URL already in progress: " + deviceURL);
-            return;
-        }
+    public void run() {
 
+        URL deviceURL = rd.getIdentity().getDescriptorURL();
+
+        // Concurrent retrievals of the same descriptor URL are coalesced by the DescriptorRetrievalScheduler.
         // Exit if it has been discovered already, could be have been waiting in the executor queue too long
-        if (getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true) != null) {
+        RemoteDevice registeredDevice = getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true);
+        if (registeredDevice != null && registeredDevice.getIdentity().isSameDescription(rd.getIdentity())) {
             log.finer("Exiting early, already discovered: " + deviceURL);
             return;
         }
 
-        try {
-            activeRetrievals.add(deviceURL);
-            describe();
-        } finally {
-            activeRetrievals.remove(deviceURL);
-        }
+        describe();
     }
 
     protected void describe() {
@@ -117,7 +163,43 @@ public class RetrieveRemoteDescriptors implements Runnable {
     		log.warning("Router not yet initialized");
     		return ;
     	}
-    	
+
+        RemoteDescriptorCache descriptorCache = getRemoteDescriptorCache();
+        if (descriptorCache != null) {
+            Integer configId = rd.getIdentity().getConfigId();
+            RemoteDescriptorCache.Entry entry =
+                    descriptorCache.load(rd.getIdentity().getDescriptorURL(), rd.getIdentity().getUdn(), configId);
+            if (entry != null) {
+                log.fine("Hydrating device from stored descriptors: " + rd.getIdentity().getDescriptorURL());
+                RemoteDevice hydratedDevice;
+                try {
+                    cachedEntry = entry;
+                    hydratedDevice = describe(entry.getDevice().getXml());
+                } finally {
+                    cachedEntry = null;
+                }
+                if (hydratedDevice != null) {
+                    if (configId != null) {
+                        log.fine("Device announced the same configuration, stored descriptors are current: " + hydratedDevice);
+                        descriptorCache.revalidated(entry);
+                    } else {
+                        revalidate(descriptorCache, entry, hydratedDevice);
+                    }
+                    return;
+                }
+                log.info("Stored descriptors are not usable, retrieving: " + rd.getIdentity().getDescriptorURL());
+                descriptorCache.remove(entry);
+            }
+        }
+
+        retrieve(descriptorCache);
+    }
+
+    /**
+     * @return The hydrated device which has been added to the registry, or <code>null</code> if it failed.
+     */
+    protected RemoteDevice retrieve(RemoteDescriptorCache descriptorCache) {
+
     	StreamRequestMessage deviceDescRetrievalMsg;
 
     	try {
@@ -126,7 +208,7 @@ public class RetrieveRemoteDescriptors implements Runnable {
     	} catch(IllegalArgumentException e) {
     		// UpnpRequest constructor can throw IllegalArgumentException on invalid URI
             log.warning("Device descriptor retrieval failed: " + e.getMessage());
-            return ;
+            return null;
     	}
 
         log.fine("Sending device descriptor retrieval message: " + deviceDescRetrievalMsg);
@@ -134,7 +216,7 @@ public class RetrieveRemoteDescriptors implements Runnable {
 
         if (deviceDescMsg == null) {
             log.warning("Device descriptor retrieval failed, no response: " + rd.getIdentity().getDescriptorURL());
-            return;
+            return null;
         }
 
         if (deviceDescMsg.getOperation().isFailed()) {
@@ -144,7 +226,7 @@ public class RetrieveRemoteDescriptors implements Runnable {
                             ", "
                             + deviceDescMsg.getOperation().getResponseDetails()
             );
-            return;
+            return null;
         }
 
         if (!deviceDescMsg.isContentTypeTextUDA()) {
@@ -153,10 +235,105 @@ public class RetrieveRemoteDescriptors implements Runnable {
         }
 
         log.fine("Received root device descriptor: " + deviceDescMsg);
-        describe(deviceDescMsg.getBodyString());
+        if (descriptorCache != null) {
+            retrievedEntry = new RemoteDescriptorCache.Entry(
+                    rd.getIdentity().getDescriptorURL(),
+                    rd.getIdentity().getUdn(),
+                    rd.getIdentity().getConfigId(),
+                    createDescriptor(rd.getIdentity().getDescriptorURL(), deviceDescMsg)
+            );
+        }
+        try {
+            RemoteDevice hydratedDevice = describe(deviceDescMsg.getBodyString());
+            if (hydratedDevice != null && descriptorCache != null)
+                descriptorCache.store(retrievedEntry);
+            return hydratedDevice;
+        } finally {
+            retrievedEntry = null;
+        }
+    }
+
+    /**
+     * Checks all stored descriptors of a device with conditional requests, retrieves the device again
+     * if any of them changed or is gone.
+     */
+    protected void revalidate(RemoteDescriptorCache descriptorCache,
+                              RemoteDescriptorCache.Entry entry,
+                              RemoteDevice hydratedDevice) {
+        List<RemoteDescriptorCache.Descriptor> descriptors = new ArrayList();
+        descriptors.add(entry.getDevice());
+        descriptors.addAll(entry.getServices().values());
+
+        for (RemoteDescriptorCache.Descriptor descriptor : descriptors) {
+            Boolean current = isCurrent(descriptor);
+            if (current == null) {
+                log.fine("Couldn't revalidate stored descriptor, keeping it: " + descriptor.getUrl());
+                return;
+            }
+            if (!current) {
+                log.fine("Stored descriptor is outdated, retrieving device again: " + descriptor.getUrl());
+                descriptorCache.updated(entry);
+                descriptorCache.remove(entry);
+                RemoteDevice retrievedDevice;
+                try {
+                    replaceRegistered = true;
+                    retrievedDevice = retrieve(descriptorCache);
+                } finally {
+                    replaceRegistered = false;
+                }
+                if (retrievedDevice == null) {
+                    log.info("Retrieving outdated device failed, removing it: " + hydratedDevice);
+                    getUpnpService().getRegistry().removeDevice(hydratedDevice);
+                }
+                return;
+            }
+        }
+        log.fine("Stored descriptors of device are current: " + hydratedDevice);
+        descriptorCache.revalidated(entry);
+    }
+
+    /**
+     * @return <code>false</code> if the descriptor changed or the device answered with a client error,
+     *         e.g. <em>404 Not Found</em>; <code>null</code> if the remote device didn't answer or failed
+     *         with a server error.
+     */
+    protected Boolean isCurrent(RemoteDescriptorCache.Descriptor descriptor) {
+        StreamRequestMessage request = new StreamRequestMessage(UpnpRequest.Method.GET, descriptor.getUrl());
+        if (descriptor.getETag() != null)
+            request.getHeaders().add(DescriptorCache.HEADER_IF_NONE_MATCH, descriptor.getETag());
+        if (descriptor.getLastModified() != null)
+            request.getHeaders().add(DescriptorCache.HEADER_IF_MODIFIED_SINCE, descriptor.getLastModified());
+
+        log.fine("Sending conditional descriptor retrieval message: " + request);
+        StreamResponseMessage response = getUpnpService().getRouter().send(request);
+        if (response == null)
+            return null;
+        if (response.getOperation().getStatusCode() == UpnpResponse.Status.NOT_MODIFIED.getStatusCode())
+            return true;
+        int status = response.getOperation().getStatusCode();
+        if (status >= 400 && status < 500) {
+            log.fine("Stored descriptor is gone, remote device responded with: " + response.getOperation().getResponseDetails());
+            return false;
+        }
+        if (response.getOperation().isFailed())
+            return null;
+        // Most devices don't support conditional requests, compare the content
+        return descriptor.getXml().equals(response.getBodyString());
     }
 
-    protected void describe(String descriptorXML) {
+    protected RemoteDescriptorCache.Descriptor createDescriptor(URL url, StreamResponseMessage response) {
+        return new RemoteDescriptorCache.Descriptor(
+                url,
+                response.getBodyString(),
+                response.getHeaders().getFirstHeader(DescriptorCache.HEADER_ETAG),
+                response.getHeaders().getFirstHeader(DescriptorCache.HEADER_LAST_MODIFIED)
+        );
+    }
+
+    /**
+     * @return The hydrated device which has been added to the registry, or <code>null</code> if it failed.
+     */
+    protected RemoteDevice describe(String descriptorXML) {
 
         boolean notifiedStart = false;
         RemoteDevice describedDevice = null;
@@ -170,11 +347,21 @@ public class RetrieveRemoteDescriptors implements Runnable {
                     descriptorXML
             );
 
-            log.fine("Remote device described (without services) notifying listeners: " + describedDevice);
-            notifiedStart = getUpnpService().getRegistry().notifyDiscoveryStart(describedDevice);
+            // Listeners already know a registered device which is described again after a change
+            if (getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true) == null) {
+                log.fine("Remote device described (without services) notifying listeners: " + describedDevice);
+                notifiedStart = getUpnpService().getRegistry().notifyDiscoveryStart(describedDevice);
+            }
 
             log.fine("Hydrating described device's services: " + describedDevice);
-            RemoteDevice hydratedDevice = describeServices(describedDevice);
+            RemoteDevice hydratedDevice;
+            try {
+                if (cachedEntry == null)
+                    retrieveServiceDescriptors(describedDevice);
+                hydratedDevice = describeServices(describedDevice);
+            } finally {
+                retrievedServiceDescriptors = null;
+            }
             if (hydratedDevice == null) {
                 log.warning("Device service description failed: " + rd);
                 if (notifiedStart)
@@ -182,7 +369,7 @@ public class RetrieveRemoteDescriptors implements Runnable {
                             describedDevice,
                             new DescriptorBindingException("Device service description failed: " + rd)
                     );
-                return;
+                return null;
             }
 
             log.fine("Adding fully hydrated remote device to registry: " + hydratedDevice);
@@ -190,7 +377,12 @@ public class RetrieveRemoteDescriptors implements Runnable {
             // already present or we just received the descriptor again (because we got an embedded
             // devices' notification), it will simply update the expiration timestamp of the root
             // device.
-            getUpnpService().getRegistry().addDevice(hydratedDevice);
+            if (replaceRegistered) {
+                getUpnpService().getRegistry().replaceDevice(hydratedDevice);
+            } else {
+                getUpnpService().getRegistry().addDevice(hydratedDevice);
+            }
+            return hydratedDevice;
 
         } catch (ValidationException ex) {
             log.warning("Could not validate device model: " + rd);
@@ -212,6 +404,7 @@ public class RetrieveRemoteDescriptors implements Runnable {
             if (describedDevice != null && notifiedStart)
                 getUpnpService().getRegistry().notifyDiscoveryFailure(describedDevice, ex);
         }
+        return null;
     }
 
     protected RemoteDevice describeServices(RemoteDevice currentDevice)
@@ -270,6 +463,113 @@ public class RetrieveRemoteDescriptors implements Runnable {
     		return null;
     	}
     	
+        String descriptorContent;
+        if (cachedEntry != null) {
+            RemoteDescriptorCache.Descriptor storedDescriptor = cachedEntry.getService(descriptorURL);
+            if (storedDescriptor == null) {
+                log.fine("Service descriptor has not been stored: " + descriptorURL);
+                return null;
+            }
+            descriptorContent = storedDescriptor.getXml();
+        } else {
+            RemoteDescriptorCache.Descriptor retrievedDescriptor;
+            if (retrievedServiceDescriptors != null && retrievedServiceDescriptors.containsKey(descriptorURL.toString())) {
+                retrievedDescriptor = retrievedServiceDescriptors.get(descriptorURL.toString());
+            } else {
+                retrievedDescriptor = retrieveServiceDescriptor(service, descriptorURL);
+            }
+            if (retrievedDescriptor == null)
+                return null;
+            if (retrievedEntry != null)
+                retrievedEntry.addService(retrievedDescriptor);
+            descriptorContent = retrievedDescriptor.getXml();
+        }
+
+        log.fine("Hydrating service model from descriptor: " + descriptorURL);
+        ServiceDescriptorBinder serviceDescriptorBinder =
+                getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
+
+        ServiceDescriptorCache serviceDescriptorCache = getServiceDescriptorCache();
+        if (serviceDescriptorCache == null)
+            return serviceDescriptorBinder.describe(service, descriptorContent);
+        return serviceDescriptorCache.describe(serviceDescriptorBinder, service, descriptorContent);
+    }
+
+    /**
+     * Retrieves the service descriptors of the device and its embedded devices concurrently.
+     * <p>
+     * The calling thread retrieves descriptors as well, together with up to
+     * {@link #getMaxConcurrentServiceRetrievals()} - 1 tasks of the asynchronous protocol executor.
+     * If the executor doesn't accept a task, the calling thread retrieves the remaining descriptors
+     * alone. This method returns when all descriptors have been retrieved, the results are picked
+     * up by {@link #describeService(org.fourthline.cling.model.meta.RemoteService)}.
+     * </p>
+     */
+    protected void retrieveServiceDescriptors(RemoteDevice describedDevice) {
+        List<RemoteService> services = new ArrayList();
+        collectServices(describedDevice, services);
+
+        int workers = Math.min(getMaxConcurrentServiceRetrievals(), services.size());
+        if (workers < 2)
+            return; // Nothing to gain, describeService() retrieves it
+
+        log.fine("Retrieving " + services.size() + " service descriptors concurrently: " + describedDevice);
+        final Queue<RemoteService> pending = new ConcurrentLinkedQueue(services);
+        final CountDownLatch completed = new CountDownLatch(services.size());
+        final Map<String, RemoteDescriptorCache.Descriptor> descriptors =
+                Collections.synchronizedMap(new HashMap());
+
+        Runnable worker = new Runnable() {
+            public void run() {
+                RemoteService service;
+                while ((service = pending.poll()) != null) {
+                    try {
+                        URL descriptorURL = service.getDevice().normalizeURI(service.getDescriptorURI());
+                        descriptors.put(descriptorURL.toString(), retrieveServiceDescriptor(service, descriptorURL));
+                    } catch (Exception ex) {
+                        // Not stored, describeService() will try again and report it
+                        log.fine("Concurrent service descriptor retrieval failed: " + ex);
+                    } finally {
+                        completed.countDown();
+                    }
+                }
+            }
+        };
+
+        Executor executor = getUpnpService().getConfiguration().getAsyncProtocolExecutor();
+        for (int i = 1; i < workers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException ex) {
+                break;
+            }
+        }
+        worker.run();
+
+        try {
+            completed.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        retrievedServiceDescriptors = descriptors;
+    }
+
+    /**
+     * Adds the services in the order they are described by {@link #describeServices(org.fourthline.cling.model.meta.RemoteDevice)}.
+     */
+    protected void collectServices(RemoteDevice currentDevice, List<RemoteService> services) {
+        if (currentDevice.hasServices())
+            services.addAll(filterExclusiveServices(currentDevice.getServices()));
+        if (currentDevice.hasEmbeddedDevices()) {
+            for (RemoteDevice embeddedDevice : currentDevice.getEmbeddedDevices()) {
+                if (embeddedDevice == null) continue;
+                collectServices(embeddedDevice, services);
+            }
+        }
+    }
+
+    protected RemoteDescriptorCache.Descriptor retrieveServiceDescriptor(RemoteService service, URL descriptorURL) {
         StreamRequestMessage serviceDescRetrievalMsg = new StreamRequestMessage(UpnpRequest.Method.GET, descriptorURL);
 
         log.fine("Sending service descriptor retrieval message: " + serviceDescRetrievalMsg);
@@ -299,11 +599,8 @@ public class RetrieveRemoteDescriptors implements Runnable {
             return null;
         }
 
-        log.fine("Received service descriptor, hydrating service model: " + serviceDescMsg);
-        ServiceDescriptorBinder serviceDescriptorBinder =
-                getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
-
-        return serviceDescriptorBinder.describe(service, serviceDescMsg.getBodyString());
+        log.fine("Received service descriptor: " + serviceDescMsg);
+        return createDescriptor(descriptorURL, serviceDescMsg);
     }
 
     protected List<RemoteService> filterExclusiveServices(RemoteService[] services) {
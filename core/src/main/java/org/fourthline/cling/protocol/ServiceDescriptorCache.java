@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.protocol;
+
+import org.fourthline.cling.binding.xml.DescriptorBindingException;
+import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
+import org.fourthline.cling.model.ValidationException;
+import org.fourthline.cling.model.meta.Action;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.model.meta.StateVariable;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Shares the parsed metadata of remote service descriptors between devices.
+ * <p>
+ * Devices of the same model usually serve identical service descriptors. This cache is keyed
+ * by a hash of the descriptor XML and keeps the actions and state variables of the first
+ * service parsed from it. Any other service with the same descriptor gets copies of these
+ * actions and state variables, the immutable type details and datatypes are shared. Only
+ * the service type, identifier, and URIs are taken from the undescribed service.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class ServiceDescriptorCache {
+
+    final private static Logger log = Logger.getLogger(ServiceDescriptorCache.class.getName());
+
+    final protected int maxEntries;
+    final protected Map<String, Template> templates;
+
+    final protected AtomicLong parsedCount = new AtomicLong();
+    final protected AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Keeps up to 256 service descriptors.
+     */
+    public ServiceDescriptorCache() {
+        this(256);
+    }
+
+    public ServiceDescriptorCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > ServiceDescriptorCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return The number of service descriptors parsed by a binder.
+     */
+    public long getParsedCount() {
+        return parsedCount.get();
+    }
+
+    /**
+     * @return The number of services created from the metadata of an already parsed descriptor.
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    synchronized public int size() {
+        return templates.size();
+    }
+
+    synchronized public void clear() {
+        templates.clear();
+    }
+
+    /**
+     * Parses the descriptor with the given binder, unless an identical descriptor has been parsed before.
+     */
+    public RemoteService describe(ServiceDescriptorBinder binder,
+                                  RemoteService undescribedService,
+                                  String descriptorXml) throws DescriptorBindingException, ValidationException {
+        String key = createKey(descriptorXml);
+
+        Template template;
+        synchronized (this) {
+            template = templates.get(key);
+        }
+        if (template != null) {
+            log.fine("Sharing parsed metadata of identical service descriptor: " + undescribedService);
+            sharedCount.incrementAndGet();
+            return template.createService(undescribedService);
+        }
+
+        RemoteService describedService = binder.describe(undescribedService, descriptorXml);
+        parsedCount.incrementAndGet();
+        synchronized (this) {
+            templates.put(key, new Template(describedService));
+        }
+        return describedService;
+    }
+
+    protected String createKey(String descriptorXml) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(descriptorXml.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return sb.toString();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Unbound copies of the actions and state variables of a described service.
+     */
+    protected static class Template {
+
+        final protected Action<RemoteService>[] actions;
+        final protected StateVariable<RemoteService>[] stateVariables;
+
+        public Template(RemoteService describedService) {
+            this.actions = copyActions(describedService.getActions());
+            this.stateVariables = copyStateVariables(describedService.getStateVariables());
+        }
+
+        public RemoteService createService(RemoteService undescribedService) throws ValidationException {
+            return undescribedService.getDevice().newInstance(
+                    undescribedService.getServiceType(),
+                    undescribedService.getServiceId(),
+                    undescribedService.getDescriptorURI(),
+                    undescribedService.getControlURI(),
+                    undescribedService.getEventSubscriptionURI(),
+                    copyActions(actions),
+                    copyStateVariables(stateVariables)
+            );
+        }
+
+        protected Action<RemoteService>[] copyActions(Action<RemoteService>[] actions) {
+            if (actions == null) return null;
+            Action<RemoteService>[] dupes = new Action[actions.length];
+            for (int i = 0; i < actions.length; i++) {
+                dupes[i] = actions[i].deepCopy();
+            }
+            return dupes;
+        }
+
+        protected StateVariable<RemoteService>[] copyStateVariables(StateVariable<RemoteService>[] stateVariables) {
+            if (stateVariables == null) return null;
+            StateVariable<RemoteService>[] dupes = new StateVariable[stateVariables.length];
+            for (int i = 0; i < stateVariables.length; i++) {
+                dupes[i] = stateVariables[i].deepCopy();
+            }
+            return dupes;
+        }
+    }
+
+}
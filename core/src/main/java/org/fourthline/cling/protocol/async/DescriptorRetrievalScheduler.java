@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.protocol.async;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Retrieves the descriptors of discovered remote devices with a bounded number of tasks.
+ * <p>
+ * Every notification and search response of an unknown device is handed to this scheduler.
+ * Instead of executing a {@link RetrieveRemoteDescriptors} protocol for each message, the
+ * scheduler queues the device, keyed by its descriptor URL:
+ * </p>
+ * <ul>
+ * <li>A device whose descriptor URL is already queued or being retrieved is dropped, the
+ *     pending retrieval will hydrate it.</li>
+ * <li>At most <code>maxConcurrentRetrievals</code> retrievals are executed on the
+ *     {@link org.fourthline.cling.UpnpServiceConfiguration#getAsyncProtocolExecutor()} at the same
+ *     time, at most <code>maxPendingRetrievals</code> devices wait in the queue. Any further
+ *     devices are dropped, they will announce themselves again.</li>
+ * <li>When a retrieval fails, the descriptor URL is not retrieved again until a backoff delay
+ *     has passed. The delay starts with <code>initialBackoffMillis</code> and doubles with every
+ *     further failure, up to <code>maxBackoffMillis</code>. The failures of at most 1024 devices
+ *     are remembered, a successful retrieval forgets them.</li>
+ * <li>A retrieval which the executor discards or cancels releases its slot without a backoff.
+ *     Executors which silently drop tasks are covered by expiring retrievals which have not
+ *     started within {@link #getStartTimeoutMillis()}.</li>
+ * </ul>
+ * <p>
+ * After a network outage, when hundreds of devices announce themselves again, the number of
+ * concurrent retrievals is therefore constant, and broken devices don't get retrieved on every
+ * message they send.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DescriptorRetrievalScheduler {
+
+    final private static Logger log = Logger.getLogger(DescriptorRetrievalScheduler.class.getName());
+
+    final protected UpnpService upnpService;
+    final protected int maxConcurrentRetrievals;
+    final protected int maxPendingRetrievals;
+    final protected long initialBackoffMillis;
+    final protected long maxBackoffMillis;
+    final protected int maxFailures = 1024;
+
+    // All guarded by this
+    final protected Map<String, RemoteDevice> pendingRetrievals = new LinkedHashMap();
+    final protected Map<String, Retrieval> activeRetrievals = new HashMap();
+    final protected Map<String, Failure> failures = new LinkedHashMap<String, Failure>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+            return size() > maxFailures;
+        }
+    };
+
+    final protected AtomicLong hydratedCount = new AtomicLong();
+    final protected AtomicLong failedCount = new AtomicLong();
+    final protected AtomicLong coalescedCount = new AtomicLong();
+    final protected AtomicLong backedOffCount = new AtomicLong();
+    final protected AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Executes at most 8 retrievals at the same time, queues at most 256 devices, and backs off
+     * failing devices for 5 seconds, up to 5 minutes.
+     */
+    public DescriptorRetrievalScheduler(UpnpService upnpService) {
+        this(upnpService, 8, 256, 5000, 300000);
+    }
+
+    public DescriptorRetrievalScheduler(UpnpService upnpService,
+                                        int maxConcurrentRetrievals, int maxPendingRetrievals,
+                                        long initialBackoffMillis, long maxBackoffMillis) {
+        if (maxConcurrentRetrievals < 1 || maxPendingRetrievals < 0)
+            throw new IllegalArgumentException("Concurrent retrievals must be positive, pending retrievals not negative");
+        if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis)
+            throw new IllegalArgumentException("Invalid backoff delays");
+        this.upnpService = upnpService;
+        this.maxConcurrentRetrievals = maxConcurrentRetrievals;
+        this.maxPendingRetrievals = maxPendingRetrievals;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public UpnpService getUpnpService() {
+        return upnpService;
+    }
+
+    /**
+     * @param rd The discovered device, with a descriptor URL.
+     * @return <code>false</code> if the device was coalesced with a pending retrieval, if its
+     *         retrieval failed recently, or if the queue is full.
+     */
+    public boolean retrieve(RemoteDevice rd) {
+        String key = rd.getIdentity().getDescriptorURL().toString();
+        List<Retrieval> expired;
+        synchronized (this) {
+            expired = expireUnstarted();
+        }
+        cancel(expired);
+        synchronized (this) {
+            Failure failure = failures.get(key);
+            if (failure != null && failure.getRetryTime() > getCurrentTime()) {
+                log.finer("Retrieval of descriptor failed recently, backing off: " + key);
+                backedOffCount.incrementAndGet();
+                return false;
+            }
+            if (pendingRetrievals.containsKey(key) || activeRetrievals.containsKey(key)) {
+                log.finer("Retrieval of descriptor is already pending: " + key);
+                coalescedCount.incrementAndGet();
+                return false;
+            }
+            if (pendingRetrievals.size() >= maxPendingRetrievals) {
+                log.fine("Too many pending descriptor retrievals, dropping: " + key);
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            pendingRetrievals.put(key, rd);
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * @return The number of devices waiting in the queue.
+     */
+    synchronized public int getPendingCount() {
+        return pendingRetrievals.size();
+    }
+
+    /**
+     * @return The number of retrievals currently executing.
+     */
+    synchronized public int getActiveCount() {
+        return activeRetrievals.size();
+    }
+
+    /**
+     * @return The number of descriptor URLs in backoff after a failed retrieval.
+     */
+    synchronized public int getFailingCount() {
+        return failures.size();
+    }
+
+    /**
+     * @return The total number of successful retrievals.
+     */
+    public long getHydratedCount() {
+        return hydratedCount.get();
+    }
+
+    /**
+     * @return The total number of failed retrievals.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return The total number of devices dropped because a retrieval of the same descriptor was pending.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return The total number of devices dropped because their retrieval failed recently.
+     */
+    public long getBackedOffCount() {
+        return backedOffCount.get();
+    }
+
+    /**
+     * @return The total number of devices dropped because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    protected Executor getExecutor() {
+        return getUpnpService().getConfiguration().getAsyncProtocolExecutor();
+    }
+
+    protected RetrieveRemoteDescriptors createRetrieval(RemoteDevice rd) {
+        return new RetrieveRemoteDescriptors(getUpnpService(), rd);
+    }
+
+    /**
+     * @return <code>true</code> if the device, or the root device it is embedded in, is now registered
+     *         with the announced description.
+     */
+    protected boolean isHydrated(RemoteDevice rd) {
+        RemoteDevice registeredDevice = getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), false);
+        return registeredDevice != null && registeredDevice.getRoot().getIdentity().isSameDescription(rd.getIdentity());
+    }
+
+    /**
+     * @return The time a dispatched retrieval may wait in the executor before its slot is released, default is 60 seconds.
+     */
+    protected long getStartTimeoutMillis() {
+        return 60000;
+    }
+
+    protected long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    protected long getBackoffMillis(int failureCount) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < failureCount && backoff < maxBackoffMillis; i++) {
+            backoff = backoff * 2;
+        }
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    protected void dispatch() {
+        // Never execute while holding the lock, the executor might run the task in this thread
+        List<Retrieval> expired;
+        List<Retrieval> retrievals = new ArrayList();
+        synchronized (this) {
+            expired = expireUnstarted();
+            Iterator<Map.Entry<String, RemoteDevice>> it = pendingRetrievals.entrySet().iterator();
+            while (activeRetrievals.size() < maxConcurrentRetrievals && it.hasNext()) {
+                Map.Entry<String, RemoteDevice> next = it.next();
+                it.remove();
+                Retrieval retrieval = new Retrieval(next.getKey(), next.getValue(), getCurrentTime());
+                activeRetrievals.put(retrieval.getKey(), retrieval);
+                retrievals.add(retrieval);
+            }
+        }
+        cancel(expired);
+        for (Retrieval retrieval : retrievals) {
+            try {
+                getExecutor().execute(retrieval);
+            } catch (RejectedExecutionException ex) {
+                log.fine("Executor rejected descriptor retrieval, dropping: " + retrieval.getKey());
+                retrieval.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the lock, the returned retrievals have to be cancelled without it.
+     */
+    protected List<Retrieval> expireUnstarted() {
+        List<Retrieval> expired = new ArrayList();
+        long now = getCurrentTime();
+        for (Iterator<Retrieval> it = activeRetrievals.values().iterator(); it.hasNext(); ) {
+            Retrieval retrieval = it.next();
+            if (!retrieval.isStarted() && retrieval.getDispatchTime() + getStartTimeoutMillis() < now) {
+                it.remove();
+                expired.add(retrieval);
+            }
+        }
+        return expired;
+    }
+
+    protected void cancel(List<Retrieval> expired) {
+        for (Retrieval retrieval : expired) {
+            log.fine("Descriptor retrieval did not start in time, dropping: " + retrieval.getKey());
+            rejectedCount.incrementAndGet();
+            retrieval.cancel(false);
+        }
+    }
+
+    /**
+     * Releases the slot of the retrieval, without recording a success or failure.
+     */
+    protected void released(Retrieval retrieval) {
+        boolean removed;
+        synchronized (this) {
+            removed = activeRetrievals.get(retrieval.getKey()) == retrieval;
+            if (removed) activeRetrievals.remove(retrieval.getKey());
+        }
+        if (removed) dispatch();
+    }
+
+    protected void completed(Retrieval retrieval, boolean hydrated) {
+        String key = retrieval.getKey();
+        synchronized (this) {
+            if (hydrated) {
+                failures.remove(key);
+            } else {
+                Failure failure = failures.get(key);
+                int failureCount = failure != null ? failure.getCount() + 1 : 1;
+                long backoff = getBackoffMillis(failureCount);
+                log.fine("Retrieval of descriptor failed " + failureCount + " time(s), backing off "
+                        + backoff + " milliseconds: " + key);
+                failures.put(key, new Failure(failureCount, getCurrentTime() + backoff));
+            }
+        }
+        if (hydrated) {
+            hydratedCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+        released(retrieval);
+    }
+
+    /**
+     * A dispatched retrieval, its slot is released when it is done, also when it never runs.
+     */
+    public class Retrieval extends FutureTask<Void> {
+
+        final protected String key;
+        final protected RemoteDevice rd;
+        final protected RetrieveRemoteDescriptors protocol;
+        final protected long dispatchTime;
+        volatile protected boolean started;
+
+        public Retrieval(String key, RemoteDevice rd, long dispatchTime) {
+            this(key, rd, createRetrieval(rd), dispatchTime);
+        }
+
+        protected Retrieval(String key, RemoteDevice rd, RetrieveRemoteDescriptors protocol, long dispatchTime) {
+            super(protocol, null);
+            this.key = key;
+            this.rd = rd;
+            this.protocol = protocol;
+            this.dispatchTime = dispatchTime;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getDispatchTime() {
+            return dispatchTime;
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                log.fine("Descriptor retrieval cancelled before it started: " + key);
+                released(this);
+                return;
+            }
+            boolean hydrated = false;
+            try {
+                get();
+                hydrated = isHydrated(rd);
+            } catch (InterruptedException ex) {
+                // Can't happen, it's done
+            } catch (ExecutionException ex) {
+                log.warning("Descriptor retrieval failed: " + key + ", " + ex.getCause());
+            } catch (RuntimeException ex) {
+                log.warning("Descriptor retrieval failed: " + key + ", " + ex);
+            }
+            completed(this, hydrated);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") " + key;
+        }
+    }
+
+    protected static class Failure {
+
+        final protected int count;
+        final protected long retryTime;
+
+        public Failure(int count, long retryTime) {
+            this.count = count;
+            this.retryTime = retryTime;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getRetryTime() {
+            return retryTime;
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.protocol.async;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Sends the repeated bulks of notification messages of all local devices at a limited rate.
+ * <p>
+ * A {@link SendingNotification} with a scheduler doesn't send its messages and sleep between
+ * repetitions, it queues each repetition with its due time. While there are queued messages, a
+ * task on the {@link org.fourthline.cling.UpnpServiceConfiguration#getTimerExecutor()} wakes up every
+ * <code>tickMillis</code> and hands at most <code>maxMessagesPerTick</code> due messages to the
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#getAsyncProtocolExecutor()}. Advertising
+ * hundreds of devices at startup therefore doesn't park any threads and doesn't flood the network.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class NotificationScheduler {
+
+    final private static Logger log = Logger.getLogger(NotificationScheduler.class.getName());
+
+    final protected UpnpService upnpService;
+    final protected int maxMessagesPerTick;
+    final protected int tickMillis;
+
+    final protected Random randomGenerator = new Random();
+
+    final protected PriorityQueue<Bulk> pendingBulks = new PriorityQueue();
+    final protected LinkedList<OutgoingDatagramMessage> readyMessages = new LinkedList();
+
+    protected ScheduledFuture pacer;
+    protected long bulkSequence;
+    protected long sentMessages;
+
+    /**
+     * Sends at most 20 messages every 10 milliseconds.
+     */
+    public NotificationScheduler(UpnpService upnpService) {
+        this(upnpService, 20, 10);
+    }
+
+    public NotificationScheduler(UpnpService upnpService, int maxMessagesPerTick, int tickMillis) {
+        if (maxMessagesPerTick < 1 || tickMillis < 1)
+            throw new IllegalArgumentException("Message rate and tick interval must be positive");
+        this.upnpService = upnpService;
+        this.maxMessagesPerTick = maxMessagesPerTick;
+        this.tickMillis = tickMillis;
+    }
+
+    public UpnpService getUpnpService() {
+        return upnpService;
+    }
+
+    public int getMaxMessagesPerTick() {
+        return maxMessagesPerTick;
+    }
+
+    public int getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * The first bulk of a device is delayed randomly, so devices which are added at the
+     * same time don't all advertise in the same instant.
+     *
+     * @return The maximum random delay before the first bulk is sent, defaults to 100 milliseconds.
+     */
+    public int getInitialDelayMaxMillis() {
+        return 100;
+    }
+
+    /**
+     * @param messages The messages of one bulk, sent in this order.
+     * @param repeat How many times the bulk should be sent.
+     * @param intervalMillis The time between repetitions of the bulk.
+     */
+    synchronized public void schedule(List<? extends OutgoingDatagramMessage> messages, int repeat, int intervalMillis) {
+        if (messages.size() == 0 || repeat < 1) return;
+
+        long due = currentTimeMillis();
+        if (getInitialDelayMaxMillis() > 0)
+            due += randomGenerator.nextInt(getInitialDelayMaxMillis());
+
+        log.fine("Queuing " + repeat + " bulks of " + messages.size() + " notification messages");
+        for (int i = 0; i < repeat; i++) {
+            pendingBulks.add(new Bulk(messages, due + (long) i * intervalMillis, bulkSequence++));
+        }
+
+        if (pacer == null) {
+            try {
+                pacer = startPacer();
+            } catch (RejectedExecutionException ex) {
+                log.fine("Timer rejected notification messages, shutting down? " + ex);
+                pendingBulks.clear();
+            }
+        }
+    }
+
+    /**
+     * Override this to drive the scheduler with your own ticks, e.g. in tests.
+     *
+     * @return The task calling {@link #sendDueMessages()} every tick on the timer executor.
+     */
+    protected ScheduledFuture startPacer() {
+        return getUpnpService().getConfiguration().getTimerExecutor().scheduleAtFixedRate(
+                new Runnable() {
+                    public void run() {
+                        sendDueMessages();
+                    }
+                },
+                0,
+                getTickMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * @return The current time in milliseconds, override this to control the clock in tests.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return The number of messages which have not been sent yet, including repetitions.
+     */
+    synchronized public int getPendingMessageCount() {
+        int count = readyMessages.size();
+        for (Bulk bulk : pendingBulks) {
+            count += bulk.messages.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return The total number of messages handed off for sending.
+     */
+    synchronized public long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    protected void sendDueMessages() {
+        final List<OutgoingDatagramMessage> messages = nextMessages();
+        if (messages.size() == 0) return;
+        getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+                new Runnable() {
+                    public void run() {
+                        for (OutgoingDatagramMessage message : messages) {
+                            getUpnpService().getRouter().send(message);
+                        }
+                    }
+                }
+        );
+    }
+
+    synchronized protected List<OutgoingDatagramMessage> nextMessages() {
+        long now = currentTimeMillis();
+        while (pendingBulks.peek() != null && pendingBulks.peek().due <= now) {
+            readyMessages.addAll(pendingBulks.poll().messages);
+        }
+
+        List<OutgoingDatagramMessage> messages = new ArrayList();
+        while (messages.size() < getMaxMessagesPerTick() && readyMessages.size() > 0) {
+            messages.add(readyMessages.removeFirst());
+        }
+        sentMessages += messages.size();
+
+        if (pendingBulks.isEmpty() && readyMessages.isEmpty() && pacer != null) {
+            // Nothing left to do, stop ticking until the next bulk is queued
+            pacer.cancel(false);
+            pacer = null;
+        }
+        return messages;
+    }
+
+    protected static class Bulk implements Comparable<Bulk> {
+
+        final List<? extends OutgoingDatagramMessage> messages;
+        final long due;
+        final long sequence;
+
+        Bulk(List<? extends OutgoingDatagramMessage> messages, long due, long sequence) {
+            this.messages = messages;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Bulk other) {
+            if (due != other.due) return due < other.due ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+}
@@ -38,7 +38,8 @@ import java.util.logging.Logger;
  * </p>
  * <p>
  * If an <em>ALIVE</em> message has been received, a new background process will be started
- * running {@link org.fourthline.cling.protocol.RetrieveRemoteDescriptors}.
+ * running {@link org.fourthline.cling.protocol.RetrieveRemoteDescriptors}. If a
+ * {@link DescriptorRetrievalScheduler} is available, the device is handed to the scheduler instead.
  * </p>
  * <p>
  * If a <em>BYEBYE</em> message has been received, the device will be removed from the registry
@@ -74,8 +75,20 @@ public class ReceivingNotification extends ReceivingAsync<IncomingNotificationRe
 
     final private static Logger log = Logger.getLogger(ReceivingNotification.class.getName());
 
+    final protected DescriptorRetrievalScheduler retrievalScheduler;
+
     public ReceivingNotification(UpnpService upnpService, IncomingDatagramMessage<UpnpRequest> inputMessage) {
+        this(upnpService, inputMessage, null);
+    }
+
+    public ReceivingNotification(UpnpService upnpService, IncomingDatagramMessage<UpnpRequest> inputMessage,
+                                 DescriptorRetrievalScheduler retrievalScheduler) {
         super(upnpService, new IncomingNotificationRequest(inputMessage));
+        this.retrievalScheduler = retrievalScheduler;
+    }
+
+    public DescriptorRetrievalScheduler getRetrievalScheduler() {
+        return retrievalScheduler;
     }
 
     protected void execute() {
@@ -121,9 +134,13 @@ public class ReceivingNotification extends ReceivingAsync<IncomingNotificationRe
 
             // Unfortunately, we always have to retrieve the descriptor because at this point we
             // have no idea if it's a root or embedded device
-            getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
-                    new RetrieveRemoteDescriptors(getUpnpService(), rd)
-            );
+            if (getRetrievalScheduler() != null) {
+                getRetrievalScheduler().retrieve(rd);
+            } else {
+                getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+                        new RetrieveRemoteDescriptors(getUpnpService(), rd)
+                );
+            }
 
         } else if (getInputMessage().isByeByeMessage()) {
 
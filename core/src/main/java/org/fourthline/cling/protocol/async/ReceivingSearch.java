@@ -69,8 +69,26 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
 
     final protected Random randomGenerator = new Random();
 
+    final protected SearchResponseScheduler responseScheduler;
+
+    /**
+     * Creates a protocol which blocks the calling thread while it waits before responding.
+     */
     public ReceivingSearch(UpnpService upnpService, IncomingDatagramMessage<UpnpRequest> inputMessage) {
+        this(upnpService, inputMessage, null);
+    }
+
+    /**
+     * Creates a protocol which, if a scheduler is available, doesn't block while it waits before responding.
+     */
+    public ReceivingSearch(UpnpService upnpService, IncomingDatagramMessage<UpnpRequest> inputMessage,
+                           SearchResponseScheduler responseScheduler) {
         super(upnpService, new IncomingSearchRequest(inputMessage));
+        this.responseScheduler = responseScheduler;
+    }
+
+    public SearchResponseScheduler getResponseScheduler() {
+        return responseScheduler;
     }
 
     protected void execute() {
@@ -122,6 +140,11 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
         // Only wait if there is something to wait for
         if (getUpnpService().getRegistry().getLocalDevices().size() > 0) {
             int sleepTime = randomGenerator.nextInt(mx * 1000);
+            if (getResponseScheduler() != null) {
+                // The scheduler executes this protocol later, don't continue now
+                getResponseScheduler().schedule(this, sleepTime);
+                return false;
+            }
             log.fine("Sleeping " + sleepTime + " milliseconds to avoid flooding with search responses");
             Thread.sleep(sleepTime);
         }
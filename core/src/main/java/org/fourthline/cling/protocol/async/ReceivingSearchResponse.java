@@ -38,6 +38,9 @@ import java.util.logging.Logger;
  * the {@link org.fourthline.cling.protocol.async.ReceivingNotification} protocol for
  * an <em>ALIVE</em> message.
  * </p>
+ * <p>
+ * If a {@link DescriptorRetrievalScheduler} is available, the device is handed to the scheduler.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -45,8 +48,20 @@ public class ReceivingSearchResponse extends ReceivingAsync<IncomingSearchRespon
 
     final private static Logger log = Logger.getLogger(ReceivingSearchResponse.class.getName());
 
+    final protected DescriptorRetrievalScheduler retrievalScheduler;
+
     public ReceivingSearchResponse(UpnpService upnpService, IncomingDatagramMessage<UpnpResponse> inputMessage) {
+        this(upnpService, inputMessage, null);
+    }
+
+    public ReceivingSearchResponse(UpnpService upnpService, IncomingDatagramMessage<UpnpResponse> inputMessage,
+                                   DescriptorRetrievalScheduler retrievalScheduler) {
         super(upnpService, new IncomingSearchResponse(inputMessage));
+        this.retrievalScheduler = retrievalScheduler;
+    }
+
+    public DescriptorRetrievalScheduler getRetrievalScheduler() {
+        return retrievalScheduler;
     }
 
     protected void execute() {
@@ -93,9 +108,13 @@ public class ReceivingSearchResponse extends ReceivingAsync<IncomingSearchRespon
 
         // Unfortunately, we always have to retrieve the descriptor because at this point we
         // have no idea if it's a root or embedded device
-        getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
-                new RetrieveRemoteDescriptors(getUpnpService(), rd)
-        );
+        if (getRetrievalScheduler() != null) {
+            getRetrievalScheduler().retrieve(rd);
+        } else {
+            getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+                    new RetrieveRemoteDescriptors(getUpnpService(), rd)
+            );
+        }
 
     }
 
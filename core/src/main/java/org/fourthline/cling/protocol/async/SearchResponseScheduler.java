@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.protocol.async;
+
+import org.fourthline.cling.UpnpServiceConfiguration;
+import org.fourthline.cling.model.message.discovery.IncomingSearchRequest;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Delays the responses to search requests without blocking a thread per search.
+ * <p>
+ * Each {@link ReceivingSearch} is scheduled on the
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#getTimerExecutor()} and, when it is due,
+ * handed off to the {@link org.fourthline.cling.UpnpServiceConfiguration#getSearchResponseExecutor()}.
+ * The number of threads is therefore constant, no matter how many control points search at the
+ * same time.
+ * </p>
+ * <p>
+ * A search request which arrives while a response to the same requester (address and port),
+ * on the same local interface, and for the same search target is still pending, is dropped. The
+ * already scheduled response answers it.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class SearchResponseScheduler {
+
+    final private static Logger log = Logger.getLogger(SearchResponseScheduler.class.getName());
+
+    final protected UpnpServiceConfiguration configuration;
+
+    final protected ConcurrentMap<String, ReceivingSearch> pendingResponses = new ConcurrentHashMap();
+
+    final protected AtomicLong scheduledCount = new AtomicLong();
+    final protected AtomicLong coalescedCount = new AtomicLong();
+
+    public SearchResponseScheduler(UpnpServiceConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public UpnpServiceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @param search The protocol to execute after the delay.
+     * @param delayMillis The (random) delay before the protocol is executed.
+     * @return <code>false</code> if the search was coalesced with an already pending response, or if
+     *         the timer has been shut down.
+     */
+    public boolean schedule(final ReceivingSearch search, long delayMillis) {
+        final String key = getRequestKey(search.getInputMessage());
+
+        if (pendingResponses.putIfAbsent(key, search) != null) {
+            log.fine("Response to identical search request is already pending, dropping: " + search.getInputMessage());
+            coalescedCount.incrementAndGet();
+            return false;
+        }
+
+        log.fine("Scheduling search response in " + delayMillis + " milliseconds to avoid flooding");
+        try {
+            startTimer(
+                    new Runnable() {
+                        public void run() {
+                            respond(key, search);
+                        }
+                    },
+                    delayMillis
+            );
+        } catch (RejectedExecutionException ex) {
+            log.fine("Timer rejected search response, shutting down? " + ex);
+            pendingResponses.remove(key);
+            return false;
+        }
+        scheduledCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Override this to drive the scheduler with your own clock, e.g. in tests.
+     *
+     * @param task The task which calls {@link #respond(String, ReceivingSearch)}.
+     * @param delayMillis The delay before the task runs on the timer executor.
+     * @throws RejectedExecutionException If the timer has been shut down.
+     */
+    protected void startTimer(Runnable task, long delayMillis) throws RejectedExecutionException {
+        getConfiguration().getTimerExecutor().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called when the delay of a search response has passed, hands the protocol off to the
+     * {@link org.fourthline.cling.UpnpServiceConfiguration#getSearchResponseExecutor()}.
+     */
+    protected void respond(String key, final ReceivingSearch search) {
+        pendingResponses.remove(key);
+        getConfiguration().getSearchResponseExecutor().execute(
+                new Runnable() {
+                    public void run() {
+                        search.execute();
+                    }
+                }
+        );
+    }
+
+    /**
+     * @return The number of responses waiting for their delay to pass.
+     */
+    public int getPendingCount() {
+        return pendingResponses.size();
+    }
+
+    /**
+     * @return The total number of scheduled responses.
+     */
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    /**
+     * @return The total number of search requests dropped because an identical response was pending.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    protected String getRequestKey(IncomingSearchRequest request) {
+        // Use the raw header value, the typed search target might not parse
+        String searchTarget = request.getHeaders().getFirstHeader(UpnpHeader.Type.ST.getHttpName());
+        return request.getSourceAddress().getHostAddress() + ":" + request.getSourcePort()
+                + "/" + (request.getLocalAddress() != null ? request.getLocalAddress().getHostAddress() : "")
+                + "/" + searchTarget;
+    }
+
+}
@@ -49,15 +49,33 @@ public abstract class SendingNotification extends SendingAsync {
 
     private LocalDevice device;
 
+    final protected NotificationScheduler notificationScheduler;
+
+    /**
+     * Creates a protocol which blocks the calling thread between repetitions of bulks.
+     */
     public SendingNotification(UpnpService upnpService, LocalDevice device) {
+        this(upnpService, device, null);
+    }
+
+    /**
+     * Creates a protocol which, if a scheduler is available, queues its bulks and returns immediately.
+     */
+    public SendingNotification(UpnpService upnpService, LocalDevice device,
+                               NotificationScheduler notificationScheduler) {
         super(upnpService);
         this.device = device;
+        this.notificationScheduler = notificationScheduler;
     }
 
     public LocalDevice getDevice() {
         return device;
     }
 
+    public NotificationScheduler getNotificationScheduler() {
+        return notificationScheduler;
+    }
+
     protected void execute() {
 
         List<NetworkAddress> activeStreamServers =
@@ -78,6 +96,16 @@ public abstract class SendingNotification extends SendingAsync {
             );
         }
 
+        if (getNotificationScheduler() != null) {
+            // Same messages for each repetition, the scheduler paces them
+            List<OutgoingNotificationRequest> msgs = new ArrayList();
+            for (Location descriptorLocation : descriptorLocations) {
+                msgs.addAll(createMessages(descriptorLocation));
+            }
+            getNotificationScheduler().schedule(msgs, getBulkRepeat(), getBulkIntervalMilliseconds());
+            return;
+        }
+
         for (int i = 0; i < getBulkRepeat(); i++) {
             try {
 
@@ -104,32 +132,34 @@ public abstract class SendingNotification extends SendingAsync {
     }
 
     public void sendMessages(Location descriptorLocation) {
-        log.finer("Sending root device messages: " + getDevice());
-        List<OutgoingNotificationRequest> rootDeviceMsgs =
-                createDeviceMessages(getDevice(), descriptorLocation);
-        for (OutgoingNotificationRequest upnpMessage : rootDeviceMsgs) {
+        for (OutgoingNotificationRequest upnpMessage : createMessages(descriptorLocation)) {
             getUpnpService().getRouter().send(upnpMessage);
         }
+    }
+
+    /**
+     * @return All messages of one bulk: root device, embedded devices, and service types.
+     */
+    protected List<OutgoingNotificationRequest> createMessages(Location descriptorLocation) {
+        List<OutgoingNotificationRequest> msgs = new ArrayList();
+
+        log.finer("Creating root device messages: " + getDevice());
+        msgs.addAll(createDeviceMessages(getDevice(), descriptorLocation));
 
         if (getDevice().hasEmbeddedDevices()) {
             for (LocalDevice embeddedDevice : getDevice().findEmbeddedDevices()) {
-                log.finer("Sending embedded device messages: " + embeddedDevice);
-                List<OutgoingNotificationRequest> embeddedDeviceMsgs =
-                        createDeviceMessages(embeddedDevice, descriptorLocation);
-                for (OutgoingNotificationRequest upnpMessage : embeddedDeviceMsgs) {
-                    getUpnpService().getRouter().send(upnpMessage);
-                }
+                log.finer("Creating embedded device messages: " + embeddedDevice);
+                msgs.addAll(createDeviceMessages(embeddedDevice, descriptorLocation));
             }
         }
 
         List<OutgoingNotificationRequest> serviceTypeMsgs =
                 createServiceTypeMessages(getDevice(), descriptorLocation);
         if (serviceTypeMsgs.size() > 0) {
-            log.finer("Sending service type messages");
-            for (OutgoingNotificationRequest upnpMessage : serviceTypeMsgs) {
-                getUpnpService().getRouter().send(upnpMessage);
-            }
+            log.finer("Creating service type messages");
+            msgs.addAll(serviceTypeMsgs);
         }
+        return msgs;
     }
 
     protected List<OutgoingNotificationRequest> createDeviceMessages(LocalDevice device,
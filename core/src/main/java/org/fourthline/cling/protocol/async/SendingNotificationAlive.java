@@ -36,6 +36,11 @@ public class SendingNotificationAlive extends SendingNotification {
         super(upnpService, device);
     }
 
+    public SendingNotificationAlive(UpnpService upnpService, LocalDevice device,
+                                 NotificationScheduler notificationScheduler) {
+        super(upnpService, device, notificationScheduler);
+    }
+
     @Override
     protected void execute() {
         log.fine("Sending alive messages ("+getBulkRepeat()+" times) for: " + getDevice());
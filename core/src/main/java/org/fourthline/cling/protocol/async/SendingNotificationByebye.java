@@ -36,6 +36,11 @@ public class SendingNotificationByebye extends SendingNotification {
         super(upnpService, device);
     }
 
+    public SendingNotificationByebye(UpnpService upnpService, LocalDevice device,
+                                 NotificationScheduler notificationScheduler) {
+        super(upnpService, device, notificationScheduler);
+    }
+
     // The UDA 1.0 spec says "a message corresponding to /each/ of the ssd:alive messages" but
     // it's not clear if that means the "required" messages according to the tables only or if
     // it includes the triple (or whatever) repeated messages that have been sent to protect
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.protocol.sync;
+
+import org.fourthline.cling.binding.xml.DescriptorBindingException;
+import org.fourthline.cling.binding.xml.DeviceDescriptorBinder;
+import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
+import org.fourthline.cling.model.Namespace;
+import org.fourthline.cling.model.message.UpnpHeaders;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.model.profile.ControlPointInfo;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the generated XML of local device and service descriptors.
+ * <p>
+ * Control points retrieve the same descriptors again and again, and generating them requires
+ * building a DOM. This cache stores the serialized bytes of each descriptor, keyed by the
+ * requested URI, the {@link Namespace}, and the device details selected for the requesting
+ * control point (see {@link org.fourthline.cling.model.profile.DeviceDetailsProvider}).
+ * </p>
+ * <p>
+ * An entry is only valid for the model instance it was generated from: When a device with
+ * the same UDN is registered again, the new {@link LocalDevice} instance doesn't match the
+ * cached entry and its descriptors are generated again.
+ * </p>
+ * <p>
+ * Each entry has an <code>ETag</code>, a hash of the descriptor bytes, and a
+ * <code>Last-Modified</code> time. A request with a matching <code>If-None-Match</code> or
+ * <code>If-Modified-Since</code> header can be answered with <em>304 Not Modified</em>, see
+ * {@link #isNotModified(Entry, UpnpHeaders)}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DescriptorCache {
+
+    final private static Logger log = Logger.getLogger(DescriptorCache.class.getName());
+
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    final protected int maxEntries;
+    final protected Map<Key, Entry> entries;
+
+    final protected AtomicLong generatedCount = new AtomicLong();
+    final protected AtomicLong hitCount = new AtomicLong();
+    final protected AtomicLong notModifiedCount = new AtomicLong();
+
+    /**
+     * Keeps up to 128 descriptors.
+     */
+    public DescriptorCache() {
+        this(128);
+    }
+
+    public DescriptorCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > DescriptorCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return The number of descriptors generated by a binder.
+     */
+    public long getGeneratedCount() {
+        return generatedCount.get();
+    }
+
+    /**
+     * @return The number of descriptors served from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of conditional requests answered with <em>304 Not Modified</em>.
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Entry getDeviceDescriptor(DeviceDescriptorBinder binder, URI requestedURI,
+                                     LocalDevice device, ControlPointInfo info,
+                                     Namespace namespace) throws DescriptorBindingException {
+        // The generated XML only differs between control points if they get different device details
+        List<Object> variant = new ArrayList();
+        variant.add(namespace);
+        addDeviceDetails(variant, device, info);
+        Key key = new Key(requestedURI, variant);
+
+        Entry entry = get(key, device);
+        if (entry == null) {
+            entry = put(key, device, binder.generate(device, info, namespace));
+        }
+        return entry;
+    }
+
+    public Entry getServiceDescriptor(ServiceDescriptorBinder binder, URI requestedURI,
+                                      LocalService service) throws DescriptorBindingException {
+        Key key = new Key(requestedURI, new ArrayList());
+        Entry entry = get(key, service);
+        if (entry == null) {
+            entry = put(key, service, binder.generate(service));
+        }
+        return entry;
+    }
+
+    /**
+     * Evaluates the conditional headers of a request, <code>If-None-Match</code> has precedence.
+     *
+     * @return <code>true</code> if the client already has the current descriptor.
+     */
+    public boolean isNotModified(Entry entry, UpnpHeaders requestHeaders) {
+        boolean notModified = false;
+        String ifNoneMatch = requestHeaders.getFirstHeader(HEADER_IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(entry.getETag())) {
+                    notModified = true;
+                    break;
+                }
+            }
+        } else {
+            String ifModifiedSince = requestHeaders.getFirstHeader(HEADER_IF_MODIFIED_SINCE);
+            if (ifModifiedSince != null) {
+                try {
+                    Date since = createDateFormat().parse(ifModifiedSince.trim());
+                    // HTTP dates have a resolution of seconds
+                    notModified = entry.getLastModified() / 1000 <= since.getTime() / 1000;
+                } catch (ParseException ex) {
+                    log.fine("Ignoring invalid If-Modified-Since header: " + ifModifiedSince);
+                }
+            }
+        }
+        if (notModified)
+            notModifiedCount.incrementAndGet();
+        return notModified;
+    }
+
+    protected void addDeviceDetails(List<Object> variant, LocalDevice device, ControlPointInfo info) {
+        variant.add(device.getDetails(info));
+        for (LocalDevice embeddedDevice : device.getEmbeddedDevices()) {
+            addDeviceDetails(variant, embeddedDevice, info);
+        }
+    }
+
+    protected Entry get(Key key, Object model) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.model == model) {
+                hitCount.incrementAndGet();
+                return entry;
+            }
+            return null;
+        }
+    }
+
+    protected Entry put(Key key, Object model, String descriptor) {
+        byte[] body;
+        try {
+            body = descriptor.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+        generatedCount.incrementAndGet();
+        String etag = createETag(body);
+        synchronized (entries) {
+            Entry previous = entries.get(key);
+            // Regenerated but still the same content, e.g. the device was registered again
+            long lastModified = previous != null && previous.getETag().equals(etag)
+                    ? previous.getLastModified()
+                    : System.currentTimeMillis();
+            Entry entry = new Entry(model, body, etag, lastModified);
+            entries.put(key, entry);
+            log.fine("Cached generated descriptor: " + key.uri);
+            return entry;
+        }
+    }
+
+    protected String createETag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+            StringBuilder sb = new StringBuilder("\"");
+            for (byte b : digest) {
+                sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return sb.append("\"").toString();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return A new RFC 1123 date format, <code>SimpleDateFormat</code> is not thread-safe.
+     */
+    public static DateFormat createDateFormat() {
+        DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    public static class Entry {
+
+        final protected Object model;
+        final protected byte[] body;
+        final protected String etag;
+        final protected long lastModified;
+
+        public Entry(Object model, byte[] body, String etag, long lastModified) {
+            this.model = model;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getLastModifiedString() {
+            return createDateFormat().format(new Date(lastModified));
+        }
+    }
+
+    protected static class Key {
+
+        final URI uri;
+        final List<Object> variant;
+
+        Key(URI uri, List<Object> variant) {
+            this.uri = uri;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return uri.equals(key.uri) && variant.equals(key.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * uri.hashCode() + variant.hashCode();
+        }
+    }
+
+}
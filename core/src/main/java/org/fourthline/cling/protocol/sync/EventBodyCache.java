@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.protocol.sync;
+
+import org.fourthline.cling.model.message.gena.OutgoingEventRequestMessage;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.model.state.StateVariableValue;
+import org.fourthline.cling.transport.spi.GENAEventProcessor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Serializes the state variable values of an event once for all subscriptions of a service.
+ * <p>
+ * When the state of a {@link org.fourthline.cling.model.meta.LocalService} changes, every
+ * {@link org.fourthline.cling.model.gena.LocalGENASubscription} of the service receives the same
+ * state variable value instances, one subscription after the other. This cache remembers the last
+ * written body per service, and if the next subscription sends exactly the same value
+ * instances, its event messages share the encoded body bytes. Only the <code>SID</code> and
+ * <code>SEQ</code> headers of the messages differ.
+ * </p>
+ * <p>
+ * A subscription which moderated some of the values out of its event, or the initial event of a
+ * new subscription, has different value instances and gets its own body.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class EventBodyCache {
+
+    final private static Logger log = Logger.getLogger(EventBodyCache.class.getName());
+
+    final protected int maxServices;
+
+    // The values of an entry reference their service, so a weak map wouldn't release anything
+    final protected Map<LocalService, Entry> lastBodies;
+
+    final protected AtomicLong writtenCount = new AtomicLong();
+    final protected AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Remembers the last event body of up to 64 services.
+     */
+    public EventBodyCache() {
+        this(64);
+    }
+
+    public EventBodyCache(int maxServices) {
+        this.maxServices = maxServices;
+        this.lastBodies = new LinkedHashMap<LocalService, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalService, Entry> eldest) {
+                return size() > EventBodyCache.this.maxServices;
+            }
+        };
+    }
+
+    /**
+     * @return The number of event bodies written by the event processor.
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return The number of event bodies reused from an earlier subscription.
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * @param processor The processor which writes the body if it is not cached.
+     * @param message   A message of the subscription, with the state variable values of the event.
+     * @return The encoded body for the state variable values of the message.
+     */
+    public byte[] getBody(GENAEventProcessor processor, OutgoingEventRequestMessage message) {
+        LocalService service = getService(message);
+        Collection<StateVariableValue> values = message.getStateVariableValues();
+
+        if (service != null) {
+            synchronized (lastBodies) {
+                Entry entry = lastBodies.get(service);
+                if (entry != null && entry.hasSameValues(values)) {
+                    log.fine("Sharing event body serialized for an earlier subscription of: " + service);
+                    sharedCount.incrementAndGet();
+                    return entry.body;
+                }
+            }
+        }
+
+        processor.writeBody(message);
+        byte[] body = message.getBodyBytes();
+        writtenCount.incrementAndGet();
+
+        if (service != null) {
+            synchronized (lastBodies) {
+                lastBodies.put(service, new Entry(values, body));
+            }
+        }
+        return body;
+    }
+
+    protected LocalService getService(OutgoingEventRequestMessage message) {
+        if (message.getStateVariableValues().isEmpty())
+            return null;
+        StateVariableValue value = message.getStateVariableValues().iterator().next();
+        return value.getStateVariable().getService() instanceof LocalService
+                ? (LocalService) value.getStateVariable().getService()
+                : null;
+    }
+
+    protected static class Entry {
+
+        final List<StateVariableValue> values;
+        final byte[] body;
+
+        Entry(Collection<StateVariableValue> values, byte[] body) {
+            this.values = new ArrayList(values);
+            this.body = body;
+        }
+
+        /**
+         * Compares instances, not values: a new state change always creates new instances.
+         */
+        boolean hasSameValues(Collection<StateVariableValue> other) {
+            if (other.size() != values.size()) return false;
+            for (StateVariableValue otherValue : other) {
+                boolean found = false;
+                for (StateVariableValue value : values) {
+                    if (value == otherValue) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) return false;
+            }
+            return true;
+        }
+    }
+
+}
@@ -48,7 +48,10 @@ import org.seamless.util.Exceptions;
  * Handles reception of device/service descriptor and icon retrieval messages.
  *
  * <p>
- * Requested device and service XML descriptors are generated on-the-fly for every request.
+ * Requested device and service XML descriptors are generated on-the-fly, or served from
+ * the {@link DescriptorCache} if one is available. With a cache, responses have <code>ETag</code>
+ * and <code>Last-Modified</code> headers and conditional requests for an unchanged descriptor
+ * are answered with <em>304 Not Modified</em> and no body.
  * </p>
  * <p>
  * Descriptor XML is dynamically generated depending on the control point - some control
@@ -61,8 +64,20 @@ public class ReceivingRetrieval extends ReceivingSync<StreamRequestMessage, Stre
 
 	final private static Logger log = Logger.getLogger(ReceivingRetrieval.class.getName());
 
+	final protected DescriptorCache descriptorCache;
+
 	public ReceivingRetrieval(UpnpService upnpService, StreamRequestMessage inputMessage) {
+		this(upnpService, inputMessage, null);
+	}
+
+	public ReceivingRetrieval(UpnpService upnpService, StreamRequestMessage inputMessage,
+							  DescriptorCache descriptorCache) {
 		super(upnpService, inputMessage);
+		this.descriptorCache = descriptorCache;
+	}
+
+	public DescriptorCache getDescriptorCache() {
+		return descriptorCache;
 	}
 
 	protected StreamResponseMessage executeSync() {
@@ -111,15 +126,27 @@ public class ReceivingRetrieval extends ReceivingSync<StreamRequestMessage, Stre
 
 				DeviceDescriptorBinder deviceDescriptorBinder =
 						getUpnpService().getConfiguration().getDeviceDescriptorBinderUDA10();
-				String deviceDescriptor = deviceDescriptorBinder.generate(
-						device,
-						createControlPointInfo(),
-						getUpnpService().getConfiguration().getNamespace()
-						);
-				response = new StreamResponseMessage(
-						deviceDescriptor,
-						new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
-						);
+				if (getDescriptorCache() != null) {
+					response = createResponse(
+							getDescriptorCache().getDeviceDescriptor(
+									deviceDescriptorBinder,
+									requestedURI,
+									device,
+									createControlPointInfo(),
+									getUpnpService().getConfiguration().getNamespace()
+							)
+					);
+				} else {
+					String deviceDescriptor = deviceDescriptorBinder.generate(
+							device,
+							createControlPointInfo(),
+							getUpnpService().getConfiguration().getNamespace()
+							);
+					response = new StreamResponseMessage(
+							deviceDescriptor,
+							new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
+							);
+				}
 			} else if (ServiceDescriptorResource.class.isAssignableFrom(resource.getClass())) {
 
 
@@ -128,11 +155,17 @@ public class ReceivingRetrieval extends ReceivingSync<StreamRequestMessage, Stre
 
 				ServiceDescriptorBinder serviceDescriptorBinder =
 						getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
-				String serviceDescriptor = serviceDescriptorBinder.generate(service);
-				response = new StreamResponseMessage(
-						serviceDescriptor,
-						new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
-						);
+				if (getDescriptorCache() != null) {
+					response = createResponse(
+							getDescriptorCache().getServiceDescriptor(serviceDescriptorBinder, requestedURI, service)
+					);
+				} else {
+					String serviceDescriptor = serviceDescriptorBinder.generate(service);
+					response = new StreamResponseMessage(
+							serviceDescriptor,
+							new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
+							);
+				}
 
 			} else if (IconResource.class.isAssignableFrom(resource.getClass())) {
 
@@ -168,6 +201,22 @@ public class ReceivingRetrieval extends ReceivingSync<StreamRequestMessage, Stre
 		return response;
 	}
 
+	protected StreamResponseMessage createResponse(DescriptorCache.Entry entry) {
+		StreamResponseMessage response;
+		if (getDescriptorCache().isNotModified(entry, getInputMessage().getHeaders())) {
+			log.fine("Descriptor not modified, responding without body");
+			response = new StreamResponseMessage(UpnpResponse.Status.NOT_MODIFIED);
+		} else {
+			response = new StreamResponseMessage(
+					entry.getBody(),
+					new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
+					);
+		}
+		response.getHeaders().add(DescriptorCache.HEADER_ETAG, entry.getETag());
+		response.getHeaders().add(DescriptorCache.HEADER_LAST_MODIFIED, entry.getLastModifiedString());
+		return response;
+	}
+
 	protected ControlPointInfo createControlPointInfo() {
 		return new ControlPointInfo(getInputMessage().getHeaders());
 	}
@@ -144,7 +144,7 @@ public class ReceivingSubscribe extends ReceivingSync<StreamRequestMessage, Outg
 
                 public void eventReceived() {
                     // The only thing we are interested in, sending an event when the state changes
-                    getUpnpService().getConfiguration().getSyncProtocolExecutor().execute(
+                    getUpnpService().getConfiguration().getEventExecutor().execute(
                             getUpnpService().getProtocolFactory().createSendingEvent(this)
                     );
                 }
@@ -178,7 +178,7 @@ public class ReceivingSubscribe extends ReceivingSync<StreamRequestMessage, Outg
             subscription.establish();
 
             log.fine("Response to subscription sent successfully, now sending initial event asynchronously");
-            getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+            getUpnpService().getConfiguration().getEventExecutor().execute(
                     getUpnpService().getProtocolFactory().createSendingEvent(subscription)
             );
 
@@ -21,9 +21,11 @@ import java.util.logging.Logger;
 import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.model.gena.LocalGENASubscription;
 import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.gena.OutgoingEventRequestMessage;
 import org.fourthline.cling.model.types.UnsignedIntegerFourBytes;
 import org.fourthline.cling.protocol.SendingSync;
+import org.fourthline.cling.transport.spi.GENAEventProcessor;
 
 import java.net.URL;
 
@@ -36,6 +38,10 @@ import java.net.URL;
  * many messages. What is returned is always the last response, that is, the response for the
  * message sent to the last callback URL in the list of the subscriber.
  * </p>
+ * <p>
+ * The body is written once and shared by the messages to all callback URLs. With an
+ * {@link EventBodyCache}, it is also shared with the other subscriptions to the same service.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -48,17 +54,38 @@ public class SendingEvent extends SendingSync<OutgoingEventRequestMessage, Strea
     final protected UnsignedIntegerFourBytes currentSequence;
 
     public SendingEvent(UpnpService upnpService, LocalGENASubscription subscription) {
+        this(upnpService, subscription, null);
+    }
+
+    /**
+     * @param eventBodyCache If not <code>null</code>, the body is shared with other subscriptions which send
+     *                       the same state variable values.
+     */
+    public SendingEvent(UpnpService upnpService, LocalGENASubscription subscription, EventBodyCache eventBodyCache) {
         super(upnpService, null); // Special case, we actually need to send several messages to each callback URL
 
         // TODO: Ugly design! It is critical (concurrency) that we prepare the event messages here, in the constructor thread!
 
         subscriptionId = subscription.getSubscriptionId();
 
+        GENAEventProcessor processor = getUpnpService().getConfiguration().getGenaEventProcessor();
+
         requestMessages = new OutgoingEventRequestMessage[subscription.getCallbackURLs().size()];
         int i = 0;
         for (URL url : subscription.getCallbackURLs()) {
             requestMessages[i] = new OutgoingEventRequestMessage(subscription, url);
-            getUpnpService().getConfiguration().getGenaEventProcessor().writeBody(requestMessages[i]);
+            if (i == 0 && eventBodyCache != null) {
+                requestMessages[i].setBody(
+                        UpnpMessage.BodyType.BYTES,
+                        eventBodyCache.getBody(processor, requestMessages[i])
+                );
+            } else if (i > 0 && requestMessages[0].hasBody()
+                    && !UpnpMessage.BodyType.STREAM.equals(requestMessages[0].getBodyType())) {
+                // All callback URLs receive the same values, write the body only once
+                requestMessages[i].setBody(requestMessages[0].getBodyType(), requestMessages[0].getBody());
+            } else {
+                processor.writeBody(requestMessages[i]);
+            }
             i++;
         }
 
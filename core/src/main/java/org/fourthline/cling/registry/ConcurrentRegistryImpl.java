@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.model.ServiceReference;
+import org.fourthline.cling.model.gena.LocalGENASubscription;
+import org.fourthline.cling.model.gena.RemoteGENASubscription;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.resource.Resource;
+import org.fourthline.cling.model.types.DeviceType;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDN;
+
+import javax.enterprise.inject.Alternative;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A {@link Registry} with read operations that never block.
+ * <p>
+ * All lookup methods of this implementation access the concurrent device, subscription, and
+ * resource indexes directly, without acquiring the registry lock. Modifications of the registry,
+ * maintenance, and the notification of {@link RegistryListener}s are still serialized and
+ * behave exactly like {@link RegistryImpl}. A reader might observe a device graph while its
+ * registration is in progress, e.g. its resources are already available but the device
+ * itself is not.
+ * </p>
+ * <p>
+ * Enable this implementation by overriding
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#createRegistry(org.fourthline.cling.UpnpService)}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+@Alternative
+public class ConcurrentRegistryImpl extends RegistryImpl {
+
+    public ConcurrentRegistryImpl() {
+    }
+
+    /**
+     * Starts background maintenance immediately.
+     */
+    public ConcurrentRegistryImpl(UpnpService upnpService) {
+        super(upnpService);
+    }
+
+    @Override
+    public Collection<RegistryListener> getListeners() {
+        return Collections.unmodifiableCollection(registryListeners);
+    }
+
+    @Override
+    public Device getDevice(UDN udn, boolean rootOnly) {
+        Device device;
+        if ((device = localItems.get(udn, rootOnly)) != null) return device;
+        if ((device = remoteItems.get(udn, rootOnly)) != null) return device;
+        return null;
+    }
+
+    @Override
+    public LocalDevice getLocalDevice(UDN udn, boolean rootOnly) {
+        return localItems.get(udn, rootOnly);
+    }
+
+    @Override
+    public RemoteDevice getRemoteDevice(UDN udn, boolean rootOnly) {
+        return remoteItems.get(udn, rootOnly);
+    }
+
+    @Override
+    public Collection<LocalDevice> getLocalDevices() {
+        return Collections.unmodifiableCollection(localItems.get());
+    }
+
+    @Override
+    public Collection<RemoteDevice> getRemoteDevices() {
+        return Collections.unmodifiableCollection(remoteItems.get());
+    }
+
+    @Override
+    public Collection<Device> getDevices() {
+        Set all = new HashSet();
+        all.addAll(localItems.get());
+        all.addAll(remoteItems.get());
+        return Collections.unmodifiableCollection(all);
+    }
+
+    @Override
+    public Collection<Device> getDevices(DeviceType deviceType) {
+        Collection<Device> devices = new HashSet();
+
+        devices.addAll(localItems.get(deviceType));
+        devices.addAll(remoteItems.get(deviceType));
+
+        return Collections.unmodifiableCollection(devices);
+    }
+
+    @Override
+    public Collection<Device> getDevices(ServiceType serviceType) {
+        Collection<Device> devices = new HashSet();
+
+        devices.addAll(localItems.get(serviceType));
+        devices.addAll(remoteItems.get(serviceType));
+
+        return Collections.unmodifiableCollection(devices);
+    }
+
+    @Override
+    public Service getService(ServiceReference serviceReference) {
+        Device device;
+        if ((device = getDevice(serviceReference.getUdn(), false)) != null) {
+            return device.findService(serviceReference.getServiceId());
+        }
+        return null;
+    }
+
+    @Override
+    public Resource getResource(URI pathQuery) throws IllegalArgumentException {
+        return findResource(pathQuery);
+    }
+
+    @Override
+    public <T extends Resource> T getResource(Class<T> resourceType, URI pathQuery) throws IllegalArgumentException {
+        Resource resource = findResource(pathQuery);
+        if (resource != null && resourceType.isAssignableFrom(resource.getClass())) {
+            return (T) resource;
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<Resource> getResources() {
+        Collection<Resource> s = new HashSet();
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.get()) {
+            s.add(resourceItem.getItem());
+        }
+        return s;
+    }
+
+    @Override
+    public <T extends Resource> Collection<T> getResources(Class<T> resourceType) {
+        Collection<T> s = new HashSet();
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.get()) {
+            if (resourceType.isAssignableFrom(resourceItem.getItem().getClass()))
+                s.add((T) resourceItem.getItem());
+        }
+        return s;
+    }
+
+    @Override
+    public LocalGENASubscription getLocalSubscription(String subscriptionId) {
+        return localItems.getSubscription(subscriptionId);
+    }
+
+    @Override
+    public RemoteGENASubscription getRemoteSubscription(String subscriptionId) {
+        return remoteItems.getSubscription(subscriptionId);
+    }
+}
@@ -55,6 +55,24 @@ public class DefaultRegistryListener implements RegistryListener {
 
     }
 
+    /**
+     * Calls {@link #remoteDeviceRemoved(Registry, org.fourthline.cling.model.meta.RemoteDevice)} with the
+     * previous graph and {@link #remoteDeviceAdded(Registry, org.fourthline.cling.model.meta.RemoteDevice)}
+     * with the new graph, if the graph has been replaced.
+     * <p>
+     * Subclasses written before this method existed see a changed device as before, override it to
+     * update an existing graph instead.
+     * </p>
+     *
+     * @param registry The Cling registry of all devices and services know to the local UPnP stack.
+     * @param diff     The previous and the new root device metadata graph, and their differences.
+     */
+    public void remoteDeviceChanged(Registry registry, RemoteDeviceDiff diff) {
+        if (diff.getPreviousDevice() == diff.getDevice()) return;
+        remoteDeviceRemoved(registry, diff.getPreviousDevice());
+        remoteDeviceAdded(registry, diff.getDevice());
+    }
+
     /**
      * Calls the {@link #deviceRemoved(Registry, org.fourthline.cling.model.meta.Device)} method.
      *
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Orders registry items by the time they expire, so that registry maintenance only has to
+ * look at the items which are actually due, instead of checking the expiration details
+ * of every registered item.
+ * </p>
+ * <p>
+ * At most one entry is queued per key, it is tied to the key and not to a particular item
+ * instance. When an entry becomes due, the currently registered item for that key is checked
+ * again: Removed items are ignored, items which have been refreshed or replaced in the meantime
+ * are queued again with their new expiration time.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+class ExpirationQueue<K, I> {
+
+    protected final RegistryImpl registry;
+    protected final boolean halfTime;
+    protected final PriorityBlockingQueue<Entry<K>> queue = new PriorityBlockingQueue<Entry<K>>();
+    protected final ConcurrentMap<K, Entry<K>> scheduled = new ConcurrentHashMap<K, Entry<K>>();
+
+    /**
+     * @param halfTime If <code>true</code> then half maximum age is used to determine expiration.
+     */
+    ExpirationQueue(RegistryImpl registry, boolean halfTime) {
+        this.registry = registry;
+        this.halfTime = halfTime;
+    }
+
+    /**
+     * Queues the item for its expiration time, does nothing if the item never expires.
+     */
+    void schedule(RegistryItem<K, I> item) {
+        long expirationSeconds = item.getExpirationDetails().getExpirationTimestampSeconds(halfTime);
+        if (expirationSeconds == Long.MAX_VALUE) return;
+        schedule(item.getKey(), expirationSeconds * 1000);
+    }
+
+    /**
+     * Check the item with the given key again after the given time, even if it did not expire.
+     */
+    void scheduleAfter(K key, long delayMillis) {
+        schedule(key, registry.currentTimeMillis() + delayMillis);
+    }
+
+    /**
+     * Removes all due entries from the queue.
+     *
+     * @param items The currently registered items.
+     * @return The due items which actually expired, in order of their expiration time.
+     */
+    List<RegistryItem<K, I>> pollExpired(Map<K, RegistryItem<K, I>> items) {
+        List<RegistryItem<K, I>> expired = new ArrayList();
+        long now = registry.currentTimeMillis();
+        Entry<K> entry;
+        while ((entry = queue.peek()) != null && entry.dueMillis <= now) {
+            // Another entry might have been added at the head, it's due as well
+            entry = queue.poll();
+
+            // An earlier entry for the same key replaced this one
+            if (!scheduled.remove(entry.key, entry)) continue;
+
+            RegistryItem<K, I> item = items.get(entry.key);
+            if (item == null) continue;
+
+            if (hasExpired(item, now)) {
+                expired.add(item);
+            } else {
+                schedule(item);
+            }
+        }
+        return expired;
+    }
+
+    protected boolean hasExpired(RegistryItem<K, I> item, long now) {
+        long expirationSeconds = item.getExpirationDetails().getExpirationTimestampSeconds(halfTime);
+        return expirationSeconds != Long.MAX_VALUE && expirationSeconds * 1000 <= now;
+    }
+
+    int size() {
+        return scheduled.size();
+    }
+
+    void clear() {
+        queue.clear();
+        scheduled.clear();
+    }
+
+    protected void schedule(K key, long dueMillis) {
+        Entry<K> existing = scheduled.get(key);
+        if (existing != null && existing.dueMillis <= dueMillis) {
+            // The existing entry will check the item earlier and reschedule it if necessary
+            return;
+        }
+        Entry<K> entry = new Entry<K>(key, dueMillis);
+        scheduled.put(key, entry);
+        queue.offer(entry);
+    }
+
+    static class Entry<K> implements Comparable<Entry<K>> {
+
+        final K key;
+        final long dueMillis;
+
+        Entry(K key, long dueMillis) {
+            this.key = key;
+            this.dueMillis = dueMillis;
+        }
+
+        public int compareTo(Entry<K> o) {
+            return dueMillis < o.dueMillis ? -1 : (dueMillis == o.dueMillis ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") KEY: " + key + " DUE: " + dueMillis;
+        }
+    }
+}
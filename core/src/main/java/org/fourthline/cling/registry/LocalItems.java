@@ -23,11 +23,13 @@ import org.fourthline.cling.model.gena.LocalGENASubscription;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.types.UDN;
 import org.fourthline.cling.protocol.SendingAsync;
+import org.fourthline.cling.protocol.async.SendingNotificationAlive;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -42,7 +44,8 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
     private static Logger log = Logger.getLogger(Registry.class.getName());
 
     LocalItems(RegistryImpl registry) {
-        super(registry);
+        // Devices are advertised again at half their maximum age
+        super(registry, true, false);
     }
 
     void add(LocalDevice localDevice) throws RegistrationException {
@@ -73,7 +76,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
                 localDevice.getIdentity().getMaxAgeSeconds()
         );
 
-        deviceItems.add(localItem);
+        putDeviceItem(localItem);
         log.fine("Registered local device: " + localItem);
 
         if (localDevice.isSendByeOnStart()) {
@@ -93,7 +96,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
     Collection<LocalDevice> get() {
         Set<LocalDevice> c = new HashSet();
-        for (RegistryItem<UDN, LocalDevice> item : deviceItems) {
+        for (RegistryItem<UDN, LocalDevice> item : getDeviceItems()) {
             c.add(item.getItem());
         }
         return Collections.unmodifiableCollection(c);
@@ -110,7 +113,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
             log.fine("Removing local device from registry: " + localDevice);
 
-            deviceItems.remove(new RegistryItem(localDevice.getIdentity().getUdn()));
+            removeDeviceItem(localDevice.getIdentity().getUdn());
 
             for (Resource deviceResource : getResources(localDevice)) {
                 if (registry.removeResource(deviceResource)) {
@@ -119,7 +122,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
             }
 
             // Active subscriptions
-            Iterator<RegistryItem<String, LocalGENASubscription>> it = subscriptionItems.iterator();
+            Iterator<RegistryItem<String, LocalGENASubscription>> it = getSubscriptionItems().iterator();
             while (it.hasNext()) {
                 final RegistryItem<String, LocalGENASubscription> incomingSubscription = it.next();
 
@@ -176,37 +179,35 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
     /* ############################################################################################################ */
 
-    void maintain() {
-
-    	if(deviceItems.isEmpty()) return ;
+    int maintain() {
 
         // Refresh expired local devices
-        Set<RegistryItem<UDN, LocalDevice>> expiredLocalItems = new HashSet();
-        for (RegistryItem<UDN, LocalDevice> localItem : deviceItems) {
-            if (localItem.getItem().isAdvertising() && localItem.getExpirationDetails().hasExpired(true)) {
-                log.finer("Local item has expired: " + localItem);
-                expiredLocalItems.add(localItem);
-            }
-        }
+        List<RegistryItem<UDN, LocalDevice>> expiredLocalItems = deviceExpirations.pollExpired(deviceItems);
         for (RegistryItem<UDN, LocalDevice> expiredLocalItem : expiredLocalItems) {
+            if (!expiredLocalItem.getItem().isAdvertising()) {
+                // Check again later, advertising might have been enabled by then
+                deviceExpirations.scheduleAfter(
+                        expiredLocalItem.getKey(),
+                        expiredLocalItem.getExpirationDetails().getMaxAgeSeconds() * 500L
+                );
+                continue;
+            }
             log.fine("Refreshing local device advertisement: " + expiredLocalItem.getItem());
             advertiseAlive(expiredLocalItem.getItem());
             expiredLocalItem.getExpirationDetails().stampLastRefresh();
+            deviceExpirations.schedule(expiredLocalItem);
         }
 
         // Expire incoming subscriptions
-        Set<RegistryItem<String, LocalGENASubscription>> expiredIncomingSubscriptions = new HashSet();
-        for (RegistryItem<String, LocalGENASubscription> item : subscriptionItems) {
-            if (item.getExpirationDetails().hasExpired(false)) {
-                expiredIncomingSubscriptions.add(item);
-            }
-        }
+        List<RegistryItem<String, LocalGENASubscription>> expiredIncomingSubscriptions =
+                subscriptionExpirations.pollExpired(subscriptionItems);
         for (RegistryItem<String, LocalGENASubscription> subscription : expiredIncomingSubscriptions) {
             log.fine("Removing expired: " + subscription);
             removeSubscription(subscription.getItem());
             subscription.getItem().end(CancelReason.EXPIRED);
         }
 
+        return expiredLocalItems.size() + expiredIncomingSubscriptions.size();
     }
 
     void shutdown() {
@@ -222,6 +223,12 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
     protected Random randomGenerator = new Random();
 
     protected void advertiseAlive(final LocalDevice localDevice) {
+        final SendingNotificationAlive prot = registry.getProtocolFactory().createSendingNotificationAlive(localDevice);
+        if (prot.getNotificationScheduler() != null) {
+            // The notification scheduler delays the first bulk randomly, to avoid flooding the network
+            registry.executeAsyncProtocol(prot);
+            return;
+        }
         registry.executeAsyncProtocol(new Runnable() {
             public void run() {
                 try {
@@ -230,7 +237,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
                 } catch (InterruptedException ex) {
                     log.severe("Background execution interrupted: " + ex.getMessage());
                 }
-                registry.getProtocolFactory().createSendingNotificationAlive(localDevice).run();
+                prot.run();
             }
         });
     }
@@ -251,6 +258,8 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 		
 		if(isAdvertising) {
 			advertiseAlive(localDevice);
+			// Let the next maintenance run decide if the advertisement has to be refreshed
+			deviceExpirations.scheduleAfter(localDevice.getIdentity().getUdn(), 0);
 		} else {
 			advertiseByebye(localDevice, true);
 		}
@@ -202,6 +202,21 @@ public interface Registry {
      */
     public void addDevice(RemoteDevice remoteDevice) throws RegistrationException;
 
+    /**
+     * Called internally when the descriptors of a registered remote device changed, while its descriptor
+     * URL and configuration identifier are still the same.
+     * <p>
+     * The registered graph is replaced like a device with a new description is replaced by
+     * {@link #addDevice(org.fourthline.cling.model.meta.RemoteDevice)}, listeners are notified of the
+     * change. If no device with the same UDN is registered, the device is added. Note that this method
+     * has been added to the interface, it breaks custom implementations which don't extend
+     * {@link RegistryImpl}.
+     * </p>
+     *
+     * @throws RegistrationException If a conflict with an already registered device was detected.
+     */
+    public void replaceDevice(RemoteDevice remoteDevice) throws RegistrationException;
+
     /**
      * Called internally by the UPnP discovery protocol.
      */
@@ -42,9 +42,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -95,6 +95,13 @@ public class RegistryImpl implements Registry {
         return getUpnpService().getProtocolFactory();
     }
 
+    /**
+     * @return The currently running maintenance task, or <code>null</code> if the registry is paused.
+     */
+    public RegistryMaintainer getRegistryMaintainer() {
+        return registryMaintainer;
+    }
+
     protected RegistryMaintainer createRegistryMaintainer() {
         return new RegistryMaintainer(
                 this,
@@ -104,8 +111,8 @@ public class RegistryImpl implements Registry {
 
     // #################################################################################################
 
-    protected final Set<RegistryListener> registryListeners = new HashSet();
-    protected final Set<RegistryItem<URI, Resource>> resourceItems = new HashSet();
+    protected final Set<RegistryListener> registryListeners = new CopyOnWriteArraySet<RegistryListener>();
+    protected final ResourceItems resourceItems = new ResourceItems(this);
     protected final List<Runnable> pendingExecutions = new ArrayList();
 
     protected final RemoteItems remoteItems = new RemoteItems(this);
@@ -169,6 +176,15 @@ public class RegistryImpl implements Registry {
         remoteItems.add(remoteDevice);
     }
 
+    synchronized public void replaceDevice(RemoteDevice remoteDevice) {
+        RemoteDevice registeredDevice = remoteItems.get(remoteDevice.getIdentity().getUdn(), true);
+        if (registeredDevice != null) {
+            remoteItems.replace(registeredDevice, remoteDevice);
+        } else {
+            remoteItems.add(remoteDevice);
+        }
+    }
+
     synchronized public boolean update(RemoteDeviceIdentity rdIdentity) {
         return remoteItems.update(rdIdentity);
     }
@@ -257,30 +273,27 @@ public class RegistryImpl implements Registry {
     // #################################################################################################
 
     synchronized public Resource getResource(URI pathQuery) throws IllegalArgumentException {
+        return findResource(pathQuery);
+    }
+
+    /**
+     * Matches the given path and query against all registered resources, doesn't lock the registry.
+     */
+    protected Resource findResource(URI pathQuery) throws IllegalArgumentException {
         if (pathQuery.isAbsolute()) {
             throw new IllegalArgumentException("Resource URI can not be absolute, only path and query:" + pathQuery);
         }
 
-        // Note: Uses field access on resourceItems for performance reasons
-
-		for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-        	Resource resource = resourceItem.getItem();
-        	if (resource.matches(pathQuery)) {
-                return resource;
-            }
+        Resource resource = resourceItems.get(pathQuery);
+        if (resource != null) {
+            return resource;
         }
 
         // TODO: UPNP VIOLATION: Fuppes on my ReadyNAS thinks it's a cool idea to add a slash at the end of the callback URI...
         // It also cuts off any query parameters in the callback URL - nice!
         if (pathQuery.getPath().endsWith("/")) {
             URI pathQueryWithoutSlash = URI.create(pathQuery.toString().substring(0, pathQuery.toString().length() - 1));
-
- 			for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-            	Resource resource = resourceItem.getItem();
-            	if (resource.matches(pathQueryWithoutSlash)) {
-                    return resource;
-                }
-            }
+            return resourceItems.get(pathQueryWithoutSlash);
         }
 
         return null;
@@ -296,7 +309,7 @@ public class RegistryImpl implements Registry {
 
     synchronized public Collection<Resource> getResources() {
         Collection<Resource> s = new HashSet();
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.get()) {
             s.add(resourceItem.getItem());
         }
         return s;
@@ -304,7 +317,7 @@ public class RegistryImpl implements Registry {
 
     synchronized public <T extends Resource> Collection<T> getResources(Class<T> resourceType) {
         Collection<T> s = new HashSet();
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.get()) {
             if (resourceType.isAssignableFrom(resourceItem.getItem().getClass()))
                 s.add((T) resourceItem.getItem());
         }
@@ -316,13 +329,13 @@ public class RegistryImpl implements Registry {
     }
 
     synchronized public void addResource(Resource resource, int maxAgeSeconds) {
-        RegistryItem resourceItem = new RegistryItem(resource.getPathQuery(), resource, maxAgeSeconds);
-        resourceItems.remove(resourceItem);
+        RegistryItem<URI, Resource> resourceItem =
+                new RegistryItem<URI, Resource>(resource.getPathQuery(), resource, maxAgeSeconds);
         resourceItems.add(resourceItem);
     }
 
     synchronized public boolean removeResource(Resource resource) {
-        return resourceItems.remove(new RegistryItem(resource.getPathQuery()));
+        return resourceItems.remove(resource.getPathQuery()) != null;
     }
 
     // #################################################################################################
@@ -377,7 +390,8 @@ public class RegistryImpl implements Registry {
             listener.beforeShutdown(this);
         }
 
-        RegistryItem<URI, Resource>[] resources = resourceItems.toArray(new RegistryItem[resourceItems.size()]);
+        RegistryItem<URI, Resource>[] resources =
+                resourceItems.get().toArray(new RegistryItem[resourceItems.size()]);
         for (RegistryItem<URI, Resource> resourceItem : resources) {
             resourceItem.getItem().shutdown();
         }
@@ -416,36 +430,49 @@ public class RegistryImpl implements Registry {
 
     /* ############################################################################################################ */
 
-    synchronized void maintain() {
+    /**
+     * @return The time used to decide which registered items are due for maintenance, override this
+     *         to control the clock in tests.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return The number of due items which have been processed.
+     */
+    synchronized int maintain() {
 
         if (log.isLoggable(Level.FINEST))
             log.finest("Maintaining registry...");
 
+        int processedItems = 0;
+
         // Remove expired resources
-        Iterator<RegistryItem<URI, Resource>> it = resourceItems.iterator();
-        while (it.hasNext()) {
-            RegistryItem<URI, Resource> item = it.next();
-            if (item.getExpirationDetails().hasExpired()) {
-                if (log.isLoggable(Level.FINER))
-                    log.finer("Removing expired resource: " + item);
-                it.remove();
-            }
+        for (RegistryItem<URI, Resource> item : resourceItems.pollExpired()) {
+            if (log.isLoggable(Level.FINER))
+                log.finer("Removing expired resource: " + item);
+            resourceItems.remove(item.getKey());
+            processedItems++;
         }
 
-        // Let each resource do its own maintenance
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
+        // Let each resource with custom maintenance do its work
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.getCustomMaintaining()) {
             resourceItem.getItem().maintain(
                     pendingExecutions,
                     resourceItem.getExpirationDetails()
             );
+            processedItems++;
         }
 
         // These add all their operations to the pendingExecutions queue
-        remoteItems.maintain();
-        localItems.maintain();
+        processedItems += remoteItems.maintain();
+        processedItems += localItems.maintain();
 
         // We now run the queue asynchronously so the maintenance thread can continue its loop undisturbed
         runPendingExecutions(true);
+
+        return processedItems;
     }
 
     synchronized void executeAsyncProtocol(Runnable runnable) {
@@ -484,7 +511,7 @@ public class RegistryImpl implements Registry {
 
             log.fine("====================================  RESOURCES  ================================================");
 
-            for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
+            for (RegistryItem<URI, Resource> resourceItem : resourceItems.get()) {
                 log.fine(resourceItem.toString());
             }
 
@@ -14,24 +14,36 @@
  * You should have received a copy of the GNU Lesser General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.fourthline.cling.registry;
 
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.ValidationException;
 import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.Service;
 import org.fourthline.cling.model.gena.GENASubscription;
 import org.fourthline.cling.model.types.DeviceType;
 import org.fourthline.cling.model.types.ServiceType;
 import org.fourthline.cling.model.types.UDN;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Devices and subscriptions are stored in concurrent maps, keyed by UDN and subscription
+ * identifier. Additional hash indexes are maintained for all root and embedded devices by
+ * UDN, device type, and service type. Modifications are serialized by the registry, the
+ * read methods of this class never block and are safe to call without holding the registry
+ * lock.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -39,28 +51,84 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
 
     protected final RegistryImpl registry;
 
-    protected final Set<RegistryItem<UDN, D>> deviceItems = new HashSet();
-    protected final Set<RegistryItem<String, S>> subscriptionItems = new HashSet();
+    protected final ConcurrentMap<UDN, RegistryItem<UDN, D>> deviceItems =
+            new ConcurrentHashMap<UDN, RegistryItem<UDN, D>>();
+
+    protected final ConcurrentMap<String, RegistryItem<String, S>> subscriptionItems =
+            new ConcurrentHashMap<String, RegistryItem<String, S>>();
+
+    // Root and embedded devices
+    protected final ConcurrentMap<UDN, D> devicesByUDN =
+            new ConcurrentHashMap<UDN, D>();
+
+    // Keyed by namespace and type without version, compatible versions are filtered on lookup
+    protected final ConcurrentMap<String, Set<D>> devicesByDeviceType =
+            new ConcurrentHashMap<String, Set<D>>();
 
-    RegistryItems(RegistryImpl registry) {
+    // All devices (root or embedded) which have at least one service of the type
+    protected final ConcurrentMap<String, Set<D>> devicesByServiceType =
+            new ConcurrentHashMap<String, Set<D>>();
+
+    protected final ExpirationQueue<UDN, D> deviceExpirations;
+    protected final ExpirationQueue<String, S> subscriptionExpirations;
+
+    /**
+     * @param deviceHalfTime If <code>true</code>, devices are due for maintenance at half their maximum age.
+     * @param subscriptionHalfTime If <code>true</code>, subscriptions are due for maintenance at half their duration.
+     */
+    RegistryItems(RegistryImpl registry, boolean deviceHalfTime, boolean subscriptionHalfTime) {
         this.registry = registry;
+        this.deviceExpirations = new ExpirationQueue<UDN, D>(registry, deviceHalfTime);
+        this.subscriptionExpirations = new ExpirationQueue<String, S>(registry, subscriptionHalfTime);
     }
 
-    Set<RegistryItem<UDN, D>> getDeviceItems() {
-        return deviceItems;
+    Collection<RegistryItem<UDN, D>> getDeviceItems() {
+        return deviceItems.values();
     }
 
-    Set<RegistryItem<String, S>> getSubscriptionItems() {
-        return subscriptionItems;
+    Collection<RegistryItem<String, S>> getSubscriptionItems() {
+        return subscriptionItems.values();
     }
 
     abstract void add(D device);
     abstract boolean remove(final D device);
     abstract void removeAll();
 
-    abstract void maintain();
+    /**
+     * @return The number of due devices and subscriptions which have been processed.
+     */
+    abstract int maintain();
     abstract void shutdown();
 
+    /**
+     * Stores the item, updates the device indexes, and queues the item for maintenance.
+     * <p>
+     * An already registered item with the same UDN is replaced atomically, concurrent
+     * readers will never see the device disappear while its expiration details are updated.
+     * </p>
+     */
+    void putDeviceItem(RegistryItem<UDN, D> item) {
+        RegistryItem<UDN, D> previous = deviceItems.put(item.getKey(), item);
+        if (previous == null || previous.getItem() != item.getItem()) {
+            if (previous != null) unindex(previous.getItem());
+            index(item.getItem());
+        }
+        deviceExpirations.schedule(item);
+    }
+
+    /**
+     * Removes the item and its root and embedded devices from the indexes.
+     *
+     * @return The removed item, or <code>null</code> if no item was registered with the given UDN.
+     */
+    RegistryItem<UDN, D> removeDeviceItem(UDN udn) {
+        RegistryItem<UDN, D> removed = deviceItems.remove(udn);
+        if (removed != null) {
+            unindex(removed.getItem());
+        }
+        return removed;
+    }
+
     /**
      * Returns root and embedded devices registered under the given UDN.
      *
@@ -70,23 +138,11 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      *         no device with the given UDN has been registered.
      */
     D get(UDN udn, boolean rootOnly) {
-        try {
-            for (RegistryItem<UDN, D> item : deviceItems) {
-                D device = item.getItem();
-                if (device.getIdentity().getUdn().equals(udn)) {
-                    return device;
-                }
-                if (!rootOnly) {
-                    D foundDevice = (D)item.getItem().findDevice(udn);
-                    if (foundDevice != null) return foundDevice;
-                }
-            }
-        } catch (Exception ex) {
-            // We've seen IncompatibleClassChangeError here. Return null because we don't
-            // have a better solution for now.
+        if (rootOnly) {
+            RegistryItem<UDN, D> item = deviceItems.get(udn);
+            return item != null ? item.getItem() : null;
         }
-
-        return null;
+        return devicesByUDN.get(udn);
     }
 
     /**
@@ -100,10 +156,11 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      */
     Collection<D> get(DeviceType deviceType) {
         Collection<D> devices = new HashSet();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-            D[] d = (D[])item.getItem().findDevices(deviceType);
-            if (d != null) {
-                devices.addAll(Arrays.asList(d));
+        Set<D> candidates = devicesByDeviceType.get(getIndexKey(deviceType));
+        if (candidates != null) {
+            for (D candidate : candidates) {
+                if (candidate.getType().implementsVersion(deviceType))
+                    devices.add(candidate);
             }
         }
         return devices;
@@ -117,11 +174,15 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      */
     Collection<D> get(ServiceType serviceType) {
         Collection<D> devices = new HashSet();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-
-            D[] d = (D[])item.getItem().findDevices(serviceType);
-            if (d != null) {
-                devices.addAll(Arrays.asList(d));
+        Set<D> candidates = devicesByServiceType.get(getIndexKey(serviceType));
+        if (candidates != null) {
+            for (D candidate : candidates) {
+                for (Service service : candidate.getServices()) {
+                    if (service.getServiceType().implementsVersion(serviceType)) {
+                        devices.add(candidate);
+                        break;
+                    }
+                }
             }
         }
         return devices;
@@ -129,7 +190,7 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
 
     Collection<D> get() {
         Collection<D> devices = new HashSet();
-        for (RegistryItem<UDN, D> item : deviceItems) {
+        for (RegistryItem<UDN, D> item : deviceItems.values()) {
             devices.add(item.getItem());
         }
         return devices;
@@ -140,7 +201,7 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
     }
 
     boolean contains(UDN udn) {
-        return deviceItems.contains(new RegistryItem<UDN, D>(udn));
+        return deviceItems.containsKey(udn);
     }
 
     void addSubscription(S subscription) {
@@ -152,7 +213,8 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
                         subscription.getActualDurationSeconds()
                 );
 
-        subscriptionItems.add(subscriptionItem);
+        subscriptionItems.put(subscriptionItem.getKey(), subscriptionItem);
+        subscriptionExpirations.schedule(subscriptionItem);
     }
 
     boolean updateSubscription(S subscription) {
@@ -164,16 +226,12 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
     }
 
     boolean removeSubscription(S subscription) {
-        return subscriptionItems.remove(new RegistryItem<String, S>(subscription.getSubscriptionId()));
+        return subscriptionItems.remove(subscription.getSubscriptionId()) != null;
     }
 
     S getSubscription(String subscriptionId) {
-        for (RegistryItem<String, S> registryItem : subscriptionItems) {
-            if (registryItem.getKey().equals(subscriptionId)) {
-                return registryItem.getItem();
-            }
-        }
-        return null;
+        RegistryItem<String, S> registryItem = subscriptionItems.get(subscriptionId);
+        return registryItem != null ? registryItem.getItem() : null;
     }
 
     Resource[] getResources(Device device) throws RegistrationException {
@@ -183,4 +241,67 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
             throw new RegistrationException("Resource discover error: " + ex.toString(), ex);
         }
     }
+
+    /* ############################################################################################################ */
+
+    protected void index(D rootDevice) {
+        for (D device : getDeviceGraph(rootDevice)) {
+            devicesByUDN.put(device.getIdentity().getUdn(), device);
+            if (device.getType() != null) {
+                addToIndex(devicesByDeviceType, getIndexKey(device.getType()), device);
+            }
+            if (device.hasServices()) {
+                for (Service service : device.getServices()) {
+                    addToIndex(devicesByServiceType, getIndexKey(service.getServiceType()), device);
+                }
+            }
+        }
+    }
+
+    protected void unindex(D rootDevice) {
+        for (D device : getDeviceGraph(rootDevice)) {
+            devicesByUDN.remove(device.getIdentity().getUdn());
+            if (device.getType() != null) {
+                removeFromIndex(devicesByDeviceType, getIndexKey(device.getType()), device);
+            }
+            if (device.hasServices()) {
+                for (Service service : device.getServices()) {
+                    removeFromIndex(devicesByServiceType, getIndexKey(service.getServiceType()), device);
+                }
+            }
+        }
+    }
+
+    protected List<D> getDeviceGraph(D rootDevice) {
+        List<D> devices = new ArrayList();
+        devices.add(rootDevice);
+        Collections.addAll(devices, (D[]) rootDevice.findEmbeddedDevices());
+        return devices;
+    }
+
+    protected void addToIndex(ConcurrentMap<String, Set<D>> index, String key, D device) {
+        Set<D> devices = index.get(key);
+        if (devices == null) {
+            Set<D> newDevices = new CopyOnWriteArraySet<D>();
+            devices = index.putIfAbsent(key, newDevices);
+            if (devices == null) devices = newDevices;
+        }
+        devices.add(device);
+    }
+
+    protected void removeFromIndex(ConcurrentMap<String, Set<D>> index, String key, D device) {
+        Set<D> devices = index.get(key);
+        if (devices != null) {
+            devices.remove(device);
+            if (devices.isEmpty()) index.remove(key, devices);
+        }
+    }
+
+    protected String getIndexKey(DeviceType deviceType) {
+        return deviceType.getNamespace() + ":" + deviceType.getType();
+    }
+
+    protected String getIndexKey(ServiceType serviceType) {
+        return serviceType.getNamespace() + ":" + serviceType.getType();
+    }
 }
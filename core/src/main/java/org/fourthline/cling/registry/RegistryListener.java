@@ -94,6 +94,28 @@ public interface RegistryListener {
      */
     public void remoteDeviceUpdated(Registry registry, RemoteDevice device);
 
+    /**
+     * Called when a discovered device announced a new configuration, or rejoined the network.
+     * <p>
+     * A UDA 1.1 device with a new <code>CONFIGID.UPNP.ORG</code>, or any device with a new
+     * descriptor URL, is described again and the new metadata graph replaces the registered
+     * graph, without calling {@link #remoteDeviceRemoved(Registry, org.fourthline.cling.model.meta.RemoteDevice)}
+     * and {@link #remoteDeviceAdded(Registry, org.fourthline.cling.model.meta.RemoteDevice)}.
+     * A device with a new <code>BOOTID.UPNP.ORG</code> keeps its graph, but its event
+     * subscriptions are gone. The given diff shows what changed.
+     * </p>
+     * <p>
+     * Note that this method has been added to the interface, a listener which doesn't extend
+     * {@link DefaultRegistryListener} has to implement it. Before, a changed device was removed and
+     * added again, calling these two methods with the graphs of the diff preserves that behavior.
+     * {@link DefaultRegistryListener} does this by default.
+     * </p>
+     *
+     * @param registry The Cling registry of all devices and services know to the local UPnP stack.
+     * @param diff     The previous and the new root device metadata graph, and their differences.
+     */
+    public void remoteDeviceChanged(Registry registry, RemoteDeviceDiff diff);
+
     /**
      * Called when a previously discovered device disappears.
      * <p>
@@ -17,10 +17,15 @@
 
 package org.fourthline.cling.registry;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Runs periodically and calls {@link org.fourthline.cling.registry.RegistryImpl#maintain()}.
+ * <p>
+ * The registry only processes the items which are due on each run, the number of processed
+ * items is available for monitoring.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -33,23 +38,62 @@ public class RegistryMaintainer implements Runnable {
 
     private volatile boolean stopped = false;
 
+    private volatile long runs;
+    private volatile int lastProcessedItems;
+    private volatile long totalProcessedItems;
+
     public RegistryMaintainer(RegistryImpl registry, int sleepIntervalMillis) {
         this.registry = registry;
         this.sleepIntervalMillis = sleepIntervalMillis;
     }
 
+    /**
+     * @return The number of completed maintenance runs.
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return The number of due items processed by the last maintenance run.
+     */
+    public int getLastProcessedItems() {
+        return lastProcessedItems;
+    }
+
+    /**
+     * @return The number of due items processed by all maintenance runs.
+     */
+    public long getTotalProcessedItems() {
+        return totalProcessedItems;
+    }
+
     public void stop() {
         log.fine("Setting stopped status on thread");
         stopped = true;
     }
 
+    /**
+     * Runs maintenance once, called by the loop in {@link #run()} or by tests driving the registry.
+     *
+     * @return The number of due items which have been processed.
+     */
+    public int maintain() {
+        lastProcessedItems = registry.maintain();
+        totalProcessedItems += lastProcessedItems;
+        runs++;
+        if (lastProcessedItems > 0 && log.isLoggable(Level.FINER))
+            log.finer("Registry maintenance processed due items: " + lastProcessedItems);
+        return lastProcessedItems;
+    }
+
     public void run() {
         stopped = false;
         log.fine("Running registry maintenance loop every milliseconds: " + sleepIntervalMillis);
         while (!stopped) {
 
             try {
-                registry.maintain();
+                maintain();
                 Thread.sleep(sleepIntervalMillis);
             } catch (Exception ex) {
                 throw new RuntimeException(ex);
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.model.meta.Action;
+import org.fourthline.cling.model.meta.ActionArgument;
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.model.meta.StateVariable;
+import org.fourthline.cling.model.types.UDN;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between the registered and the new metadata graph of a remote root device.
+ * <p>
+ * When a device announces a new <code>CONFIGID.UPNP.ORG</code> or a new descriptor URL, its
+ * descriptors are retrieved again and the new graph replaces the registered one. Instead of
+ * removing and adding the device, the registry notifies its listeners with
+ * {@link RegistryListener#remoteDeviceChanged(Registry, RemoteDeviceDiff)}. Devices are matched
+ * by UDN, services by their device's UDN and service identifier.
+ * </p>
+ * <p>
+ * A device which rejoined the network with a new <code>BOOTID.UPNP.ORG</code> but the same
+ * configuration is not retrieved again, the diff then has the same previous and current graph
+ * and only {@link #isRebooted()} is <code>true</code>.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class RemoteDeviceDiff {
+
+    final protected RemoteDevice previousDevice;
+    final protected RemoteDevice device;
+    final protected boolean rebooted;
+
+    final protected List<RemoteDevice> addedDevices = new ArrayList();
+    final protected List<RemoteDevice> removedDevices = new ArrayList();
+    final protected List<RemoteDevice> changedDevices = new ArrayList();
+
+    final protected List<RemoteService> addedServices = new ArrayList();
+    final protected List<RemoteService> removedServices = new ArrayList();
+    final protected List<RemoteService> changedServices = new ArrayList();
+
+    public RemoteDeviceDiff(RemoteDevice previousDevice, RemoteDevice device, boolean rebooted) {
+        this.previousDevice = previousDevice;
+        this.device = device;
+        this.rebooted = rebooted;
+        if (previousDevice != device)
+            compare();
+    }
+
+    /**
+     * @return The registered root device graph before the change.
+     */
+    public RemoteDevice getPreviousDevice() {
+        return previousDevice;
+    }
+
+    /**
+     * @return The registered root device graph after the change.
+     */
+    public RemoteDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * @return <code>true</code> if the device announced a new boot identifier, its state, e.g. event
+     *         subscriptions, has been lost.
+     */
+    public boolean isRebooted() {
+        return rebooted;
+    }
+
+    /**
+     * @return Devices of the new graph which were not in the previous graph.
+     */
+    public List<RemoteDevice> getAddedDevices() {
+        return Collections.unmodifiableList(addedDevices);
+    }
+
+    /**
+     * @return Devices of the previous graph which are not in the new graph.
+     */
+    public List<RemoteDevice> getRemovedDevices() {
+        return Collections.unmodifiableList(removedDevices);
+    }
+
+    /**
+     * @return Devices of the new graph with a different type, version, or details.
+     */
+    public List<RemoteDevice> getChangedDevices() {
+        return Collections.unmodifiableList(changedDevices);
+    }
+
+    /**
+     * @return Services of the new graph which were not in the previous graph.
+     */
+    public List<RemoteService> getAddedServices() {
+        return Collections.unmodifiableList(addedServices);
+    }
+
+    /**
+     * @return Services of the previous graph which are not in the new graph.
+     */
+    public List<RemoteService> getRemovedServices() {
+        return Collections.unmodifiableList(removedServices);
+    }
+
+    /**
+     * @return Services of the new graph with a different type, URIs, actions, or state variables.
+     */
+    public List<RemoteService> getChangedServices() {
+        return Collections.unmodifiableList(changedServices);
+    }
+
+    /**
+     * @return <code>true</code> if the new graph has the same devices and services as the previous graph.
+     */
+    public boolean isEmpty() {
+        return addedDevices.isEmpty() && removedDevices.isEmpty() && changedDevices.isEmpty()
+                && addedServices.isEmpty() && removedServices.isEmpty() && changedServices.isEmpty();
+    }
+
+    /**
+     * @return <code>true</code> if the given service of the previous graph has been removed or changed.
+     */
+    public boolean isServiceReplaced(RemoteService previousService) {
+        if (removedServices.contains(previousService))
+            return true;
+        String key = getServiceKey(previousService);
+        for (RemoteService changedService : changedServices) {
+            if (getServiceKey(changedService).equals(key))
+                return true;
+        }
+        return false;
+    }
+
+    protected void compare() {
+        Map<UDN, RemoteDevice> previousDevices = getDevices(previousDevice);
+        Map<UDN, RemoteDevice> devices = getDevices(device);
+
+        for (RemoteDevice previous : previousDevices.values()) {
+            if (!devices.containsKey(previous.getIdentity().getUdn()))
+                removedDevices.add(previous);
+        }
+        for (RemoteDevice current : devices.values()) {
+            RemoteDevice previous = previousDevices.get(current.getIdentity().getUdn());
+            if (previous == null) {
+                addedDevices.add(current);
+            } else if (!isSameDevice(previous, current)) {
+                changedDevices.add(current);
+            }
+        }
+
+        Map<String, RemoteService> previousServices = getServices(previousDevice);
+        Map<String, RemoteService> services = getServices(device);
+
+        for (Map.Entry<String, RemoteService> entry : previousServices.entrySet()) {
+            if (!services.containsKey(entry.getKey()))
+                removedServices.add(entry.getValue());
+        }
+        for (Map.Entry<String, RemoteService> entry : services.entrySet()) {
+            RemoteService previous = previousServices.get(entry.getKey());
+            if (previous == null) {
+                addedServices.add(entry.getValue());
+            } else if (!isSameService(previous, entry.getValue())) {
+                changedServices.add(entry.getValue());
+            }
+        }
+    }
+
+    protected Map<UDN, RemoteDevice> getDevices(RemoteDevice root) {
+        Map<UDN, RemoteDevice> devices = new LinkedHashMap();
+        devices.put(root.getIdentity().getUdn(), root);
+        for (RemoteDevice embeddedDevice : root.findEmbeddedDevices()) {
+            devices.put(embeddedDevice.getIdentity().getUdn(), embeddedDevice);
+        }
+        return devices;
+    }
+
+    protected Map<String, RemoteService> getServices(RemoteDevice root) {
+        Map<String, RemoteService> services = new LinkedHashMap();
+        for (RemoteService service : root.findServices()) {
+            services.put(getServiceKey(service), service);
+        }
+        return services;
+    }
+
+    protected String getServiceKey(RemoteService service) {
+        return service.getDevice().getIdentity().getUdn().getIdentifierString() + "/" + service.getServiceId();
+    }
+
+    protected boolean isSameDevice(RemoteDevice a, RemoteDevice b) {
+        if (!equal(a.getType(), b.getType())
+                || a.getVersion().getMajor() != b.getVersion().getMajor()
+                || a.getVersion().getMinor() != b.getVersion().getMinor()
+                || a.getIcons().length != b.getIcons().length)
+            return false;
+        DeviceDetails da = a.getDetails();
+        DeviceDetails db = b.getDetails();
+        return equal(da.getFriendlyName(), db.getFriendlyName())
+                && equal(da.getSerialNumber(), db.getSerialNumber())
+                && equal(da.getUpc(), db.getUpc())
+                && equal(da.getPresentationURI(), db.getPresentationURI())
+                && equal(
+                    da.getManufacturerDetails() != null ? da.getManufacturerDetails().getManufacturer() : null,
+                    db.getManufacturerDetails() != null ? db.getManufacturerDetails().getManufacturer() : null)
+                && equal(
+                    da.getModelDetails() != null ? da.getModelDetails().getModelName() : null,
+                    db.getModelDetails() != null ? db.getModelDetails().getModelName() : null)
+                && equal(
+                    da.getModelDetails() != null ? da.getModelDetails().getModelNumber() : null,
+                    db.getModelDetails() != null ? db.getModelDetails().getModelNumber() : null);
+    }
+
+    protected boolean isSameService(RemoteService a, RemoteService b) {
+        if (!equal(a.getServiceType(), b.getServiceType())
+                || !equal(a.getControlURI(), b.getControlURI())
+                || !equal(a.getEventSubscriptionURI(), b.getEventSubscriptionURI()))
+            return false;
+
+        Action<RemoteService>[] actionsA = a.getActions() != null ? a.getActions() : new Action[0];
+        Action<RemoteService>[] actionsB = b.getActions() != null ? b.getActions() : new Action[0];
+        if (actionsA.length != actionsB.length)
+            return false;
+        for (Action<RemoteService> actionA : actionsA) {
+            Action<RemoteService> actionB = b.getAction(actionA.getName());
+            if (actionB == null || actionA.getArguments().length != actionB.getArguments().length)
+                return false;
+            for (int i = 0; i < actionA.getArguments().length; i++) {
+                ActionArgument<RemoteService> argA = actionA.getArguments()[i];
+                ActionArgument<RemoteService> argB = actionB.getArguments()[i];
+                if (!equal(argA.getName(), argB.getName())
+                        || argA.getDirection() != argB.getDirection()
+                        || !equal(argA.getRelatedStateVariableName(), argB.getRelatedStateVariableName()))
+                    return false;
+            }
+        }
+
+        StateVariable<RemoteService>[] variablesA =
+                a.getStateVariables() != null ? a.getStateVariables() : new StateVariable[0];
+        StateVariable<RemoteService>[] variablesB =
+                b.getStateVariables() != null ? b.getStateVariables() : new StateVariable[0];
+        if (variablesA.length != variablesB.length)
+            return false;
+        for (StateVariable<RemoteService> variableA : variablesA) {
+            StateVariable<RemoteService> variableB = b.getStateVariable(variableA.getName());
+            if (variableB == null
+                    || variableA.getEventDetails().isSendEvents() != variableB.getEventDetails().isSendEvents()
+                    || !equal(variableA.getTypeDetails().getDatatype().getDisplayString(),
+                              variableB.getTypeDetails().getDatatype().getDisplayString())
+                    || !equal(variableA.getTypeDetails().getDefaultValue(), variableB.getTypeDetails().getDefaultValue())
+                    || !Arrays.equals(variableA.getTypeDetails().getAllowedValues(), variableB.getTypeDetails().getAllowedValues()))
+                return false;
+        }
+        return true;
+    }
+
+    protected boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + ") " + getDevice()
+                + (isRebooted() ? ", rebooted" : "")
+                + ", added devices: " + addedDevices.size()
+                + ", removed devices: " + removedDevices.size()
+                + ", changed devices: " + changedDevices.size()
+                + ", added services: " + addedServices.size()
+                + ", removed services: " + removedServices.size()
+                + ", changed services: " + changedServices.size();
+    }
+}
@@ -20,18 +20,17 @@ package org.fourthline.cling.registry;
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.gena.CancelReason;
 import org.fourthline.cling.model.gena.RemoteGENASubscription;
-import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.meta.RemoteService;
 import org.fourthline.cling.model.types.UDN;
 
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,8 +43,12 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
     private static Logger log = Logger.getLogger(Registry.class.getName());
 
+    // The last announced boot identifier of each registered root device
+    protected final Map<UDN, Integer> bootIds = new HashMap();
+
     RemoteItems(RegistryImpl registry) {
-        super(registry);
+        // Subscriptions are renewed at half their duration
+        super(registry, false, true);
     }
 
     /**
@@ -57,11 +60,21 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
      * namespace, then it is added to the registry and listeners are notified that a new fully described remote
      * device is now available.
      * </p>
+     * <p>
+     * If a root device with the same UDN but a different description (descriptor URL or configuration
+     * identifier) is registered, the given device replaces it, see {@link #replace(RemoteDevice, RemoteDevice)}.
+     * </p>
      *
      * @param device The remote device to be added
      */
     void add(final RemoteDevice device) {
 
+        RemoteDevice registeredDevice = get(device.getIdentity().getUdn(), true);
+        if (registeredDevice != null && !registeredDevice.getIdentity().isSameDescription(device.getIdentity())) {
+            replace(registeredDevice, device);
+            return;
+        }
+
         if (update(device.getIdentity())) {
             log.fine("Ignoring addition, device already registered: " + device);
             return;
@@ -91,7 +104,9 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         );
         log.fine("Adding hydrated remote device to registry with "
                          + item.getExpirationDetails().getMaxAgeSeconds() + " seconds expiration: " + device);
-        deviceItems.add(item);
+        putDeviceItem(item);
+        if (device.getIdentity().getBootId() != null)
+            bootIds.put(device.getIdentity().getUdn(), device.getIdentity().getBootId());
 
         if (log.isLoggable(Level.FINEST)) {
             StringBuilder sb = new StringBuilder();
@@ -120,11 +135,9 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
     boolean update(RemoteDeviceIdentity rdIdentity) {
 
-        for (LocalDevice localDevice : registry.getLocalDevices()) {
-            if (localDevice.findDevice(rdIdentity.getUdn()) != null) {
-                log.fine("Ignoring update, a local device graph contains UDN");
-                return true;
-            }
+        if (registry.getLocalDevice(rdIdentity.getUdn(), false) != null) {
+            log.fine("Ignoring update, a local device graph contains UDN");
+            return true;
         }
 
         RemoteDevice registeredRemoteDevice = get(rdIdentity.getUdn(), false);
@@ -135,6 +148,18 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
                 registeredRemoteDevice = registeredRemoteDevice.getRoot();
             }
 
+            if (!registeredRemoteDevice.getIdentity().isSameDescription(rdIdentity)) {
+                log.fine("Description of remote device changed, it has to be retrieved again: " + rdIdentity);
+                return false;
+            }
+
+            if (isRebooted(registeredRemoteDevice, rdIdentity)) {
+                log.fine("Remote device rejoined the network with a new boot identifier: " + registeredRemoteDevice);
+                bootIds.put(registeredRemoteDevice.getIdentity().getUdn(), rdIdentity.getBootId());
+                renewOutgoingSubscriptions(registeredRemoteDevice);
+                notifyChanged(new RemoteDeviceDiff(registeredRemoteDevice, registeredRemoteDevice, true));
+            }
+
             // Override the device's maximum age if configured (systems without multicast support)
             final RegistryItem<UDN, RemoteDevice> item = new RegistryItem<UDN, RemoteDevice>(
                     registeredRemoteDevice.getIdentity().getUdn(),
@@ -145,8 +170,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             );
 
             log.fine("Updating expiration of: " + registeredRemoteDevice);
-            deviceItems.remove(item);
-            deviceItems.add(item);
+            putDeviceItem(item);
 
             log.fine("Remote device updated, calling listeners: " + registeredRemoteDevice);
             for (final RegistryListener listener : registry.getListeners()) {
@@ -189,7 +213,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             }
 
             // Active subscriptions
-            Iterator<RegistryItem<String, RemoteGENASubscription>> it = subscriptionItems.iterator();
+            Iterator<RegistryItem<String, RemoteGENASubscription>> it = getSubscriptionItems().iterator();
             while (it.hasNext()) {
                 final RegistryItem<String, RemoteGENASubscription> outgoingSubscription = it.next();
 
@@ -225,7 +249,8 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             }
 
             // Finally, remove the device from the registry
-            deviceItems.remove(new RegistryItem(registeredDevice.getIdentity().getUdn()));
+            removeDeviceItem(registeredDevice.getIdentity().getUdn());
+            bootIds.remove(registeredDevice.getIdentity().getUdn());
 
             return true;
         }
@@ -233,6 +258,107 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         return false;
     }
 
+    /**
+     * Replaces the registered graph of a root device with a new graph, described again after a change.
+     * <p>
+     * The resources of the registered graph are replaced with the resources of the new graph. Outgoing
+     * subscriptions of services which are unchanged remain active and are bound to the service of the new
+     * graph, unless the device rebooted or the event subscription URL of the service changed. All other
+     * subscriptions are ended. Listeners are notified with a {@link RemoteDeviceDiff}, not with removal
+     * and addition of the device.
+     * </p>
+     */
+    void replace(final RemoteDevice registeredDevice, final RemoteDevice device) throws RegistrationException {
+        final RemoteDeviceDiff diff = new RemoteDeviceDiff(
+                registeredDevice, device, isRebooted(registeredDevice, device.getIdentity())
+        );
+        log.fine("Replacing changed remote device: " + diff);
+
+        Resource[] registeredResources = getResources(registeredDevice);
+        Resource[] resources = getResources(device);
+        for (Resource registeredResource : registeredResources) {
+            registry.removeResource(registeredResource);
+        }
+        for (Resource deviceResource : resources) {
+            if (registry.getResource(deviceResource.getPathQuery()) != null) {
+                for (Resource registeredResource : registeredResources) {
+                    registry.addResource(registeredResource);
+                }
+                throw new RegistrationException("URI namespace conflict with already registered resource: " + deviceResource);
+            }
+        }
+        for (Resource validatedResource : resources) {
+            registry.addResource(validatedResource);
+        }
+
+        Iterator<RegistryItem<String, RemoteGENASubscription>> it = getSubscriptionItems().iterator();
+        while (it.hasNext()) {
+            final RegistryItem<String, RemoteGENASubscription> outgoingSubscription = it.next();
+            RemoteService service = outgoingSubscription.getItem().getService();
+            if (!service.getDevice().getRoot().getIdentity().getUdn().equals(registeredDevice.getIdentity().getUdn()))
+                continue;
+            if (!diff.isRebooted() && !diff.isServiceReplaced(service)) {
+                RemoteService newService = findService(device, service);
+                if (newService != null && isSameEventSubscriptionURL(service, newService)) {
+                    log.fine("Binding outgoing subscription to service of new graph: " + outgoingSubscription.getKey());
+                    outgoingSubscription.getItem().rebind(newService);
+                    continue;
+                }
+            }
+            log.fine("Removing outgoing subscription of replaced service: " + outgoingSubscription.getKey());
+            it.remove();
+            registry.getConfiguration().getRegistryListenerExecutor().execute(
+                    new Runnable() {
+                        public void run() {
+                            outgoingSubscription.getItem().end(CancelReason.DEVICE_WAS_REMOVED, null);
+                        }
+                    }
+            );
+        }
+
+        RegistryItem item = new RegistryItem(
+                device.getIdentity().getUdn(),
+                device,
+                registry.getConfiguration().getRemoteDeviceMaxAgeSeconds() != null
+                        ? registry.getConfiguration().getRemoteDeviceMaxAgeSeconds()
+                        : device.getIdentity().getMaxAgeSeconds()
+        );
+        putDeviceItem(item);
+        if (device.getIdentity().getBootId() != null)
+            bootIds.put(device.getIdentity().getUdn(), device.getIdentity().getBootId());
+
+        notifyChanged(diff);
+    }
+
+    protected RemoteService findService(RemoteDevice device, RemoteService previousService) {
+        RemoteDevice newDevice = device.findDevice(previousService.getDevice().getIdentity().getUdn());
+        return newDevice != null ? newDevice.findService(previousService.getServiceId()) : null;
+    }
+
+    protected boolean isSameEventSubscriptionURL(RemoteService previousService, RemoteService service) {
+        // Compare the strings, URL.equals() would resolve the host name
+        URL previousURL = previousService.getDevice().normalizeURI(previousService.getEventSubscriptionURI());
+        URL url = service.getDevice().normalizeURI(service.getEventSubscriptionURI());
+        return previousURL != null && url != null && previousURL.toString().equals(url.toString());
+    }
+
+    protected boolean isRebooted(RemoteDevice registeredDevice, RemoteDeviceIdentity rdIdentity) {
+        Integer bootId = bootIds.get(registeredDevice.getIdentity().getUdn());
+        return bootId != null && rdIdentity.getBootId() != null && !bootId.equals(rdIdentity.getBootId());
+    }
+
+    protected void notifyChanged(final RemoteDeviceDiff diff) {
+        for (final RegistryListener listener : registry.getListeners()) {
+            registry.getConfiguration().getRegistryListenerExecutor().execute(
+                    new Runnable() {
+                        public void run() {
+                            listener.remoteDeviceChanged(registry, diff);
+                        }
+                    }
+            );
+        }
+    }
+
     void removeAll() {
         removeAll(false);
     }
@@ -250,44 +376,37 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         // Noop
     }
 
-    void maintain() {
-
-        if (deviceItems.isEmpty()) return;
+    int maintain() {
 
         // Remove expired remote devices
-        Map<UDN, RemoteDevice> expiredRemoteDevices = new HashMap();
-        for (RegistryItem<UDN, RemoteDevice> remoteItem : deviceItems) {
-            if (log.isLoggable(Level.FINEST))
-                log.finest("Device '" + remoteItem.getItem() + "' expires in seconds: "
-                                   + remoteItem.getExpirationDetails().getSecondsUntilExpiration());
-            if (remoteItem.getExpirationDetails().hasExpired(false)) {
-                expiredRemoteDevices.put(remoteItem.getKey(), remoteItem.getItem());
-            }
-        }
-        for (RemoteDevice remoteDevice : expiredRemoteDevices.values()) {
+        List<RegistryItem<UDN, RemoteDevice>> expiredRemoteItems = deviceExpirations.pollExpired(deviceItems);
+        for (RegistryItem<UDN, RemoteDevice> expiredRemoteItem : expiredRemoteItems) {
             if (log.isLoggable(Level.FINE))
-                log.fine("Removing expired: " + remoteDevice);
-            remove(remoteDevice);
+                log.fine("Removing expired: " + expiredRemoteItem.getItem());
+            remove(expiredRemoteItem.getItem());
         }
 
         // Renew outgoing subscriptions
-        Set<RemoteGENASubscription> expiredOutgoingSubscriptions = new HashSet();
-        for (RegistryItem<String, RemoteGENASubscription> item : subscriptionItems) {
-            if (item.getExpirationDetails().hasExpired(true)) {
-                expiredOutgoingSubscriptions.add(item.getItem());
-            }
-        }
-        for (RemoteGENASubscription subscription : expiredOutgoingSubscriptions) {
+        List<RegistryItem<String, RemoteGENASubscription>> expiredOutgoingSubscriptions =
+                subscriptionExpirations.pollExpired(subscriptionItems);
+        for (RegistryItem<String, RemoteGENASubscription> item : expiredOutgoingSubscriptions) {
             if (log.isLoggable(Level.FINEST))
-                log.fine("Renewing outgoing subscription: " + subscription);
-            renewOutgoingSubscription(subscription);
+                log.fine("Renewing outgoing subscription: " + item.getItem());
+            renewOutgoingSubscription(item.getItem());
+            // Check again on the next run, until the renewal updated or removed the subscription
+            subscriptionExpirations.scheduleAfter(
+                    item.getKey(),
+                    registry.getConfiguration().getRegistryMaintenanceIntervalMillis()
+            );
         }
+
+        return expiredRemoteItems.size() + expiredOutgoingSubscriptions.size();
     }
 
     public void resume() {
         log.fine("Updating remote device expiration timestamps on resume");
         List<RemoteDeviceIdentity> toUpdate = new ArrayList<RemoteDeviceIdentity>();
-        for (RegistryItem<UDN, RemoteDevice> remoteItem : deviceItems) {
+        for (RegistryItem<UDN, RemoteDevice> remoteItem : getDeviceItems()) {
             toUpdate.add(remoteItem.getItem().getIdentity());
         }
         for (RemoteDeviceIdentity identity : toUpdate) {
@@ -298,7 +417,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
     void shutdown() {
         log.fine("Cancelling all outgoing subscriptions to remote devices during shutdown");
         List<RemoteGENASubscription> remoteSubscriptions = new ArrayList();
-        for (RegistryItem<String, RemoteGENASubscription> item : subscriptionItems) {
+        for (RegistryItem<String, RemoteGENASubscription> item : getSubscriptionItems()) {
             remoteSubscriptions.add(item.getItem());
         }
         for (RemoteGENASubscription remoteSubscription : remoteSubscriptions) {
@@ -314,6 +433,15 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
     /* ############################################################################################################ */
 
+    protected void renewOutgoingSubscriptions(RemoteDevice rootDevice) {
+        // The device lost its subscriptions, renewal will fail and end them
+        for (RegistryItem<String, RemoteGENASubscription> item : getSubscriptionItems()) {
+            RemoteGENASubscription subscription = item.getItem();
+            if (subscription.getService().getDevice().getRoot().getIdentity().getUdn().equals(rootDevice.getIdentity().getUdn()))
+                renewOutgoingSubscription(subscription);
+        }
+    }
+
     protected void renewOutgoingSubscription(final RemoteGENASubscription subscription) {
         registry.executeAsyncProtocol(
                 registry.getProtocolFactory().createSendingRenewal(subscription)
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.registry;
+
+import org.fourthline.cling.model.ExpirationDetails;
+import org.fourthline.cling.model.resource.Resource;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Logger;
+
+/**
+ * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * The default {@link org.fourthline.cling.model.resource.Resource#matches(java.net.URI)} is
+ * an equality check of the path and query, so resources are found with a single hash lookup,
+ * independent of how many resources are registered. Only resources with a custom
+ * <code>matches()</code> implementation are tested one by one, after the hash lookup failed.
+ * </p>
+ * <p>
+ * Expiring resources are queued by their expiration time. Only resources with a custom
+ * <code>maintain()</code> implementation are called on every registry maintenance run.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+class ResourceItems {
+
+    private static Logger log = Logger.getLogger(Registry.class.getName());
+
+    // Cache of resource classes which override matches(URI)
+    static final protected ConcurrentMap<Class, Boolean> customMatchingTypes =
+            new ConcurrentHashMap<Class, Boolean>();
+
+    // Cache of resource classes which override maintain(List, ExpirationDetails)
+    static final protected ConcurrentMap<Class, Boolean> customMaintainingTypes =
+            new ConcurrentHashMap<Class, Boolean>();
+
+    protected final ConcurrentMap<URI, RegistryItem<URI, Resource>> items =
+            new ConcurrentHashMap<URI, RegistryItem<URI, Resource>>();
+
+    protected final Set<RegistryItem<URI, Resource>> customMatchingItems =
+            new CopyOnWriteArraySet<RegistryItem<URI, Resource>>();
+
+    protected final Set<RegistryItem<URI, Resource>> customMaintainingItems =
+            new CopyOnWriteArraySet<RegistryItem<URI, Resource>>();
+
+    protected final ExpirationQueue<URI, Resource> expirations;
+
+    ResourceItems(RegistryImpl registry) {
+        this.expirations = new ExpirationQueue<URI, Resource>(registry, false);
+    }
+
+    Collection<RegistryItem<URI, Resource>> get() {
+        return items.values();
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    /**
+     * @return The resources which have to be maintained on every registry maintenance run.
+     */
+    Collection<RegistryItem<URI, Resource>> getCustomMaintaining() {
+        return customMaintainingItems;
+    }
+
+    /**
+     * @return The resources which expired since the last call, they are still registered.
+     */
+    List<RegistryItem<URI, Resource>> pollExpired() {
+        return expirations.pollExpired(items);
+    }
+
+    /**
+     * @param pathQuery A relative URI.
+     * @return The first resource which matches the given path and query, or <code>null</code>.
+     */
+    Resource get(URI pathQuery) {
+        RegistryItem<URI, Resource> item = items.get(pathQuery);
+        if (item != null && item.getItem().matches(pathQuery)) {
+            return item.getItem();
+        }
+        for (RegistryItem<URI, Resource> customMatchingItem : customMatchingItems) {
+            if (customMatchingItem.getItem().matches(pathQuery)) {
+                return customMatchingItem.getItem();
+            }
+        }
+        return null;
+    }
+
+    void add(RegistryItem<URI, Resource> item) {
+        RegistryItem<URI, Resource> previous = items.put(item.getKey(), item);
+        if (previous != null) {
+            customMatchingItems.remove(previous);
+            customMaintainingItems.remove(previous);
+        }
+        if (isOverriding(customMatchingTypes, item.getItem(), "matches", URI.class)) {
+            customMatchingItems.add(item);
+        }
+        if (isOverriding(customMaintainingTypes, item.getItem(), "maintain", List.class, ExpirationDetails.class)) {
+            customMaintainingItems.add(item);
+        }
+        expirations.schedule(item);
+    }
+
+    RegistryItem<URI, Resource> remove(URI pathQuery) {
+        RegistryItem<URI, Resource> removed = items.remove(pathQuery);
+        if (removed != null) {
+            customMatchingItems.remove(removed);
+            customMaintainingItems.remove(removed);
+        }
+        return removed;
+    }
+
+    protected boolean isOverriding(ConcurrentMap<Class, Boolean> cache, Resource resource,
+                                   String methodName, Class... parameterTypes) {
+        Class resourceType = resource.getClass();
+        Boolean overriding = cache.get(resourceType);
+        if (overriding == null) {
+            try {
+                overriding = !resourceType.getMethod(methodName, parameterTypes)
+                        .getDeclaringClass().equals(Resource.class);
+            } catch (NoSuchMethodException ex) {
+                overriding = false;
+            }
+            if (overriding)
+                log.fine("Resource type has custom " + methodName + "(), handling it separately: " + resourceType);
+            cache.put(resourceType, overriding);
+        }
+        return overriding;
+    }
+}
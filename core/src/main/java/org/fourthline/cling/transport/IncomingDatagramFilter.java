@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport;
+
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.discovery.IncomingNotificationRequest;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.types.NotificationSubtype;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.registry.Registry;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Handles repeated <em>ALIVE</em> notifications before a protocol is created for them.
+ * <p>
+ * A device announces itself with several messages (root device, UDN, device type, one per
+ * service), each repeated a few times. For a device we already know, all of them only
+ * refresh its expiration in the registry. This filter performs that refresh inline, on the
+ * receiving thread, with a call to {@link org.fourthline.cling.registry.Registry#update(RemoteDeviceIdentity)},
+ * and then drops the message. No protocol instance is created and no task is queued on the
+ * asynchronous protocol executor. The registry also handles a changed <code>BOOTID.UPNP.ORG</code>
+ * value, as it would for the notification protocol.
+ * </p>
+ * <p>
+ * After a refresh, further notifications with the same UDN, <code>LOCATION</code>, and
+ * <code>BOOTID.UPNP.ORG</code> header values are dropped without parsing any header, until the
+ * deduplication window has passed.
+ * </p>
+ * <p>
+ * Any other message is passed on: search requests and responses, <em>BYEBYE</em> notifications,
+ * notifications of unknown devices, notifications with a different <code>LOCATION</code> than the
+ * registered device, and notifications the registry doesn't accept as a refresh. Notifications
+ * sent by a local device are dropped, the protocol would ignore them anyway.
+ * </p>
+ * <p>
+ * The filter is provided by {@link org.fourthline.cling.UpnpServiceConfiguration#getDatagramFilter()}
+ * and applied by the {@link org.fourthline.cling.protocol.ProtocolFactory} to the notifications it
+ * would otherwise create a protocol for.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class IncomingDatagramFilter {
+
+    private static Logger log = Logger.getLogger(IncomingDatagramFilter.class.getName());
+
+    final protected long dedupWindowMillis;
+
+    // Key is UDN, location, and boot identifier, value is the time of the last refresh
+    final protected ConcurrentMap<String, Long> refreshed = new ConcurrentHashMap();
+
+    final protected AtomicLong droppedCount = new AtomicLong();
+    final protected AtomicLong refreshedCount = new AtomicLong();
+    final protected AtomicLong dispatchedCount = new AtomicLong();
+
+    protected volatile long lastPurge = System.currentTimeMillis();
+
+    /**
+     * Drops duplicate refreshes within two seconds, this covers the repeated bulks of a single
+     * announcement.
+     */
+    public IncomingDatagramFilter() {
+        this(2000);
+    }
+
+    public IncomingDatagramFilter(long dedupWindowMillis) {
+        this.dedupWindowMillis = dedupWindowMillis;
+    }
+
+    public long getDedupWindowMillis() {
+        return dedupWindowMillis;
+    }
+
+    /**
+     * @return The number of messages dropped without any further processing.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The number of messages which refreshed a known device inline and were then dropped.
+     */
+    public long getRefreshedCount() {
+        return refreshedCount.get();
+    }
+
+    /**
+     * @return The number of messages passed on to the protocol factory.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @param registry The registry of known devices, refreshed inline.
+     * @param msg The received datagram message.
+     * @return <code>true</code> if a protocol should be created for the message, <code>false</code> if
+     *         it has been handled or can be dropped.
+     */
+    public boolean accept(Registry registry, IncomingDatagramMessage msg) {
+        if (!(msg.getOperation() instanceof UpnpRequest)
+                || !UpnpRequest.Method.NOTIFY.equals(((UpnpRequest) msg.getOperation()).getMethod())) {
+            return dispatch();
+        }
+
+        String nts = msg.getHeaders().getFirstHeader(UpnpHeader.Type.NTS.getHttpName());
+        String usn = msg.getHeaders().getFirstHeader(UpnpHeader.Type.USN.getHttpName());
+        String location = msg.getHeaders().getFirstHeader(UpnpHeader.Type.LOCATION.getHttpName());
+        if (nts == null || usn == null || location == null
+                || !NotificationSubtype.ALIVE.getHeaderString().equals(nts.trim())) {
+            return dispatch();
+        }
+
+        String bootId = msg.getHeaders().getFirstHeader(UpnpHeader.Type.BOOTID.getHttpName());
+        long now = System.currentTimeMillis();
+        purge(now);
+
+        String key = getRefreshKey(usn, location, bootId);
+        Long lastRefresh = refreshed.get(key);
+        if (lastRefresh != null && now - lastRefresh < getDedupWindowMillis()) {
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Dropping duplicate notification of refreshed device: " + usn);
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        IncomingNotificationRequest notification = new IncomingNotificationRequest(msg);
+        UDN udn = notification.getUDN();
+        URL locationURL = notification.getLocationURL();
+        if (udn == null || locationURL == null || notification.getMaxAge() == null) {
+            return dispatch();
+        }
+
+        if (registry.getLocalDevice(udn, false) != null) {
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Dropping notification of local device: " + udn);
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        // Compare the strings, URL.equals() would resolve the host name
+        RemoteDevice registered = registry.getRemoteDevice(udn, false);
+        URL registeredURL = registered != null ? registered.getRoot().getIdentity().getDescriptorURL() : null;
+        if (registeredURL == null || !locationURL.toString().equals(registeredURL.toString())) {
+            return dispatch();
+        }
+
+        if (!registry.update(new RemoteDeviceIdentity(notification))) {
+            return dispatch();
+        }
+
+        if (log.isLoggable(Level.FINER))
+            log.finer("Refreshed remote device inline: " + udn);
+        refreshed.put(key, now);
+        refreshedCount.incrementAndGet();
+        return false;
+    }
+
+    protected boolean dispatch() {
+        dispatchedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Uses only the UDN part of the USN, so the notifications for device types and services
+     * of a device share the entry.
+     */
+    protected String getRefreshKey(String usn, String location, String bootId) {
+        usn = usn.trim();
+        int typeIndex = usn.indexOf("::");
+        return (typeIndex == -1 ? usn : usn.substring(0, typeIndex))
+                + "|" + location.trim()
+                + "|" + (bootId != null ? bootId.trim() : "");
+    }
+
+    protected void purge(long now) {
+        if (now - lastPurge < getDedupWindowMillis()) return;
+        lastPurge = now;
+        Iterator<Map.Entry<String, Long>> it = refreshed.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue() >= getDedupWindowMillis())
+                it.remove();
+        }
+    }
+
+}
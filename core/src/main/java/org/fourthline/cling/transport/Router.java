@@ -25,10 +25,12 @@ import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
 import org.fourthline.cling.transport.spi.UpnpStream;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Interface of the network transport layer.
@@ -121,6 +123,16 @@ public interface Router {
      */
     public StreamResponseMessage send(StreamRequestMessage msg);
 
+    /**
+     * <p>
+     * Call this method to send a TCP (HTTP) stream message without blocking the calling thread.
+     * </p>
+     * @param msg The TCP (HTTP) stream message to send.
+     * @param callback An optional callback, notified when the response has been received, or <code>null</code>.
+     * @return The pending response, its result is <code>null</code> if no response has been received.
+     */
+    public Future<StreamResponseMessage> send(StreamRequestMessage msg, StreamResponseCallback callback);
+
     /**
      * <p>
      * Call this method to broadcast a UDP message to all hosts on the network.
@@ -26,11 +26,14 @@ import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.protocol.ProtocolCreationException;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.protocol.ReceivingAsync;
+import org.fourthline.cling.transport.spi.AsyncStreamClient;
 import org.fourthline.cling.transport.spi.DatagramIO;
 import org.fourthline.cling.transport.spi.InitializationException;
 import org.fourthline.cling.transport.spi.MulticastReceiver;
 import org.fourthline.cling.transport.spi.NetworkAddressFactory;
 import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.fourthline.cling.transport.spi.StreamServer;
 import org.fourthline.cling.transport.spi.UpnpStream;
 import org.seamless.util.Exceptions;
@@ -43,6 +46,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -220,6 +226,10 @@ public class RouterImpl implements Router {
      * Obtains the asynchronous protocol {@code Executor} and runs the protocol created
      * by the {@link org.fourthline.cling.protocol.ProtocolFactory} for the given message.
      * <p>
+     * The protocol factory passes notifications through the {@link IncomingDatagramFilter} of the
+     * configuration, which refreshes already known remote devices inline and drops duplicates.
+     * </p>
+     * <p>
      * If the factory doesn't create a protocol, the message is dropped immediately without
      * creating another thread or consuming further resoures. This means we can filter the
      * datagrams in the protocol factory and e.g. completely disable discovery or only
@@ -247,12 +257,22 @@ public class RouterImpl implements Router {
     /**
      * Obtains the synchronous protocol {@code Executor} and runs the
      * {@link org.fourthline.cling.transport.spi.UpnpStream} directly.
+     * <p>
+     * If the executor refuses the stream, it is {@link org.fourthline.cling.transport.spi.UpnpStream#rejected()},
+     * the client receives a <em>503 SERVICE UNAVAILABLE</em> response. The stream server continues
+     * accepting connections.
+     * </p>
      *
      * @param stream The received {@link org.fourthline.cling.transport.spi.UpnpStream}.
      */
     public void received(UpnpStream stream) {
         log.fine("Received synchronous stream: " + stream);
-        getConfiguration().getSyncProtocolExecutor().execute(stream);
+        try {
+            getConfiguration().getSyncProtocolExecutor().execute(stream);
+        } catch (RejectedExecutionException ex) {
+            log.warning("Stream processing is overloaded, responding with 503: " + ex.getMessage());
+            stream.rejected();
+        }
     }
 
     /**
@@ -282,6 +302,45 @@ public class RouterImpl implements Router {
         return getStreamClient().sendRequest(msg);
     }
 
+    /**
+     * Sends the TCP stream request without blocking the calling thread.
+     * <p>
+     * If the {@link org.fourthline.cling.transport.spi.StreamClient} is an
+     * {@link org.fourthline.cling.transport.spi.AsyncStreamClient}, the request is handed to it directly.
+     * Otherwise the blocking {@link #send(StreamRequestMessage)} is executed with the
+     * {@link org.fourthline.cling.UpnpServiceConfiguration#getAsyncProtocolExecutor()}.
+     * </p>
+     *
+     * @param msg The TCP (HTTP) stream message to send.
+     * @param callback An optional callback, notified when the response has been received, or <code>null</code>.
+     * @return The pending response, its result is <code>null</code> if no response has been received
+     *         or no <code>StreamClient</code> is available.
+     */
+    public Future<StreamResponseMessage> send(final StreamRequestMessage msg, StreamResponseCallback callback) {
+        if (getStreamClient() instanceof AsyncStreamClient) {
+            log.fine("Sending asynchronously via TCP unicast stream: " + msg);
+            return ((AsyncStreamClient)getStreamClient()).sendRequest(msg, callback);
+        }
+        StreamResponseFuture future = new StreamResponseFuture(msg, callback, new Callable<StreamResponseMessage>() {
+            public StreamResponseMessage call() throws Exception {
+                return send(msg);
+            }
+        });
+        if (getStreamClient() == null) {
+            log.fine("No StreamClient available, ignoring: " + msg);
+            future.complete(null);
+        } else {
+            // A discarding executor cancels the future, which also notifies the callback
+            try {
+                getConfiguration().getAsyncProtocolExecutor().execute(future);
+            } catch (RejectedExecutionException ex) {
+                log.warning("Asynchronous protocol executor rejected stream request: " + msg);
+                future.fail(ex);
+            }
+        }
+        return future;
+    }
+
     /**
      * Sends the given bytes as a broadcast on all bound {@link org.fourthline.cling.transport.spi.DatagramIO}s,
      * using source port 9.
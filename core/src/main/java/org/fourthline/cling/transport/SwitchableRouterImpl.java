@@ -26,6 +26,8 @@ import org.fourthline.cling.model.message.StreamResponseMessage;
 import org.fourthline.cling.protocol.ProtocolFactory;
 import org.fourthline.cling.transport.spi.InitializationException;
 import org.fourthline.cling.transport.spi.NetworkAddressFactory;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
 import org.fourthline.cling.transport.spi.UpnpStream;
 import org.seamless.util.Exceptions;
 
@@ -37,6 +39,7 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -214,6 +217,19 @@ public class SwitchableRouterImpl implements SwitchableRouter {
         }
     }
 
+    public Future<StreamResponseMessage> send(StreamRequestMessage msg, StreamResponseCallback callback)
+            throws RouterLockAcquisitionException {
+        lock(readLock);
+        try {
+            if (router != null) return router.send(msg, callback);
+            StreamResponseFuture future = new StreamResponseFuture(msg, callback);
+            future.complete(null);
+            return future;
+        } finally {
+            unlock(readLock);
+        }
+    }
+
     public void broadcast(byte[] bytes) throws RouterLockAcquisitionException {
         lock(readLock);
         try {
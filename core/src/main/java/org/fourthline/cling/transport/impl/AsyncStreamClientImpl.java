@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.transport.spi.AsyncStreamClient;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.StreamClient;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.fourthline.cling.transport.spi.StreamResponseFuture;
+import org.seamless.util.io.IO;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking implementation based on a single NIO selector thread.
+ * <p>
+ * Any number of requests can be in flight without occupying a thread each; connecting,
+ * writing the request, and reading the response is multiplexed on one selector. Every
+ * request uses its own connection and sends a <code>Connection: close</code> header,
+ * persistent connections are not supported. The connect and data read timeouts of the
+ * {@link StreamClientConfigurationImpl} apply, the data read timeout starts again
+ * whenever bytes are received.
+ * </p>
+ * <p>
+ * Response callbacks are called on the selector thread, they should return quickly. The
+ * blocking {@link #sendRequest(org.fourthline.cling.model.message.StreamRequestMessage)} waits
+ * for the pending response and is only provided for the regular synchronous protocols.
+ * </p>
+ * <p>
+ * Sending a request never blocks the calling thread. The host of the request URI is resolved
+ * on the selector thread, an IP address (as announced by most UPnP devices) without a lookup.
+ * A host name requires a DNS lookup, all other requests wait until it completes.
+ * </p>
+ * <p>
+ * To use this client, override
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#createStreamClient()}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class AsyncStreamClientImpl implements AsyncStreamClient<StreamClientConfigurationImpl>, Runnable {
+
+    final private static Logger log = Logger.getLogger(StreamClient.class.getName());
+
+    final protected static int SELECT_TIMEOUT_MILLIS = 250;
+    final protected static int READ_BUFFER_SIZE = 8192;
+
+    final protected StreamClientConfigurationImpl configuration;
+    final protected Selector selector;
+    final protected Queue<PendingRequest> registrations = new ConcurrentLinkedQueue();
+    final protected ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    volatile protected boolean stopped;
+
+    public AsyncStreamClientImpl(StreamClientConfigurationImpl configuration) throws InitializationException {
+        this.configuration = configuration;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException ex) {
+            throw new InitializationException("Could not open selector for stream client: " + ex, ex);
+        }
+        Thread selectorThread = new Thread(this, "cling-async-stream-client");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @Override
+    public StreamClientConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public StreamResponseMessage sendRequest(StreamRequestMessage message) {
+        try {
+            return sendRequest(message, null).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            log.info("Unrecoverable exception occured, no error response possible: " + ex.getCause());
+            return null;
+        }
+    }
+
+    @Override
+    public Future<StreamResponseMessage> sendRequest(StreamRequestMessage message, StreamResponseCallback callback) {
+        PendingRequest pending = new PendingRequest(message, callback);
+        if (stopped) {
+            log.fine("Stream client has been stopped, ignoring: " + message);
+            pending.complete(null);
+            return pending;
+        }
+        try {
+            URI uri = message.getOperation().getURI();
+            // Resolved by the selector thread, never block the caller
+            pending.address = InetSocketAddress.createUnresolved(uri.getHost(), uri.getPort() != -1 ? uri.getPort() : 80);
+            pending.requestData = ByteBuffer.wrap(createRequestData(message));
+        } catch (Exception ex) {
+            log.info("Could not prepare HTTP request: " + ex);
+            pending.complete(null);
+            return pending;
+        }
+        registrations.add(pending);
+        if (stopped && registrations.remove(pending)) {
+            // The selector thread might already have aborted the queued registrations
+            log.fine("Stream client has been stopped, ignoring: " + message);
+            pending.complete(null);
+            return pending;
+        }
+        selector.wakeup();
+        return pending;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    public void run() {
+        while (!stopped) {
+            try {
+                register();
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    process(key);
+                }
+                expire();
+            } catch (Exception ex) {
+                log.warning("Unexpected exception in stream client selector loop: " + ex);
+            }
+        }
+
+        log.fine("Stopping stream client, aborting pending requests");
+        for (SelectionKey key : selector.keys()) {
+            finish((PendingRequest) key.attachment(), null);
+        }
+        PendingRequest pending;
+        while ((pending = registrations.poll()) != null) {
+            pending.complete(null);
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            log.fine("Could not close selector: " + ex);
+        }
+    }
+
+    protected void register() {
+        PendingRequest pending;
+        while ((pending = registrations.poll()) != null) {
+            if (pending.isDone()) continue; // Cancelled before we even started
+            try {
+                if (pending.address.isUnresolved()) {
+                    pending.address = new InetSocketAddress(pending.address.getHostName(), pending.address.getPort());
+                }
+                SocketChannel channel = SocketChannel.open();
+                pending.channel = channel;
+                channel.configureBlocking(false);
+                if (channel.connect(pending.address)) {
+                    pending.touch(getConfiguration().getDataReadTimeoutSeconds());
+                    channel.register(selector, SelectionKey.OP_WRITE, pending);
+                } else {
+                    pending.touch(getConfiguration().getConnectionTimeoutSeconds());
+                    channel.register(selector, SelectionKey.OP_CONNECT, pending);
+                }
+            } catch (Exception ex) {
+                // Also unchecked, e.g. UnresolvedAddressException
+                log.info("Could not open connection to " + pending.address + ": " + ex);
+                finish(pending, null);
+            }
+        }
+    }
+
+    protected void process(SelectionKey key) {
+        PendingRequest pending = (PendingRequest) key.attachment();
+        if (pending.isDone()) {
+            finish(pending, null);
+            return;
+        }
+        try {
+            if (key.isConnectable()) {
+                pending.channel.finishConnect();
+                pending.touch(getConfiguration().getDataReadTimeoutSeconds());
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                pending.channel.write(pending.requestData);
+                if (!pending.requestData.hasRemaining()) {
+                    log.fine("Sent HTTP request: " + pending.getRequest());
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                readBuffer.clear();
+                int read = pending.channel.read(readBuffer);
+                if (read > 0) {
+                    pending.touch(getConfiguration().getDataReadTimeoutSeconds());
+                    pending.responseData.write(readBuffer.array(), 0, read);
+                    if (pending.responseData.isComplete(true)) {
+                        finish(pending, createResponse(pending.responseData));
+                    }
+                } else if (read == -1) {
+                    finish(pending, createResponse(pending.responseData));
+                }
+            }
+        } catch (Exception ex) {
+            log.fine("Exception occured, no response for " + pending.getRequest() + ": " + ex);
+            finish(pending, null);
+        }
+    }
+
+    protected void expire() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            PendingRequest pending = (PendingRequest) key.attachment();
+            if (pending.isDone()) {
+                finish(pending, null);
+            } else if (pending.deadline < now) {
+                log.info("Timeout of HTTP request, no response for: " + pending.getRequest());
+                finish(pending, null);
+            }
+        }
+    }
+
+    protected void finish(PendingRequest pending, StreamResponseMessage response) {
+        if (pending.channel != null) {
+            try {
+                pending.channel.close();
+            } catch (IOException ex) {
+                log.fine("Could not close connection: " + ex);
+            }
+        }
+        pending.complete(response);
+    }
+
+    protected byte[] createRequestData(StreamRequestMessage requestMessage) throws IOException {
+        UpnpRequest requestOperation = requestMessage.getOperation();
+        URI uri = requestOperation.getURI();
+
+        byte[] body = null;
+        if (requestMessage.hasBody()) {
+            body = requestMessage.getBodyType().equals(UpnpMessage.BodyType.STREAM)
+                    ? IO.readBytes(requestMessage.getInputStream())
+                    : requestMessage.getBodyBytes();
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        String path = uri.getRawPath() != null && uri.getRawPath().length() > 0 ? uri.getRawPath() : "/";
+        sb.append(requestOperation.getHttpMethodName()).append(" ").append(path);
+        if (uri.getRawQuery() != null) sb.append("?").append(uri.getRawQuery());
+        sb.append(" HTTP/1.1\r\n");
+
+        if (!requestMessage.hasHostHeader()) {
+            sb.append("Host: ").append(uri.getHost());
+            if (uri.getPort() != -1) sb.append(":").append(uri.getPort());
+            sb.append("\r\n");
+        }
+
+        // Let's just add the user-agent header on every request, the UDA 1.0 spec doesn't care and the UDA 1.1 spec says OK
+        sb.append("User-Agent: ").append(
+                getConfiguration().getUserAgentValue(requestMessage.getUdaMajorVersion(), requestMessage.getUdaMinorVersion())
+        ).append("\r\n");
+
+        for (Map.Entry<String, List<String>> entry : requestMessage.getHeaders().entrySet()) {
+            String headerName = entry.getKey();
+            if ("Connection".equalsIgnoreCase(headerName)
+                    || "Content-Length".equalsIgnoreCase(headerName)
+                    || "User-Agent".equalsIgnoreCase(headerName))
+                continue;
+            for (String v : entry.getValue()) {
+                sb.append(headerName).append(": ").append(v).append("\r\n");
+            }
+        }
+        sb.append("Connection: close\r\n");
+        if (body != null) sb.append("Content-Length: ").append(body.length).append("\r\n");
+        sb.append("\r\n");
+
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("Writing HTTP request headers: " + sb);
+        }
+
+        // According to HTTP 1.0 RFC, headers and their values are US-ASCII
+        byte[] head = sb.toString().getBytes("US-ASCII");
+        if (body == null) return head;
+
+        byte[] data = new byte[head.length + body.length];
+        System.arraycopy(head, 0, data, 0, head.length);
+        System.arraycopy(body, 0, data, head.length, body.length);
+        return data;
+    }
+
+    protected StreamResponseMessage createResponse(HttpMessageData responseData) throws Exception {
+
+        if (!responseData.parseHead() || !responseData.getStartLine()[0].startsWith("HTTP/1.")) {
+            log.fine("Did not receive valid HTTP response");
+            return null;
+        }
+
+        // Status
+        UpnpResponse responseOperation = new UpnpResponse(
+                Integer.valueOf(responseData.getStartLine()[1]),
+                responseData.getStartLine()[2]
+        );
+
+        log.fine("Received response: " + responseOperation);
+
+        // Message
+        StreamResponseMessage responseMessage = new StreamResponseMessage(responseOperation);
+
+        // Headers
+        responseMessage.setHeaders(responseData.getHeaders());
+
+        byte[] bodyBytes = responseData.getBody(true);
+
+        if (bodyBytes != null && bodyBytes.length > 0 && responseMessage.isContentTypeMissingOrText()) {
+
+            log.fine("Response contains textual entity body, converting then setting string on message");
+            responseMessage.setBodyCharacters(bodyBytes);
+
+        } else if (bodyBytes != null && bodyBytes.length > 0) {
+
+            log.fine("Response contains binary entity body, setting bytes on message");
+            responseMessage.setBody(UpnpMessage.BodyType.BYTES, bodyBytes);
+
+        } else {
+            log.fine("Response did not contain entity body");
+        }
+
+        log.fine("Response message complete: " + responseMessage);
+        return responseMessage;
+    }
+
+    /**
+     * The state of a single request, only accessed on the selector thread, except for the future.
+     */
+    protected class PendingRequest extends StreamResponseFuture {
+
+        protected InetSocketAddress address;
+        protected ByteBuffer requestData;
+        protected SocketChannel channel;
+        protected long deadline;
+        final protected HttpMessageData responseData = new HttpMessageData();
+
+        public PendingRequest(StreamRequestMessage request, StreamResponseCallback callback) {
+            super(request, callback);
+        }
+
+        protected void touch(int timeoutSeconds) {
+            deadline = System.currentTimeMillis() + timeoutSeconds * 1000l;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) selector.wakeup(); // The selector thread closes the connection
+            return cancelled;
+        }
+    }
+
+}
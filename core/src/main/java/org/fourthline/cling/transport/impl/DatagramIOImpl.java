@@ -102,11 +102,15 @@ public class DatagramIOImpl implements DatagramIO<DatagramIOConfigurationImpl> {
     public void run() {
         log.fine("Entering blocking receiving loop, listening for UDP datagrams on: " + socket.getLocalAddress());
 
+        // Datagrams are parsed before the next one is received, so one buffer is enough
+        byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
+        DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+
         while (true) {
 
             try {
-                byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
-                DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+                // The last receive() shrunk the length to the size of that datagram
+                datagram.setLength(buf.length);
 
                 socket.receive(datagram);
 
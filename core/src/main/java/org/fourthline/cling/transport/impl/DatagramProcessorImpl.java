@@ -28,12 +28,11 @@ import org.fourthline.cling.model.message.UpnpRequest;
 import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.transport.spi.DatagramProcessor;
 import org.fourthline.cling.transport.spi.UnsupportedDataException;
-import org.seamless.http.Headers;
 
-import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.charset.Charset;
 
 /**
  * Default implementation.
@@ -44,23 +43,39 @@ public class DatagramProcessorImpl implements DatagramProcessor {
 
     private static Logger log = Logger.getLogger(DatagramProcessor.class.getName());
 
+    final protected static Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
     public IncomingDatagramMessage read(InetAddress receivedOnAddress, DatagramPacket datagram) throws UnsupportedDataException {
 
+        // The receiver reuses its buffer, only the received range is valid
+        byte[] data = datagram.getData();
+        int offset = datagram.getOffset();
+        int end = offset + datagram.getLength();
+
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("===================================== DATAGRAM BEGIN ============================================");
+            log.finer(new String(data, offset, datagram.getLength()));
+            log.finer("-===================================== DATAGRAM END =============================================");
+        }
+
+        // Every SSDP message starts with NOTIFY, M-SEARCH, or HTTP/1.x, drop noise (e.g. mDNS) right away
+        if (offset == end || (data[offset] != 'N' && data[offset] != 'M' && data[offset] != 'H')) {
+            throw new UnsupportedDataException("Not an SSDP message, ignoring datagram from: " + datagram.getAddress());
+        }
+
         try {
 
-            if (log.isLoggable(Level.FINER)) {
-                log.finer("===================================== DATAGRAM BEGIN ============================================");
-                log.finer(new String(datagram.getData()));
-                log.finer("-===================================== DATAGRAM END =============================================");
-            }
+            // Single pass over the bytes, start line and then header lines
+            int lineEnd = findLineEnd(data, offset, end);
+            String[] startLine = readStartLine(data, offset, lineEnd);
 
-            ByteArrayInputStream is = new ByteArrayInputStream(datagram.getData());
+            UpnpHeaders headers = new UpnpHeaders();
+            readHeaders(data, lineEnd, end, headers);
 
-            String[] startLine = Headers.readLine(is).split(" ");
             if (startLine[0].startsWith("HTTP/1.")) {
-                return readResponseMessage(receivedOnAddress, datagram, is, Integer.valueOf(startLine[1]), startLine[2], startLine[0]);
+                return createResponseMessage(receivedOnAddress, datagram, headers, Integer.valueOf(startLine[1]), startLine[2], startLine[0]);
             } else {
-                return readRequestMessage(receivedOnAddress, datagram, is, startLine[0], startLine[2]);
+                return createRequestMessage(receivedOnAddress, datagram, headers, startLine[0], startLine[2]);
             }
 
         } catch (Exception ex) {
@@ -117,14 +132,11 @@ public class DatagramProcessorImpl implements DatagramProcessor {
         }
     }
 
-    protected IncomingDatagramMessage readRequestMessage(InetAddress receivedOnAddress,
-                                                         DatagramPacket datagram,
-                                                         ByteArrayInputStream is,
-                                                         String requestMethod,
-                                                         String httpProtocol) throws Exception {
-
-        // Headers
-        UpnpHeaders headers = new UpnpHeaders(is);
+    protected IncomingDatagramMessage createRequestMessage(InetAddress receivedOnAddress,
+                                                           DatagramPacket datagram,
+                                                           UpnpHeaders headers,
+                                                           String requestMethod,
+                                                           String httpProtocol) throws Exception {
 
         // Assemble message
         IncomingDatagramMessage requestMessage;
@@ -137,15 +149,12 @@ public class DatagramProcessorImpl implements DatagramProcessor {
         return requestMessage;
     }
 
-    protected IncomingDatagramMessage readResponseMessage(InetAddress receivedOnAddress,
-                                                          DatagramPacket datagram,
-                                                          ByteArrayInputStream is,
-                                                          int statusCode,
-                                                          String statusMessage,
-                                                          String httpProtocol) throws Exception {
-
-        // Headers
-        UpnpHeaders headers = new UpnpHeaders(is);
+    protected IncomingDatagramMessage createResponseMessage(InetAddress receivedOnAddress,
+                                                            DatagramPacket datagram,
+                                                            UpnpHeaders headers,
+                                                            int statusCode,
+                                                            String statusMessage,
+                                                            String httpProtocol) throws Exception {
 
         // Assemble the message
         IncomingDatagramMessage responseMessage;
@@ -158,5 +167,79 @@ public class DatagramProcessorImpl implements DatagramProcessor {
         return responseMessage;
     }
 
+    /**
+     * @return The index of the LF which ends the line starting at <code>start</code>, or <code>end</code>.
+     */
+    protected int findLineEnd(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == '\n') return i;
+        }
+        return end;
+    }
+
+    /**
+     * Splits <code>METHOD * HTTP/1.1</code> or <code>HTTP/1.1 200 Status Message</code> into three tokens.
+     */
+    protected String[] readStartLine(byte[] data, int start, int lineEnd) throws UnsupportedDataException {
+        int end = trimLineEnd(data, start, lineEnd);
+        int firstSpace = indexOf(data, ' ', start, end);
+        int secondSpace = firstSpace != -1 ? indexOf(data, ' ', firstSpace + 1, end) : -1;
+        if (secondSpace == -1) {
+            throw new UnsupportedDataException("Invalid start line: " + toString(data, start, end));
+        }
+        return new String[]{
+                toString(data, start, firstSpace),
+                toString(data, firstSpace + 1, secondSpace),
+                toString(data, secondSpace + 1, end)
+        };
+    }
+
+    /**
+     * Reads all <code>Name: value</code> lines after the start line, until the blank line or the
+     * end of the datagram. Folded (continued) values are joined.
+     */
+    protected void readHeaders(byte[] data, int startLineEnd, int end, UpnpHeaders headers) {
+        String name = null;
+        StringBuilder value = null;
+
+        int lineStart = startLineEnd + 1;
+        while (lineStart < end) {
+            int lineEnd = findLineEnd(data, lineStart, end);
+            int contentEnd = trimLineEnd(data, lineStart, lineEnd);
+
+            if (contentEnd == lineStart) break; // Blank line, end of headers
+
+            if ((data[lineStart] == ' ' || data[lineStart] == '\t') && name != null) {
+                value.append(' ').append(toString(data, lineStart, contentEnd).trim());
+            } else {
+                if (name != null) headers.add(name, value.toString());
+                name = null;
+                int colon = indexOf(data, ':', lineStart, contentEnd);
+                if (colon != -1) {
+                    name = toString(data, lineStart, colon).trim();
+                    value = new StringBuilder(toString(data, colon + 1, contentEnd).trim());
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (name != null) headers.add(name, value.toString());
+    }
+
+    protected int trimLineEnd(byte[] data, int start, int lineEnd) {
+        return lineEnd > start && data[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    protected int indexOf(byte[] data, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == c) return i;
+        }
+        return -1;
+    }
+
+    protected String toString(byte[] data, int start, int end) {
+        // Headers should be US-ASCII, but devices send other bytes too, decode them like HTTP
+        // servers do, one character per byte, instead of replacing them
+        return new String(data, start, end - start, ISO_8859_1);
+    }
 
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A single selector loop for the non-blocking channels of several {@link SelectorDatagramIOImpl}s.
+ * <p>
+ * The router starts each datagram I/O service on its executor. The first call of <code>run()</code>
+ * enters the loop, any further calls return immediately. The loop ends when the last datagram I/O
+ * service has been stopped, the selector is re-opened when a service is registered again.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramSelector implements Runnable {
+
+    private static Logger log = Logger.getLogger(DatagramSelector.class.getName());
+
+    protected Selector selector;
+    protected boolean running;
+
+    final protected Set<SelectorDatagramIOImpl> members = new HashSet();
+    final protected List<SelectorDatagramIOImpl> pendingRegistrations = new ArrayList();
+
+    synchronized public void register(SelectorDatagramIOImpl datagramIO) throws IOException {
+        if (selector == null || !selector.isOpen()) {
+            log.fine("Opening datagram selector");
+            selector = Selector.open();
+        }
+        members.add(datagramIO);
+        // Registration blocks while the loop is in select(), so the loop registers the channel
+        pendingRegistrations.add(datagramIO);
+        selector.wakeup();
+    }
+
+    synchronized public void unregister(SelectorDatagramIOImpl datagramIO) {
+        members.remove(datagramIO);
+        pendingRegistrations.remove(datagramIO);
+        if (selector == null) return;
+        if (members.isEmpty()) {
+            log.fine("Closing datagram selector, no more channels");
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                log.fine("Could not close selector: " + ex);
+            }
+        } else {
+            selector.wakeup();
+        }
+    }
+
+    synchronized public boolean isRunning() {
+        return running;
+    }
+
+    public void run() {
+        synchronized (this) {
+            if (running) return;
+            running = true;
+        }
+        log.fine("Entering selector loop, listening for UDP datagrams on all channels");
+
+        Selector currentSelector;
+        while ((currentSelector = getOpenSelector()) != null) {
+            try {
+                registerPending(currentSelector);
+                currentSelector.select();
+
+                Iterator<SelectionKey> it = currentSelector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        ((SelectorDatagramIOImpl) key.attachment()).receive();
+                    }
+                }
+            } catch (ClosedSelectorException ex) {
+                log.fine("Selector closed");
+            } catch (IOException ex) {
+                log.warning("Selector loop failed, stopping: " + ex);
+                synchronized (this) {
+                    running = false;
+                }
+                return;
+            }
+        }
+        log.fine("Selector loop stopped");
+    }
+
+    /**
+     * @return The open selector, or <code>null</code> if all channels have been unregistered and
+     *         the loop should stop.
+     */
+    synchronized protected Selector getOpenSelector() {
+        if (selector != null && selector.isOpen()) return selector;
+        running = false;
+        return null;
+    }
+
+    synchronized protected void registerPending(Selector currentSelector) {
+        for (SelectorDatagramIOImpl datagramIO : pendingRegistrations) {
+            try {
+                datagramIO.getChannel().register(currentSelector, SelectionKey.OP_READ, datagramIO);
+            } catch (ClosedChannelException ex) {
+                log.fine("Channel closed before it could be registered: " + datagramIO);
+            }
+        }
+        pendingRegistrations.clear();
+    }
+
+}
@@ -18,6 +18,7 @@
 package org.fourthline.cling.transport.impl;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.DocumentBuilderPool;
 import org.fourthline.cling.model.XMLUtil;
 import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.gena.IncomingEventRequestMessage;
@@ -30,12 +31,10 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 
-import java.io.StringReader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,14 +51,27 @@ public class GENAEventProcessorImpl implements GENAEventProcessor {
     	return DocumentBuilderFactory.newInstance();
     }
 
+    private DocumentBuilderPool documentBuilderPool;
+
+    /**
+     * @return The builders used for all messages of this processor, created on first access.
+     */
+    synchronized public DocumentBuilderPool getDocumentBuilderPool() {
+        if (documentBuilderPool == null)
+            documentBuilderPool = createDocumentBuilderPool();
+        return documentBuilderPool;
+    }
+
+    protected DocumentBuilderPool createDocumentBuilderPool() {
+        return new DocumentBuilderPool(createDocumentBuilderFactory());
+    }
+
     public void writeBody(OutgoingEventRequestMessage requestMessage) throws UnsupportedDataException {
         log.fine("Writing body of: " + requestMessage);
 
         try {
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = getDocumentBuilderPool().newDocument();
             Element propertysetElement = writePropertysetElement(d);
 
             writeProperties(d, propertysetElement, requestMessage);
@@ -101,12 +113,9 @@ public class GENAEventProcessorImpl implements GENAEventProcessor {
 		// TODO: UPNP VIOLATION: Netgear 834DG DSL Router sends trailing spaces/newlines after last XML element, need to trim()
 		String body = requestMessage.getBodyString().trim();
 
-		DocumentBuilderFactory factory = createDocumentBuilderFactory();
-		factory.setNamespaceAware(true);
-
 		try {
 
-			Document d = factory.newDocumentBuilder().parse(new InputSource(new StringReader(body)));
+			Document d = getDocumentBuilderPool().parse(body);
 			readProperties(readPropertysetElement(d), requestMessage);
 			
 		} catch (Exception ex) {
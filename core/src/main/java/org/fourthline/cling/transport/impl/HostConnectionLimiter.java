@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.impl;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of concurrent connections a stream client opens to each host.
+ * <p>
+ * Many UPnP devices only accept a few concurrent HTTP connections. A control point polling
+ * dozens of renderers, or firing several actions at one device, would otherwise open a
+ * connection per request and thread. A host is identified by the host name and port of the
+ * request URI. A thread only takes a free connection if no other thread is waiting for one,
+ * there is however no strict guarantee that waiting threads are served in order of arrival.
+ * Bookkeeping for a host is removed as soon as no thread uses or waits for one of its connections.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class HostConnectionLimiter {
+
+    final private static Logger log = Logger.getLogger(HostConnectionLimiter.class.getName());
+
+    final protected int maxConnectionsPerHost;
+    final protected Map<String, Host> hosts = new HashMap();
+
+    final protected AtomicInteger activeCount = new AtomicInteger();
+    final protected AtomicLong acquiredCount = new AtomicLong();
+    final protected AtomicLong waitedCount = new AtomicLong();
+    final protected AtomicLong rejectedCount = new AtomicLong();
+
+    public HostConnectionLimiter(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1)
+            throw new IllegalArgumentException("Maximum connections per host must be at least 1");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Blocks until a connection to the host of the given URI is available.
+     *
+     * @param uri The URI of the request.
+     * @param timeoutMillis How long to wait for another request to the same host to complete.
+     * @return <code>false</code> if no connection was available within the timeout.
+     * @throws InterruptedException If the calling thread has been interrupted while waiting.
+     */
+    public boolean acquire(URI uri, long timeoutMillis) throws InterruptedException {
+        String key = getKey(uri);
+        Host host = enter(key);
+        boolean acquired = false;
+        try {
+            // Not the untimed tryAcquire(), it would barge ahead of waiting threads
+            acquired = host.permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                log.fine("Maximum connections reached, waiting for host: " + key);
+                waitedCount.incrementAndGet();
+                acquired = host.permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (!acquired) leave(key, host);
+        }
+        if (acquired) {
+            acquiredCount.incrementAndGet();
+            activeCount.incrementAndGet();
+        } else {
+            log.fine("Timeout waiting for connection to host: " + key);
+            rejectedCount.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    /**
+     * Must be called once for every successful {@link #acquire(java.net.URI, long)}.
+     */
+    public void release(URI uri) {
+        String key = getKey(uri);
+        Host host;
+        synchronized (hosts) {
+            host = hosts.get(key);
+        }
+        if (host == null) {
+            log.warning("Releasing connection of unknown host, ignoring: " + key);
+            return;
+        }
+        activeCount.decrementAndGet();
+        host.permits.release();
+        leave(key, host);
+    }
+
+    /**
+     * @return The number of connections currently in use.
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return The number of hosts with at least one connection in use or waiting thread.
+     */
+    public int getHostCount() {
+        synchronized (hosts) {
+            return hosts.size();
+        }
+    }
+
+    /**
+     * @return How many connections have been handed out.
+     */
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /**
+     * @return How many requests had to wait because the host's maximum connections were in use.
+     */
+    public long getWaitedCount() {
+        return waitedCount.get();
+    }
+
+    /**
+     * @return How many requests gave up waiting for a connection.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    protected String getKey(URI uri) {
+        return uri.getHost() + ":" + (uri.getPort() != -1 ? uri.getPort() : 80);
+    }
+
+    protected Host enter(String key) {
+        synchronized (hosts) {
+            Host host = hosts.get(key);
+            if (host == null) {
+                host = new Host(maxConnectionsPerHost);
+                hosts.put(key, host);
+            }
+            host.users++;
+            return host;
+        }
+    }
+
+    protected void leave(String key, Host host) {
+        synchronized (hosts) {
+            if (--host.users == 0) hosts.remove(key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + ") Active: " + getActiveCount()
+                + ", hosts: " + getHostCount() + ", waited: " + getWaitedCount() + ", rejected: " + getRejectedCount();
+    }
+
+    protected static class Host {
+
+        final protected Semaphore permits;
+        protected int users; // Guarded by the hosts map
+
+        public Host(int maxConnections) {
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+}
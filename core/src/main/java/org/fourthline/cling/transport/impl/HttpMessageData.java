@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.message.UpnpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Buffers the bytes of an HTTP message received on a non-blocking channel.
+ * <p>
+ * The start line and headers are parsed once they have been received completely, the entity
+ * body is delimited by <code>Content-Length</code> or chunked transfer encoding. Used by the
+ * NIO stream client and server, which read a message in several steps and have to know when
+ * it is complete.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class HttpMessageData extends ByteArrayOutputStream {
+
+    protected int headEnd = -1;
+    protected String[] startLine;
+    protected UpnpHeaders headers;
+    protected long contentLength = -1;
+    protected boolean chunked;
+    protected boolean closeConnection;
+    protected boolean expectContinue;
+
+    public HttpMessageData() {
+        super(1024);
+    }
+
+    /**
+     * @return <code>true</code> if the start line and headers have been received and parsed.
+     * @throws IOException If the start line is malformed.
+     */
+    public boolean parseHead() throws IOException {
+        if (headEnd != -1) return true;
+
+        int end = -1;
+        for (int i = 3; i < count; i++) {
+            if (buf[i] == '\n' && buf[i - 1] == '\r' && buf[i - 2] == '\n' && buf[i - 3] == '\r') {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end == -1) return false;
+
+        // Headers should be US-ASCII, decode any other bytes one character per byte instead of replacing them
+        String[] lines = new String(buf, 0, end - 4, "ISO-8859-1").split("\r\n");
+
+        String[] parts = lines[0].split(" ", 3);
+        if (parts.length < 2)
+            throw new IOException("Invalid HTTP start line: " + lines[0]);
+        startLine = parts.length == 3 ? parts : new String[]{parts[0], parts[1], ""};
+
+        UpnpHeaders parsed = new UpnpHeaders();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon == -1) continue;
+            String name = lines[i].substring(0, colon).trim();
+            String value = lines[i].substring(colon + 1).trim();
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                try {
+                    contentLength = Long.valueOf(value);
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid Content-Length: " + value);
+                }
+            } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                chunked = value.toLowerCase().contains("chunked");
+            } else if ("Connection".equalsIgnoreCase(name)) {
+                closeConnection = value.toLowerCase().contains("close");
+            } else if ("Expect".equalsIgnoreCase(name)) {
+                expectContinue = value.toLowerCase().contains("100-continue");
+            }
+            parsed.add(name, value);
+        }
+        if (chunked) contentLength = -1;
+
+        headers = parsed;
+        headEnd = end;
+        return true;
+    }
+
+    /**
+     * @param bodyUntilClose <code>true</code> if a message without <code>Content-Length</code> and chunked
+     *                       encoding has a body which ends when the connection is closed (a response),
+     *                       <code>false</code> if such a message has no body (a request).
+     * @return <code>true</code> if the whole message has been received.
+     */
+    public boolean isComplete(boolean bodyUntilClose) throws IOException {
+        return getMessageEnd(bodyUntilClose) != -1;
+    }
+
+    /**
+     * @return The first byte after the message, or <code>-1</code> if the message is not complete.
+     */
+    public int getMessageEnd(boolean bodyUntilClose) throws IOException {
+        if (!parseHead()) return -1;
+        if (chunked) return findChunkedEnd(null);
+        if (contentLength != -1) return count - headEnd >= contentLength ? (int) (headEnd + contentLength) : -1;
+        return bodyUntilClose ? -1 : headEnd;
+    }
+
+    /**
+     * @param bodyUntilClose See {@link #isComplete(boolean)}, with <code>false</code> any bytes after the
+     *                       message, e.g. a pipelined request, are not part of the body.
+     * @return The entity body, possibly empty, with any transfer encoding removed.
+     * @throws IOException If the chunked body is incomplete.
+     */
+    public byte[] getBody(boolean bodyUntilClose) throws IOException {
+        if (!parseHead()) throw new IOException("Incomplete HTTP message head");
+        if (chunked) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(count - headEnd);
+            if (findChunkedEnd(body) == -1)
+                throw new IOException("Truncated chunked HTTP message body");
+            return body.toByteArray();
+        }
+        int length = count - headEnd;
+        if (contentLength != -1 && contentLength < length) {
+            length = (int) contentLength;
+        } else if (contentLength == -1 && !bodyUntilClose) {
+            length = 0;
+        }
+        byte[] body = new byte[length];
+        System.arraycopy(buf, headEnd, body, 0, length);
+        return body;
+    }
+
+    public String[] getStartLine() {
+        return startLine;
+    }
+
+    public UpnpHeaders getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return <code>true</code> if the message has a <code>Connection: close</code> header.
+     */
+    public boolean isCloseConnection() {
+        return closeConnection;
+    }
+
+    /**
+     * @return <code>true</code> if the message has an <code>Expect: 100-continue</code> header, the
+     *         client waits for an interim response before it sends the body.
+     */
+    public boolean isExpectContinue() {
+        return expectContinue;
+    }
+
+    /**
+     * Discards the bytes of the complete message, keeps any bytes received after it.
+     *
+     * @param messageEnd The value of {@link #getMessageEnd(boolean)}.
+     */
+    public void consume(int messageEnd) {
+        int remaining = count - messageEnd;
+        if (remaining > 0) System.arraycopy(buf, messageEnd, buf, 0, remaining);
+        count = remaining;
+        headEnd = -1;
+        startLine = null;
+        headers = null;
+        contentLength = -1;
+        chunked = false;
+        closeConnection = false;
+        expectContinue = false;
+    }
+
+    /**
+     * Walks the chunks, optionally copying their data.
+     *
+     * @return The first byte after the last chunk and trailer, or <code>-1</code> if the body is not complete.
+     */
+    protected int findChunkedEnd(ByteArrayOutputStream body) throws IOException {
+        int pos = headEnd;
+        while (true) {
+            int lineEnd = indexOfLineEnd(pos);
+            if (lineEnd == -1) return -1;
+            String sizeLine = new String(buf, pos, lineEnd - pos, "ISO-8859-1").trim();
+            int extension = sizeLine.indexOf(';');
+            if (extension != -1) sizeLine = sizeLine.substring(0, extension);
+            int size;
+            try {
+                size = Integer.parseInt(sizeLine, 16);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid chunk size: " + sizeLine);
+            }
+            pos = lineEnd + 1;
+            if (size == 0) {
+                // Skip any trailer headers until the blank line
+                while (true) {
+                    lineEnd = indexOfLineEnd(pos);
+                    if (lineEnd == -1) return -1;
+                    boolean blank = lineEnd == pos || (lineEnd == pos + 1 && buf[pos] == '\r');
+                    pos = lineEnd + 1;
+                    if (blank) return pos;
+                }
+            }
+            if (pos + size + 2 > count) return -1;
+            if (body != null) body.write(buf, pos, size);
+            pos += size + 2; // Skip the CRLF after the chunk data
+        }
+    }
+
+    protected int indexOfLineEnd(int start) {
+        for (int i = start; i < count; i++) {
+            if (buf[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+}
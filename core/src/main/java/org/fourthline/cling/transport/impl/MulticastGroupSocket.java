@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.spi.DatagramProcessor;
+import org.fourthline.cling.transport.spi.UnsupportedDataException;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * One multicast socket which has joined the group on several network interfaces.
+ * <p>
+ * Java 6 can't join a multicast group with a non-blocking channel, so this socket blocks, but a
+ * single thread receives the datagrams of all interfaces. The first call of <code>run()</code> enters
+ * the receiving loop, further calls return immediately. The socket is closed when the last
+ * interface leaves the group, and opened again when an interface joins.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class MulticastGroupSocket implements Runnable {
+
+    private static Logger log = Logger.getLogger(MulticastGroupSocket.class.getName());
+
+    final protected MulticastReceiverConfigurationImpl configuration;
+
+    final protected Set<NetworkInterface> interfaces = new LinkedHashSet();
+
+    protected InetSocketAddress multicastAddress;
+    protected MulticastSocket socket;
+    protected boolean running;
+
+    protected Router router;
+    protected DatagramProcessor datagramProcessor;
+
+    public MulticastGroupSocket(MulticastReceiverConfigurationImpl configuration) {
+        this.configuration = configuration;
+    }
+
+    public MulticastReceiverConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    synchronized public void join(NetworkInterface networkInterface,
+                                  Router router, DatagramProcessor datagramProcessor) throws IOException {
+        this.router = router;
+        this.datagramProcessor = datagramProcessor;
+
+        if (socket == null || socket.isClosed()) {
+            log.info("Creating wildcard socket (for receiving multicast datagrams) on port: " + configuration.getPort());
+            multicastAddress = new InetSocketAddress(configuration.getGroup(), configuration.getPort());
+            socket = new MulticastSocket(configuration.getPort());
+            socket.setReuseAddress(true);
+            socket.setReceiveBufferSize(32768 * 4); // Several interfaces share this backlog
+        }
+
+        log.info("Joining multicast group: " + multicastAddress + " on network interface: " + networkInterface.getDisplayName());
+        socket.joinGroup(multicastAddress, networkInterface);
+        interfaces.add(networkInterface);
+    }
+
+    synchronized public void leave(NetworkInterface networkInterface) {
+        if (!interfaces.remove(networkInterface) || socket == null || socket.isClosed()) return;
+        try {
+            log.fine("Leaving multicast group on: " + networkInterface.getDisplayName());
+            socket.leaveGroup(multicastAddress, networkInterface);
+        } catch (Exception ex) {
+            log.fine("Could not leave multicast group: " + ex);
+        }
+        if (interfaces.isEmpty()) {
+            log.fine("Closing multicast socket, no more interfaces");
+            socket.close();
+        }
+    }
+
+    synchronized public boolean isRunning() {
+        return running;
+    }
+
+    public void run() {
+        MulticastSocket currentSocket;
+        synchronized (this) {
+            if (running || socket == null) return;
+            running = true;
+            currentSocket = socket;
+        }
+
+        log.fine("Entering blocking receiving loop, listening for UDP datagrams on all joined interfaces");
+
+        // Datagrams are parsed before the next one is received, so one buffer is enough
+        byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
+        DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+
+        while (true) {
+            try {
+                datagram.setLength(buf.length);
+                currentSocket.receive(datagram);
+
+                InetAddress receivedOnLocalAddress =
+                        router.getNetworkAddressFactory().getLocalAddress(
+                                getFallbackInterface(),
+                                multicastAddress.getAddress() instanceof Inet6Address,
+                                datagram.getAddress()
+                        );
+
+                log.fine(
+                        "UDP datagram received from: " + datagram.getAddress().getHostAddress()
+                                + ":" + datagram.getPort()
+                                + " on local address: " + receivedOnLocalAddress.getHostAddress()
+                );
+
+                router.received(datagramProcessor.read(receivedOnLocalAddress, datagram));
+
+            } catch (SocketException ex) {
+                // Closed, but maybe another interface joined in the meantime and opened a new socket
+                synchronized (this) {
+                    if (socket != null && socket != currentSocket && !socket.isClosed()) {
+                        currentSocket = socket;
+                        continue;
+                    }
+                    running = false;
+                }
+                log.fine("Socket closed");
+                break;
+            } catch (UnsupportedDataException ex) {
+                log.info("Could not read datagram: " + ex.getMessage());
+            } catch (IllegalStateException ex) {
+                log.info("Illegal State Exception: " + ex.getMessage());
+            } catch (Exception ex) {
+                synchronized (this) {
+                    running = false;
+                }
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * The receiving interface is unknown, the local address is usually found by subnet. If it isn't,
+     * the address of the first joined interface is used.
+     */
+    synchronized protected NetworkInterface getFallbackInterface() {
+        return interfaces.isEmpty() ? null : interfaces.iterator().next();
+    }
+
+}
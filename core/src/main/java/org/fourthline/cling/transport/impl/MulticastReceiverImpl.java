@@ -101,11 +101,16 @@ public class MulticastReceiverImpl implements MulticastReceiver<MulticastReceive
     public void run() {
 
         log.fine("Entering blocking receiving loop, listening for UDP datagrams on: " + socket.getLocalAddress());
+
+        // Datagrams are parsed before the next one is received, so one buffer is enough
+        byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
+        DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+
         while (true) {
 
             try {
-                byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
-                DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+                // The last receive() shrunk the length to the size of that datagram
+                datagram.setLength(buf.length);
 
                 socket.receive(datagram);
 
@@ -17,7 +17,6 @@
 
 package org.fourthline.cling.transport.impl;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +27,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 
 import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.DocumentBuilderPool;
 import org.fourthline.cling.model.XMLUtil;
 import org.fourthline.cling.model.action.ActionArgumentValue;
 import org.fourthline.cling.model.action.ActionException;
@@ -46,7 +46,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 /**
  * Default implementation based on the <em>W3C DOM</em> XML processing API.
@@ -61,15 +60,28 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor {
     	return DocumentBuilderFactory.newInstance();
     }
 
+    private DocumentBuilderPool documentBuilderPool;
+
+    /**
+     * @return The builders used for all messages of this processor, created on first access.
+     */
+    synchronized public DocumentBuilderPool getDocumentBuilderPool() {
+        if (documentBuilderPool == null)
+            documentBuilderPool = createDocumentBuilderPool();
+        return documentBuilderPool;
+    }
+
+    protected DocumentBuilderPool createDocumentBuilderPool() {
+        return new DocumentBuilderPool(createDocumentBuilderFactory());
+    }
+
     public void writeBody(ActionRequestMessage requestMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
 
         log.fine("Writing body of " + requestMessage + " for: " + actionInvocation);
 
         try {
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = getDocumentBuilderPool().newDocument();
             Element body = writeBodyElement(d);
 
             writeBodyRequest(d, body, requestMessage, actionInvocation);
@@ -92,9 +104,7 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor {
 
         try {
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = getDocumentBuilderPool().newDocument();
             Element body = writeBodyElement(d);
 
             if (actionInvocation.getFailure() != null) {
@@ -140,9 +150,7 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor {
         
         try {
 
-            DocumentBuilderFactory factory = createDocumentBuilderFactory();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().parse(new InputSource(new StringReader(body)));
+            Document d = getDocumentBuilderPool().parse(body);
 
             Element bodyElement = readBodyElement(d);
             readBodyRequest(d, bodyElement, requestMessage, actionInvocation);
@@ -167,11 +175,7 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor {
 
     	try {
 
-    		DocumentBuilderFactory factory = createDocumentBuilderFactory();
-    		factory.setNamespaceAware(true);
-
-    		// Trim may not be needed, do it anyway
-    		Document d = factory.newDocumentBuilder().parse(new InputSource(new StringReader(body)));
+    		Document d = getDocumentBuilderPool().parse(body);
 
     		Element bodyElement = readBodyElement(d);
     		ActionException ex = readBodyFailure(d, bodyElement);
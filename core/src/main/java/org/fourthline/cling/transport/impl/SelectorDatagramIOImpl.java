@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.message.OutgoingDatagramMessage;
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.spi.DatagramIO;
+import org.fourthline.cling.transport.spi.DatagramProcessor;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.UnsupportedDataException;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.logging.Logger;
+
+/**
+ * Datagram I/O with a non-blocking channel, all channels share the thread of one {@link DatagramSelector}.
+ * <p>
+ * Use this implementation instead of {@link DatagramIOImpl} on hosts with many network interfaces,
+ * where a blocking thread per bind address is too expensive. All instances created by a configuration
+ * have to share the same selector:
+ * </p>
+ * <pre>{@code
+ * new DefaultUpnpServiceConfiguration() {
+ *     final DatagramSelector datagramSelector = new DatagramSelector();
+ *
+ *     public DatagramIO createDatagramIO(NetworkAddressFactory networkAddressFactory) {
+ *         return new SelectorDatagramIOImpl(new DatagramIOConfigurationImpl(), datagramSelector);
+ *     }
+ * }
+ * }</pre>
+ * <p>
+ * A <code>DatagramChannel</code> can't set the time-to-live of outgoing multicast datagrams
+ * before Java 7, the operating system's default (usually 1) applies instead of
+ * {@link DatagramIOConfigurationImpl#getTimeToLive()}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class SelectorDatagramIOImpl implements DatagramIO<DatagramIOConfigurationImpl> {
+
+    private static Logger log = Logger.getLogger(DatagramIO.class.getName());
+
+    final protected DatagramIOConfigurationImpl configuration;
+    final protected DatagramSelector selector;
+
+    protected Router router;
+    protected DatagramProcessor datagramProcessor;
+
+    protected InetSocketAddress localAddress;
+    protected DatagramChannel channel;
+    protected ByteBuffer receiveBuffer; // Only used by the selector thread
+    protected DatagramPacket receivePacket; // Only used by the selector thread, wraps the buffer
+
+    public SelectorDatagramIOImpl(DatagramIOConfigurationImpl configuration, DatagramSelector selector) {
+        this.configuration = configuration;
+        this.selector = selector;
+    }
+
+    public DatagramIOConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    public DatagramSelector getSelector() {
+        return selector;
+    }
+
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    synchronized public void init(InetAddress bindAddress, Router router, DatagramProcessor datagramProcessor) throws InitializationException {
+
+        this.router = router;
+        this.datagramProcessor = datagramProcessor;
+
+        try {
+            // Ephemeral port, see DatagramIOImpl
+            log.info("Creating non-blocking channel (for datagram input/output) on: " + bindAddress);
+            channel = DatagramChannel.open();
+            channel.socket().setReceiveBufferSize(262144); // Keep a backlog of incoming datagrams if we are not fast enough
+            channel.socket().setBroadcast(true);
+            channel.socket().bind(new InetSocketAddress(bindAddress, 0));
+            channel.configureBlocking(false);
+
+            localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+            receiveBuffer = ByteBuffer.allocate(getConfiguration().getMaxDatagramBytes());
+            receivePacket = new DatagramPacket(receiveBuffer.array(), receiveBuffer.capacity());
+
+            getSelector().register(this);
+        } catch (Exception ex) {
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex);
+        }
+    }
+
+    synchronized public void stop() {
+        getSelector().unregister(this);
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                log.fine("Could not close channel: " + ex);
+            }
+        }
+    }
+
+    /**
+     * Enters the loop of the shared selector, or returns immediately if another service already did.
+     */
+    public void run() {
+        getSelector().run();
+    }
+
+    /**
+     * Called by the selector thread, reads all datagrams available on the channel.
+     * <p>
+     * A channel which fails to receive is stopped, it would otherwise stay selected and
+     * spin the loop of all other channels.
+     * </p>
+     */
+    protected void receive() {
+        while (true) {
+            SocketAddress source;
+            try {
+                receiveBuffer.clear();
+                source = channel.receive(receiveBuffer);
+            } catch (ClosedChannelException ex) {
+                log.fine("Channel closed");
+                return;
+            } catch (Exception ex) {
+                log.warning("Receiving datagram on " + localAddress + " failed, closing channel: " + ex);
+                stop();
+                return;
+            }
+            if (source == null) return; // Nothing left
+
+            // The processor only reads the received range, the packet is reused
+            receivePacket.setLength(receiveBuffer.position());
+            receivePacket.setSocketAddress(source);
+
+            log.fine(
+                    "UDP datagram received from: "
+                            + receivePacket.getAddress().getHostAddress()
+                            + ":" + receivePacket.getPort()
+                            + " on: " + localAddress
+            );
+
+            try {
+                router.received(datagramProcessor.read(localAddress.getAddress(), receivePacket));
+            } catch (UnsupportedDataException ex) {
+                log.info("Could not read datagram: " + ex.getMessage());
+            } catch (Exception ex) {
+                // Don't let one datagram stop the loop of all channels
+                log.warning("Handling datagram received on " + localAddress + " failed: " + ex);
+            }
+        }
+    }
+
+    synchronized public void send(OutgoingDatagramMessage message) {
+        log.fine("Sending message from address: " + localAddress);
+        DatagramPacket packet = datagramProcessor.write(message);
+        log.fine("Sending UDP datagram packet to: " + message.getDestinationAddress() + ":" + message.getDestinationPort());
+        send(packet);
+    }
+
+    synchronized public void send(DatagramPacket datagram) {
+        log.fine("Sending message from address: " + localAddress);
+
+        try {
+            int sent = channel.send(
+                    ByteBuffer.wrap(datagram.getData(), datagram.getOffset(), datagram.getLength()),
+                    datagram.getSocketAddress()
+            );
+            if (sent == 0) {
+                log.warning("Send buffer full, dropped datagram to: " + datagram.getAddress());
+            }
+        } catch (ClosedChannelException ex) {
+            log.fine("Channel closed, aborting datagram send to: " + datagram.getAddress());
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.warning("Exception sending datagram to: " + datagram.getAddress() + ": " + ex);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + ") " + localAddress;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.impl;
+
+/**
+ * Settings for the selector-based implementation.
+ *
+ * @author Christian Bauer
+ */
+public class SelectorStreamServerConfigurationImpl extends StreamServerConfigurationImpl {
+
+    private int maxConnections = 256;
+    private int maxActiveRequests = 32;
+    private int connectionIdleTimeoutSeconds = 30;
+    private int dataWaitTimeoutSeconds = 5;
+    private int maxRequestSizeKilobytes = 512;
+
+    /**
+     * Defaults to port '0', ephemeral.
+     */
+    public SelectorStreamServerConfigurationImpl() {
+    }
+
+    public SelectorStreamServerConfigurationImpl(int listenPort) {
+        super(listenPort);
+    }
+
+    /**
+     * Defaults to 256, further incoming connections are closed immediately.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Defaults to 32, further complete requests wait on their connection until a response has
+     * been sent on another connection.
+     */
+    public int getMaxActiveRequests() {
+        return maxActiveRequests;
+    }
+
+    public void setMaxActiveRequests(int maxActiveRequests) {
+        this.maxActiveRequests = maxActiveRequests;
+    }
+
+    /**
+     * Defaults to 30 seconds, a persistent connection without a new request is closed after this time.
+     */
+    public int getConnectionIdleTimeoutSeconds() {
+        return connectionIdleTimeoutSeconds;
+    }
+
+    public void setConnectionIdleTimeoutSeconds(int connectionIdleTimeoutSeconds) {
+        this.connectionIdleTimeoutSeconds = connectionIdleTimeoutSeconds;
+    }
+
+    /**
+     * Defaults to 5 seconds, the timeout for waiting on the rest of a partially received request,
+     * or for the client to accept the response data.
+     */
+    public int getDataWaitTimeoutSeconds() {
+        return dataWaitTimeoutSeconds;
+    }
+
+    public void setDataWaitTimeoutSeconds(int dataWaitTimeoutSeconds) {
+        this.dataWaitTimeoutSeconds = dataWaitTimeoutSeconds;
+    }
+
+    /**
+     * Defaults to 512 kilobytes, the connection of a larger request is closed.
+     */
+    public int getMaxRequestSizeKilobytes() {
+        return maxRequestSizeKilobytes;
+    }
+
+    public void setMaxRequestSizeKilobytes(int maxRequestSizeKilobytes) {
+        this.maxRequestSizeKilobytes = maxRequestSizeKilobytes;
+    }
+
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.StreamServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Implementation based on a single NIO selector loop.
+ * <p>
+ * All connections are accepted, read, and written on the thread executing {@link #run()}. Only
+ * a complete request is handed to the {@link org.fourthline.cling.transport.Router} as a
+ * {@link SelectorUpnpStream}, so idle persistent connections of control points don't occupy
+ * any threads. The number of connections, the number of requests processed concurrently, and
+ * the idle time of a connection are limited by the {@link SelectorStreamServerConfigurationImpl}.
+ * </p>
+ * <p>
+ * To use this server, override
+ * {@link org.fourthline.cling.UpnpServiceConfiguration#createStreamServer(org.fourthline.cling.transport.spi.NetworkAddressFactory)}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class SelectorStreamServerImpl implements StreamServer<SelectorStreamServerConfigurationImpl> {
+
+    private static Logger log = Logger.getLogger(StreamServer.class.getName());
+
+    final protected static int SELECT_TIMEOUT_MILLIS = 250;
+    final protected static int READ_BUFFER_SIZE = 8192;
+    final protected static byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes();
+
+    final protected SelectorStreamServerConfigurationImpl configuration;
+
+    // Only accessed by the selector thread
+    final protected Set<Connection> connections = new HashSet();
+    final protected Queue<Connection> waitingConnections = new LinkedList();
+    final protected ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    protected int activeRequests;
+
+    final protected Queue<Connection> pendingResponses = new ConcurrentLinkedQueue();
+
+    final protected AtomicInteger connectionCount = new AtomicInteger();
+    final protected AtomicLong requestCount = new AtomicLong();
+    final protected AtomicLong rejectedConnectionCount = new AtomicLong();
+
+    protected Router router;
+    protected Selector selector;
+    protected ServerSocketChannel serverChannel;
+    volatile protected boolean stopped;
+
+    public SelectorStreamServerImpl(SelectorStreamServerConfigurationImpl configuration) {
+        this.configuration = configuration;
+    }
+
+    public SelectorStreamServerConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    synchronized public void init(InetAddress bindAddress, Router router) throws InitializationException {
+        try {
+            this.router = router;
+
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().bind(
+                    new InetSocketAddress(bindAddress, configuration.getListenPort()),
+                    configuration.getTcpConnectionBacklog()
+            );
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            log.info("Created server (for receiving TCP streams) on: " + serverChannel.socket().getLocalSocketAddress());
+
+        } catch (Exception ex) {
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex.toString(), ex);
+        }
+    }
+
+    synchronized public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    synchronized public void stop() {
+        log.fine("Stopping StreamServer...");
+        stopped = true;
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException ex) {
+                log.fine("Exception closing streaming server socket: " + ex);
+            }
+        }
+        if (selector != null) selector.wakeup();
+    }
+
+    /**
+     * @return The number of open client connections.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return How many requests have been handed to the router.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return How many connections have been closed right away because the maximum was reached.
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnectionCount.get();
+    }
+
+    public void run() {
+        log.fine("Entering selector loop, listening for HTTP stream requests on: " + serverChannel.socket().getLocalSocketAddress());
+        while (!stopped) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        process(key);
+                    }
+                }
+
+                writePendingResponses();
+                expire();
+
+            } catch (ClosedSelectorException ex) {
+                log.fine("Selector closed");
+                break;
+            } catch (IOException ex) {
+                if (!stopped) log.warning("Selector loop failed, stopping: " + ex);
+                break;
+            }
+        }
+
+        log.fine("Selector loop stopped, closing all connections");
+        for (Connection connection : new ArrayList<Connection>(connections)) {
+            close(connection);
+        }
+        Connection connection;
+        while ((connection = pendingResponses.poll()) != null) {
+            connection.responseWritten(false);
+        }
+        try {
+            if (serverChannel.isOpen()) serverChannel.close();
+            selector.close();
+        } catch (IOException ex) {
+            log.info("Exception closing streaming server socket: " + ex.getMessage());
+        }
+    }
+
+    protected void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connections.size() >= getConfiguration().getMaxConnections()) {
+                log.fine("Maximum connections reached, closing incoming connection from: " + channel.socket().getInetAddress());
+                rejectedConnectionCount.incrementAndGet();
+                channel.close();
+                continue;
+            }
+            log.fine("Incoming connection from: " + channel.socket().getInetAddress());
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            connectionCount.set(connections.size());
+        }
+    }
+
+    protected void process(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(connection);
+            } else if (key.isWritable()) {
+                write(connection);
+            }
+        } catch (IOException ex) {
+            log.fine("Exception on connection, closing: " + ex);
+            close(connection);
+        }
+    }
+
+    protected void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int read = connection.channel.read(readBuffer);
+        if (read == -1) {
+            log.fine("Connection closed by client: " + connection);
+            close(connection);
+            return;
+        }
+        if (read == 0) return;
+
+        connection.touch();
+        connection.requestData.write(readBuffer.array(), 0, read);
+        if (connection.requestData.size() > getConfiguration().getMaxRequestSizeKilobytes() * 1024) {
+            log.info("Request exceeds maximum size, closing connection: " + connection);
+            close(connection);
+            return;
+        }
+        dispatchIfComplete(connection);
+    }
+
+    protected void dispatchIfComplete(Connection connection) throws IOException {
+        int messageEnd = connection.requestData.getMessageEnd(false);
+        if (messageEnd == -1) {
+            String[] startLine = connection.requestData.getStartLine();
+            if (startLine != null && "HTTP/1.1".equalsIgnoreCase(startLine[2])
+                    && connection.requestData.isExpectContinue() && !connection.continueSent) {
+                sendContinue(connection);
+            }
+            return;
+        }
+
+        // Don't read anything else from the client until we have responded
+        connection.key.interestOps(0);
+        connection.messageEnd = messageEnd;
+
+        if (activeRequests >= getConfiguration().getMaxActiveRequests()) {
+            log.fine("Maximum active requests reached, request waits on: " + connection);
+            connection.state = State.WAITING;
+            waitingConnections.add(connection);
+        } else {
+            dispatch(connection);
+        }
+    }
+
+    /**
+     * The client waits for this interim response before it sends the request body. Nothing else is
+     * written on the connection at this time, the few bytes fit into the empty socket buffer.
+     */
+    protected void sendContinue(Connection connection) throws IOException {
+        connection.continueSent = true;
+        ByteBuffer data = ByteBuffer.wrap(CONTINUE_RESPONSE);
+        connection.channel.write(data);
+        if (data.hasRemaining())
+            throw new IOException("Could not write interim response: " + connection);
+        log.fine("Sent interim 100 Continue response: " + connection);
+    }
+
+    protected void dispatch(Connection connection) {
+        connection.state = State.PROCESSING;
+        activeRequests++;
+        requestCount.incrementAndGet();
+        try {
+            router.received(new SelectorUpnpStream(router.getProtocolFactory(), connection));
+        } catch (RuntimeException ex) {
+            log.warning("Router did not accept stream, closing connection: " + ex);
+            activeRequests--;
+            close(connection);
+        }
+    }
+
+    protected void writePendingResponses() {
+        Connection connection;
+        while ((connection = pendingResponses.poll()) != null) {
+            if (connection.state != State.PROCESSING) {
+                // Closed while the request was processed
+                activeRequests--;
+                connection.responseWritten(false);
+                dispatchWaiting();
+                continue;
+            }
+            connection.state = State.WRITING;
+            connection.touch();
+            try {
+                connection.key.interestOps(SelectionKey.OP_WRITE);
+                write(connection);
+            } catch (IOException ex) {
+                log.fine("Exception writing response, closing: " + ex);
+                close(connection);
+            }
+        }
+    }
+
+    protected void write(Connection connection) throws IOException {
+        if (connection.state != State.WRITING) return;
+
+        if (connection.channel.write(connection.responseData) > 0) connection.touch();
+        if (connection.responseData.hasRemaining()) return;
+
+        connection.state = State.READING;
+        activeRequests--;
+        connection.responseWritten(true);
+
+        if (connection.closeAfterResponse) {
+            close(connection);
+        } else {
+            connection.requestData.consume(connection.messageEnd);
+            connection.continueSent = false;
+            connection.key.interestOps(SelectionKey.OP_READ);
+            dispatchIfComplete(connection); // The client might have sent the next request already
+        }
+        dispatchWaiting();
+    }
+
+    protected void dispatchWaiting() {
+        while (activeRequests < getConfiguration().getMaxActiveRequests() && !waitingConnections.isEmpty()) {
+            dispatch(waitingConnections.poll());
+        }
+    }
+
+    protected void expire() {
+        long now = System.currentTimeMillis();
+        long idleTimeout = getConfiguration().getConnectionIdleTimeoutSeconds() * 1000l;
+        long dataTimeout = getConfiguration().getDataWaitTimeoutSeconds() * 1000l;
+        for (Connection connection : new ArrayList<Connection>(connections)) {
+            long timeout;
+            if (connection.state == State.READING) {
+                timeout = connection.requestData.size() == 0 ? idleTimeout : dataTimeout;
+            } else if (connection.state == State.WRITING) {
+                timeout = dataTimeout;
+            } else {
+                continue;
+            }
+            if (now - connection.lastActivity > timeout) {
+                log.fine("Connection timed out, closing: " + connection);
+                close(connection);
+            }
+        }
+    }
+
+    protected void close(Connection connection) {
+        if (connection.state == State.CLOSED) return;
+
+        if (connection.state == State.WAITING) {
+            waitingConnections.remove(connection);
+        } else if (connection.state == State.WRITING) {
+            activeRequests--;
+            connection.responseWritten(false);
+            dispatchWaiting();
+        }
+        // A connection in PROCESSING state is finished when its response arrives
+
+        connection.state = State.CLOSED;
+        connections.remove(connection);
+        connectionCount.set(connections.size());
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            log.fine("Exception closing connection: " + ex);
+        }
+    }
+
+    protected enum State {
+        READING, WAITING, PROCESSING, WRITING, CLOSED
+    }
+
+    /**
+     * A client connection, the state is only modified on the selector thread.
+     */
+    protected class Connection {
+
+        final protected SocketChannel channel;
+        final protected HttpMessageData requestData = new HttpMessageData();
+        protected SelectionKey key;
+        protected State state = State.READING;
+        protected long lastActivity = System.currentTimeMillis();
+        protected int messageEnd;
+        protected boolean continueSent;
+
+        // Handed over from the processing thread
+        volatile protected ByteBuffer responseData;
+        volatile protected boolean closeAfterResponse;
+        protected CountDownLatch responseWritten;
+        volatile protected boolean responseSuccess;
+
+        public Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public HttpMessageData getRequestData() {
+            return requestData;
+        }
+
+        public InetAddress getRemoteAddress() {
+            return channel.socket().getInetAddress();
+        }
+
+        protected void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        /**
+         * Called by the processing thread, blocks until the response has been written or the
+         * connection has been closed.
+         *
+         * @return <code>true</code> if the response has been written completely.
+         */
+        public boolean respond(byte[] data, boolean close) throws InterruptedException {
+            CountDownLatch written = new CountDownLatch(1);
+            responseWritten = written;
+            respondLater(data, close);
+            while (!written.await(SELECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (stopped && !written.await(SELECT_TIMEOUT_MILLIS * 4, TimeUnit.MILLISECONDS)) {
+                    return false;
+                }
+            }
+            return responseSuccess;
+        }
+
+        /**
+         * Queues the response for the selector loop and returns immediately, this can be called by the
+         * selector thread.
+         */
+        public void respondLater(byte[] data, boolean close) {
+            responseData = ByteBuffer.wrap(data);
+            closeAfterResponse = close;
+            pendingResponses.add(this);
+            selector.wakeup();
+        }
+
+        protected void responseWritten(boolean success) {
+            responseSuccess = success;
+            responseData = null;
+            if (responseWritten != null) responseWritten.countDown();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") " + channel.socket().getRemoteSocketAddress();
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.protocol.ProtocolFactory;
+import org.fourthline.cling.transport.spi.UpnpStream;
+import org.seamless.util.Exceptions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes a request received by the {@link SelectorStreamServerImpl}.
+ * <p>
+ * The request has been read completely by the selector loop, this stream converts it into a
+ * {@link org.fourthline.cling.model.message.StreamRequestMessage} and hands the serialized response
+ * back to the selector loop, waiting until it has been written.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class SelectorUpnpStream extends UpnpStream {
+
+    private static Logger log = Logger.getLogger(UpnpStream.class.getName());
+
+    final protected SelectorStreamServerImpl.Connection connection;
+
+    public SelectorUpnpStream(ProtocolFactory protocolFactory, SelectorStreamServerImpl.Connection connection) {
+        super(protocolFactory);
+        this.connection = connection;
+    }
+
+    public SelectorStreamServerImpl.Connection getConnection() {
+        return connection;
+    }
+
+    public void run() {
+
+        boolean responded = false;
+        try {
+            HttpMessageData requestData = getConnection().getRequestData();
+            String[] startLine = requestData.getStartLine();
+
+            log.fine("Processing HTTP request: " + startLine[0] + " " + startLine[1]);
+
+            // Status
+            StreamRequestMessage requestMessage =
+                    new StreamRequestMessage(
+                            UpnpRequest.Method.getByHttpName(startLine[0]),
+                            URI.create(startLine[1])
+                    );
+
+            if (requestMessage.getOperation().getMethod().equals(UpnpRequest.Method.UNKNOWN)) {
+                log.fine("Method not supported by UPnP stack: " + startLine[0]);
+                throw new RuntimeException("Method not supported: " + startLine[0]);
+            }
+
+            // Protocol
+            requestMessage.getOperation().setHttpMinorVersion(
+                    startLine[2].toUpperCase().equals("HTTP/1.1") ? 1 : 0
+            );
+
+            log.fine("Created new request message: " + requestMessage);
+
+            // Headers
+            requestMessage.setHeaders(requestData.getHeaders());
+
+            // Body
+            byte[] bodyBytes = requestData.getBody(false);
+
+            log.fine("Reading request body bytes: " + bodyBytes.length);
+
+            if (bodyBytes.length > 0 && requestMessage.isContentTypeMissingOrText()) {
+
+                log.fine("Request contains textual entity body, converting then setting string on message");
+                requestMessage.setBodyCharacters(bodyBytes);
+
+            } else if (bodyBytes.length > 0) {
+
+                log.fine("Request contains binary entity body, setting bytes on message");
+                requestMessage.setBody(UpnpMessage.BodyType.BYTES, bodyBytes);
+
+            } else {
+                log.fine("Request did not contain entity body");
+            }
+
+            // Only HTTP 1.1 connections are persistent
+            boolean close = requestMessage.getOperation().getHttpMinorVersion() == 0 || requestData.isCloseConnection();
+
+            // Process it
+            StreamResponseMessage responseMessage = process(requestMessage);
+
+            // Return the response, if it's null, it's 404
+            byte[] responseData = responseMessage != null
+                    ? createResponseData(responseMessage, close)
+                    : createResponseData(new StreamResponseMessage(UpnpResponse.Status.NOT_FOUND), close);
+
+            log.fine("Sending HTTP response message: " + responseMessage);
+            responded = true;
+            if (getConnection().respond(responseData, close)) {
+                responseSent(responseMessage);
+            } else {
+                responseException(new IOException("Connection closed before response was sent"));
+            }
+
+        } catch (Throwable t) {
+
+            log.fine("Exception occured during UPnP stream processing: " + t);
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Cause: " + Exceptions.unwrap(t), Exceptions.unwrap(t));
+            }
+            if (!responded) {
+                try {
+                    getConnection().respond(
+                            createResponseData(new StreamResponseMessage(UpnpResponse.Status.INTERNAL_SERVER_ERROR), true),
+                            true
+                    );
+                } catch (Exception ex) {
+                    log.warning("Couldn't send error response: " + ex);
+                }
+            }
+
+            responseException(t);
+        }
+    }
+
+    /**
+     * Queues a <em>503 SERVICE UNAVAILABLE</em> response for the selector loop, this is called in the
+     * selector thread which can't wait for the response to be written.
+     */
+    @Override
+    public void rejected() {
+        unavailable = true;
+        try {
+            getConnection().respondLater(
+                    createResponseData(new StreamResponseMessage(UpnpResponse.Status.SERVICE_UNAVAILABLE), true),
+                    true
+            );
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected byte[] createResponseData(StreamResponseMessage responseMessage, boolean close) throws IOException {
+        UpnpResponse responseOperation = responseMessage.getOperation();
+        byte[] body = responseMessage.hasBody() ? responseMessage.getBodyBytes() : null;
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(responseOperation.getStatusCode())
+                .append(" ").append(responseOperation.getStatusMessage()).append("\r\n");
+
+        for (Map.Entry<String, List<String>> entry : responseMessage.getHeaders().entrySet()) {
+            String headerName = entry.getKey();
+            if ("Content-Length".equalsIgnoreCase(headerName)
+                    || "Connection".equalsIgnoreCase(headerName)
+                    || "Transfer-Encoding".equalsIgnoreCase(headerName))
+                continue;
+            for (String v : entry.getValue()) {
+                sb.append(headerName).append(": ").append(v).append("\r\n");
+            }
+        }
+        sb.append("Content-Length: ").append(body != null ? body.length : 0).append("\r\n");
+        if (close) sb.append("Connection: close\r\n");
+        sb.append("\r\n");
+
+        // According to HTTP 1.0 RFC, headers and their values are US-ASCII
+        byte[] head = sb.toString().getBytes("US-ASCII");
+        if (body == null) return head;
+
+        byte[] data = new byte[head.length + body.length];
+        System.arraycopy(head, 0, data, 0, head.length);
+        System.arraycopy(body, 0, data, head.length, body.length);
+        return data;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.transport.Router;
+import org.fourthline.cling.transport.spi.DatagramProcessor;
+import org.fourthline.cling.transport.spi.InitializationException;
+import org.fourthline.cling.transport.spi.MulticastReceiver;
+
+import java.net.NetworkInterface;
+
+/**
+ * Multicast receiver which shares one {@link MulticastGroupSocket}, and its thread, with the
+ * receivers of all other network interfaces.
+ * <p>
+ * Use this implementation instead of {@link MulticastReceiverImpl} on hosts with many network
+ * interfaces. All instances created by a configuration have to share the same socket:
+ * </p>
+ * <pre>{@code
+ * new DefaultUpnpServiceConfiguration() {
+ *     MulticastGroupSocket multicastGroupSocket;
+ *
+ *     public MulticastReceiver createMulticastReceiver(NetworkAddressFactory networkAddressFactory) {
+ *         if (multicastGroupSocket == null)
+ *             multicastGroupSocket = new MulticastGroupSocket(
+ *                 new MulticastReceiverConfigurationImpl(
+ *                     networkAddressFactory.getMulticastGroup(),
+ *                     networkAddressFactory.getMulticastPort()
+ *                 )
+ *             );
+ *         return new SharedMulticastReceiverImpl(multicastGroupSocket);
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author Christian Bauer
+ */
+public class SharedMulticastReceiverImpl implements MulticastReceiver<MulticastReceiverConfigurationImpl> {
+
+    final protected MulticastGroupSocket groupSocket;
+
+    protected NetworkInterface multicastInterface;
+
+    public SharedMulticastReceiverImpl(MulticastGroupSocket groupSocket) {
+        this.groupSocket = groupSocket;
+    }
+
+    public MulticastReceiverConfigurationImpl getConfiguration() {
+        return groupSocket.getConfiguration();
+    }
+
+    public MulticastGroupSocket getGroupSocket() {
+        return groupSocket;
+    }
+
+    synchronized public void init(NetworkInterface networkInterface, Router router, DatagramProcessor datagramProcessor) throws InitializationException {
+        this.multicastInterface = networkInterface;
+        try {
+            getGroupSocket().join(networkInterface, router, datagramProcessor);
+        } catch (Exception ex) {
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex);
+        }
+    }
+
+    synchronized public void stop() {
+        if (multicastInterface != null) {
+            getGroupSocket().leave(multicastInterface);
+        }
+    }
+
+    /**
+     * Enters the receiving loop of the shared socket, or returns immediately if another receiver already did.
+     */
+    public void run() {
+        getGroupSocket().run();
+    }
+
+}
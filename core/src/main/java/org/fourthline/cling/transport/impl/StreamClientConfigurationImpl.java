@@ -30,6 +30,7 @@ public class StreamClientConfigurationImpl implements StreamClientConfiguration
     private boolean usePersistentConnections = false;
     private int connectionTimeoutSeconds = 5;
     private int dataReadTimeoutSeconds = 5;
+    private int maxConnectionsPerHost = 0;
 
     /**
      * Defaults to <code>false</code>, avoiding obscure bugs in the JDK.
@@ -64,6 +65,19 @@ public class StreamClientConfigurationImpl implements StreamClientConfiguration
         this.dataReadTimeoutSeconds = dataReadTimeoutSeconds;
     }
 
+    /**
+     * Defaults to <code>0</code>, the number of connections is not limited. Otherwise concurrent requests
+     * to the same host and port wait for a free connection, at most for the connection timeout. A
+     * request which can't get a connection in time fails like a request to an unreachable host.
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
     /**
      * Defaults to the values defined in {@link org.fourthline.cling.model.Constants}.
      */
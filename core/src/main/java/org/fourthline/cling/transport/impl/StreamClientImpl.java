@@ -36,6 +36,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.Proxy;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
@@ -59,9 +60,11 @@ public class StreamClientImpl implements StreamClient {
     final private static Logger log = Logger.getLogger(StreamClient.class.getName());
 
     final protected StreamClientConfigurationImpl configuration;
+    final protected HostConnectionLimiter connectionLimiter;
 
     public StreamClientImpl(StreamClientConfigurationImpl configuration) throws InitializationException {
         this.configuration = configuration;
+        this.connectionLimiter = createConnectionLimiter();
 
         log.fine("Using persistent HTTP stream client connections: " + configuration.isUsePersistentConnections());
         System.setProperty("http.keepAlive", Boolean.toString(configuration.isUsePersistentConnections()));
@@ -108,8 +111,42 @@ public class StreamClientImpl implements StreamClient {
         return configuration;
     }
 
+    /**
+     * @return The per-host connection limits and statistics, or <code>null</code> if connections are not limited.
+     */
+    public HostConnectionLimiter getConnectionLimiter() {
+        return connectionLimiter;
+    }
+
+    protected HostConnectionLimiter createConnectionLimiter() {
+        return getConfiguration().getMaxConnectionsPerHost() > 0
+                ? new HostConnectionLimiter(getConfiguration().getMaxConnectionsPerHost())
+                : null;
+    }
+
     @Override
     public StreamResponseMessage sendRequest(StreamRequestMessage requestMessage) {
+        if (getConnectionLimiter() == null)
+            return executeRequest(requestMessage);
+
+        URI uri = requestMessage.getOperation().getURI();
+        try {
+            if (!getConnectionLimiter().acquire(uri, getConfiguration().getConnectionTimeoutSeconds() * 1000l)) {
+                log.info("Too many connections to host, no free connection for: " + requestMessage);
+                return null;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            return executeRequest(requestMessage);
+        } finally {
+            getConnectionLimiter().release(uri);
+        }
+    }
+
+    protected StreamResponseMessage executeRequest(StreamRequestMessage requestMessage) {
 
         final UpnpRequest requestOperation = requestMessage.getOperation();
         log.fine("Preparing HTTP request message with method '" + requestOperation.getHttpMethodName() + "': " + requestMessage);
@@ -118,6 +155,7 @@ public class StreamClientImpl implements StreamClient {
 
         HttpURLConnection urlConnection = null;
         InputStream inputStream;
+        boolean completed = false;
         try {
 
             urlConnection = (HttpURLConnection) url.openConnection();
@@ -131,7 +169,9 @@ public class StreamClientImpl implements StreamClient {
 
             log.fine("Sending HTTP request: " + requestMessage);
             inputStream = urlConnection.getInputStream();
-            return createResponse(urlConnection, inputStream);
+            StreamResponseMessage responseMessage = createResponse(urlConnection, inputStream);
+            completed = responseMessage != null;
+            return responseMessage;
 
         } catch (ProtocolException ex) {
             log.fine("Unrecoverable HTTP protocol exception: " + ex);
@@ -146,7 +186,9 @@ public class StreamClientImpl implements StreamClient {
             log.fine("Exception occured, trying to read the error stream");
             try {
                 inputStream = urlConnection.getErrorStream();
-                return createResponse(urlConnection, inputStream);
+                StreamResponseMessage responseMessage = createResponse(urlConnection, inputStream);
+                completed = responseMessage != null;
+                return responseMessage;
             } catch (Exception errorEx) {
                 log.fine("Could not read error stream: " + errorEx);
                 return null;
@@ -157,8 +199,9 @@ public class StreamClientImpl implements StreamClient {
 
         } finally {
 
-            if (urlConnection != null) {
+            if (urlConnection != null && !(completed && getConfiguration().isUsePersistentConnections())) {
                 // Release any idle persistent connection, or "indicate that we don't want to use this server for a while"
+                // A fully read response leaves the connection in the JDK's keep-alive cache for the next request
                 urlConnection.disconnect();
             }
         }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.XMLUtil;
+import org.fourthline.cling.model.message.UpnpMessage;
+import org.fourthline.cling.model.message.gena.IncomingEventRequestMessage;
+import org.fourthline.cling.model.message.gena.OutgoingEventRequestMessage;
+import org.fourthline.cling.model.meta.QueryStateVariableAction;
+import org.fourthline.cling.model.meta.Service;
+import org.fourthline.cling.model.meta.StateVariable;
+import org.fourthline.cling.model.state.StateVariableValue;
+import org.fourthline.cling.transport.spi.UnsupportedDataException;
+import org.seamless.xml.XmlPullParserUtils;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes and reads GENA event messages without building a <em>W3C DOM</em>.
+ * <p>
+ * The <code>e:propertyset</code> is written directly into a string buffer, the output is identical
+ * to what {@link GENAEventProcessorImpl} produces. Incoming event messages are read with a pull
+ * parser, each property element is resolved with a map lookup of the state variable on the
+ * service, and only the text of known state variables is read.
+ * </p>
+ * <p>
+ * Note that the DOM-based methods of the superclass are not called by this implementation,
+ * customizations of those methods have no effect.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamingGENAEventProcessor extends GENAEventProcessorImpl {
+
+    private static Logger log = Logger.getLogger(StreamingGENAEventProcessor.class.getName());
+
+    public static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\"?>";
+
+    @Override
+    public void writeBody(OutgoingEventRequestMessage requestMessage) throws UnsupportedDataException {
+        log.fine("Writing body of: " + requestMessage);
+
+        try {
+
+            StringBuilder sb = new StringBuilder(256);
+            sb.append(XML_DECLARATION);
+            sb.append("<e:propertyset xmlns:e=\"").append(Constants.NS_UPNP_EVENT_10).append("\"");
+            if (requestMessage.getStateVariableValues().isEmpty()) {
+                sb.append("/>");
+            } else {
+                sb.append(">");
+                for (StateVariableValue stateVariableValue : requestMessage.getStateVariableValues()) {
+                    writeProperty(sb, stateVariableValue);
+                }
+                sb.append("</e:propertyset>");
+            }
+
+            requestMessage.setBody(UpnpMessage.BodyType.STRING, sb.toString());
+
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("===================================== GENA BODY BEGIN ============================================");
+                log.finer(requestMessage.getBody().toString());
+                log.finer("-===================================== GENA BODY END ============================================");
+            }
+
+        } catch (Exception ex) {
+            throw new UnsupportedDataException("Can't transform message payload: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void readBody(IncomingEventRequestMessage requestMessage) throws UnsupportedDataException {
+
+        log.fine("Reading body of: " + requestMessage);
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("===================================== GENA BODY BEGIN ============================================");
+            log.finer(requestMessage.getBody().toString());
+            log.finer("-===================================== GENA BODY END ============================================");
+        }
+
+        checkRequestBodyValidity(requestMessage);
+
+        // TODO: UPNP VIOLATION: Netgear 834DG DSL Router sends trailing spaces/newlines after last XML element, need to trim()
+        String body = requestMessage.getBodyString().trim();
+
+        try {
+            XmlPullParser xpp = XmlPullParserUtils.createParser(body);
+            readPropertyset(xpp, requestMessage);
+        } catch (Exception ex) {
+            throw new UnsupportedDataException("Can't transform message payload: " + ex.getMessage(), ex, body);
+        }
+    }
+
+    /* ##################################################################################################### */
+
+    protected void writeProperty(StringBuilder sb, StateVariableValue stateVariableValue) {
+        String name = stateVariableValue.getStateVariable().getName();
+        String value = stateVariableValue.toString();
+        sb.append("<e:property>");
+        sb.append('<').append(name);
+        if (value == null) {
+            sb.append("/>");
+        } else {
+            sb.append('>');
+            XMLUtil.encodeText(sb, value);
+            sb.append("</").append(name).append('>');
+        }
+        sb.append("</e:property>");
+    }
+
+    protected void readPropertyset(XmlPullParser xpp, IncomingEventRequestMessage message) throws Exception {
+        int event = xpp.getEventType();
+        if (event == XmlPullParser.START_DOCUMENT)
+            event = xpp.nextTag();
+        if (event != XmlPullParser.START_TAG || !"propertyset".equals(getUnprefixedName(xpp))) {
+            throw new RuntimeException("Root element was not 'propertyset'");
+        }
+
+        Service service = message.getService();
+        int depth = xpp.getDepth();
+        while ((event = xpp.next()) != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.END_TAG && xpp.getDepth() == depth)
+                break;
+            if (event == XmlPullParser.START_TAG && xpp.getDepth() == depth + 2) {
+                // A state variable element, the child of a property element
+                String stateVariableName = getUnprefixedName(xpp);
+                StateVariable stateVariable = getStateVariable(service, stateVariableName);
+                if (stateVariable != null) {
+                    log.fine("Reading state variable value: " + stateVariableName);
+                    message.getStateVariableValues().add(
+                            new StateVariableValue(stateVariable, xpp.nextText())
+                    );
+                }
+            }
+        }
+    }
+
+    protected String getUnprefixedName(XmlPullParser xpp) {
+        String name = xpp.getName();
+        int colon = name.indexOf(':');
+        return colon == -1 ? name : name.substring(colon + 1);
+    }
+
+    /**
+     * @return The state variable with the given name, ignoring the virtual variables of the
+     *         <em>QueryStateVariable</em> action, which are never evented.
+     */
+    protected StateVariable getStateVariable(Service service, String name) {
+        if (QueryStateVariableAction.VIRTUAL_STATEVARIABLE_INPUT.equals(name)
+                || QueryStateVariableAction.VIRTUAL_STATEVARIABLE_OUTPUT.equals(name))
+            return null;
+        return service.getStateVariable(name);
+    }
+
+}
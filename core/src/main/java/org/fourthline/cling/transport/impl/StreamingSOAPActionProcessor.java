@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.transport.impl;
+
+import org.fourthline.cling.model.Constants;
+import org.fourthline.cling.model.XMLUtil;
+import org.fourthline.cling.model.action.ActionArgumentValue;
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.message.UpnpMessage;
+import org.fourthline.cling.model.message.control.ActionMessage;
+import org.fourthline.cling.model.message.control.ActionRequestMessage;
+import org.fourthline.cling.model.message.control.ActionResponseMessage;
+import org.fourthline.cling.model.meta.ActionArgument;
+import org.fourthline.cling.transport.spi.UnsupportedDataException;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the SOAP envelope directly into a string buffer, without building a <em>W3C DOM</em>.
+ * <p>
+ * The output is identical to what {@link SOAPActionProcessorImpl} produces for the same
+ * invocation, including the XML declaration, namespace declarations, and character escaping.
+ * Reading of messages is inherited unchanged, so this processor can replace the default
+ * implementation transparently:
+ * </p>
+ * <pre>{@code
+ * new DefaultUpnpServiceConfiguration() {
+ *     protected SOAPActionProcessor createSOAPActionProcessor() {
+ *         return new StreamingSOAPActionProcessor();
+ *     }
+ * }
+ * }</pre>
+ * <p>
+ * Note that the DOM-based <code>writeXYZ(Document, ...)</code> methods of the superclass are
+ * not called by this implementation, customizations of those methods have no effect.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamingSOAPActionProcessor extends SOAPActionProcessorImpl {
+
+    private static Logger log = Logger.getLogger(StreamingSOAPActionProcessor.class.getName());
+
+    public static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\"?>";
+
+    @Override
+    public void writeBody(ActionRequestMessage requestMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
+
+        log.fine("Writing body of " + requestMessage + " for: " + actionInvocation);
+
+        try {
+
+            StringBuilder sb = new StringBuilder(256);
+            writeEnvelopeStart(sb);
+            writeActionStart(sb, requestMessage, actionInvocation.getAction().getName(), actionInvocation.getAction().getInputArguments().length);
+            for (ActionArgument argument : actionInvocation.getAction().getInputArguments()) {
+                log.fine("Writing action input argument: " + argument.getName());
+                writeArgument(sb, argument, actionInvocation.getInput(argument));
+            }
+            writeActionEnd(sb, actionInvocation.getAction().getName(), actionInvocation.getAction().getInputArguments().length);
+            writeEnvelopeEnd(sb);
+            requestMessage.setBody(UpnpMessage.BodyType.STRING, sb.toString());
+
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("===================================== SOAP BODY BEGIN ============================================");
+                log.finer(requestMessage.getBody().toString());
+                log.finer("-===================================== SOAP BODY END ============================================");
+            }
+
+        } catch (Exception ex) {
+            throw new UnsupportedDataException("Can't transform message payload: " + ex, ex);
+        }
+    }
+
+    @Override
+    public void writeBody(ActionResponseMessage responseMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
+
+        log.fine("Writing body of " + responseMessage + " for: " + actionInvocation);
+
+        try {
+
+            StringBuilder sb = new StringBuilder(256);
+            writeEnvelopeStart(sb);
+            if (actionInvocation.getFailure() != null) {
+                writeFault(sb, actionInvocation);
+            } else {
+                String responseName = actionInvocation.getAction().getName() + "Response";
+                writeActionStart(sb, responseMessage, responseName, actionInvocation.getAction().getOutputArguments().length);
+                for (ActionArgument argument : actionInvocation.getAction().getOutputArguments()) {
+                    log.fine("Writing action output argument: " + argument.getName());
+                    writeArgument(sb, argument, actionInvocation.getOutput(argument));
+                }
+                writeActionEnd(sb, responseName, actionInvocation.getAction().getOutputArguments().length);
+            }
+            writeEnvelopeEnd(sb);
+            responseMessage.setBody(UpnpMessage.BodyType.STRING, sb.toString());
+
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("===================================== SOAP BODY BEGIN ============================================");
+                log.finer(responseMessage.getBody().toString());
+                log.finer("-===================================== SOAP BODY END ============================================");
+            }
+
+        } catch (Exception ex) {
+            throw new UnsupportedDataException("Can't transform message payload: " + ex, ex);
+        }
+    }
+
+    /* ##################################################################################################### */
+
+    protected void writeEnvelopeStart(StringBuilder sb) {
+        sb.append(XML_DECLARATION);
+        sb.append("<s:Envelope s:encodingStyle=\"").append(Constants.SOAP_URI_ENCODING_STYLE).append("\"");
+        sb.append(" xmlns:s=\"").append(Constants.SOAP_NS_ENVELOPE).append("\">");
+        sb.append("<s:Body>");
+    }
+
+    protected void writeEnvelopeEnd(StringBuilder sb) {
+        sb.append("</s:Body>");
+        sb.append("</s:Envelope>");
+    }
+
+    /**
+     * Writes an empty element tag if there are no arguments, like the DOM serializer does for an
+     * element without child nodes.
+     */
+    protected void writeActionStart(StringBuilder sb, ActionMessage message, String elementName, int argumentCount) {
+        if (message.getActionNamespace() == null) {
+            throw new IllegalArgumentException("Action message has no namespace: " + message);
+        }
+        log.fine("Writing action element: " + elementName);
+        sb.append("<u:").append(elementName);
+        sb.append(" xmlns:u=\"").append(message.getActionNamespace()).append("\"");
+        sb.append(argumentCount == 0 ? "/>" : ">");
+    }
+
+    protected void writeActionEnd(StringBuilder sb, String elementName, int argumentCount) {
+        if (argumentCount > 0) {
+            sb.append("</u:").append(elementName).append(">");
+        }
+    }
+
+    protected void writeArgument(StringBuilder sb, ActionArgument argument, ActionArgumentValue value) {
+        writeElement(sb, argument.getName(), value != null ? value.toString() : "");
+    }
+
+    protected void writeFault(StringBuilder sb, ActionInvocation actionInvocation) {
+        int errorCode = actionInvocation.getFailure().getErrorCode();
+        String errorDescription = actionInvocation.getFailure().getMessage();
+
+        log.fine("Writing fault element: " + errorCode + " - " + errorDescription);
+
+        sb.append("<s:Fault>");
+        writeElement(sb, "faultcode", "s:Client");
+        writeElement(sb, "faultstring", "UPnPError");
+        sb.append("<detail>");
+        sb.append("<UPnPError xmlns=\"").append(Constants.NS_UPNP_CONTROL_10).append("\">");
+        writeElement(sb, "errorCode", Integer.toString(errorCode));
+        writeElement(sb, "errorDescription", errorDescription);
+        sb.append("</UPnPError>");
+        sb.append("</detail>");
+        sb.append("</s:Fault>");
+    }
+
+    /**
+     * Writes an empty element tag if the content is <code>null</code>, like the DOM serializer does
+     * for an element without child nodes.
+     */
+    protected void writeElement(StringBuilder sb, String name, String content) {
+        sb.append('<').append(name);
+        if (content == null) {
+            sb.append("/>");
+            return;
+        }
+        sb.append('>');
+        appendEscaped(sb, content);
+        sb.append("</").append(name).append('>');
+    }
+
+    protected void appendEscaped(StringBuilder sb, String s) {
+        XMLUtil.encodeText(sb, s);
+    }
+
+}
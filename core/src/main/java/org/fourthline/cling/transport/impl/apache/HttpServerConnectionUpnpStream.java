@@ -117,6 +117,10 @@ public class HttpServerConnectionUpnpStream extends UpnpStream {
                 log.fine("Handling request on open connection...");
                 HttpContext context = new BasicHttpContext(null);
                 httpService.handleRequest(connection, context);
+                if (isUnavailable()) {
+                    // Don't serve a persistent connection in the thread of the server
+                    break;
+                }
             }
         } catch (ConnectionClosedException ex) {
             log.fine("Client closed connection");
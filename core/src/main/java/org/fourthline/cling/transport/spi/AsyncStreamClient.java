@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.spi;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+
+import java.util.concurrent.Future;
+
+/**
+ * A stream client which can send requests without blocking the calling thread.
+ * <p>
+ * The {@link org.fourthline.cling.transport.RouterImpl} uses this interface when the configured
+ * {@link StreamClient} implements it, otherwise it runs the blocking
+ * {@link #sendRequest(org.fourthline.cling.model.message.StreamRequestMessage)} on an executor.
+ * </p>
+ *
+ * @param <C> The type of the service's configuration.
+ *
+ * @author Christian Bauer
+ */
+public interface AsyncStreamClient<C extends StreamClientConfiguration> extends StreamClient<C> {
+
+    /**
+     * Starts sending the given request via TCP (HTTP) and returns immediately.
+     * <p>
+     * The same rules as for {@link #sendRequest(org.fourthline.cling.model.message.StreamRequestMessage)}
+     * apply: This method never throws an exception, the future's result is <code>null</code> if an
+     * error occured. Cancelling the future aborts the request and closes its connection.
+     * </p>
+     *
+     * @param message The message to send.
+     * @param callback An optional callback, notified once the request completes, or <code>null</code>.
+     * @return The pending response.
+     */
+    public Future<StreamResponseMessage> sendRequest(StreamRequestMessage message, StreamResponseCallback callback);
+
+}
@@ -41,6 +41,12 @@ public interface DatagramProcessor {
      * a {@link org.fourthline.cling.model.message.UpnpResponse} operation type.
      * </p>
      *
+     * <p>
+     * Receivers reuse the buffer of the datagram for the next packet once this method returns. Only the
+     * range from <code>getOffset()</code> with <code>getLength()</code> bytes is valid, and the returned
+     * message must not reference the buffer.
+     * </p>
+     *
      * @param receivedOnAddress The address of the socket on which this datagram was received.
      * @param datagram The received UDP datagram.
      * @return The populated instance.
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.spi;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+
+/**
+ * Notified when an asynchronously sent TCP (HTTP) stream request completes.
+ * <p>
+ * Implementations are called on a transport thread and should return quickly, hand
+ * any longer processing off to an executor.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public interface StreamResponseCallback {
+
+    /**
+     * @param request The request that has been sent.
+     * @param response The received response or <code>null</code> if no response has been received,
+     *                 an error occured, or the request has been cancelled.
+     */
+    public void completed(StreamRequestMessage request, StreamResponseMessage response);
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.transport.spi;
+
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Logger;
+
+/**
+ * The pending response of an asynchronously sent stream request.
+ * <p>
+ * Either runs the given blocking <code>Callable</code> when executed, or it is completed
+ * by a transport with {@link #complete(org.fourthline.cling.model.message.StreamResponseMessage)}.
+ * The optional {@link StreamResponseCallback} is notified exactly once, also when the
+ * request is cancelled.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamResponseFuture extends FutureTask<StreamResponseMessage> {
+
+    final private static Logger log = Logger.getLogger(StreamResponseFuture.class.getName());
+
+    final protected StreamRequestMessage request;
+    final protected StreamResponseCallback callback;
+
+    public StreamResponseFuture(StreamRequestMessage request, StreamResponseCallback callback) {
+        this(request, callback, new Callable<StreamResponseMessage>() {
+            public StreamResponseMessage call() throws Exception {
+                return null;
+            }
+        });
+    }
+
+    public StreamResponseFuture(StreamRequestMessage request,
+                                StreamResponseCallback callback,
+                                Callable<StreamResponseMessage> callable) {
+        super(callable);
+        this.request = request;
+        this.callback = callback;
+    }
+
+    public StreamRequestMessage getRequest() {
+        return request;
+    }
+
+    public StreamResponseCallback getCallback() {
+        return callback;
+    }
+
+    /**
+     * Completes this future, has no effect if it has already been completed or cancelled.
+     *
+     * @param response The received response or <code>null</code> if the request failed.
+     */
+    public void complete(StreamResponseMessage response) {
+        set(response);
+    }
+
+    /**
+     * Completes this future exceptionally, has no effect if it has already been completed or cancelled.
+     *
+     * @param cause The reason why the request could not be sent, e.g. a rejected execution.
+     */
+    public void fail(Throwable cause) {
+        setException(cause);
+    }
+
+    @Override
+    protected void done() {
+        if (getCallback() == null) return;
+        StreamResponseMessage response = null;
+        if (!isCancelled()) {
+            try {
+                response = get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                log.fine("Sending stream request failed: " + ex.getCause());
+            }
+        }
+        try {
+            getCallback().completed(getRequest(), response);
+        } catch (RuntimeException ex) {
+            log.warning("Stream response callback threw exception: " + ex);
+        }
+    }
+}
@@ -48,6 +48,7 @@ public abstract class UpnpStream implements Runnable {
 
     protected final ProtocolFactory protocolFactory;
     protected ReceivingSync syncProtocol;
+    protected volatile boolean unavailable;
 
     protected UpnpStream(ProtocolFactory protocolFactory) {
         this.protocolFactory = protocolFactory;
@@ -71,6 +72,11 @@ public abstract class UpnpStream implements Runnable {
     public StreamResponseMessage process(StreamRequestMessage requestMsg) {
         log.fine("Processing stream request message: " + requestMsg);
 
+        if (isUnavailable()) {
+            log.fine("No thread available to process the request, responding with 503: " + requestMsg);
+            return new StreamResponseMessage(UpnpResponse.Status.SERVICE_UNAVAILABLE);
+        }
+
         try {
             // Try to get a protocol implementation that matches the request message
             syncProtocol = getProtocolFactory().createReceivingSync(requestMsg);
@@ -95,6 +101,28 @@ public abstract class UpnpStream implements Runnable {
         return responseMsg;
     }
 
+    /**
+     * Called by the {@link org.fourthline.cling.transport.Router} instead of executing this stream when
+     * no thread is available to process the request.
+     * <p>
+     * Runs this stream in the calling thread, the {@link #process(org.fourthline.cling.model.message.StreamRequestMessage)}
+     * method returns a <em>503 SERVICE UNAVAILABLE</em> response without selecting a protocol. An
+     * implementation which can't respond in the receiving thread of its stream server has to override this.
+     * </p>
+     */
+    public void rejected() {
+        unavailable = true;
+        run();
+    }
+
+    /**
+     * @return <code>true</code> if this stream has been {@link #rejected()}, it should only answer the
+     *         current request and then close the connection.
+     */
+    public boolean isUnavailable() {
+        return unavailable;
+    }
+
     /**
      * Must be called by a subclass after the response has been successfully sent to the client.
      *
@@ -12,6 +12,7 @@ import org.fourthline.cling.model.types.UDAServiceId;
 import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
 import org.fourthline.cling.registry.DefaultRegistryListener;
 import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RemoteDeviceDiff;
 import org.fourthline.cling.test.data.SampleData;
 import org.testng.annotations.Test;
 
@@ -48,6 +49,7 @@ public class RegistryListenerTest {
 
         public void remoteDeviceAdded(Registry registry, RemoteDevice device);
         public void remoteDeviceUpdated(Registry registry, RemoteDevice device);
+        public void remoteDeviceChanged(Registry registry, RemoteDeviceDiff diff);
         public void remoteDeviceRemoved(Registry registry, RemoteDevice device);
 
         public void localDeviceAdded(Registry registry, LocalDevice device);
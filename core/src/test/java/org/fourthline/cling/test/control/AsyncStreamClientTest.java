@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.control;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.message.StreamRequestMessage;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.transport.impl.AsyncStreamClientImpl;
+import org.fourthline.cling.transport.impl.StreamClientConfigurationImpl;
+import org.fourthline.cling.transport.spi.StreamResponseCallback;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class AsyncStreamClientTest {
+
+    @Test
+    public void sendRequest() throws Exception {
+        final ServerSocket serverSocket = createServer(
+                "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: text/xml; charset=\"utf-8\"\r\n" +
+                        "Content-Length: 8\r\n" +
+                        "\r\n" +
+                        "<a>b</a>GARBAGE" // More than announced, must be ignored
+        );
+
+        AsyncStreamClientImpl client = new AsyncStreamClientImpl(new StreamClientConfigurationImpl());
+        try {
+            final StreamResponseMessage[] received = new StreamResponseMessage[1];
+            Future<StreamResponseMessage> future = client.sendRequest(
+                    new StreamRequestMessage(UpnpRequest.Method.POST, createURI(serverSocket), "<foo/>"),
+                    new StreamResponseCallback() {
+                        public void completed(StreamRequestMessage request, StreamResponseMessage response) {
+                            received[0] = response;
+                        }
+                    }
+            );
+
+            StreamResponseMessage response = future.get(5, TimeUnit.SECONDS);
+            assertNotNull(response);
+            assertEquals(response.getOperation().getStatusCode(), 200);
+            assertEquals(response.getBodyString(), "<a>b</a>");
+            assertEquals(received[0], response);
+        } finally {
+            client.stop();
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void sendRequestChunked() throws Exception {
+        final ServerSocket serverSocket = createServer(
+                "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: text/plain\r\n" +
+                        "Transfer-Encoding: chunked\r\n" +
+                        "\r\n" +
+                        "4\r\nWiki\r\n" +
+                        "5\r\npedia\r\n" +
+                        "0\r\n\r\n"
+        );
+
+        AsyncStreamClientImpl client = new AsyncStreamClientImpl(new StreamClientConfigurationImpl());
+        try {
+            StreamResponseMessage response =
+                    client.sendRequest(new StreamRequestMessage(UpnpRequest.Method.GET, createURI(serverSocket)));
+            assertNotNull(response);
+            assertEquals(response.getBodyString(), "Wikipedia");
+        } finally {
+            client.stop();
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void sendRequestConnectionFailure() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        URI uri = createURI(serverSocket);
+        serverSocket.close(); // Nobody is listening anymore
+
+        AsyncStreamClientImpl client = new AsyncStreamClientImpl(new StreamClientConfigurationImpl());
+        try {
+            Future<StreamResponseMessage> future =
+                    client.sendRequest(new StreamRequestMessage(UpnpRequest.Method.GET, uri), null);
+            assertNull(future.get(10, TimeUnit.SECONDS));
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void sendRequestUnresolvedHost() throws Exception {
+        AsyncStreamClientImpl client = new AsyncStreamClientImpl(new StreamClientConfigurationImpl());
+        try {
+            Future<StreamResponseMessage> future = client.sendRequest(
+                    new StreamRequestMessage(UpnpRequest.Method.GET, URI.create("http://unresolved.invalid/")), null
+            );
+            assertNull(future.get(10, TimeUnit.SECONDS));
+
+            // The selector thread is still alive
+            ServerSocket serverSocket = createServer("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+            future = client.sendRequest(new StreamRequestMessage(UpnpRequest.Method.GET, createURI(serverSocket)), null);
+            assertEquals(future.get(10, TimeUnit.SECONDS).getOperation().getStatusCode(), 200);
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void sendRequestAfterStop() throws Exception {
+        AsyncStreamClientImpl client = new AsyncStreamClientImpl(new StreamClientConfigurationImpl());
+        client.stop();
+        Future<StreamResponseMessage> future = client.sendRequest(
+                new StreamRequestMessage(UpnpRequest.Method.GET, URI.create("http://127.0.0.1/")), null
+        );
+        assertTrue(future.isDone());
+        assertNull(future.get());
+    }
+
+    @Test
+    public void sendRouterAsync() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService() {
+            @Override
+            public StreamResponseMessage getStreamResponseMessage(StreamRequestMessage request) {
+                return new StreamResponseMessage(UpnpResponse.Status.OK);
+            }
+        };
+
+        final boolean[] called = new boolean[1];
+        Future<StreamResponseMessage> future = upnpService.getRouter().send(
+                new StreamRequestMessage(UpnpRequest.Method.GET, URI.create("http://127.0.0.1/")),
+                new StreamResponseCallback() {
+                    public void completed(StreamRequestMessage request, StreamResponseMessage response) {
+                        called[0] = true;
+                    }
+                }
+        );
+        assertTrue(future.isDone());
+        assertEquals(future.get().getOperation().getStatusCode(), UpnpResponse.Status.OK.getStatusCode());
+        assertTrue(called[0]);
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 1);
+    }
+
+    protected URI createURI(ServerSocket serverSocket) {
+        return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + "/some/path");
+    }
+
+    /**
+     * Accepts one connection, reads the request, and writes the given response.
+     */
+    protected ServerSocket createServer(final String response) throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    InputStream in = socket.getInputStream();
+                    StringBuilder head = new StringBuilder();
+                    int b;
+                    while (!head.toString().endsWith("\r\n\r\n") && (b = in.read()) != -1) {
+                        head.append((char) b);
+                    }
+                    int contentLength = head.indexOf("Content-Length: ");
+                    if (contentLength != -1) {
+                        String length = head.substring(contentLength + 16, head.indexOf("\r\n", contentLength));
+                        for (int i = 0; i < Integer.valueOf(length); i++) in.read();
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write(response.getBytes("UTF-8"));
+                    out.flush();
+                    socket.close();
+                } catch (Exception ex) {
+                    // Test will fail
+                }
+            }
+        }.start();
+        return serverSocket;
+    }
+}
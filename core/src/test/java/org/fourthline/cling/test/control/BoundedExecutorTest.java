@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.control;
+
+import org.fourthline.cling.BoundedExecutor;
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class BoundedExecutorTest {
+
+    @Test
+    public void discardWhenFull() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 2, BoundedExecutor.Overflow.DISCARD);
+        CountDownLatch blocked = block(executor);
+        try {
+            final List<Integer> executed = Collections.synchronizedList(new ArrayList());
+            for (int i = 0; i < 5; i++) {
+                executor.execute(new Record(executed, i));
+            }
+            assertEquals(executor.getQueueSize(), 2);
+            assertEquals(executor.getRejectedCount(), 3);
+            assertEquals(executor.getCallerRunsCount(), 0);
+
+            blocked.countDown();
+            awaitIdle(executor);
+            assertEquals(executed.size(), 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void abortWhenFull() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1, BoundedExecutor.Overflow.ABORT);
+        CountDownLatch blocked = block(executor);
+        try {
+            executor.execute(new Record(new ArrayList<Integer>(), 0));
+            try {
+                executor.execute(new Record(new ArrayList<Integer>(), 1));
+                fail("Expected rejection");
+            } catch (RejectedExecutionException ex) {
+                // Expected
+            }
+            assertEquals(executor.getRejectedCount(), 1);
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callerRunsWhenFull() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1, BoundedExecutor.Overflow.CALLER_RUNS);
+        CountDownLatch blocked = block(executor);
+        try {
+            final List<Thread> threads = Collections.synchronizedList(new ArrayList());
+            Runnable recordThread = new Runnable() {
+                public void run() {
+                    threads.add(Thread.currentThread());
+                }
+            };
+            executor.execute(recordThread); // Queued
+            executor.execute(recordThread); // Runs here
+            assertEquals(threads.size(), 1);
+            assertEquals(threads.get(0), Thread.currentThread());
+            assertEquals(executor.getCallerRunsCount(), 1);
+            assertEquals(executor.getRejectedCount(), 0);
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blockWhenFull() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1, BoundedExecutor.Overflow.BLOCK) {
+            @Override
+            protected long getBlockTimeoutMillis() {
+                return 100;
+            }
+        };
+        CountDownLatch blocked = block(executor);
+        try {
+            final List<Integer> executed = Collections.synchronizedList(new ArrayList());
+            executor.execute(new Record(executed, 0)); // Queued
+            executor.execute(new Record(executed, 1)); // Waits, then discarded
+            assertEquals(executor.getRejectedCount(), 1);
+            assertEquals(executor.getCallerRunsCount(), 0);
+            assertEquals(executed.size(), 0);
+
+            blocked.countDown();
+            awaitIdle(executor);
+            assertEquals(executed, Arrays.asList(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blockUntilQueued() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1, BoundedExecutor.Overflow.BLOCK);
+        final CountDownLatch blocked = block(executor);
+        try {
+            final List<Integer> executed = Collections.synchronizedList(new ArrayList());
+            executor.execute(new Record(executed, 0)); // Queued
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ex) {
+                        // Done
+                    }
+                    blocked.countDown();
+                }
+            }.start();
+            executor.execute(new Record(executed, 1)); // Waits for the queue
+            assertEquals(executor.getBlockedCount(), 1);
+            assertEquals(executor.getRejectedCount(), 0);
+
+            awaitIdle(executor);
+            assertEquals(executed, Arrays.asList(0, 1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelDiscardedFuture() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 1, BoundedExecutor.Overflow.DISCARD);
+        CountDownLatch blocked = block(executor);
+        try {
+            executor.submit(new Record(new ArrayList<Integer>(), 0));
+            Future future = executor.submit(new Record(new ArrayList<Integer>(), 1));
+            assertTrue(future.isCancelled());
+            assertEquals(executor.getRejectedCount(), 1);
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void prioritizedQueue() throws Exception {
+        BoundedExecutor executor =
+            new BoundedExecutor("test", 1, 10, BoundedExecutor.Overflow.DISCARD, true) {
+                @Override
+                protected int getPriority(Runnable runnable) {
+                    return runnable instanceof Record && ((Record) runnable).value % 2 == 0 ? 0 : 1;
+                }
+            };
+        CountDownLatch blocked = block(executor);
+        try {
+            List<Integer> executed = Collections.synchronizedList(new ArrayList());
+            for (int i = 1; i <= 6; i++) {
+                executor.execute(new Record(executed, i));
+            }
+            for (int i = 7; i <= 10; i++) {
+                executor.execute(new Record(executed, i));
+            }
+            // The queue is full, the priority queue is unbounded so this is checked by the executor
+            executor.execute(new Record(executed, 11));
+            assertEquals(executor.getRejectedCount(), 1);
+
+            blocked.countDown();
+            awaitIdle(executor);
+            assertEquals(executed, Arrays.asList(2, 4, 6, 8, 10, 1, 3, 5, 7, 9));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void separatePools() throws Exception {
+        DefaultUpnpServiceConfiguration configuration = new DefaultUpnpServiceConfiguration();
+        try {
+            assertNotSame(configuration.getAsyncProtocolExecutor(), configuration.getSyncProtocolExecutor());
+            assertNotSame(configuration.getSearchResponseExecutor(), configuration.getAsyncProtocolExecutor());
+            assertNotSame(configuration.getEventExecutor(), configuration.getSyncProtocolExecutor());
+            assertNotSame(configuration.getRegistryListenerExecutor(), configuration.getAsyncProtocolExecutor());
+            assertTrue(configuration.getSyncProtocolExecutor() instanceof BoundedExecutor);
+
+            // The receivers run forever, they can't share a bounded pool
+            assertFalse(configuration.getDatagramIOExecutor() instanceof BoundedExecutor);
+
+            // The registry notifies listeners while holding its lock, they are never delayed or dropped
+            assertFalse(configuration.getRegistryListenerExecutor() instanceof BoundedExecutor);
+        } finally {
+            configuration.shutdown();
+        }
+        assertTrue(((BoundedExecutor) configuration.getAsyncProtocolExecutor()).isShutdown());
+    }
+
+    @Test
+    public void discoveryOverflowToDefault() throws Exception {
+        DefaultUpnpServiceConfiguration configuration = new DefaultUpnpServiceConfiguration() {
+            @Override
+            protected Executor createAsyncProtocolExecutor() {
+                return createAsyncProtocolExecutor(1, 1);
+            }
+        };
+        BoundedExecutor executor = (BoundedExecutor) configuration.getAsyncProtocolExecutor();
+        CountDownLatch blocked = block(executor);
+        try {
+            final CountDownLatch executed = new CountDownLatch(2);
+            Runnable countDown = new Runnable() {
+                public void run() {
+                    executed.countDown();
+                }
+            };
+            executor.execute(countDown); // Queued
+            executor.execute(countDown); // Not a received message, runs on the default executor
+            assertEquals(executor.getRejectedCount(), 0);
+
+            blocked.countDown();
+            assertTrue(executed.await(5, TimeUnit.SECONDS));
+        } finally {
+            blocked.countDown();
+            configuration.shutdown();
+        }
+    }
+
+    protected CountDownLatch block(BoundedExecutor executor) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException ex) {
+                    // Done
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocked;
+    }
+
+    protected void awaitIdle(BoundedExecutor executor) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((executor.getQueueSize() > 0 || executor.getActiveCount() > 0)
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    static class Record implements Runnable {
+
+        final List<Integer> executed;
+        final int value;
+
+        Record(List<Integer> executed, int value) {
+            this.executed = executed;
+            this.value = value;
+        }
+
+        public void run() {
+            executed.add(value);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.control;
+
+import org.fourthline.cling.transport.impl.HostConnectionLimiter;
+import org.fourthline.cling.transport.impl.StreamClientConfigurationImpl;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class HostConnectionLimiterTest {
+
+    @Test
+    public void limitPerHost() throws Exception {
+        HostConnectionLimiter limiter = new HostConnectionLimiter(2);
+
+        URI first = URI.create("http://10.0.0.1:4004/control");
+        URI second = URI.create("http://10.0.0.1:4004/event");
+        URI otherHost = URI.create("http://10.0.0.2:4004/control");
+
+        assertTrue(limiter.acquire(first, 0));
+        assertTrue(limiter.acquire(second, 0));
+        assertFalse(limiter.acquire(first, 50)); // Both connections to this host are in use
+        assertTrue(limiter.acquire(otherHost, 0));
+
+        assertEquals(limiter.getActiveCount(), 3);
+        assertEquals(limiter.getHostCount(), 2);
+        assertEquals(limiter.getWaitedCount(), 1);
+        assertEquals(limiter.getRejectedCount(), 1);
+
+        limiter.release(first);
+        assertTrue(limiter.acquire(first, 0));
+
+        limiter.release(first);
+        limiter.release(second);
+        limiter.release(otherHost);
+        assertEquals(limiter.getActiveCount(), 0);
+        assertEquals(limiter.getHostCount(), 0);
+        assertEquals(limiter.getAcquiredCount(), 4);
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        // Waiting for a connection can fail a request, users have to opt in
+        assertEquals(new StreamClientConfigurationImpl().getMaxConnectionsPerHost(), 0);
+    }
+
+    @Test
+    public void waitForRelease() throws Exception {
+        final HostConnectionLimiter limiter = new HostConnectionLimiter(1);
+        final URI uri = URI.create("http://10.0.0.1:4004/control");
+
+        assertTrue(limiter.acquire(uri, 0));
+
+        final boolean[] acquired = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    acquired[0] = limiter.acquire(uri, 5000);
+                } catch (InterruptedException ex) {
+                    // Test will fail
+                }
+                done.countDown();
+            }
+        }.start();
+
+        Thread.sleep(100);
+        limiter.release(uri);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(acquired[0]);
+        assertEquals(limiter.getWaitedCount(), 1);
+        assertEquals(limiter.getActiveCount(), 1);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.control;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.transport.impl.HttpMessageData;
+import org.fourthline.cling.transport.impl.SelectorStreamServerConfigurationImpl;
+import org.fourthline.cling.transport.impl.SelectorStreamServerImpl;
+import org.fourthline.cling.transport.spi.UpnpStream;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static org.testng.Assert.*;
+
+public class SelectorStreamServerTest {
+
+    @Test
+    public void persistentConnection() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        SelectorStreamServerImpl server = createServer(upnpService, new SelectorStreamServerConfigurationImpl());
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /some/resource.xml HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n".getBytes("US-ASCII"));
+            out.flush();
+            runReceivedStream(upnpService, 0);
+            String response = readResponse(in);
+            assertTrue(response.startsWith("HTTP/1.1 404 Not Found\r\n"));
+            assertTrue(response.contains("Content-Length: 0\r\n"));
+            assertFalse(response.contains("Connection: close"));
+
+            // Same connection, no Host header
+            out.write("GET /some/resource.xml HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+            out.flush();
+            runReceivedStream(upnpService, 1);
+            response = readResponse(in);
+            assertTrue(response.startsWith("HTTP/1.1 412 Precondition Failed\r\n"));
+
+            assertEquals(server.getConnectionCount(), 1);
+            assertEquals(server.getRequestCount(), 2);
+        } finally {
+            socket.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void closeConnection() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        SelectorStreamServerImpl server = createServer(upnpService, new SelectorStreamServerConfigurationImpl());
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+        try {
+            socket.getOutputStream().write(
+                    "GET /some/resource.xml HTTP/1.0\r\nHost: 127.0.0.1\r\n\r\n".getBytes("US-ASCII")
+            );
+            runReceivedStream(upnpService, 0);
+            InputStream in = socket.getInputStream();
+            String response = readResponse(in);
+            assertTrue(response.contains("Connection: close\r\n"));
+            assertEquals(in.read(), -1);
+        } finally {
+            socket.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void pipelinedRequests() throws Exception {
+        HttpMessageData data = new HttpMessageData();
+        byte[] first = "GET /a.xml HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n".getBytes("US-ASCII");
+        byte[] second = "GET /b.xml HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n".getBytes("US-ASCII");
+        data.write(first);
+        data.write(second);
+
+        // The second request is not the body of the first
+        assertEquals(data.getMessageEnd(false), first.length);
+        assertEquals(data.getBody(false).length, 0);
+
+        data.consume(first.length);
+        assertEquals(data.getStartLine()[1], "/b.xml");
+        assertEquals(data.getMessageEnd(false), second.length);
+    }
+
+    @Test
+    public void expectContinue() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        SelectorStreamServerImpl server = createServer(upnpService, new SelectorStreamServerConfigurationImpl());
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write((
+                    "POST /some/control HTTP/1.1\r\nHost: 127.0.0.1\r\n" +
+                    "Content-Length: 3\r\nExpect: 100-continue\r\n\r\n"
+            ).getBytes("US-ASCII"));
+            out.flush();
+            assertEquals(readResponse(in), "HTTP/1.1 100 Continue\r\n\r\n");
+
+            out.write("abc".getBytes("US-ASCII"));
+            out.flush();
+            runReceivedStream(upnpService, 0);
+            assertTrue(readResponse(in).startsWith("HTTP/1.1 "));
+            assertEquals(server.getRequestCount(), 1);
+        } finally {
+            socket.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void maxConnections() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        SelectorStreamServerConfigurationImpl configuration = new SelectorStreamServerConfigurationImpl();
+        configuration.setMaxConnections(1);
+        SelectorStreamServerImpl server = createServer(upnpService, configuration);
+
+        Socket first = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+        Socket second = null;
+        try {
+            waitFor(server, 1);
+            second = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+            second.setSoTimeout(5000);
+            assertEquals(second.getInputStream().read(), -1); // Closed by the server
+            assertEquals(server.getRejectedConnectionCount(), 1);
+        } finally {
+            first.close();
+            if (second != null) second.close();
+            server.stop();
+        }
+    }
+
+    protected SelectorStreamServerImpl createServer(MockUpnpService upnpService,
+                                                    SelectorStreamServerConfigurationImpl configuration) throws Exception {
+        SelectorStreamServerImpl server = new SelectorStreamServerImpl(configuration);
+        server.init(InetAddress.getByName("127.0.0.1"), upnpService.getRouter());
+        new Thread(server).start();
+        return server;
+    }
+
+    protected void runReceivedStream(MockUpnpService upnpService, int index) throws Exception {
+        // The mock router only collects the streams, run them in a new thread like the real router
+        for (int i = 0; i < 50 && upnpService.getReceivedUpnpStreams().size() <= index; i++) {
+            Thread.sleep(100);
+        }
+        UpnpStream stream = upnpService.getReceivedUpnpStreams().get(index);
+        new Thread(stream).start();
+    }
+
+    protected void waitFor(SelectorStreamServerImpl server, int connections) throws Exception {
+        for (int i = 0; i < 50 && server.getConnectionCount() < connections; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(server.getConnectionCount(), connections);
+    }
+
+    protected String readResponse(InputStream in) throws Exception {
+        StringBuilder response = new StringBuilder();
+        int b;
+        while (!response.toString().endsWith("\r\n\r\n") && (b = in.read()) != -1) {
+            response.append((char) b);
+        }
+        return response.toString();
+    }
+}
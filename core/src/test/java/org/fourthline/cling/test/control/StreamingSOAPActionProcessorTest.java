@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.test.control;
+
+import org.fourthline.cling.model.action.ActionException;
+import org.fourthline.cling.model.action.ActionInvocation;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.message.control.IncomingActionResponseMessage;
+import org.fourthline.cling.model.message.control.OutgoingActionRequestMessage;
+import org.fourthline.cling.model.message.control.OutgoingActionResponseMessage;
+import org.fourthline.cling.model.meta.Action;
+import org.fourthline.cling.model.meta.LocalDevice;
+import org.fourthline.cling.model.meta.LocalService;
+import org.fourthline.cling.model.types.ErrorCode;
+import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.transport.impl.SOAPActionProcessorImpl;
+import org.fourthline.cling.transport.impl.StreamingSOAPActionProcessor;
+import org.fourthline.cling.transport.spi.SOAPActionProcessor;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * The streaming writer has to produce exactly what the DOM writer produces.
+ */
+public class StreamingSOAPActionProcessorTest {
+
+    SOAPActionProcessor domProcessor = new SOAPActionProcessorImpl();
+    SOAPActionProcessor streamingProcessor = new StreamingSOAPActionProcessor();
+
+    @Test
+    public void writeRequest() throws Exception {
+        LocalService svc = createService();
+        Action action = svc.getAction("SetTarget");
+
+        ActionInvocation actionInvocation = new ActionInvocation(action);
+        actionInvocation.setInput("NewTargetValue", true);
+
+        OutgoingActionRequestMessage domMessage = new OutgoingActionRequestMessage(actionInvocation, SampleData.getLocalBaseURL());
+        domProcessor.writeBody(domMessage, actionInvocation);
+
+        OutgoingActionRequestMessage streamingMessage = new OutgoingActionRequestMessage(actionInvocation, SampleData.getLocalBaseURL());
+        streamingProcessor.writeBody(streamingMessage, actionInvocation);
+
+        assertEquals(streamingMessage.getBodyString(), domMessage.getBodyString());
+    }
+
+    @Test
+    public void writeResponse() throws Exception {
+        LocalService svc = createService();
+        Action action = svc.getAction("GetTarget");
+
+        ActionInvocation actionInvocation = new ActionInvocation(action);
+        actionInvocation.setOutput("RetTargetValue", true);
+
+        assertResponseEqual(action, actionInvocation);
+    }
+
+    @Test
+    public void writeEncodedResponse() throws Exception {
+        LocalService svc = createService();
+        Action action = svc.getAction("GetSomeValue");
+
+        ActionInvocation actionInvocation = new ActionInvocation(action);
+        actionInvocation.setOutput("SomeValue", "This is decoded: &<>'\" and <a href=\"x\">markup</a>");
+
+        assertResponseEqual(action, actionInvocation);
+    }
+
+    @Test
+    public void writeFailure() throws Exception {
+        LocalService svc = createService();
+        Action action = svc.getAction("GetTarget");
+
+        ActionInvocation actionInvocation = new ActionInvocation(action);
+        actionInvocation.setFailure(new ActionException(ErrorCode.ACTION_FAILED, "A <test> string"));
+
+        OutgoingActionResponseMessage domMessage = new OutgoingActionResponseMessage(UpnpResponse.Status.INTERNAL_SERVER_ERROR);
+        domProcessor.writeBody(domMessage, actionInvocation);
+
+        OutgoingActionResponseMessage streamingMessage = new OutgoingActionResponseMessage(UpnpResponse.Status.INTERNAL_SERVER_ERROR);
+        streamingProcessor.writeBody(streamingMessage, actionInvocation);
+
+        assertEquals(streamingMessage.getBodyString(), domMessage.getBodyString());
+    }
+
+    @Test
+    public void writeReadResponse() throws Exception {
+        LocalService svc = createService();
+        Action action = svc.getAction("GetSomeValue");
+
+        ActionInvocation actionInvocation = new ActionInvocation(action);
+        actionInvocation.setOutput("SomeValue", "A & B");
+
+        OutgoingActionResponseMessage message = new OutgoingActionResponseMessage(action);
+        streamingProcessor.writeBody(message, actionInvocation);
+
+        ActionInvocation readInvocation = new ActionInvocation(action);
+        streamingProcessor.readBody(
+                new IncomingActionResponseMessage(
+                        new StreamResponseMessage(message)
+                ),
+                readInvocation
+        );
+        assertEquals(readInvocation.getOutput("SomeValue").toString(), "A & B");
+    }
+
+    protected void assertResponseEqual(Action action, ActionInvocation actionInvocation) throws Exception {
+        OutgoingActionResponseMessage domMessage = new OutgoingActionResponseMessage(action);
+        domProcessor.writeBody(domMessage, actionInvocation);
+
+        OutgoingActionResponseMessage streamingMessage = new OutgoingActionResponseMessage(action);
+        streamingProcessor.writeBody(streamingMessage, actionInvocation);
+
+        assertEquals(streamingMessage.getBodyString(), domMessage.getBodyString());
+    }
+
+    protected LocalService createService() throws Exception {
+        LocalDevice ld = ActionSampleData.createTestDevice(ActionSampleData.LocalTestServiceExtended.class);
+        return ld.getServices()[0];
+    }
+
+}
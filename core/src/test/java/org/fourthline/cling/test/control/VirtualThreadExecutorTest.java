@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.control;
+
+import org.fourthline.cling.BoundedExecutor;
+import org.fourthline.cling.DefaultUpnpServiceConfiguration;
+import org.fourthline.cling.VirtualThreadUpnpServiceConfiguration;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.testng.Assert.*;
+
+/**
+ * Simulates 10k concurrent blocking action calls on the synchronous protocol executor.
+ */
+public class VirtualThreadExecutorTest {
+
+    final private static Logger log = Logger.getLogger(VirtualThreadExecutorTest.class.getName());
+
+    public static final int CONCURRENT_CALLS = 10000;
+
+    @Test
+    public void fallbackWithoutVirtualThreads() throws Exception {
+        VirtualThreadUpnpServiceConfiguration configuration = new VirtualThreadUpnpServiceConfiguration();
+        try {
+            if (configuration.isVirtualThreadsEnabled()) {
+                assertFalse(configuration.getSyncProtocolExecutor() instanceof BoundedExecutor);
+            } else {
+                assertTrue(configuration.getSyncProtocolExecutor() instanceof BoundedExecutor);
+            }
+            // Receivers always run on platform threads
+            assertTrue(configuration.getStreamServerExecutor() instanceof DefaultUpnpServiceConfiguration.ClingExecutor);
+        } finally {
+            configuration.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentBlockingCalls() throws Exception {
+        VirtualThreadUpnpServiceConfiguration configuration = new VirtualThreadUpnpServiceConfiguration();
+        try {
+            if (!configuration.isVirtualThreadsEnabled())
+                throw new SkipException("Virtual threads not supported by this JVM");
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            int threadsBefore = threads.getThreadCount();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+            final CountDownLatch allStarted = new CountDownLatch(CONCURRENT_CALLS);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch allDone = new CountDownLatch(CONCURRENT_CALLS);
+            final AtomicInteger completed = new AtomicInteger();
+
+            Executor executor = configuration.getSyncProtocolExecutor();
+            for (int i = 0; i < CONCURRENT_CALLS; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        allStarted.countDown();
+                        try {
+                            // Blocks like a protocol waiting for the HTTP response
+                            release.await();
+                            completed.incrementAndGet();
+                        } catch (InterruptedException ex) {
+                            // Test will fail
+                        }
+                        allDone.countDown();
+                    }
+                });
+            }
+
+            assertTrue(allStarted.await(30, TimeUnit.SECONDS));
+
+            // All calls are blocked concurrently now, the platform thread count counts only carriers
+            int threadsBlocked = threads.getThreadCount();
+            long heapBlocked = memory.getHeapMemoryUsage().getUsed();
+            log.info(
+                    "Blocked calls: " + CONCURRENT_CALLS
+                            + ", platform threads before/during: " + threadsBefore + "/" + threadsBlocked
+                            + ", heap growth: " + ((heapBlocked - heapBefore) / 1024) + " KB"
+            );
+            assertTrue(
+                    threadsBlocked - threadsBefore < Runtime.getRuntime().availableProcessors() + 64,
+                    "Platform threads before/during: " + threadsBefore + "/" + threadsBlocked
+            );
+
+            release.countDown();
+            assertTrue(allDone.await(30, TimeUnit.SECONDS));
+            assertEquals(completed.get(), CONCURRENT_CALLS);
+        } finally {
+            configuration.shutdown();
+        }
+    }
+}
@@ -19,22 +19,31 @@ package org.fourthline.cling.test.gena;
 
 import static org.testng.Assert.assertEquals;
 
+import java.beans.PropertyChangeEvent;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.ServiceManager;
 import org.fourthline.cling.model.gena.CancelReason;
 import org.fourthline.cling.model.gena.LocalGENASubscription;
 import org.fourthline.cling.model.message.StreamRequestMessage;
 import org.fourthline.cling.model.message.gena.IncomingEventRequestMessage;
 import org.fourthline.cling.model.message.gena.OutgoingEventRequestMessage;
+import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.LocalService;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.meta.RemoteService;
 import org.fourthline.cling.model.state.StateVariableValue;
+import org.fourthline.cling.protocol.sync.EventBodyCache;
+import org.fourthline.cling.protocol.sync.SendingEvent;
 import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.transport.impl.GENAEventProcessorImpl;
+import org.fourthline.cling.transport.impl.StreamingGENAEventProcessor;
+import org.fourthline.cling.transport.spi.GENAEventProcessor;
 import org.testng.annotations.Test;
 
 
@@ -100,5 +109,117 @@ public class EventXMLProcessingTest {
         assert gotValueOne && gotValueTwo;
     }
 
+    @Test
+    public void writeReadRequestStreaming() throws Exception {
+
+        LocalDevice localDevice = GenaSampleData.createTestDevice(GenaSampleData.LocalTestService.class);
+        LocalService localService = localDevice.getServices()[0];
+
+        LocalGENASubscription subscription = createSubscription(localService);
+
+        GENAEventProcessor domProcessor = new GENAEventProcessorImpl();
+        GENAEventProcessor streamingProcessor = new StreamingGENAEventProcessor();
+
+        OutgoingEventRequestMessage domCall =
+                new OutgoingEventRequestMessage(subscription, subscription.getCallbackURLs().get(0));
+        domProcessor.writeBody(domCall);
+
+        OutgoingEventRequestMessage streamingCall =
+                new OutgoingEventRequestMessage(subscription, subscription.getCallbackURLs().get(0));
+        streamingProcessor.writeBody(streamingCall);
+
+        // Same output as the DOM writer
+        assertEquals(streamingCall.getBodyString(), domCall.getBodyString());
+
+        RemoteDevice remoteDevice = SampleData.createRemoteDevice();
+        RemoteService remoteService = SampleData.getFirstService(remoteDevice);
+
+        IncomingEventRequestMessage incomingCall =
+                new IncomingEventRequestMessage(new StreamRequestMessage(streamingCall), remoteService);
+
+        streamingProcessor.readBody(incomingCall);
+
+        assertEquals(incomingCall.getStateVariableValues().size(), 2);
+
+        boolean gotValueOne = false;
+        boolean gotValueTwo = false;
+        for (StateVariableValue stateVariableValue : incomingCall.getStateVariableValues()) {
+            if (stateVariableValue.getStateVariable().getName().equals("Status")) {
+                gotValueOne = ((Boolean) stateVariableValue.getValue() == false);
+            }
+            if (stateVariableValue.getStateVariable().getName().equals("SomeVar")) {
+                gotValueTwo = stateVariableValue.getValue() == null;
+            }
+        }
+        assert gotValueOne && gotValueTwo;
+    }
+
+    @Test
+    public void shareEventBody() throws Exception {
+
+        LocalDevice localDevice = GenaSampleData.createTestDevice(GenaSampleData.LocalTestService.class);
+        LocalService localService = localDevice.getServices()[0];
+
+        LocalGENASubscription subscriptionOne = createSubscription(localService);
+        LocalGENASubscription subscriptionTwo = createSubscription(localService);
+
+        MockUpnpService upnpService = new MockUpnpService();
+        EventBodyCache cache = new EventBodyCache();
+
+        // The initial events have different values
+        new SendingEvent(upnpService, subscriptionOne, cache).run();
+        new SendingEvent(upnpService, subscriptionTwo, cache).run();
+        assertEquals(cache.getWrittenCount(), 2);
+        assertEquals(cache.getSharedCount(), 0);
+
+        // Both subscriptions receive the same state change
+        Collection<StateVariableValue> values = localService.getManager().readEventedStateVariableValues(false);
+        PropertyChangeEvent change =
+                new PropertyChangeEvent(localService, ServiceManager.EVENTED_STATE_VARIABLES, null, values);
+        subscriptionOne.propertyChange(change);
+        subscriptionTwo.propertyChange(change);
+
+        new SendingEvent(upnpService, subscriptionOne, cache).run();
+        new SendingEvent(upnpService, subscriptionTwo, cache).run();
+        assertEquals(cache.getWrittenCount(), 3);
+        assertEquals(cache.getSharedCount(), 1);
+
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 4);
+        StreamRequestMessage messageOne = upnpService.getSentStreamRequestMessages().get(2);
+        StreamRequestMessage messageTwo = upnpService.getSentStreamRequestMessages().get(3);
+        assertEquals(messageOne.getBodyString(), messageTwo.getBodyString());
+        assertEquals(
+                messageOne.getHeaders().getFirstHeader(UpnpHeader.Type.SID).getString(),
+                subscriptionOne.getSubscriptionId()
+        );
+        assertEquals(
+                messageTwo.getHeaders().getFirstHeader(UpnpHeader.Type.SID).getString(),
+                subscriptionTwo.getSubscriptionId()
+        );
+    }
+
+    protected LocalGENASubscription createSubscription(LocalService localService) throws Exception {
+        List<URL> urls = new ArrayList() {{
+            add(SampleData.getLocalBaseURL());
+        }};
+
+        return new LocalGENASubscription(localService, 1800, urls) {
+            public void failed(Exception ex) {
+                throw new RuntimeException("TEST SUBSCRIPTION FAILED: " + ex);
+            }
+
+            public void ended(CancelReason reason) {
+
+            }
+
+            public void established() {
+
+            }
+
+            public void eventReceived() {
+
+            }
+        };
+    }
 
 }
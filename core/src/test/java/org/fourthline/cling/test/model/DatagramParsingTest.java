@@ -30,11 +30,13 @@ import org.fourthline.cling.model.message.header.EXTHeader;
 import org.fourthline.cling.model.message.header.InterfaceMacHeader;
 import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.UpnpResponse;
 import org.fourthline.cling.model.message.OutgoingDatagramMessage;
 import org.fourthline.cling.model.message.discovery.OutgoingNotificationRequestRootDevice;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleDeviceRoot;
 import org.fourthline.cling.transport.spi.DatagramProcessor;
+import org.fourthline.cling.transport.spi.UnsupportedDataException;
 import org.fourthline.cling.transport.impl.NetworkAddressFactoryImpl;
 import org.fourthline.cling.DefaultUpnpServiceConfiguration;
 import org.seamless.util.io.HexBin;
@@ -93,6 +95,92 @@ public class DatagramParsingTest {
 
     }
 
+    @Test
+    public void readReusedBuffer() throws Exception {
+
+        String previous = "NOTIFY * HTTP/1.1\r\n" +
+                          "HOST: 239.255.255.250:1900\r\n" +
+                          "NT: upnp:rootdevice\r\n" +
+                          "NTS: ssdp:alive\r\n" +
+                          "USN: " + SampleDeviceRoot.getRootUDN().toString()+"::upnp:rootdevice\r\n\r\n";
+
+        // Some control points don't send the blank line after the headers
+        String current = "M-SEARCH * HTTP/1.1\r\n" +
+                         "HOST: 239.255.255.250:1900\r\n" +
+                         "ST: ssdp:all\r\n";
+
+        // The receiver reuses its buffer, stale bytes of the previous datagram follow the current one
+        byte[] buf = new byte[640];
+        System.arraycopy(previous.getBytes(), 0, buf, 0, previous.getBytes().length);
+        System.arraycopy(current.getBytes(), 0, buf, 0, current.getBytes().length);
+
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        packet.setSocketAddress(new InetSocketAddress("123.123.123.123", 1234));
+        packet.setLength(current.getBytes().length);
+
+        DatagramProcessor processor = new DefaultUpnpServiceConfiguration().getDatagramProcessor();
+
+        UpnpMessage<UpnpRequest> msg = processor.read(InetAddress.getByName("127.0.0.1"), packet);
+
+        Assert.assertEquals(msg.getOperation().getMethod(), UpnpRequest.Method.MSEARCH);
+        Assert.assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.ST).getString(), "ssdp:all");
+        assert msg.getHeaders().getFirstHeader(UpnpHeader.Type.NTS) == null;
+        assert msg.getHeaders().getFirstHeader(UpnpHeader.Type.USN) == null;
+    }
+
+    @Test
+    public void readResponseSource() throws Exception {
+
+        // Bare LF line endings, folded header value, status message with spaces
+        String source = "HTTP/1.1 200 All Is OK\n" +
+                        "CACHE-CONTROL: max-age=2000\n" +
+                        "LOCATION: http://localhost:0/some/path/123/desc.xml\n" +
+                        "ST: upnp:rootdevice\n" +
+                        "SERVER: foo/1\n" +
+                        "\tUPnP/1.0 bar/2\n" +
+                        "USN: " + SampleDeviceRoot.getRootUDN().toString()+"::upnp:rootdevice\n\n";
+
+        DatagramPacket packet = new DatagramPacket(source.getBytes(), source.getBytes().length, new InetSocketAddress("123.123.123.123", 1234));
+
+        DatagramProcessor processor = new DefaultUpnpServiceConfiguration().getDatagramProcessor();
+
+        UpnpMessage<UpnpResponse> msg = processor.read(InetAddress.getByName("127.0.0.1"), packet);
+
+        Assert.assertEquals(msg.getOperation().getStatusCode(), 200);
+        Assert.assertEquals(msg.getOperation().getStatusMessage(), "All Is OK");
+        Assert.assertEquals(msg.getOperation().getHttpMinorVersion(), 1);
+        Assert.assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.MAX_AGE, MaxAgeHeader.class).getValue().toString(), "2000");
+        Assert.assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.ST).getString(), "upnp:rootdevice");
+        Assert.assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.SERVER, ServerHeader.class).getValue().getProductName(), "bar");
+        Assert.assertEquals(
+                msg.getHeaders().getFirstHeader(UpnpHeader.Type.USN, USNRootDeviceHeader.class).getValue().getIdentifierString(),
+                SampleDeviceRoot.getRootUDN().getIdentifierString()
+        );
+    }
+
+    @Test
+    public void readLatin1Header() throws Exception {
+        String source = "HTTP/1.1 200 OK\r\n" +
+                        "ST: upnp:rootdevice\r\n" +
+                        "X-FRIENDLY-NAME: Caf\u00e9\r\n\r\n";
+        byte[] data = source.getBytes("ISO-8859-1");
+        DatagramPacket packet = new DatagramPacket(data, data.length, new InetSocketAddress("123.123.123.123", 1234));
+
+        UpnpMessage<UpnpResponse> msg =
+            new DefaultUpnpServiceConfiguration().getDatagramProcessor().read(InetAddress.getByName("127.0.0.1"), packet);
+
+        // Not replaced with '?'
+        Assert.assertEquals(msg.getHeaders().getFirstHeader("X-FRIENDLY-NAME"), "Caf\u00e9");
+    }
+
+    @Test(expectedExceptions = UnsupportedDataException.class)
+    public void readNoise() throws Exception {
+        // An mDNS query, starts with a binary transaction ID
+        byte[] data = new byte[]{0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+        DatagramPacket packet = new DatagramPacket(data, data.length, new InetSocketAddress("123.123.123.123", 5353));
+        new DefaultUpnpServiceConfiguration().getDatagramProcessor().read(InetAddress.getByName("127.0.0.1"), packet);
+    }
+
     @Test
     public void parseRoundtrip() throws Exception {
         Location location = new Location(
@@ -509,4 +509,53 @@ public class HeaderParsingTest {
         assertEquals(header.getValue().getValue(),"value");
         assertEquals(header.getString(), "token=\"value\"");
     }
+
+    @Test
+    public void newInstanceByPrefix() {
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.ST, "ssdp:all").getClass(), STAllHeader.class);
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.ST, "upnp:rootdevice").getClass(), RootDeviceHeader.class);
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.NT, "UPNP:ROOTDEVICE").getClass(), RootDeviceHeader.class);
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.NT, "upnp:event").getClass(), NTEventHeader.class);
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.NT, "uuid:MY-DEVICE-123").getClass(), UDNHeader.class);
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.NT, "urn:schemas-upnp-org:device:MY-DEVICE-TYPE:1").getClass(),
+            UDADeviceTypeHeader.class
+        );
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.ST, "urn:foo-bar:device:MyDeviceType:1").getClass(),
+            DeviceTypeHeader.class
+        );
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.NT, "urn:schemas-upnp-org:service:MY-SERVICE-TYPE:1").getClass(),
+            UDAServiceTypeHeader.class
+        );
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.ST, "urn:foo-bar:service:MyServiceType:1").getClass(),
+            ServiceTypeHeader.class
+        );
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.USN, "uuid:MY-DEVICE-123::upnp:rootdevice").getClass(),
+            USNRootDeviceHeader.class
+        );
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.USN, "uuid:MY-DEVICE-123::urn:schemas-upnp-org:device:MY-DEVICE-TYPE:1").getClass(),
+            DeviceUSNHeader.class
+        );
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.USN, "uuid:MY-DEVICE-123::urn:foo-bar:service:MyServiceType:1").getClass(),
+            ServiceUSNHeader.class
+        );
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.USN, "uuid:MY-DEVICE-123").getClass(), UDNHeader.class);
+
+        // Inconclusive prefix, all subtypes are tried and only the lenient parser accepts whitespace
+        assertEquals(
+            UpnpHeader.newInstance(UpnpHeader.Type.NT, " urn:schemas-upnp-org:device:MY-DEVICE-TYPE:1").getClass(),
+            DeviceTypeHeader.class
+        );
+
+        // Not a permissible subtype for this header
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.NT, "ssdp:all"), null);
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.ST, "upnp:event"), null);
+        assertEquals(UpnpHeader.newInstance(UpnpHeader.Type.USN, "urn:foo-bar:device:MyDeviceType:1"), null);
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.test.model;
+
+import org.fourthline.cling.model.types.DeviceType;
+import org.fourthline.cling.model.types.InternCache;
+import org.fourthline.cling.model.types.ServiceId;
+import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDAServiceId;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.model.types.UDN;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class InternedTypesTest {
+
+    @Test
+    public void shareParsedInstances() {
+        // Typical USN and NT header values
+        String usn = "uuid:2fac1234-31f8-11b4-a222-08002b34c003::urn:schemas-upnp-org:service:ContentDirectory:1";
+        String udnString = usn.substring(0, usn.indexOf("::"));
+        String serviceTypeString = usn.substring(usn.indexOf("::") + 2);
+
+        UDN udn = UDN.valueOf(udnString);
+        assertSame(UDN.valueOf(new String(udnString)), udn);
+        assertEquals(udn.getIdentifierString(), "2fac1234-31f8-11b4-a222-08002b34c003");
+
+        ServiceType serviceType = ServiceType.valueOf(serviceTypeString);
+        assertTrue(serviceType instanceof UDAServiceType);
+        assertSame(ServiceType.valueOf(new String(serviceTypeString)), serviceType);
+        assertSame(UDAServiceType.valueOf(serviceTypeString), serviceType);
+
+        DeviceType deviceType = DeviceType.valueOf("urn:schemas-upnp-org:device:MediaServer:1");
+        assertTrue(deviceType instanceof UDADeviceType);
+        assertSame(DeviceType.valueOf("urn:schemas-upnp-org:device:MediaServer:1"), deviceType);
+
+        ServiceId serviceId = ServiceId.valueOf("urn:upnp-org:serviceId:ContentDirectory");
+        assertTrue(serviceId instanceof UDAServiceId);
+        assertSame(ServiceId.valueOf("urn:upnp-org:serviceId:ContentDirectory"), serviceId);
+
+        ServiceType msftType = ServiceType.valueOf("urn:microsoft.com:service:X_MS_MediaReceiverRegistrar:1");
+        assertSame(ServiceType.valueOf("urn:microsoft.com:service:X_MS_MediaReceiverRegistrar:1"), msftType);
+    }
+
+    @Test
+    public void parseCanonicalAsPattern() {
+        // Without the regex parsing, these have to produce the same values as before
+        assertParsed(
+            ServiceType.valueOf("urn:schemas-upnp-org:service:ConnectionManager:2"),
+            UDAServiceType.PATTERN.matcher("urn:schemas-upnp-org:service:ConnectionManager:2")
+        );
+        ServiceType serviceType = ServiceType.valueOf("urn:foo-bar.com:service:My_Service-Type:123");
+        assertEquals(serviceType.getClass(), ServiceType.class);
+        assertEquals(serviceType.getNamespace(), "foo-bar.com");
+        assertEquals(serviceType.getType(), "My_Service-Type");
+        assertEquals(serviceType.getVersion(), 123);
+
+        DeviceType deviceType = DeviceType.valueOf("urn:foo-bar:device:MyDeviceType:7");
+        assertEquals(deviceType.getClass(), DeviceType.class);
+        assertEquals(deviceType.getNamespace(), "foo-bar");
+        assertEquals(deviceType.getType(), "MyDeviceType");
+        assertEquals(deviceType.getVersion(), 7);
+
+        ServiceId serviceId = ServiceId.valueOf("urn:foo-bar:serviceId:My.Service:1");
+        assertEquals(serviceId.getClass(), ServiceId.class);
+        assertEquals(serviceId.getNamespace(), "foo-bar");
+        assertEquals(serviceId.getId(), "My.Service:1");
+
+        // Broken namespace of Intel tools is still a UDA service ID
+        serviceId = ServiceId.valueOf("urn:schemas-upnp-org:service:AVTransport");
+        assertTrue(serviceId instanceof UDAServiceId);
+        assertEquals(serviceId.getId(), "AVTransport");
+
+        // Not canonical, parsed with the regex
+        assertEquals(UDAServiceType.valueOf("urn:schemas-upnp-org:service:AVTransport:1.5").getVersion(), 1);
+        assertEquals(ServiceType.valueOf("urn:schemas-upnp-org:service:AV Transport:2").getType(), "AVTransport");
+        assertEquals(DeviceType.valueOf("urn:foo:device:Renderer:2-beta").getVersion(), 2);
+    }
+
+    @Test
+    public void rejectInvalid() {
+        String[] invalidServiceTypes = {
+            "urn:schemas-upnp-org:service:ContentDirectory",
+            "urn:schemas-upnp-org:service:ContentDirectory:",
+            "urn:foo_bar:service:MyService:1",
+            "urn:foo:service:My.Service:1",
+            "urn:foo:device:MyDevice:1",
+            "uuid:foo"
+        };
+        for (String s : invalidServiceTypes) {
+            try {
+                ServiceType.valueOf(s);
+                fail("Should have failed: " + s);
+            } catch (Exception ex) {
+                // Expected
+            }
+        }
+        try {
+            ServiceId.valueOf("urn:foo:serviceId:");
+            fail();
+        } catch (Exception ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void evictOldGeneration() {
+        InternCache<String> cache = new InternCache<String>(4);
+        assertEquals(cache.intern("a", "A"), "A");
+        assertEquals(cache.intern("b", "B"), "B");
+        String c = new String("C");
+        assertSame(cache.intern("c", c), c); // Now "a" and "b" are the previous generation
+        assertSame(cache.intern("c", "Other"), c);
+        assertEquals(cache.get("a"), "A"); // Moved to the recent generation
+        assertEquals(cache.size(), 4);
+
+        assertEquals(cache.intern("d", "D"), "D"); // Evicts "b"
+        assertNull(cache.get("b"));
+        assertEquals(cache.get("a"), "A");
+        assertSame(cache.get("c"), c);
+        assertTrue(cache.size() <= cache.getMaxSize());
+    }
+
+    protected void assertParsed(ServiceType serviceType, java.util.regex.Matcher matcher) {
+        assertTrue(matcher.matches());
+        assertTrue(serviceType instanceof UDAServiceType);
+        assertEquals(serviceType.getType(), matcher.group(1));
+        assertEquals(serviceType.getVersion(), Integer.parseInt(matcher.group(2)));
+    }
+}
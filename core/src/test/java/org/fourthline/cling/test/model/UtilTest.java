@@ -17,6 +17,7 @@
 
 package org.fourthline.cling.test.model;
 
+import org.fourthline.cling.model.DocumentBuilderPool;
 import org.fourthline.cling.model.ModelUtil;
 import org.fourthline.cling.model.XMLUtil;
 import org.testng.annotations.Test;
@@ -257,6 +258,34 @@ public class UtilTest {
     }
     */
 
+    @Test
+    public void reuseDocumentBuilder() throws Exception {
+        DocumentBuilderPool pool = new DocumentBuilderPool();
+
+        Document first = pool.parse("<root xmlns=\"urn:test\"><child>1</child></root>");
+        Document second = pool.parse("<other><child>2</child></other>");
+        Document third = pool.newDocument();
+
+        // The documents are independent of the reused builder
+        assertEquals(first.getDocumentElement().getLocalName(), "root");
+        assertEquals(first.getDocumentElement().getNamespaceURI(), "urn:test");
+        assertEquals(second.getDocumentElement().getLocalName(), "other");
+        assertEquals(third.getDocumentElement(), null);
+
+        assertEquals(pool.getMissCount(), 1);
+        assertEquals(pool.getHitCount(), 2);
+
+        // A broken document doesn't spoil the builder
+        try {
+            pool.parse("<broken>");
+            assert false;
+        } catch (Exception ex) {
+            // Expected
+        }
+        assertEquals(pool.parse("<ok/>").getDocumentElement().getLocalName(), "ok");
+        assertEquals(pool.getMissCount(), 1);
+    }
+
     public static String documentToString(Document document) throws Exception {
         TransformerFactory transFactory = TransformerFactory.newInstance();
         Transformer transformer = transFactory.newTransformer();
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.registry;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.ServiceReference;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.resource.Resource;
+import org.fourthline.cling.model.types.UDADeviceType;
+import org.fourthline.cling.model.types.UDAServiceId;
+import org.fourthline.cling.model.types.UDAServiceType;
+import org.fourthline.cling.registry.ConcurrentRegistryImpl;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryMaintainer;
+import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.test.data.SampleDeviceEmbeddedOne;
+import org.fourthline.cling.test.data.SampleDeviceEmbeddedTwo;
+import org.fourthline.cling.test.data.SampleDeviceRoot;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static org.testng.Assert.*;
+
+public class RegistryLookupTest {
+
+    @DataProvider(name = "registries")
+    public Object[][] getRegistries() {
+        MockUpnpService upnpService = new MockUpnpService();
+        return new Object[][]{
+                {upnpService.getRegistry()},
+                {new ConcurrentRegistryImpl(upnpService) {
+                    @Override
+                    protected RegistryMaintainer createRegistryMaintainer() {
+                        return null;
+                    }
+                }}
+        };
+    }
+
+    @Test(dataProvider = "registries")
+    public void findRootAndEmbedded(Registry registry) throws Exception {
+        RemoteDevice rd = SampleData.createRemoteDevice();
+        registry.addDevice(rd);
+
+        assertEquals(registry.getRemoteDevices().size(), 1);
+        assertEquals(registry.getDevice(SampleDeviceRoot.getRootUDN(), true), rd);
+        assertNull(registry.getDevice(SampleDeviceEmbeddedOne.getEmbeddedOneUDN(), true));
+        assertEquals(
+                registry.getDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false).getIdentity().getUdn(),
+                SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN()
+        );
+        assertNull(registry.getLocalDevice(SampleDeviceRoot.getRootUDN(), false));
+
+        assertNotNull(registry.getService(
+                new ServiceReference(SampleDeviceEmbeddedOne.getEmbeddedOneUDN(), new UDAServiceId("MY-SERVICE-456"))
+        ));
+
+        assertTrue(registry.removeDevice(rd));
+        assertEquals(registry.getRemoteDevices().size(), 0);
+        assertNull(registry.getDevice(SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN(), false));
+        assertEquals(registry.getResources().size(), 0);
+    }
+
+    @Test(dataProvider = "registries")
+    public void findByType(Registry registry) throws Exception {
+        RemoteDevice rd = SampleData.createRemoteDevice();
+        registry.addDevice(rd);
+
+        // Compatible versions
+        assertEquals(registry.getDevices(new UDADeviceType("MY-DEVICE-TYPE-TWO", 1)).size(), 1);
+        assertEquals(registry.getDevices(new UDADeviceType("MY-DEVICE-TYPE-TWO", 2)).size(), 1);
+        assertEquals(registry.getDevices(new UDADeviceType("MY-DEVICE-TYPE-TWO", 3)).size(), 0);
+        assertEquals(registry.getDevices(new UDADeviceType("MY-DEVICE-TYPE-UNKNOWN", 1)).size(), 0);
+
+        assertEquals(
+                registry.getDevices(new UDAServiceType("MY-SERVICE-TYPE-THREE", 2)).iterator().next()
+                        .getIdentity().getUdn(),
+                SampleDeviceEmbeddedTwo.getEmbeddedTwoUDN()
+        );
+        assertEquals(registry.getDevices(new UDAServiceType("MY-SERVICE-TYPE-ONE", 2)).size(), 0);
+
+        // Updating the expiration must not change the indexes
+        assertTrue(registry.update(SampleData.createRemoteDeviceIdentity(60)));
+        assertEquals(registry.getDevices(new UDAServiceType("MY-SERVICE-TYPE-ONE", 1)).size(), 1);
+
+        registry.removeAllRemoteDevices();
+        assertEquals(registry.getDevices(new UDAServiceType("MY-SERVICE-TYPE-ONE", 1)).size(), 0);
+        assertEquals(registry.getDevices(new UDADeviceType("MY-DEVICE-TYPE", 1)).size(), 0);
+    }
+
+    @Test(dataProvider = "registries")
+    public void findResources(Registry registry) throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            registry.addResource(new Resource(URI.create("/some/path/" + i), "model" + i));
+        }
+        registry.addResource(new Resource(URI.create("/some/path/?with=query"), "query"));
+        registry.addResource(new Resource(URI.create("/some/prefix"), "prefix") {
+            @Override
+            public boolean matches(URI pathQuery) {
+                return pathQuery.getPath().startsWith(getPathQuery().getPath());
+            }
+        });
+
+        assertEquals(registry.getResource(URI.create("/some/path/123")).getModel(), "model123");
+        assertEquals(registry.getResource(URI.create("/some/path/123/")).getModel(), "model123");
+        assertEquals(registry.getResource(URI.create("/some/path/?with=query")).getModel(), "query");
+        assertEquals(registry.getResource(URI.create("/some/prefix/and/more")).getModel(), "prefix");
+        assertNull(registry.getResource(URI.create("/some/path/1000")));
+        assertNull(registry.getResource(URI.create("/some/path")));
+
+        assertEquals(registry.getResources().size(), 1002);
+        assertTrue(registry.removeResource(new Resource(URI.create("/some/prefix"), "prefix")));
+        assertNull(registry.getResource(URI.create("/some/prefix/and/more")));
+        assertEquals(registry.getResources().size(), 1001);
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.test.registry;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.gena.CancelReason;
+import org.fourthline.cling.model.gena.RemoteGENASubscription;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.meta.Device;
+import org.fourthline.cling.model.meta.DeviceDetails;
+import org.fourthline.cling.model.meta.Icon;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.registry.DefaultRegistryListener;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RemoteDeviceDiff;
+import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.test.data.SampleDeviceRoot;
+import org.testng.annotations.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class RemoteDeviceChangeTest {
+
+    @Test
+    public void rebootKeepsGraph() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        RecordingListener listener = new RecordingListener();
+        upnpService.getRegistry().addListener(listener);
+
+        RemoteDevice rd = SampleData.createRemoteDevice(createIdentity(1, 7));
+        upnpService.getRegistry().addDevice(rd);
+        assertEquals(listener.added.size(), 1);
+
+        // Same boot, a plain refresh
+        assertTrue(upnpService.getRegistry().update(createIdentity(1, 7)));
+        assertEquals(listener.changed.size(), 0);
+
+        // Rebooted, same configuration
+        assertTrue(upnpService.getRegistry().update(createIdentity(2, 7)));
+        assertEquals(listener.changed.size(), 1);
+        RemoteDeviceDiff diff = listener.changed.get(0);
+        assertTrue(diff.isRebooted());
+        assertTrue(diff.isEmpty());
+        assertSame(diff.getDevice(), rd);
+        assertSame(upnpService.getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true), rd);
+
+        assertTrue(upnpService.getRegistry().update(createIdentity(2, 7)));
+        assertEquals(listener.changed.size(), 1);
+        assertEquals(listener.removed.size(), 0);
+    }
+
+    @Test
+    public void multiHomedDevice() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        RecordingListener listener = new RecordingListener();
+        upnpService.getRegistry().addListener(listener);
+
+        RemoteDevice rd = SampleData.createRemoteDevice(createIdentity(1, 7));
+        upnpService.getRegistry().addDevice(rd);
+
+        // Announced on another interface, with the same configuration
+        RemoteDeviceIdentity otherInterface = new RemoteDeviceIdentity(
+            SampleDeviceRoot.getRootUDN(),
+            1800,
+            new URL("http://10.0.0.2:1234/device.xml"),
+            null,
+            null,
+            1,
+            7
+        );
+        assertTrue(upnpService.getRegistry().update(otherInterface));
+        assertEquals(listener.changed.size(), 0);
+
+        // Without configuration identifiers, the descriptor URL decides
+        assertFalse(new RemoteDeviceIdentity(
+            SampleDeviceRoot.getRootUDN(), 1800, SampleDeviceRoot.getDeviceDescriptorURL(), null, null
+        ).isSameDescription(new RemoteDeviceIdentity(
+            SampleDeviceRoot.getRootUDN(), 1800, new URL("http://10.0.0.2:1234/device.xml"), null, null
+        )));
+    }
+
+    @Test
+    public void configurationChangeReplacesGraph() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        RecordingListener listener = new RecordingListener();
+        upnpService.getRegistry().addListener(listener);
+
+        // Doesn't know about changes, sees a removal and an addition
+        final List<Device> devices = new ArrayList();
+        upnpService.getRegistry().addListener(new DefaultRegistryListener() {
+            @Override
+            public void deviceAdded(Registry registry, Device device) {
+                devices.add(device);
+            }
+
+            @Override
+            public void deviceRemoved(Registry registry, Device device) {
+                devices.remove(device);
+            }
+        });
+
+        RemoteDevice rd = SampleData.createRemoteDevice(createIdentity(1, 7));
+        upnpService.getRegistry().addDevice(rd);
+        int resourceCount = upnpService.getRegistry().getResources().size();
+
+        // The registered metadata is outdated, it has to be retrieved again
+        assertFalse(upnpService.getRegistry().update(createIdentity(1, 8)));
+
+        // The new graph has no embedded devices and a different name
+        RemoteDevice template = SampleData.createRemoteDevice(createIdentity(1, 8));
+        Icon[] icons = new Icon[template.getIcons().length];
+        for (int i = 0; i < icons.length; i++) {
+            icons[i] = template.getIcons()[i].deepCopy();
+        }
+        RemoteDevice changed = template.newInstance(
+            template.getIdentity().getUdn(),
+            template.getVersion(),
+            template.getType(),
+            new DeviceDetails("Changed Name"),
+            icons,
+            template.getServices(),
+            new ArrayList<RemoteDevice>()
+        );
+        upnpService.getRegistry().addDevice(changed);
+
+        assertEquals(listener.added.size(), 1);
+        assertEquals(listener.removed.size(), 0);
+        assertEquals(listener.changed.size(), 1);
+        assertSame(upnpService.getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true), changed);
+        assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 1);
+        assertEquals(devices.size(), 1);
+        assertSame(devices.get(0), changed);
+
+        RemoteDeviceDiff diff = listener.changed.get(0);
+        assertFalse(diff.isRebooted());
+        assertSame(diff.getPreviousDevice(), rd);
+        assertSame(diff.getDevice(), changed);
+        assertEquals(diff.getChangedDevices().size(), 1);
+        assertEquals(diff.getRemovedDevices().size(), rd.findEmbeddedDevices().length);
+        assertEquals(diff.getAddedDevices().size(), 0);
+        assertEquals(diff.getRemovedServices().size(), rd.findServices().length - changed.findServices().length);
+        assertEquals(diff.getChangedServices().size(), 0);
+        assertEquals(diff.getAddedServices().size(), 0);
+
+        // Resources of the removed embedded devices are gone
+        assertTrue(upnpService.getRegistry().getResources().size() < resourceCount);
+        for (RemoteDevice embedded : rd.findEmbeddedDevices()) {
+            assertNull(upnpService.getRegistry().getRemoteDevice(embedded.getIdentity().getUdn(), false));
+        }
+
+        // Now it's current
+        assertTrue(upnpService.getRegistry().update(createIdentity(1, 8)));
+    }
+
+    @Test
+    public void keepSubscriptionsOfUnchangedServices() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+
+        RemoteDevice rd = SampleData.createRemoteDevice(createIdentity(1, 7));
+        upnpService.getRegistry().addDevice(rd);
+
+        final List<String> ended = new ArrayList();
+        RemoteService keptService = rd.getServices()[0];
+        RemoteService removedService = rd.getEmbeddedDevices()[0].getServices()[0];
+        upnpService.getRegistry().addRemoteSubscription(createSubscription(keptService, "uuid:kept", ended));
+        upnpService.getRegistry().addRemoteSubscription(createSubscription(removedService, "uuid:removed", ended));
+
+        // Same root services, no embedded devices
+        RemoteDevice template = SampleData.createRemoteDevice(createIdentity(1, 8));
+        Icon[] icons = new Icon[template.getIcons().length];
+        for (int i = 0; i < icons.length; i++) {
+            icons[i] = template.getIcons()[i].deepCopy();
+        }
+        RemoteDevice changed = template.newInstance(
+            template.getIdentity().getUdn(),
+            template.getVersion(),
+            template.getType(),
+            template.getDetails(),
+            icons,
+            template.getServices(),
+            new ArrayList<RemoteDevice>()
+        );
+        upnpService.getRegistry().addDevice(changed);
+
+        assertEquals(ended, Arrays.asList("uuid:removed"));
+        assertNull(upnpService.getRegistry().getRemoteSubscription("uuid:removed"));
+
+        RemoteGENASubscription kept = upnpService.getRegistry().getRemoteSubscription("uuid:kept");
+        assertNotNull(kept);
+        assertSame(kept.getService(), changed.findService(keptService.getServiceId()));
+        assertEquals(kept.getEventSubscriptionURL().toString(),
+            rd.normalizeURI(keptService.getEventSubscriptionURI()).toString());
+    }
+
+    protected RemoteGENASubscription createSubscription(RemoteService service,
+                                                       final String subscriptionId,
+                                                       final List<String> ended) {
+        RemoteGENASubscription subscription = new RemoteGENASubscription(service, 1800) {
+            public void invalidXMLException(String xml, Exception e) {
+            }
+
+            public void failed(UpnpResponse responseStatus) {
+            }
+
+            public void ended(CancelReason reason, UpnpResponse responseStatus) {
+                ended.add(subscriptionId);
+            }
+
+            public void eventsMissed(int numberOfMissedEvents) {
+            }
+
+            public void established() {
+            }
+
+            public void eventReceived() {
+            }
+        };
+        subscription.setSubscriptionId(subscriptionId);
+        return subscription;
+    }
+
+    protected RemoteDeviceIdentity createIdentity(int bootId, int configId) {
+        return new RemoteDeviceIdentity(
+            SampleDeviceRoot.getRootUDN(),
+            1800,
+            SampleDeviceRoot.getDeviceDescriptorURL(),
+            null,
+            null,
+            bootId,
+            configId
+        );
+    }
+
+    public static class RecordingListener extends DefaultRegistryListener {
+
+        public List<RemoteDevice> added = new ArrayList();
+        public List<RemoteDevice> removed = new ArrayList();
+        public List<RemoteDeviceDiff> changed = new ArrayList();
+
+        @Override
+        public void remoteDeviceAdded(Registry registry, RemoteDevice device) {
+            added.add(device);
+        }
+
+        @Override
+        public void remoteDeviceRemoved(Registry registry, RemoteDevice device) {
+            removed.add(device);
+        }
+
+        @Override
+        public void remoteDeviceChanged(Registry registry, RemoteDeviceDiff diff) {
+            changed.add(diff);
+        }
+    }
+}
@@ -27,12 +27,15 @@ import org.fourthline.cling.model.message.UpnpRequest;
 import org.fourthline.cling.model.message.header.ContentTypeHeader;
 import org.fourthline.cling.model.message.header.HostHeader;
 import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.protocol.sync.DescriptorCache;
 import org.fourthline.cling.protocol.sync.ReceivingRetrieval;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleDeviceRoot;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
 
 
 public class DeviceDescriptorRetrievalTest {
@@ -71,6 +74,53 @@ public class DeviceDescriptorRetrievalTest {
         );
     }
 
+    @Test
+    public void retrieveCachedDescriptor() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+        DescriptorCache cache = new DescriptorCache();
+
+        LocalDevice localDevice = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(localDevice);
+
+        StreamResponseMessage first = retrieve(upnpService, cache, null);
+        StreamResponseMessage second = retrieve(upnpService, cache, null);
+        assertEquals(first.getOperation().getStatusCode(), 200);
+        assertEquals(second.getBodyString(), first.getBodyString());
+        assertEquals(cache.getGeneratedCount(), 1);
+        assertEquals(cache.getHitCount(), 1);
+
+        String etag = first.getHeaders().getFirstHeader(DescriptorCache.HEADER_ETAG);
+        assertNotNull(etag);
+        assertNotNull(first.getHeaders().getFirstHeader(DescriptorCache.HEADER_LAST_MODIFIED));
+
+        // Conditional request for the same descriptor
+        StreamResponseMessage notModified = retrieve(upnpService, cache, etag);
+        assertEquals(notModified.getOperation().getStatusCode(), 304);
+        assertFalse(notModified.hasBody());
+        assertEquals(notModified.getHeaders().getFirstHeader(DescriptorCache.HEADER_ETAG), etag);
+        assertEquals(cache.getNotModifiedCount(), 1);
+
+        assertEquals(retrieve(upnpService, cache, "\"outdated\"").getOperation().getStatusCode(), 200);
+
+        // A new instance with the same UDN is generated again, the content didn't change
+        upnpService.getRegistry().removeDevice(localDevice);
+        upnpService.getRegistry().addDevice(SampleData.createLocalDevice());
+        StreamResponseMessage reRegistered = retrieve(upnpService, cache, etag);
+        assertEquals(cache.getGeneratedCount(), 2);
+        assertEquals(reRegistered.getOperation().getStatusCode(), 304);
+    }
+
+    protected StreamResponseMessage retrieve(MockUpnpService upnpService, DescriptorCache cache, String ifNoneMatch) {
+        StreamRequestMessage descRetrievalMessage = new StreamRequestMessage(UpnpRequest.Method.GET, SampleDeviceRoot.getDeviceDescriptorURI());
+        descRetrievalMessage.getHeaders().add(UpnpHeader.Type.HOST, new HostHeader("localhost", 1234));
+        if (ifNoneMatch != null)
+            descRetrievalMessage.getHeaders().add(DescriptorCache.HEADER_IF_NONE_MATCH, ifNoneMatch);
+        ReceivingRetrieval prot = new ReceivingRetrieval(upnpService, descRetrievalMessage, cache);
+        prot.run();
+        return prot.getOutputMessage();
+    }
+
     @Test
     public void retrieveNonExistentDescriptor() throws Exception {
 
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fourthline.cling.test.resources;
+
+import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.UpnpResponse;
+import org.fourthline.cling.model.message.header.ContentTypeHeader;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.profile.ControlPointInfo;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.protocol.RemoteDescriptorCache;
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+import org.fourthline.cling.test.data.SampleData;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.URL;
+
+import static org.testng.Assert.*;
+
+public class RemoteDescriptorCacheTest {
+
+    protected File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws Exception {
+        directory = File.createTempFile("cling-descriptors", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void hydrateAndRevalidate() throws Exception {
+        RemoteDescriptorCache cache = new RemoteDescriptorCache(directory);
+        RemoteDevice hydratedDevice = SampleData.createRemoteDevice();
+
+        // Nothing stored, retrieve everything from the network
+        MockUpnpService upnpService = createUpnpService(getDescriptors(hydratedDevice, false));
+        retrieve(upnpService, cache);
+        assertNotNull(upnpService.getRegistry().getRemoteDevice(hydratedDevice.getIdentity().getUdn(), true));
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 4);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(directory.listFiles().length, 1);
+
+        // Hydrated from storage, the revalidation requests return the same content
+        upnpService = createUpnpService(getDescriptors(hydratedDevice, false));
+        retrieve(upnpService, cache);
+        assertNotNull(upnpService.getRegistry().getRemoteDevice(hydratedDevice.getIdentity().getUdn(), true));
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getRevalidatedCount(), 1);
+        assertEquals(cache.getUpdatedCount(), 0);
+    }
+
+    @Test
+    public void revalidateOutdated() throws Exception {
+        RemoteDescriptorCache cache = new RemoteDescriptorCache(directory);
+        RemoteDevice hydratedDevice = SampleData.createRemoteDevice();
+
+        retrieve(createUpnpService(getDescriptors(hydratedDevice, false)), cache);
+
+        // The device descriptor changed, the first request revalidates it, then everything is retrieved again
+        StreamResponseMessage[] changed = getDescriptors(hydratedDevice, true);
+        StreamResponseMessage[] responses = new StreamResponseMessage[changed.length + 1];
+        responses[0] = changed[0];
+        System.arraycopy(changed, 0, responses, 1, changed.length);
+
+        MockUpnpService upnpService = createUpnpService(responses);
+        retrieve(upnpService, cache);
+
+        RemoteDevice device = upnpService.getRegistry().getRemoteDevice(hydratedDevice.getIdentity().getUdn(), true);
+        assertNotNull(device);
+        assertTrue(device.getDetails().getFriendlyName().startsWith("Changed"));
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getUpdatedCount(), 1);
+
+        // The new descriptors have been stored
+        RemoteDescriptorCache.Entry entry =
+            cache.load(hydratedDevice.getIdentity().getDescriptorURL(), hydratedDevice.getIdentity().getUdn(), null);
+        assertNotNull(entry);
+        assertTrue(entry.getDevice().getXml().contains("Changed"));
+        assertEquals(entry.getServices().size(), 3);
+    }
+
+    @Test
+    public void revalidateGone() throws Exception {
+        RemoteDescriptorCache cache = new RemoteDescriptorCache(directory);
+        RemoteDevice hydratedDevice = SampleData.createRemoteDevice();
+
+        retrieve(createUpnpService(getDescriptors(hydratedDevice, false)), cache);
+
+        // The revalidation and the following retrieval both fail with 404
+        MockUpnpService upnpService = createUpnpService(new StreamResponseMessage[]{
+            new StreamResponseMessage(UpnpResponse.Status.NOT_FOUND),
+            new StreamResponseMessage(UpnpResponse.Status.NOT_FOUND)
+        });
+        retrieve(upnpService, cache);
+
+        assertNull(upnpService.getRegistry().getRemoteDevice(hydratedDevice.getIdentity().getUdn(), true));
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 2);
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getUpdatedCount(), 1);
+        assertEquals(directory.listFiles().length, 0);
+    }
+
+    @Test
+    public void outdatedConfiguration() throws Exception {
+        RemoteDescriptorCache cache = new RemoteDescriptorCache(directory);
+        RemoteDevice hydratedDevice = SampleData.createRemoteDevice();
+        URL descriptorURL = hydratedDevice.getIdentity().getDescriptorURL();
+        UDN udn = hydratedDevice.getIdentity().getUdn();
+
+        cache.store(new RemoteDescriptorCache.Entry(
+            descriptorURL, udn, 1, new RemoteDescriptorCache.Descriptor(descriptorURL, "<root/>", null, null)
+        ));
+
+        assertNotNull(cache.load(descriptorURL, udn, 1));
+        assertNotNull(cache.load(descriptorURL, udn, null));
+        assertNull(cache.load(descriptorURL, udn, 2));
+        assertEquals(cache.getUpdatedCount(), 1);
+        assertEquals(directory.listFiles().length, 0);
+    }
+
+    @Test
+    public void ignoreUnreadableEntry() throws Exception {
+        RemoteDescriptorCache cache = new RemoteDescriptorCache(directory);
+        RemoteDevice hydratedDevice = SampleData.createRemoteDevice();
+
+        retrieve(createUpnpService(getDescriptors(hydratedDevice, false)), cache);
+        File file = directory.listFiles()[0];
+        java.io.FileWriter writer = new java.io.FileWriter(file);
+        writer.write("<broken");
+        writer.close();
+
+        assertNull(cache.load(hydratedDevice.getIdentity().getDescriptorURL(), hydratedDevice.getIdentity().getUdn(), null));
+        assertFalse(file.exists());
+    }
+
+    protected void retrieve(UpnpService upnpService, final RemoteDescriptorCache cache) throws Exception {
+        RemoteDevice discoveredDevice = new RemoteDevice(SampleData.createRemoteDeviceIdentity());
+        new RetrieveRemoteDescriptors(upnpService, discoveredDevice) {
+            @Override
+            protected RemoteDescriptorCache getRemoteDescriptorCache() {
+                return cache;
+            }
+        }.run();
+    }
+
+    protected MockUpnpService createUpnpService(final StreamResponseMessage[] responses) {
+        return new MockUpnpService() {
+            @Override
+            public StreamResponseMessage[] getStreamResponseMessages() {
+                return responses;
+            }
+        };
+    }
+
+    protected StreamResponseMessage[] getDescriptors(RemoteDevice device, boolean changed) throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        String deviceDescriptorXML =
+            upnpService.getConfiguration().getDeviceDescriptorBinderUDA10().generate(
+                device,
+                new ControlPointInfo(),
+                upnpService.getConfiguration().getNamespace()
+            );
+        if (changed)
+            deviceDescriptorXML = deviceDescriptorXML.replace("<friendlyName>", "<friendlyName>Changed ");
+
+        StreamResponseMessage[] responses = new StreamResponseMessage[device.findServices().length + 1];
+        responses[0] = new StreamResponseMessage(deviceDescriptorXML, ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8);
+        for (int i = 0; i < device.findServices().length; i++) {
+            responses[i + 1] = new StreamResponseMessage(
+                upnpService.getConfiguration().getServiceDescriptorBinderUDA10().generate(device.findServices()[i]),
+                ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8
+            );
+        }
+        return responses;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.test.resources;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.header.ContentTypeHeader;
+import org.fourthline.cling.model.meta.Action;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteService;
+import org.fourthline.cling.model.profile.ControlPointInfo;
+import org.fourthline.cling.protocol.RetrieveRemoteDescriptors;
+import org.fourthline.cling.protocol.ServiceDescriptorCache;
+import org.fourthline.cling.test.data.SampleData;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.testng.Assert.*;
+
+public class ServiceDescriptorCacheTest {
+
+    @Test
+    public void shareParsedDescriptors() throws Exception {
+        final ServiceDescriptorCache cache = new ServiceDescriptorCache();
+        RemoteDevice sampleDevice = SampleData.createRemoteDevice();
+        final StreamResponseMessage[] responses = getDescriptors(sampleDevice);
+
+        Set<String> distinctDescriptors = new HashSet();
+        for (int i = 1; i < responses.length; i++) {
+            distinctDescriptors.add(responses[i].getBodyString());
+        }
+
+        RemoteService firstService = null;
+        for (int i = 0; i < 3; i++) {
+            MockUpnpService upnpService = new MockUpnpService() {
+                @Override
+                public StreamResponseMessage[] getStreamResponseMessages() {
+                    return responses;
+                }
+            };
+            new RetrieveRemoteDescriptors(upnpService, new RemoteDevice(SampleData.createRemoteDeviceIdentity())) {
+                @Override
+                protected ServiceDescriptorCache getServiceDescriptorCache() {
+                    return cache;
+                }
+            }.run();
+
+            RemoteDevice device =
+                upnpService.getRegistry().getRemoteDevice(sampleDevice.getIdentity().getUdn(), true);
+            assertNotNull(device);
+            assertEquals(upnpService.getSentStreamRequestMessages().size(), responses.length);
+
+            RemoteService service = device.findServices()[0];
+            for (Action<RemoteService> action : service.getActions()) {
+                assertEquals(action.getService(), service);
+            }
+            if (firstService == null) {
+                firstService = service;
+            } else {
+                // Same metadata, but not the same instances
+                assertEquals(service.getActions().length, firstService.getActions().length);
+                assertEquals(service.getStateVariables().length, firstService.getStateVariables().length);
+                assertFalse(service.getActions()[0] == firstService.getActions()[0]);
+            }
+        }
+
+        int servicesPerDevice = responses.length - 1;
+        assertEquals(cache.getParsedCount(), distinctDescriptors.size());
+        assertEquals(cache.getSharedCount(), 3 * servicesPerDevice - distinctDescriptors.size());
+        assertEquals(cache.size(), distinctDescriptors.size());
+    }
+
+    @Test
+    public void cachePerConfiguration() throws Exception {
+        RemoteDevice sampleDevice = SampleData.createRemoteDevice();
+        final StreamResponseMessage[] responses = getDescriptors(sampleDevice);
+
+        MockUpnpService upnpService = new MockUpnpService() {
+            @Override
+            public StreamResponseMessage[] getStreamResponseMessages() {
+                return responses;
+            }
+        };
+        new RetrieveRemoteDescriptors(upnpService, new RemoteDevice(SampleData.createRemoteDeviceIdentity())).run();
+        assertNotNull(upnpService.getRegistry().getRemoteDevice(sampleDevice.getIdentity().getUdn(), true));
+
+        ServiceDescriptorCache cache = upnpService.getConfiguration().getServiceDescriptorCache();
+        assertTrue(cache.size() > 0);
+        assertEquals(new MockUpnpService().getConfiguration().getServiceDescriptorCache().size(), 0);
+
+        upnpService.shutdown();
+        assertEquals(cache.size(), 0);
+    }
+
+    protected StreamResponseMessage[] getDescriptors(RemoteDevice device) throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        StreamResponseMessage[] responses = new StreamResponseMessage[device.findServices().length + 1];
+        responses[0] = new StreamResponseMessage(
+            upnpService.getConfiguration().getDeviceDescriptorBinderUDA10().generate(
+                device,
+                new ControlPointInfo(),
+                upnpService.getConfiguration().getNamespace()
+            ),
+            ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8
+        );
+        for (int i = 0; i < device.findServices().length; i++) {
+            responses[i + 1] = new StreamResponseMessage(
+                upnpService.getConfiguration().getServiceDescriptorBinderUDA10().generate(device.findServices()[i]),
+                ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8
+            );
+        }
+        return responses;
+    }
+}
@@ -17,6 +17,7 @@
 
 package org.fourthline.cling.test.ssdp;
 
+import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.mock.MockUpnpService;
 import org.fourthline.cling.model.ServerClientTokens;
 import org.fourthline.cling.model.message.OutgoingDatagramMessage;
@@ -24,6 +25,7 @@ import org.fourthline.cling.model.message.UpnpMessage;
 import org.fourthline.cling.model.message.header.UpnpHeader;
 import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.types.NotificationSubtype;
+import org.fourthline.cling.protocol.async.NotificationScheduler;
 import org.fourthline.cling.protocol.async.SendingNotificationAlive;
 import org.fourthline.cling.protocol.async.SendingNotificationByebye;
 import org.fourthline.cling.test.data.SampleData;
@@ -31,6 +33,8 @@ import org.fourthline.cling.test.data.SampleDeviceRoot;
 import org.fourthline.cling.test.data.SampleUSNHeaders;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.ScheduledFuture;
+
 import static org.testng.Assert.assertEquals;
 
 
@@ -74,6 +78,48 @@ public class AdvertisementTest {
         SampleUSNHeaders.assertUSNHeaders(upnpService.getOutgoingDatagramMessages(), rootDevice, embeddedDevice, UpnpHeader.Type.NT);
     }
 
+    @Test
+    public void sendAliveMessagesScheduled() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+
+        LocalDevice rootDevice = SampleData.createLocalDevice();
+        LocalDevice embeddedDevice = rootDevice.getEmbeddedDevices()[0];
+
+        new SendingNotificationAlive(upnpService, rootDevice).run();
+        int expectedMessages = upnpService.getOutgoingDatagramMessages().size();
+        upnpService.getOutgoingDatagramMessages().clear();
+
+        // Two messages per tick, the test drives the clock and the ticks
+        ManualNotificationScheduler scheduler = new ManualNotificationScheduler(upnpService, 2);
+
+        // Returns immediately, bulks are queued
+        SendingNotificationAlive prot = new SendingNotificationAlive(upnpService, rootDevice, scheduler);
+        prot.run();
+        assertEquals(scheduler.getPendingMessageCount(), expectedMessages);
+
+        // Only the first bulk is due, at most two messages are sent per tick
+        scheduler.tick(0);
+        assertEquals(scheduler.getSentMessageCount(), 2);
+        assertEquals(upnpService.getOutgoingDatagramMessages().size(), 2);
+
+        int ticks = 0;
+        while (scheduler.getPendingMessageCount() > 0 && ticks++ < 1000) {
+            scheduler.tick(10);
+        }
+
+        assertEquals(scheduler.getPendingMessageCount(), 0);
+        assertEquals(scheduler.getSentMessageCount(), expectedMessages);
+        assertEquals(upnpService.getOutgoingDatagramMessages().size(), expectedMessages);
+        for (OutgoingDatagramMessage msg : upnpService.getOutgoingDatagramMessages()) {
+            assertAliveMsgBasics(msg);
+        }
+
+        SampleUSNHeaders.assertUSNHeaders(upnpService.getOutgoingDatagramMessages(), rootDevice, embeddedDevice, UpnpHeader.Type.NT);
+
+        upnpService.getConfiguration().shutdown();
+    }
+
     protected void assertAliveMsgBasics(UpnpMessage msg) {
         assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.NTS).getValue(), NotificationSubtype.ALIVE);
         assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.LOCATION).getValue().toString(), SampleDeviceRoot.getDeviceDescriptorURL().toString());
@@ -85,4 +131,32 @@ public class AdvertisementTest {
         assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.NTS).getValue(), NotificationSubtype.BYEBYE);
     }
 
-}
\ No newline at end of file
+    static class ManualNotificationScheduler extends NotificationScheduler {
+
+        long now = 1000;
+
+        ManualNotificationScheduler(UpnpService upnpService, int maxMessagesPerTick) {
+            super(upnpService, maxMessagesPerTick, 10);
+        }
+
+        void tick(long advanceMillis) {
+            now += advanceMillis;
+            sendDueMessages();
+        }
+
+        @Override
+        public int getInitialDelayMaxMillis() {
+            return 0;
+        }
+
+        @Override
+        protected ScheduledFuture startPacer() {
+            return null;
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.test.ssdp;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.message.StreamResponseMessage;
+import org.fourthline.cling.model.message.header.ContentTypeHeader;
+import org.fourthline.cling.model.meta.RemoteDevice;
+import org.fourthline.cling.model.meta.RemoteDeviceIdentity;
+import org.fourthline.cling.model.profile.ControlPointInfo;
+import org.fourthline.cling.model.types.UDN;
+import org.fourthline.cling.protocol.async.DescriptorRetrievalScheduler;
+import org.fourthline.cling.test.data.SampleData;
+import org.testng.annotations.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+public class DescriptorRetrievalSchedulerTest {
+
+    @Test
+    public void coalesceAndLimit() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        final List<Runnable> tasks = new ArrayList();
+
+        DescriptorRetrievalScheduler scheduler = new DescriptorRetrievalScheduler(upnpService, 1, 1, 60000, 60000) {
+            @Override
+            protected Executor getExecutor() {
+                return new Executor() {
+                    public void execute(Runnable runnable) {
+                        tasks.add(runnable);
+                    }
+                };
+            }
+        };
+
+        assertTrue(scheduler.retrieve(createDevice("a")));
+        assertEquals(scheduler.getActiveCount(), 1);
+        assertEquals(tasks.size(), 1);
+
+        // Same descriptor URL, the active retrieval will hydrate it
+        assertFalse(scheduler.retrieve(createDevice("a")));
+        assertEquals(scheduler.getCoalescedCount(), 1);
+
+        // Queued until the active retrieval completes
+        assertTrue(scheduler.retrieve(createDevice("b")));
+        assertEquals(scheduler.getPendingCount(), 1);
+
+        // Queue is full
+        assertFalse(scheduler.retrieve(createDevice("c")));
+        assertEquals(scheduler.getRejectedCount(), 1);
+
+        // The mock returns no descriptor, the retrieval fails and the next one is executed
+        tasks.get(0).run();
+        assertEquals(scheduler.getFailedCount(), 1);
+        assertEquals(scheduler.getFailingCount(), 1);
+        assertEquals(scheduler.getPendingCount(), 0);
+        assertEquals(scheduler.getActiveCount(), 1);
+        assertEquals(tasks.size(), 2);
+
+        tasks.get(1).run();
+        assertEquals(scheduler.getFailedCount(), 2);
+        assertEquals(scheduler.getActiveCount(), 0);
+    }
+
+    @Test
+    public void releaseDiscardedRetrieval() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        final List<Future> tasks = new ArrayList();
+
+        DescriptorRetrievalScheduler scheduler = new DescriptorRetrievalScheduler(upnpService, 1, 1, 60000, 60000) {
+            @Override
+            protected Executor getExecutor() {
+                return new Executor() {
+                    public void execute(Runnable runnable) {
+                        tasks.add((Future) runnable);
+                    }
+                };
+            }
+        };
+
+        assertTrue(scheduler.retrieve(createDevice("a")));
+        assertTrue(scheduler.retrieve(createDevice("b")));
+        assertEquals(scheduler.getPendingCount(), 1);
+
+        // A discarding executor cancels the task, the slot is released without a backoff
+        tasks.get(0).cancel(false);
+        assertEquals(scheduler.getFailedCount(), 0);
+        assertEquals(scheduler.getFailingCount(), 0);
+        assertEquals(scheduler.getPendingCount(), 0);
+        assertEquals(scheduler.getActiveCount(), 1);
+        assertEquals(tasks.size(), 2);
+    }
+
+    @Test
+    public void expireUnstartedRetrieval() throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        final long[] currentTime = new long[]{1000};
+        final List<Runnable> tasks = new ArrayList();
+
+        DescriptorRetrievalScheduler scheduler = new DescriptorRetrievalScheduler(upnpService, 1, 1, 60000, 60000) {
+            @Override
+            protected Executor getExecutor() {
+                return new Executor() {
+                    public void execute(Runnable runnable) {
+                        // Silently dropped, except for the last
+                        tasks.add(runnable);
+                    }
+                };
+            }
+
+            @Override
+            protected long getCurrentTime() {
+                return currentTime[0];
+            }
+        };
+
+        assertTrue(scheduler.retrieve(createDevice("a")));
+        assertTrue(scheduler.retrieve(createDevice("b")));
+        assertFalse(scheduler.retrieve(createDevice("c")));
+        assertEquals(scheduler.getActiveCount(), 1);
+
+        // The slot of the dropped retrieval is reclaimed on the next discovery
+        currentTime[0] += 60001;
+        assertTrue(scheduler.retrieve(createDevice("c")));
+        assertEquals(tasks.size(), 2);
+        assertEquals(scheduler.getActiveCount(), 1);
+        assertEquals(scheduler.getPendingCount(), 1);
+        assertEquals(scheduler.getFailingCount(), 0);
+
+        // A late start of the expired task does nothing
+        tasks.get(0).run();
+        assertEquals(scheduler.getFailedCount(), 0);
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 0);
+
+        tasks.get(1).run();
+        assertEquals(scheduler.getFailedCount(), 1);
+        assertEquals(tasks.size(), 3);
+    }
+
+    @Test
+    public void backoffFailingDevice() throws Exception {
+        RemoteDevice sampleDevice = SampleData.createRemoteDevice();
+        StreamResponseMessage[] descriptors = getDescriptors(sampleDevice);
+
+        // The first request fails, then the device delivers its descriptors
+        final StreamResponseMessage[] responses = new StreamResponseMessage[descriptors.length + 1];
+        System.arraycopy(descriptors, 0, responses, 1, descriptors.length);
+
+        MockUpnpService upnpService = new MockUpnpService() {
+            @Override
+            public StreamResponseMessage[] getStreamResponseMessages() {
+                return responses;
+            }
+        };
+
+        final long[] currentTime = new long[]{1000};
+        DescriptorRetrievalScheduler scheduler = new DescriptorRetrievalScheduler(upnpService, 1, 1, 60000, 60000) {
+            @Override
+            protected long getCurrentTime() {
+                return currentTime[0];
+            }
+        };
+
+        RemoteDevice discoveredDevice = new RemoteDevice(SampleData.createRemoteDeviceIdentity());
+        assertTrue(scheduler.retrieve(discoveredDevice));
+        assertEquals(scheduler.getFailedCount(), 1);
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 1);
+
+        // Not retried before the backoff delay passed
+        currentTime[0] += 30000;
+        assertFalse(scheduler.retrieve(discoveredDevice));
+        assertEquals(scheduler.getBackedOffCount(), 1);
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), 1);
+
+        currentTime[0] += 30001;
+        assertTrue(scheduler.retrieve(discoveredDevice));
+        assertEquals(scheduler.getHydratedCount(), 1);
+        assertEquals(scheduler.getFailingCount(), 0);
+        assertEquals(upnpService.getSentStreamRequestMessages().size(), responses.length);
+        assertNotNull(upnpService.getRegistry().getRemoteDevice(sampleDevice.getIdentity().getUdn(), true));
+    }
+
+    protected RemoteDevice createDevice(String name) throws Exception {
+        return new RemoteDevice(
+            new RemoteDeviceIdentity(
+                new UDN(name),
+                1800,
+                new URL("http://127.0.0.1:8081/" + name + "/desc.xml"),
+                null,
+                null
+            )
+        );
+    }
+
+    protected StreamResponseMessage[] getDescriptors(RemoteDevice device) throws Exception {
+        MockUpnpService upnpService = new MockUpnpService();
+        StreamResponseMessage[] responses = new StreamResponseMessage[device.findServices().length + 1];
+        responses[0] = new StreamResponseMessage(
+            upnpService.getConfiguration().getDeviceDescriptorBinderUDA10().generate(
+                device,
+                new ControlPointInfo(),
+                upnpService.getConfiguration().getNamespace()
+            ),
+            ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8
+        );
+        for (int i = 0; i < device.findServices().length; i++) {
+            responses[i + 1] = new StreamResponseMessage(
+                upnpService.getConfiguration().getServiceDescriptorBinderUDA10().generate(device.findServices()[i]),
+                ContentTypeHeader.DEFAULT_CONTENT_TYPE_UTF8
+            );
+        }
+        return responses;
+    }
+}
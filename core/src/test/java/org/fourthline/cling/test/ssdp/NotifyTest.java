@@ -36,12 +36,16 @@ import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.types.NotificationSubtype;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleDeviceRoot;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 import org.testng.annotations.Test;
 
 import java.net.InetAddress;
+import java.net.URL;
 import java.net.UnknownHostException;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class NotifyTest {
 
@@ -184,6 +188,81 @@ public class NotifyTest {
         upnpService.shutdown();
     }
 
+    @Test
+    public void receivedAliveFiltered() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+        IncomingDatagramFilter filter = new IncomingDatagramFilter(60000);
+
+        RemoteDevice rd = SampleData.createRemoteDevice();
+
+        IncomingNotificationRequest msg = createRequestMessage();
+        msg.getHeaders().add(UpnpHeader.Type.NTS, new NTSHeader(NotificationSubtype.ALIVE));
+        msg.getHeaders().add(UpnpHeader.Type.NT, new RootDeviceHeader());
+        msg.getHeaders().add(UpnpHeader.Type.USN, new USNRootDeviceHeader(rd.getIdentity().getUdn()));
+        msg.getHeaders().add(UpnpHeader.Type.LOCATION, new LocationHeader(SampleDeviceRoot.getDeviceDescriptorURL()));
+        msg.getHeaders().add(UpnpHeader.Type.MAX_AGE, new MaxAgeHeader(rd.getIdentity().getMaxAgeSeconds()));
+        msg.getHeaders().add(UpnpHeader.Type.BOOTID.getHttpName(), "1");
+
+        // Unknown device, needs the protocol
+        assertTrue(filter.accept(upnpService.getRegistry(), msg));
+        assertEquals(filter.getDispatchedCount(), 1);
+
+        upnpService.getRegistry().addDevice(rd);
+
+        // Known device, refreshed inline
+        assertFalse(filter.accept(upnpService.getRegistry(), msg));
+        assertEquals(filter.getRefreshedCount(), 1);
+
+        // Same device, location, and boot identifier, dropped
+        assertFalse(filter.accept(upnpService.getRegistry(), msg));
+        assertFalse(filter.accept(upnpService.getRegistry(), msg));
+        assertEquals(filter.getDroppedCount(), 2);
+        assertEquals(filter.getRefreshedCount(), 1);
+
+        // Rebooted device, not a duplicate, the registry handles the new boot identifier
+        msg.getHeaders().remove(UpnpHeader.Type.BOOTID.getHttpName());
+        msg.getHeaders().add(UpnpHeader.Type.BOOTID.getHttpName(), "2");
+        assertFalse(filter.accept(upnpService.getRegistry(), msg));
+        assertEquals(filter.getRefreshedCount(), 2);
+
+        // Moved device, needs the protocol
+        msg.getHeaders().remove(UpnpHeader.Type.LOCATION);
+        msg.getHeaders().add(UpnpHeader.Type.LOCATION, new LocationHeader(new URL("http://10.0.0.1/desc.xml")));
+        assertTrue(filter.accept(upnpService.getRegistry(), msg));
+        assertEquals(filter.getDispatchedCount(), 2);
+
+        // Byebye is never filtered
+        IncomingNotificationRequest byebye = createRequestMessage();
+        byebye.getHeaders().add(UpnpHeader.Type.NT, new RootDeviceHeader());
+        byebye.getHeaders().add(UpnpHeader.Type.NTS, new NTSHeader(NotificationSubtype.BYEBYE));
+        byebye.getHeaders().add(UpnpHeader.Type.USN, new USNRootDeviceHeader(rd.getIdentity().getUdn()));
+        assertTrue(filter.accept(upnpService.getRegistry(), byebye));
+        assertEquals(filter.getDispatchedCount(), 3);
+        assertEquals(upnpService.getRegistry().getRemoteDevices().size(), 1);
+    }
+
+    @Test
+    public void receivedAliveOfLocalDeviceFiltered() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+        IncomingDatagramFilter filter = new IncomingDatagramFilter();
+
+        LocalDevice localDevice = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(localDevice);
+
+        IncomingNotificationRequest msg = createRequestMessage();
+        msg.getHeaders().add(UpnpHeader.Type.NTS, new NTSHeader(NotificationSubtype.ALIVE));
+        msg.getHeaders().add(UpnpHeader.Type.NT, new RootDeviceHeader());
+        msg.getHeaders().add(UpnpHeader.Type.USN, new USNRootDeviceHeader(localDevice.getIdentity().getUdn()));
+        msg.getHeaders().add(UpnpHeader.Type.LOCATION, new LocationHeader(SampleDeviceRoot.getDeviceDescriptorURL()));
+        msg.getHeaders().add(UpnpHeader.Type.MAX_AGE, new MaxAgeHeader(1800));
+
+        assertFalse(filter.accept(upnpService.getRegistry(), msg));
+        assertEquals(filter.getDroppedCount(), 1);
+        assertEquals(filter.getDispatchedCount(), 0);
+    }
+
     protected IncomingNotificationRequest createRequestMessage() throws UnknownHostException {
         IncomingNotificationRequest msg = new IncomingNotificationRequest(
                 new IncomingDatagramMessage<UpnpRequest>(
@@ -17,6 +17,7 @@
 
 package org.fourthline.cling.test.ssdp;
 
+import org.fourthline.cling.UpnpService;
 import org.fourthline.cling.UpnpServiceConfiguration;
 import org.fourthline.cling.binding.xml.DeviceDescriptorBinder;
 import org.fourthline.cling.binding.xml.ServiceDescriptorBinder;
@@ -26,7 +27,13 @@ import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.resource.Resource;
 import org.fourthline.cling.model.meta.RemoteDevice;
 import org.fourthline.cling.model.types.ServiceType;
+import org.fourthline.cling.protocol.RemoteDescriptorCache;
+import org.fourthline.cling.protocol.ServiceDescriptorCache;
+import org.fourthline.cling.registry.Registry;
+import org.fourthline.cling.registry.RegistryImpl;
+import org.fourthline.cling.registry.RegistryMaintainer;
 import org.fourthline.cling.test.data.SampleData;
+import org.fourthline.cling.transport.IncomingDatagramFilter;
 import org.fourthline.cling.transport.spi.DatagramIO;
 import org.fourthline.cling.transport.spi.DatagramProcessor;
 import org.fourthline.cling.transport.spi.GENAEventProcessor;
@@ -41,6 +48,7 @@ import org.testng.annotations.Test;
 import java.net.URI;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class RegistryExpirationTest {
 
@@ -63,6 +71,46 @@ public class RegistryExpirationTest {
         upnpService.shutdown();
     }
 
+    @Test
+    public void maintainOnlyDueItems() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService(false, false);
+
+        // The test controls the clock and runs maintenance itself
+        final long[] now = new long[]{System.currentTimeMillis()};
+        RegistryImpl registry = new RegistryImpl(upnpService) {
+            @Override
+            protected RegistryMaintainer createRegistryMaintainer() {
+                return null;
+            }
+
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        RegistryMaintainer maintainer = new RegistryMaintainer(registry, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            registry.addResource(new Resource(URI.create("/unlimited/" + i), "foo"));
+            registry.addResource(new Resource(URI.create("/later/" + i), "foo"), 600);
+        }
+        registry.addResource(new Resource(URI.create("/soon"), "foo"), 1);
+
+        Assert.assertEquals(maintainer.maintain(), 0);
+
+        now[0] += 3000;
+        Assert.assertEquals(maintainer.maintain(), 1);
+        Assert.assertEquals(maintainer.maintain(), 0);
+
+        Assert.assertEquals(maintainer.getRuns(), 3);
+        Assert.assertEquals(maintainer.getTotalProcessedItems(), 1L);
+        Assert.assertEquals(registry.getResources().size(), 200);
+
+        registry.shutdown();
+        upnpService.shutdown();
+    }
+
     @Test
     public void overrideAgeThenAddAndExpire() throws Exception {
 
@@ -161,6 +209,34 @@ public class RegistryExpirationTest {
                         return wrapped.getSyncProtocolExecutor();
                     }
 
+                    public Executor getSearchResponseExecutor() {
+                        return wrapped.getSearchResponseExecutor();
+                    }
+
+                    public Executor getEventExecutor() {
+                        return wrapped.getEventExecutor();
+                    }
+
+                    public RemoteDescriptorCache getRemoteDescriptorCache() {
+                        return wrapped.getRemoteDescriptorCache();
+                    }
+
+                    public ServiceDescriptorCache getServiceDescriptorCache() {
+                        return wrapped.getServiceDescriptorCache();
+                    }
+
+                    public IncomingDatagramFilter getDatagramFilter() {
+                        return wrapped.getDatagramFilter();
+                    }
+
+                    public int getAliveNotificationsPerTick() {
+                        return wrapped.getAliveNotificationsPerTick();
+                    }
+
+                    public int getAliveNotificationTickMillis() {
+                        return wrapped.getAliveNotificationTickMillis();
+                    }
+
                     @Override
                     public Namespace getNamespace() {
                         return wrapped.getNamespace();
@@ -176,6 +252,16 @@ public class RegistryExpirationTest {
                         return wrapped.getRegistryListenerExecutor();
                     }
 
+                    @Override
+                    public ScheduledExecutorService getTimerExecutor() {
+                        return wrapped.getTimerExecutor();
+                    }
+
+                    @Override
+                    public Registry createRegistry(UpnpService upnpService) {
+                        return wrapped.createRegistry(upnpService);
+                    }
+
                     @Override
                     public void shutdown() {
                         wrapped.shutdown();
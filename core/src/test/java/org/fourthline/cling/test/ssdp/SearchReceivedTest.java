@@ -18,6 +18,7 @@
 package org.fourthline.cling.test.ssdp;
 
 import org.fourthline.cling.UpnpService;
+import org.fourthline.cling.UpnpServiceConfiguration;
 import org.fourthline.cling.model.Constants;
 import org.fourthline.cling.model.Namespace;
 import org.fourthline.cling.model.message.IncomingDatagramMessage;
@@ -42,6 +43,7 @@ import org.fourthline.cling.model.meta.LocalDevice;
 import org.fourthline.cling.model.meta.Service;
 import org.fourthline.cling.model.types.NotificationSubtype;
 import org.fourthline.cling.protocol.async.ReceivingSearch;
+import org.fourthline.cling.protocol.async.SearchResponseScheduler;
 import org.fourthline.cling.mock.MockUpnpService;
 import org.fourthline.cling.test.data.SampleData;
 import org.fourthline.cling.test.data.SampleUSNHeaders;
@@ -50,6 +52,8 @@ import org.testng.annotations.Test;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.testng.Assert.assertEquals;
 
@@ -251,6 +255,81 @@ public class SearchReceivedTest {
         assert upnpService.getOutgoingDatagramMessages().size() == 0;
     }
 
+    @Test
+    public void receivedSearchScheduled() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+
+        LocalDevice localDevice = SampleData.createLocalDevice();
+        upnpService.getRegistry().addDevice(localDevice);
+
+        ManualSearchResponseScheduler scheduler = new ManualSearchResponseScheduler(upnpService.getConfiguration());
+
+        // Two identical searches from the same requester, one from another port
+        for (int i = 0; i < 3; i++) {
+            IncomingSearchRequest searchMsg = i < 2
+                ? createRequestMessage()
+                : new IncomingSearchRequest(
+                    new IncomingDatagramMessage<UpnpRequest>(
+                        new UpnpRequest(UpnpRequest.Method.MSEARCH),
+                        InetAddress.getByName("127.0.0.1"),
+                        12345,
+                        InetAddress.getByName("127.0.0.1")
+                    )
+                );
+            searchMsg.getHeaders().add(UpnpHeader.Type.MAN, new MANHeader(NotificationSubtype.DISCOVER.getHeaderString()));
+            searchMsg.getHeaders().add(UpnpHeader.Type.MX, new MXHeader(1));
+            searchMsg.getHeaders().add(UpnpHeader.Type.ST, new RootDeviceHeader());
+            searchMsg.getHeaders().add(UpnpHeader.Type.HOST, new HostHeader());
+
+            // Returns immediately, doesn't wait for the MX delay
+            new ReceivingSearch(upnpService, searchMsg, scheduler).run();
+        }
+
+        assertEquals(scheduler.getScheduledCount(), 2);
+        assertEquals(scheduler.getCoalescedCount(), 1);
+        assertEquals(scheduler.getPendingCount(), 2);
+        assertEquals(upnpService.getOutgoingDatagramMessages().size(), 0);
+
+        // MX is one second, the random delays are shorter
+        scheduler.tick(1000);
+
+        assertEquals(scheduler.getPendingCount(), 0);
+        assertEquals(upnpService.getOutgoingDatagramMessages().size(), 2);
+        for (OutgoingDatagramMessage msg : upnpService.getOutgoingDatagramMessages()) {
+            assertSearchResponseBasics(upnpService.getConfiguration().getNamespace(), msg, localDevice);
+        }
+
+        upnpService.getConfiguration().shutdown();
+    }
+
+    static class ManualSearchResponseScheduler extends SearchResponseScheduler {
+
+        final List<Long> dueTimes = new ArrayList();
+        final List<Runnable> tasks = new ArrayList();
+        long now = 1000;
+
+        ManualSearchResponseScheduler(UpnpServiceConfiguration configuration) {
+            super(configuration);
+        }
+
+        void tick(long advanceMillis) {
+            now += advanceMillis;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i) <= now) {
+                    dueTimes.remove(i);
+                    tasks.remove(i--).run();
+                }
+            }
+        }
+
+        @Override
+        protected void startTimer(Runnable task, long delayMillis) {
+            dueTimes.add(now + delayMillis);
+            tasks.add(task);
+        }
+    }
+
     protected ReceivingSearch createProtocol(UpnpService upnpService, IncomingSearchRequest searchMsg) throws Exception {
         return new ReceivingSearch(upnpService, searchMsg);
     }
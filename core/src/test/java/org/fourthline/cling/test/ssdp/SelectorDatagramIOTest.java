@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 4th Line GmbH, Switzerland
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fourthline.cling.test.ssdp;
+
+import org.fourthline.cling.mock.MockUpnpService;
+import org.fourthline.cling.model.message.IncomingDatagramMessage;
+import org.fourthline.cling.model.message.UpnpRequest;
+import org.fourthline.cling.model.message.header.UpnpHeader;
+import org.fourthline.cling.transport.impl.DatagramIOConfigurationImpl;
+import org.fourthline.cling.transport.impl.DatagramSelector;
+import org.fourthline.cling.transport.impl.SelectorDatagramIOImpl;
+import org.testng.annotations.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import static org.testng.Assert.assertEquals;
+
+public class SelectorDatagramIOTest {
+
+    @Test
+    public void receiveOnSharedSelector() throws Exception {
+
+        MockUpnpService upnpService = new MockUpnpService();
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+
+        DatagramSelector selector = new DatagramSelector();
+        SelectorDatagramIOImpl first = new SelectorDatagramIOImpl(new DatagramIOConfigurationImpl(), selector);
+        SelectorDatagramIOImpl second = new SelectorDatagramIOImpl(new DatagramIOConfigurationImpl(), selector);
+        first.init(loopback, upnpService.getRouter(), upnpService.getConfiguration().getDatagramProcessor());
+        second.init(loopback, upnpService.getRouter(), upnpService.getConfiguration().getDatagramProcessor());
+
+        // Only the first thread enters the loop
+        new Thread(first).start();
+        waitFor(selector, true);
+        second.run();
+        assert selector.isRunning();
+
+        String search = "M-SEARCH * HTTP/1.1\r\n" +
+                        "HOST: 239.255.255.250:1900\r\n" +
+                        "MAN: \"ssdp:discover\"\r\n" +
+                        "MX: 3\r\n" +
+                        "ST: ssdp:all\r\n\r\n";
+        byte[] data = search.getBytes();
+
+        first.send(new DatagramPacket(data, data.length, loopback, second.getLocalAddress().getPort()));
+        second.send(new DatagramPacket(data, data.length, loopback, first.getLocalAddress().getPort()));
+
+        waitFor(upnpService, 2);
+        for (IncomingDatagramMessage msg : upnpService.getIncomingDatagramMessages()) {
+            assertEquals(((UpnpRequest) msg.getOperation()).getMethod(), UpnpRequest.Method.MSEARCH);
+            assertEquals(msg.getHeaders().getFirstHeader(UpnpHeader.Type.ST).getString(), "ssdp:all");
+        }
+
+        // The loop still serves the remaining channel
+        first.stop();
+        DatagramSocket socket = new DatagramSocket(0, loopback);
+        try {
+            socket.send(new DatagramPacket(data, data.length, loopback, second.getLocalAddress().getPort()));
+        } finally {
+            socket.close();
+        }
+        waitFor(upnpService, 3);
+        assert selector.isRunning();
+
+        // The loop ends with the last channel
+        second.stop();
+        waitFor(selector, false);
+    }
+
+    protected void waitFor(DatagramSelector selector, boolean running) throws Exception {
+        for (int i = 0; i < 50 && selector.isRunning() != running; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(selector.isRunning(), running);
+    }
+
+    protected void waitFor(MockUpnpService upnpService, int messages) throws Exception {
+        for (int i = 0; i < 50 && upnpService.getIncomingDatagramMessages().size() < messages; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(upnpService.getIncomingDatagramMessages().size(), messages);
+    }
+
+}